@@ -0,0 +1,72 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.admission.AdmissionControl;
+import com.statista.code.challenge.admission.EndpointClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link AdmissionControl} adds to a request: an admitted request of a known client, including its release,
+ * and a rejected one, for one client and for {@code clients} clients picked at random.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdmissionBenchmark {
+
+    @Param({"1", "100000"})
+    public int clients;
+
+    String[] names;
+    AdmissionControl admitting;
+    AdmissionControl rejecting;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        names = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            names[i] = "client-" + i;
+        }
+        admitting = new AdmissionControl(true, "X-Client-Id", 2 * clients, "1e9,1000000,1000000",
+                "1e9,1000000,1000000", "1e9,1000000,1000000");
+        rejecting = new AdmissionControl(true, "X-Client-Id", 2 * clients, "0.001,1,1000000", "0.001,1,1000000",
+                "0.001,1,1000000");
+        long now = System.nanoTime();
+        for (String name : names) {
+            admitting.tryAcquire(name, EndpointClass.READ, now);
+            admitting.release(EndpointClass.READ);
+            rejecting.tryAcquire(name, EndpointClass.READ, now);
+            rejecting.release(EndpointClass.READ);
+        }
+    }
+
+    @Benchmark
+    public long admitted() {
+        String client = names[ThreadLocalRandom.current().nextInt(clients)];
+        long retryAfter = admitting.tryAcquire(client, EndpointClass.READ, System.nanoTime());
+        admitting.release(EndpointClass.READ);
+        return retryAfter;
+    }
+
+    @Benchmark
+    public long rejected() {
+        String client = names[ThreadLocalRandom.current().nextInt(clients)];
+        return rejecting.tryAcquire(client, EndpointClass.READ, System.nanoTime());
+    }
+}
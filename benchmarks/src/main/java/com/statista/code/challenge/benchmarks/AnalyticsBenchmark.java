@@ -0,0 +1,136 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.aggregate.PriceAnalytics;
+import com.statista.code.challenge.aggregate.PriceStatistics;
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Median, p90, p99 and the ten most expensive bookings of a department per currency, from {@link PriceAnalytics}
+ * against sorting the prices of the department, and the same over all departments. Prices are log-normal around
+ * 50.00 with a long tail, so that the p99 is about 50 times the median.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AnalyticsBenchmark {
+
+    static final int TOP = 10;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"20"})
+    public int departments;
+
+    @Param({"5"})
+    public int currencies;
+
+    BookingDataset dataset;
+    InMemoryBookingRepository repository;
+    PriceAnalytics analytics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new BookingDataset(departments, currencies);
+        analytics = new PriceAnalytics(0.01, TOP);
+        repository = new InMemoryBookingRepository(Collections.singletonList(analytics));
+        List<Booking> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < size; i++) {
+            batch.add(dataset.booking(i, price(i)));
+            if (batch.size() == 10_000){
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+    }
+
+    @Benchmark
+    public List<PriceStatistics> department() {
+        return analytics.statistics(randomDepartment(), repository::forEach);
+    }
+
+    /**
+     * What the statistics of a department took without the sketches: sorting its prices per currency.
+     */
+    @Benchmark
+    public Map<Currency, double[]> departmentSorted() {
+        String department = randomDepartment();
+        Map<Currency, List<Booking>> byCurrency = new HashMap<>();
+        for (Booking booking : repository.findByDepartment(department)) {
+            byCurrency.computeIfAbsent(booking.getCurrency(), c -> new ArrayList<>()).add(booking);
+        }
+        return sorted(byCurrency);
+    }
+
+    @Benchmark
+    public List<PriceStatistics> all() {
+        return analytics.statistics(repository::forEach);
+    }
+
+    @Benchmark
+    public Map<Currency, double[]> allSorted() {
+        Map<Currency, List<Booking>> byCurrency = new HashMap<>();
+        repository.forEach(booking ->
+                byCurrency.computeIfAbsent(booking.getCurrency(), c -> new ArrayList<>()).add(booking));
+        return sorted(byCurrency);
+    }
+
+    /**
+     * @return per currency the median, p90 and p99 followed by the {@value #TOP} highest prices
+     */
+    private static Map<Currency, double[]> sorted(Map<Currency, List<Booking>> byCurrency) {
+        Map<Currency, double[]> statistics = new HashMap<>();
+        byCurrency.forEach((currency, bookings) -> {
+            double[] prices = new double[bookings.size()];
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = bookings.get(i).getPrice();
+            }
+            Arrays.sort(prices);
+            double[] result = new double[3 + TOP];
+            result[0] = prices[(int) (0.5 * (prices.length - 1))];
+            result[1] = prices[(int) (0.9 * (prices.length - 1))];
+            result[2] = prices[(int) (0.99 * (prices.length - 1))];
+            for (int i = 0; i < TOP && i < prices.length; i++) {
+                result[3 + i] = prices[prices.length - 1 - i];
+            }
+            statistics.put(currency, result);
+        });
+        return statistics;
+    }
+
+    private String randomDepartment() {
+        return dataset.department(ThreadLocalRandom.current().nextInt(departments));
+    }
+
+    static double price(int i) {
+        return Math.round(Math.exp(8.5 + 1.7 * new Random(i * 0x9E3779B97F4A7C15L).nextGaussian())) / 100.0;
+    }
+}
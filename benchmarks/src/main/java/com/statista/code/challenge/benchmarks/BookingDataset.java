@@ -0,0 +1,66 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.entity.Booking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deterministic booking data for the benchmarks. Booking {@code i} always has the same id, department and
+ * currency, so a benchmark can address any stored booking from its index without keeping the ids in memory.
+ * The first two departments are {@code internal} and {@code sales}, the ones {@code doBusiness} handles.
+ */
+final class BookingDataset {
+
+    private static final long ID_SEED = 0x5EED_B00C_1D5L;
+    private static final long START_DATE = 1_683_849_600_000L;
+
+    private final int departments;
+    private final Currency[] currencies;
+
+    BookingDataset(int departments, int currencies) {
+        this.departments = departments;
+        List<Currency> available = new ArrayList<>(Currency.getAvailableCurrencies());
+        available.sort(Comparator.comparing(Currency::getCurrencyCode));
+        this.currencies = available.subList(0, currencies).toArray(new Currency[0]);
+    }
+
+    static String id(int i) {
+        return new UUID(ID_SEED, i).toString();
+    }
+
+    /**
+     * @return the start date of booking {@code i}; one booking starts every minute
+     */
+    static long startDate(int i) {
+        return START_DATE + i * 60_000L;
+    }
+
+    String department(int i) {
+        int department = i % departments;
+        switch (department) {
+            case 0:
+                return "internal";
+            case 1:
+                return "sales";
+            default:
+                return "department-" + department;
+        }
+    }
+
+    Currency currency(int i) {
+        return currencies[(i / departments) % currencies.length];
+    }
+
+    Booking booking(int i, double price) {
+        return new Booking(id(i), "Booking number " + i, price, currency(i), startDate(i),
+                "customer" + i + "@example.com", department(i));
+    }
+
+    Booking booking(int i) {
+        return booking(i, 10 + (i % 9_000) / 100.0);
+    }
+}
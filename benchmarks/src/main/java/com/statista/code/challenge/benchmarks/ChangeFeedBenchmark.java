@@ -0,0 +1,124 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.feed.ChangeFeed;
+import com.statista.code.challenge.feed.ChangeSink;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What the change feed adds to a write: {@code off} has no feed, {@code idle} a feed without subscribers,
+ * {@code fast} 16 subscribers that consume as fast as they can, {@code slow} 16 subscribers that take a
+ * millisecond per event and so keep their buffers full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ChangeFeedBenchmark {
+
+    private static final int SUBSCRIBERS = 16;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"off", "idle", "fast", "slow"})
+    public String feed;
+
+    @Param({"drop", "resume"})
+    public String overflow;
+
+    BookingDataset dataset;
+    ChangeFeed changeFeed;
+    InMemoryBookingRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new BookingDataset(2, 30);
+        List<BookingChangeListener> listeners = new ArrayList<>();
+        if (!"off".equals(feed)){
+            changeFeed = new ChangeFeed(10_000, 1000, SUBSCRIBERS, overflow, 2, 0, 0);
+            listeners.add(changeFeed);
+        }
+        repository = new InMemoryBookingRepository(listeners);
+        List<Booking> bookings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            bookings.add(dataset.booking(i));
+        }
+        repository.saveAll(bookings);
+    }
+
+    @Setup(Level.Iteration)
+    public void subscribe() {
+        if ("fast".equals(feed) || "slow".equals(feed)){
+            long pauseNanos = "slow".equals(feed) ? TimeUnit.MILLISECONDS.toNanos(1) : 0;
+            // resubscribe the subscribers the resume policy disconnected
+            for (int i = changeFeed.subscribers(); i < SUBSCRIBERS; i++) {
+                changeFeed.subscribe(null, null, null, new Consumer(pauseNanos));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        if (changeFeed != null){
+            changeFeed.destroy();
+        }
+    }
+
+    @Benchmark
+    public Booking saveOrUpdate() {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        return repository.saveOrUpdate(dataset.booking(i, ThreadLocalRandom.current().nextInt(1, 100_000) / 100.0));
+    }
+
+    private static final class Consumer implements ChangeSink {
+
+        private final long pauseNanos;
+
+        Consumer(long pauseNanos) {
+            this.pauseNanos = pauseNanos;
+        }
+
+        @Override
+        public void send(String name, Long id, Object data) throws IOException {
+            if (pauseNanos > 0){
+                LockSupport.parkNanos(pauseNanos);
+            } else {
+                Blackhole.consumeCPU(100);
+            }
+        }
+
+        @Override
+        public void keepAlive() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
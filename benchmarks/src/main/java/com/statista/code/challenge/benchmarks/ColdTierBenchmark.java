@@ -0,0 +1,85 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.ColumnarBookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads by id from the hot tier and from the {@link com.statista.code.challenge.repository.ColdTier}: {@code hot}
+ * keeps every booking hot, {@code cold} archives them all after loading, and {@code neighbour} reads archived
+ * bookings in the order they were archived, so that most reads hit the tier's cache of the last inflated block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ColdTierBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"map", "columnar"})
+    public String store;
+
+    @Param({"hot", "cold", "neighbour"})
+    public String tier;
+
+    BookingDataset dataset;
+    BookingRepository repository;
+    String[] archiveOrder;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new BookingDataset(20, 5);
+        repository = "columnar".equals(store) ? new ColumnarBookingRepository() : new InMemoryBookingRepository();
+        List<Booking> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < size; i++) {
+            batch.add(dataset.booking(i));
+            if (batch.size() == 10_000){
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+        if (!"hot".equals(tier)){
+            List<Booking> hot = new ArrayList<>(repository.findAll());
+            archiveOrder = new String[hot.size()];
+            for (int i = 0; i < hot.size(); i++) {
+                archiveOrder[i] = hot.get(i).getId();
+            }
+            for (int from = 0; from < hot.size(); from += 10_000) {
+                repository.archive(hot.subList(from, Math.min(hot.size(), from + 10_000)));
+            }
+        }
+    }
+
+    @Benchmark
+    public Booking find() {
+        if ("neighbour".equals(tier)){
+            next = next + 1 == archiveOrder.length ? 0 : next + 1;
+            return repository.find(archiveOrder[next]);
+        }
+        return repository.find(BookingDataset.id(ThreadLocalRandom.current().nextInt(size)));
+    }
+}
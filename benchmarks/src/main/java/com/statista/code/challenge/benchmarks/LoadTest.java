@@ -0,0 +1,387 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.statista.code.challenge.App;
+import com.statista.code.challenge.metrics.LatencyHistogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of the whole application: HTTP, Jackson, validation, {@code BookingService} and the store.
+ * <p>
+ * Starts the application on a random localhost port, or uses the one at {@code --url}, loads
+ * {@code --bookings} bookings through the bulk endpoint, and then sends {@code --rate} requests per second for
+ * {@code --duration} seconds, picking each from the weighted {@code --mix}. Send times are fixed in advance, evenly
+ * spaced or, with {@code --arrival=poisson}, at exponential intervals, and do not wait for responses: a request
+ * whose time has come is queued for the {@code --threads} client threads even if earlier ones are still running.
+ * Latency is measured from the time a request was due, not from when a client thread got to send it, so a server
+ * stall counts against every request that should have been sent during it (coordinated omission). The time from
+ * actually sending is reported too, as {@code sent p99}; where the two differ, requests queued on the client side.
+ * <p>
+ * The first {@code --warmup} seconds are sent but not measured. With {@code --slo=p99=50,p999=200,errors=0.1} the
+ * limits, in milliseconds and percent, are checked for every endpoint and the exit status is 1 if one is missed.
+ * Defaults are {@code --rate=500 --duration=60 --warmup=10 --mix=post:10,put:10,get:50,sum:20,dobusiness:10
+ * --arrival=uniform --threads=64 --bookings=10000 --departments=10 --currencies=5}. All options are also passed to
+ * the application, so that e.g. {@code --bookings.store=columnar} selects the store. Admission control is off in
+ * the started application, as all requests come from one client, unless {@code --bookings.admission.enabled=true}.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.statista.code.challenge.benchmarks.LoadTest --rate=1000 --duration=60
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final String PREFIX = "/bookingservice";
+    private static final int PRELOAD_BATCH = 10_000;
+
+    /**
+     * The requests of the mix, named as they are given in {@code --mix}.
+     */
+    enum Endpoint {
+        POST("POST /bookings"),
+        PUT("PUT /bookings/{id}"),
+        GET("GET /bookings/{id}"),
+        SUM("GET /sum/{currency}"),
+        DOBUSINESS("GET /bookings/dobusiness/{department}");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    private final String baseUrl;
+    private final Map<String, String> options;
+    private final BookingDataset dataset;
+    private final int bookings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger nextBooking;
+    private final Map<Endpoint, Results> results = new EnumMap<>(Endpoint.class);
+    private double measuredSeconds;
+
+    LoadTest(String baseUrl, Map<String, String> options) {
+        this.baseUrl = baseUrl;
+        this.options = options;
+        this.dataset = new BookingDataset(intOption("departments", 10), intOption("currencies", 5));
+        this.bookings = intOption("bookings", 10_000);
+        this.nextBooking = new AtomicInteger(bookings);
+        for (Endpoint endpoint : Endpoint.values()) {
+            results.put(endpoint, new Results());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int threads = Integer.parseInt(options.getOrDefault("threads", "64"));
+        // idle keep-alive connections the JDK keeps per host; the default of 5 would reconnect for most requests
+        System.setProperty("http.maxConnections", Integer.toString(threads));
+        ConfigurableApplicationContext application = null;
+        String baseUrl = options.get("url");
+        if (baseUrl == null){
+            List<String> applicationArgs = new ArrayList<>(Arrays.asList(args));
+            applicationArgs.add("--server.port=0");
+            applicationArgs.add("--logging.level.root=WARN");
+            if (!options.containsKey("bookings.admission.enabled")){
+                applicationArgs.add("--bookings.admission.enabled=false");
+            }
+            application = SpringApplication.run(App.class, applicationArgs.toArray(new String[0]));
+            int port = ((WebServerApplicationContext) application).getWebServer().getPort();
+            baseUrl = "http://localhost:" + port;
+        }
+        boolean passed;
+        try {
+            LoadTest test = new LoadTest(baseUrl, options);
+            test.preload();
+            test.run(threads);
+            passed = test.report();
+        } finally {
+            if (application != null){
+                application.close();
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    void preload() throws IOException {
+        long start = System.nanoTime();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < bookings; i++) {
+            body.append(objectMapper.writeValueAsString(dataset.booking(i))).append('\n');
+            if ((i + 1) % PRELOAD_BATCH == 0 || i + 1 == bookings){
+                int status = send("POST", PREFIX + "/bookings/bulk", "application/x-ndjson",
+                        body.toString().getBytes(StandardCharsets.UTF_8));
+                if (status != 200){
+                    throw new IllegalStateException("Bulk load failed with status " + status);
+                }
+                body.setLength(0);
+            }
+        }
+        System.out.printf(Locale.ROOT, "Loaded %d bookings in %d ms%n", bookings,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Sends requests at their due times from the calling thread until the duration is over, then waits for the
+     * outstanding ones.
+     */
+    void run(int threads) throws InterruptedException {
+        double rate = doubleOption("rate", 500);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(intOption("warmup", 10));
+        long durationNanos = TimeUnit.SECONDS.toNanos(intOption("duration", 60));
+        boolean poisson = "poisson".equals(options.getOrDefault("arrival", "uniform"));
+        Endpoint[] mix = mix(options.getOrDefault("mix", "post:10,put:10,get:50,sum:20,dobusiness:10"));
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor clients = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "load-client-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        long maxQueued = 0;
+        System.out.printf(Locale.ROOT, "Sending %.0f requests/s for %d s after %d s of warmup%n", rate,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        double offset = 0;
+        while (true) {
+            long due = start + (long) offset;
+            if (due >= end){
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0){
+                LockSupport.parkNanos(wait);
+            }
+            Endpoint endpoint = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+            boolean measured = due >= measureFrom;
+            clients.execute(() -> call(endpoint, due, measured));
+            maxQueued = Math.max(maxQueued, clients.getQueue().size());
+            offset += poisson ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * intervalNanos : intervalNanos;
+        }
+        clients.shutdown();
+        if (!clients.awaitTermination(60, TimeUnit.SECONDS)){
+            System.out.println("Gave up waiting for " + clients.getQueue().size() + " queued requests");
+            clients.shutdownNow();
+        }
+        System.out.printf(Locale.ROOT, "Measured %.1f s, at most %d requests queued on the client%n",
+                (end - measureFrom) / 1e9, maxQueued);
+        measuredSeconds = (end - measureFrom) / 1e9;
+    }
+
+    /**
+     * Prints the results per endpoint and checks them against {@code --slo}.
+     *
+     * @return {@code false} if an objective was missed
+     */
+    boolean report() {
+        Map<String, Double> objectives = slo(options.getOrDefault("slo", ""));
+        System.out.printf(Locale.ROOT, "%-38s %9s %7s %9s %9s %9s %9s %9s %11s%n", "endpoint", "requests", "errors",
+                "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "sent p99 ms");
+        boolean passed = true;
+        List<String> missed = new ArrayList<>();
+        for (Map.Entry<Endpoint, Results> entry : results.entrySet()) {
+            Results result = entry.getValue();
+            long count = result.latency.count();
+            if (count == 0){
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-38s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                    entry.getKey().label, count, result.errors.sum(), count / measuredSeconds,
+                    millis(result.latency.valueAt(0.5)), millis(result.latency.valueAt(0.99)),
+                    millis(result.latency.valueAt(0.999)), millis(result.latency.max()),
+                    millis(result.serviceTime.valueAt(0.99)));
+            for (Map.Entry<String, Double> objective : objectives.entrySet()) {
+                double actual = "errors".equals(objective.getKey())
+                        ? 100.0 * result.errors.sum() / count
+                        : millis(result.latency.valueAt(quantile(objective.getKey())));
+                if (actual > objective.getValue()){
+                    passed = false;
+                    missed.add(String.format(Locale.ROOT, "%s %s %.2f > %.2f", entry.getKey().label,
+                            objective.getKey(), actual, objective.getValue()));
+                }
+            }
+        }
+        for (String line : missed) {
+            System.out.println("SLO missed: " + line);
+        }
+        if (!objectives.isEmpty() && passed){
+            System.out.println("SLO met");
+        }
+        return passed;
+    }
+
+    private void call(Endpoint endpoint, long due, boolean measured) {
+        long sent = System.nanoTime();
+        int status;
+        try {
+            status = request(endpoint);
+        } catch (IOException | RuntimeException e) {
+            status = -1;
+        }
+        long done = System.nanoTime();
+        if (measured){
+            Results result = results.get(endpoint);
+            result.latency.record(done - due);
+            result.serviceTime.record(done - sent);
+            if (status < 200 || status >= 300){
+                result.errors.increment();
+            }
+        }
+    }
+
+    private int request(Endpoint endpoint) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int existing = random.nextInt(bookings);
+        switch (endpoint) {
+            case POST:
+                return send("POST", PREFIX + "/bookings", "application/json",
+                        objectMapper.writeValueAsBytes(dataset.booking(nextBooking.getAndIncrement())));
+            case PUT:
+                return send("PUT", PREFIX + "/bookings/" + BookingDataset.id(existing), "application/json",
+                        objectMapper.writeValueAsBytes(dataset.booking(existing, random.nextInt(1, 100_000) / 100.0)));
+            case GET:
+                return send("GET", PREFIX + "/bookings/" + BookingDataset.id(existing), null, null);
+            case SUM:
+                return send("GET", PREFIX + "/sum/" + dataset.currency(existing).getCurrencyCode(), null, null);
+            case DOBUSINESS:
+                return send("GET", PREFIX + "/bookings/dobusiness/" + (random.nextBoolean() ? "internal" : "sales"),
+                        null, null);
+            default:
+                throw new IllegalArgumentException(endpoint.name());
+        }
+    }
+
+    /**
+     * Sends one request and reads the whole response, so the connection goes back to the keep-alive pool.
+     *
+     * @return the status code
+     */
+    private int send(String method, String path, String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null){
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null){
+            try (InputStream response = in) {
+                drain(response);
+            }
+        }
+        return status;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) >= 0) {
+            // discard
+        }
+    }
+
+    /**
+     * @param mix weights by endpoint name, e.g. {@code get:80,post:20}
+     * @return one entry per unit of weight, to pick from uniformly
+     */
+    private static Endpoint[] mix(String mix) {
+        List<Endpoint> entries = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] weight = part.trim().split(":");
+            Endpoint endpoint = Endpoint.valueOf(weight[0].trim().toUpperCase(Locale.ROOT));
+            for (int i = Integer.parseInt(weight[1].trim()); i > 0; i--) {
+                entries.add(endpoint);
+            }
+        }
+        if (entries.isEmpty()){
+            throw new IllegalArgumentException("Empty mix: " + mix);
+        }
+        return entries.toArray(new Endpoint[0]);
+    }
+
+    /**
+     * @param slo limits such as {@code p99=50,p999=200,errors=0.1}, latencies in milliseconds, errors in percent
+     */
+    private static Map<String, Double> slo(String slo) {
+        Map<String, Double> objectives = new HashMap<>();
+        for (String part : slo.split(",")) {
+            if (part.trim().isEmpty()){
+                continue;
+            }
+            String[] limit = part.trim().split("=");
+            String name = limit[0].trim().toLowerCase(Locale.ROOT);
+            if (!"errors".equals(name)){
+                quantile(name);
+            }
+            objectives.put(name, Double.parseDouble(limit[1].trim()));
+        }
+        return objectives;
+    }
+
+    /**
+     * @param name {@code p50}, {@code p99}, {@code p999} and so on
+     */
+    private static double quantile(String name) {
+        if (!name.startsWith("p") || name.length() < 3){
+            throw new IllegalArgumentException("Not a percentile: " + name);
+        }
+        return Double.parseDouble("0." + name.substring(1));
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")){
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static final class Results {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+}
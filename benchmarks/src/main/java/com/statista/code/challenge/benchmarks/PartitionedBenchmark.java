@@ -0,0 +1,95 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.PartitionedBookingRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out queries of the partitioned store against the number of shards, each shard with a pool thread, to show
+ * how department and currency listings speed up with cores. {@code partitions=1} runs on the calling thread only,
+ * like the map store. Run with {@code -t 1}: the speedup comes from parallelism inside one query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class PartitionedBenchmark {
+
+    private static final int FILL_BATCH = 10_000;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int partitions;
+
+    @Param({"2"})
+    public int departments;
+
+    @Param({"30"})
+    public int currencies;
+
+    BookingDataset dataset;
+    PartitionedBookingRepository repository;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        dataset = new BookingDataset(departments, currencies);
+        repository = new PartitionedBookingRepository(Collections.singletonList(new CurrencyAggregates()),
+                partitions, partitions);
+        List<Booking> batch = new ArrayList<>(FILL_BATCH);
+        for (int i = 0; i < size; i++) {
+            batch.add(dataset.booking(i));
+            if (batch.size() == FILL_BATCH){
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        repository.destroy();
+    }
+
+    @Benchmark
+    public List<Booking> findByDepartment() {
+        return repository.findByDepartment(dataset.department(randomIndex()));
+    }
+
+    @Benchmark
+    public List<Booking> findByDepartmentPage() {
+        return repository.findByDepartment(dataset.department(randomIndex()), BookingDataset.id(randomIndex()), 100);
+    }
+
+    @Benchmark
+    public List<Booking> findByCurrency() {
+        return repository.findByCurrency(dataset.currency(randomIndex()).getCurrencyCode());
+    }
+
+    private int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+}
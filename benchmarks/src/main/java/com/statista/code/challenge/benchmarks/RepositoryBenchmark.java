@@ -0,0 +1,60 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.entity.Booking;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Currency;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BookingRepository} hot paths against a filled store. Lookups pick a random stored booking, department or
+ * currency per invocation; {@link #saveOrUpdate()} replaces a random stored booking with a new price, so the store
+ * size stays constant.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class RepositoryBenchmark extends StoreState {
+
+    @Benchmark
+    public Booking saveOrUpdate() {
+        int i = randomIndex();
+        return repository.saveOrUpdate(dataset.booking(i, ThreadLocalRandom.current().nextInt(1, 100_000) / 100.0));
+    }
+
+    @Benchmark
+    public Booking find() {
+        return repository.find(BookingDataset.id(randomIndex()));
+    }
+
+    @Benchmark
+    public List<Booking> findByDepartment() {
+        return repository.findByDepartment(dataset.department(randomIndex()));
+    }
+
+    @Benchmark
+    public List<Booking> findByDepartmentPage() {
+        return repository.findByDepartment(dataset.department(randomIndex()), BookingDataset.id(randomIndex()), 100);
+    }
+
+    @Benchmark
+    public List<Booking> findByCurrency() {
+        return repository.findByCurrency(dataset.currency(randomIndex()).getCurrencyCode());
+    }
+
+    @Benchmark
+    public Set<Currency> findCurrenciesUsed() {
+        return repository.findCurrenciesUsed();
+    }
+}
@@ -0,0 +1,162 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import com.statista.code.challenge.search.BookingSearchIndex;
+import com.statista.code.challenge.search.SearchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches with the {@link BookingSearchIndex} against a scan of every booking, on bookings whose descriptions are
+ * four words of a {@value #VOCABULARY} word vocabulary skewed towards its first words, so that {@code term0} is in
+ * about a fifth of the bookings and {@code term4999} in a few hundred. E-mails spread over {@value #DOMAINS}
+ * domains. Each query returns at most {@value #LIMIT} bookings:
+ * <ul>
+ *     <li>{@code common}: two of the most common words</li>
+ *     <li>{@code rare}: one of the rarest words and a common one</li>
+ *     <li>{@code prefix}: {@code term49*}, which expands to 111 words</li>
+ *     <li>{@code email}: the e-mail of a random booking</li>
+ *     <li>{@code domain}: a domain and a common word</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SearchBenchmark {
+
+    static final int VOCABULARY = 5000;
+    static final int DOMAINS = 1000;
+    static final int LIMIT = 100;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"common", "rare", "prefix", "email", "domain"})
+    public String query;
+
+    BookingDataset dataset;
+    InMemoryBookingRepository repository;
+    BookingSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new BookingDataset(20, 5);
+        index = new BookingSearchIndex();
+        repository = new InMemoryBookingRepository(Collections.singletonList(index));
+        List<Booking> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < size; i++) {
+            batch.add(booking(i));
+            if (batch.size() == 10_000){
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+    }
+
+    @Benchmark
+    public List<Booking> search() {
+        String[] query = randomQuery();
+        List<String> ids = index.search(SearchQuery.parse(query[0], query[1], query[2]), LIMIT);
+        List<Booking> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            found.add(repository.find(id));
+        }
+        return found;
+    }
+
+    /**
+     * What answering the query took before the index: walking the bookings and testing each.
+     */
+    @Benchmark
+    public List<Booking> scan() {
+        String[] query = randomQuery();
+        String[] words = query[0] == null ? new String[0] : query[0].split(" ");
+        String emailSuffix = query[1] != null ? query[1] : query[2] == null ? null : "@" + query[2];
+        List<Booking> found = new ArrayList<>(LIMIT);
+        for (Booking booking : repository.findAll()) {
+            if (matches(booking, words, emailSuffix)){
+                found.add(booking);
+                if (found.size() == LIMIT){
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the text, e-mail and domain of a query of the current kind
+     */
+    private String[] randomQuery() {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        switch (query) {
+            case "common":
+                return new String[]{"term0 term1", null, null};
+            case "rare":
+                return new String[]{"term" + (VOCABULARY - 1 - i % 10) + " term0", null, null};
+            case "prefix":
+                return new String[]{"term49*", null, null};
+            case "email":
+                return new String[]{null, email(i), null};
+            default:
+                return new String[]{"term0", null, domain(i)};
+        }
+    }
+
+    private static boolean matches(Booking booking, String[] words, String emailSuffix) {
+        if (emailSuffix != null && !booking.getEmail().toLowerCase().endsWith(emailSuffix)){
+            return false;
+        }
+        String description = " " + booking.getDescription().toLowerCase() + " ";
+        for (String word : words) {
+            boolean prefix = word.endsWith("*");
+            String needle = " " + (prefix ? word.substring(0, word.length() - 1) : word + " ");
+            if (!description.contains(needle)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Booking booking(int i) {
+        Random random = new Random(i);
+        StringBuilder description = new StringBuilder();
+        for (int word = 0; word < 4; word++) {
+            double skew = random.nextDouble();
+            description.append(word == 0 ? "" : " ").append("Term").append((int) (VOCABULARY * skew * skew * skew));
+        }
+        Booking template = dataset.booking(i);
+        return new Booking(template.getId(), description.toString(), template.getPrice(), template.getCurrency(),
+                template.getSubscriptionStartDate(), email(i), template.getDepartment());
+    }
+
+    private static String email(int i) {
+        return "customer" + i + "@" + domain(i);
+    }
+
+    private static String domain(int i) {
+        return "domain" + (i % DOMAINS) + ".example.com";
+    }
+}
@@ -0,0 +1,174 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.statista.code.challenge.BinaryFormatsConfiguration;
+import com.statista.code.challenge.department.DepartmentRegistry;
+import com.statista.code.challenge.department.InternalDepartment;
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.entity.BookingHumanReadableDate;
+import com.statista.code.challenge.entity.BookingJsonModule;
+import com.statista.code.challenge.entity.DatedBooking;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding a department listing and the human readable {@code doBusiness} listing as JSON, CBOR and Smile, with
+ * the object mappers the web layer uses, optionally gzipped like the servlet container does above its size
+ * threshold. The encoded sizes are printed once per trial.
+ * <p>
+ * {@code serializers=module} writes with {@link BookingJsonModule} and the listing of {@link DatedBooking}s, as
+ * the web layer does; {@code bean} is Jackson's bean serializer and a listing of {@link BookingHumanReadableDate}
+ * copies, as before the module. Both write the same bytes. The {@code stream} benchmarks write to a reused
+ * stream that only counts, so that their allocation is the serializers' own, without the output buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SerializationBenchmark {
+
+    @Param({"1000"})
+    public int size;
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    @Param({"bean", "module"})
+    public String serializers;
+
+    ObjectMapper mapper;
+    List<Booking> bookings;
+    List<?> humanReadable;
+    int capacity;
+    final CountingOutputStream counting = new CountingOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BinaryFormatsConfiguration formats = new BinaryFormatsConfiguration();
+        switch (format) {
+            case "json":
+                mapper = Jackson2ObjectMapperBuilder.json().build();
+                break;
+            case "cbor":
+                mapper = formats.cborHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+                break;
+            case "smile":
+                mapper = formats.smileHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+        if (serializers.equals("module")){
+            mapper.registerModule(new BookingJsonModule());
+        } else if (!serializers.equals("bean")){
+            throw new IllegalArgumentException("Unknown serializers " + serializers);
+        }
+        BookingDataset dataset = new BookingDataset(1, 30);
+        bookings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            bookings.add(dataset.booking(i));
+        }
+        DepartmentRegistry departments = new DepartmentRegistry(Collections.singletonList(new InternalDepartment()));
+        bookings.forEach(booking -> departments.onChange(null, booking));
+        List<DatedBooking> dated = (List<DatedBooking>) departments.result(dataset.department(0));
+        if (serializers.equals("module")){
+            humanReadable = dated;
+        } else {
+            List<BookingHumanReadableDate> copies = new ArrayList<>(dated.size());
+            for (DatedBooking booking : dated) {
+                BookingHumanReadableDate copy = new BookingHumanReadableDate(booking.getBooking());
+                copy.setHumanReadableSubscriptionStartDate(booking.getHumanReadableSubscriptionStartDate());
+                copies.add(copy);
+            }
+            humanReadable = copies;
+        }
+        int bookingsBytes = writeBookings().length;
+        int humanReadableBytes = writeHumanReadable().length;
+        capacity = Math.max(bookingsBytes, humanReadableBytes);
+        System.out.printf("%n%s%s %s: %d bookings %d bytes, human readable %d bytes%n",
+                format, gzip ? "+gzip" : "", serializers, size, bookingsBytes, humanReadableBytes);
+    }
+
+    @Benchmark
+    public byte[] writeBookings() throws IOException {
+        return write(bookings);
+    }
+
+    @Benchmark
+    public byte[] writeHumanReadable() throws IOException {
+        return write(humanReadable);
+    }
+
+    @Benchmark
+    public long streamBookings() throws IOException {
+        return stream(bookings);
+    }
+
+    @Benchmark
+    public long streamHumanReadable() throws IOException {
+        return stream(humanReadable);
+    }
+
+    private long stream(Object value) throws IOException {
+        counting.count = 0;
+        if (gzip){
+            try (OutputStream out = new GZIPOutputStream(counting)) {
+                mapper.writeValue(out, value);
+            }
+        } else {
+            mapper.writeValue(counting, value);
+        }
+        return counting.count;
+    }
+
+    private byte[] write(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(capacity);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : bytes) {
+            mapper.writeValue(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Counts the bytes written to it and drops them; closing it does nothing, so it can be reused.
+     */
+    static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.statista.code.challenge.aggregate.PriceAnalytics;
+import com.statista.code.challenge.notification.DeadLetterStore;
+import com.statista.code.challenge.notification.InMemoryMailTransport;
+import com.statista.code.challenge.notification.NotificationDispatcher;
+import com.statista.code.challenge.persistence.BookingPersistence;
+import com.statista.code.challenge.search.BookingSearchIndex;
+import com.statista.code.challenge.service.BookingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BookingService} read paths, including both {@code doBusiness} departments and the start date windows.
+ * Windows are a week long and start at a random booking, so both ends fall in the middle of a day;
+ * {@link #retrieveTotalsByStartDateScan()} computes the same totals with a full scan for comparison. The service is built by hand
+ * with persistence disabled; no benchmark here sends mails.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class ServiceBenchmark extends StoreState {
+
+    private static final long WEEK = TimeUnit.DAYS.toMillis(7);
+
+    BookingService service;
+
+    @Override
+    void filled() {
+        BookingPersistence persistence = new BookingPersistence(null, false, "data", "interval", 10, 600_000);
+        NotificationDispatcher notifications = new NotificationDispatcher(new InMemoryMailTransport(0, 0),
+                new DeadLetterStore(1), 1, 1, 1, 1, 1);
+        service = new BookingService(repository, aggregates, new ObjectMapper(), persistence, notifications,
+                departmentViews, startDates, new BookingSearchIndex(), new PriceAnalytics(0.01, 10));
+    }
+
+    @Benchmark
+    public ResponseEntity retrieveSumByCurrency() {
+        return service.retrieveSumByCurrency(dataset.currency(randomIndex()).getCurrencyCode());
+    }
+
+    @Benchmark
+    public ResponseEntity doBusinessInternal() {
+        return service.doBusiness("internal");
+    }
+
+    @Benchmark
+    public ResponseEntity doBusinessSales() {
+        return service.doBusiness("sales");
+    }
+
+    /**
+     * Stores an unchanged {@code internal} booking again, so the listing has to be rebuilt.
+     */
+    @Benchmark
+    public ResponseEntity doBusinessInternalAfterWrite() {
+        repository.saveOrUpdate(dataset.booking(randomIndex() / departments * departments));
+        return service.doBusiness("internal");
+    }
+
+    @Benchmark
+    public ResponseEntity findByStartDate() {
+        long from = BookingDataset.startDate(randomIndex());
+        return service.findByStartDate(from, from + WEEK, null, 100);
+    }
+
+    @Benchmark
+    public ResponseEntity retrieveTotalsByStartDate() {
+        long from = BookingDataset.startDate(randomIndex());
+        return service.retrieveTotalsByStartDate(from, from + WEEK);
+    }
+
+    @Benchmark
+    public Map<Currency, BigDecimal> retrieveTotalsByStartDateScan() {
+        long from = BookingDataset.startDate(randomIndex());
+        long to = from + WEEK;
+        Map<Currency, BigDecimal> totals = new HashMap<>();
+        repository.forEach(booking -> {
+            long startDate = booking.getSubscriptionStartDate();
+            if (startDate >= from && startDate < to){
+                totals.merge(booking.getCurrency(), BigDecimal.valueOf(booking.getPrice()), BigDecimal::add);
+            }
+        });
+        return totals;
+    }
+}
@@ -0,0 +1,86 @@
+package com.statista.code.challenge.benchmarks;
+
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.aggregate.StartDateIndex;
+import com.statista.code.challenge.department.DepartmentRegistry;
+import com.statista.code.challenge.department.InternalDepartment;
+import com.statista.code.challenge.department.SalesDepartment;
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.ColumnarBookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A filled booking store shared by all benchmark threads, wired like the application: the
+ * {@link CurrencyAggregates}, the {@link DepartmentRegistry} with the {@code internal} and {@code sales} views and
+ * the {@link StartDateIndex} listen to the repository. Filled once per trial, with the parameters below.
+ */
+@State(Scope.Benchmark)
+public abstract class StoreState {
+
+    private static final int FILL_BATCH = 10_000;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"2", "100"})
+    public int departments;
+
+    @Param({"1", "30"})
+    public int currencies;
+
+    @Param({"map", "columnar"})
+    public String store;
+
+    BookingDataset dataset;
+    CurrencyAggregates aggregates;
+    DepartmentRegistry departmentViews;
+    StartDateIndex startDates;
+    BookingRepository repository;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        dataset = new BookingDataset(departments, currencies);
+        aggregates = new CurrencyAggregates();
+        departmentViews = new DepartmentRegistry(Arrays.asList(new InternalDepartment(), new SalesDepartment()));
+        startDates = new StartDateIndex();
+        List<BookingChangeListener> listeners = Arrays.asList(aggregates, departmentViews, startDates);
+        repository = "columnar".equals(store)
+                ? new ColumnarBookingRepository(listeners)
+                : new InMemoryBookingRepository(listeners);
+        List<Booking> batch = new ArrayList<>(FILL_BATCH);
+        for (int i = 0; i < size; i++) {
+            batch.add(dataset.booking(i));
+            if (batch.size() == FILL_BATCH){
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+        filled();
+    }
+
+    /**
+     * Called at the end of {@link #fill()}, for state that needs the filled store.
+     */
+    void filled() {
+    }
+
+    /**
+     * @return the index of a random stored booking
+     */
+    int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+}
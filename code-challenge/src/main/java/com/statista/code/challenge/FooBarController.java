@@ -1,52 +1,118 @@
 package com.statista.code.challenge;
 import com.statista.code.challenge.entity.Booking;
 import com.statista.code.challenge.service.BookingService;
+import com.statista.code.challenge.service.BulkBookingImporter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 
 @Controller
 @Validated
 @RequestMapping("/bookingservice")
 public class FooBarController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final BookingService bookingService;
+    private final BulkBookingImporter bulkBookingImporter;
 
-    public FooBarController(BookingService bookingService) {
+    public FooBarController(BookingService bookingService, BulkBookingImporter bulkBookingImporter) {
         this.bookingService = bookingService;
+        this.bulkBookingImporter = bulkBookingImporter;
     }
 
     @PostMapping("/bookings")
     public ResponseEntity createBooking(@Valid @RequestBody Booking booking) {
         return bookingService.createBooking(booking);
     }
+    @PostMapping(value = "/bookings/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public void createBookings(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        bulkBookingImporter.importBookings(body, response.getOutputStream());
+    }
     @PutMapping("/bookings/{bookingId}")
-    public ResponseEntity updateBooking(@PathVariable String bookingId, @RequestBody @Valid Booking booking) {
-        return bookingService.updateBooking(bookingId, booking);
+    public ResponseEntity updateBooking(@PathVariable String bookingId, @RequestBody @Valid Booking booking,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return bookingService.updateBooking(bookingId, booking, ifMatch);
+    }
+    @DeleteMapping("/bookings/{bookingId}")
+    public ResponseEntity deleteBooking(@PathVariable String bookingId) {
+        return bookingService.deleteBooking(bookingId);
     }
     @GetMapping("/bookings/{bookingId}")
-    public ResponseEntity getBookingById(@PathVariable String bookingId) {
-        return bookingService.find(bookingId);
+    public ResponseEntity getBookingById(@PathVariable String bookingId,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return bookingService.find(bookingId, ifNoneMatch);
     }
     @GetMapping("/bookings/department/{department}")
-    public ResponseEntity getBookingByDepartment(@PathVariable String department) {
-        return bookingService.findByDepartment(department);
+    public ResponseEntity getBookingByDepartment(@PathVariable String department,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(required = false) String after) {
+        if (limit == null){
+            return bookingService.findByDepartment(department);
+        }
+        return bookingService.findByDepartment(department, after, limit);
+    }
+    @GetMapping(value = "/bookings/department/{department}", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamBookingsByDepartment(@PathVariable String department) {
+        return bookingService.streamByDepartment(department);
+    }
+    @GetMapping("/bookings/start-date")
+    public ResponseEntity getBookingsByStartDate(@RequestParam long from, @RequestParam long to,
+                                                 @RequestParam(defaultValue = "100") int limit,
+                                                 @RequestParam(required = false) String after) {
+        return bookingService.findByStartDate(from, to, after, limit);
+    }
+    @GetMapping("/bookings/search")
+    public ResponseEntity searchBookings(@RequestParam(required = false) String q,
+                                         @RequestParam(required = false) String email,
+                                         @RequestParam(required = false) String domain,
+                                         @RequestParam(defaultValue = "100") int limit) {
+        return bookingService.search(q, email, domain, limit);
     }
     @GetMapping("/bookings/currencies")
-    public ResponseEntity getCurrencyUsed(){
-        return bookingService.retrieveCurrencyUsed();
+    public ResponseEntity getCurrencyUsed(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+        return bookingService.retrieveCurrencyUsed(ifNoneMatch);
     }
     @GetMapping("/sum/{currency}")
-    public ResponseEntity getSumByCurrency(@PathVariable String currency){
-        return bookingService.retrieveSumByCurrency(currency);
+    public ResponseEntity getSumByCurrency(@PathVariable String currency,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+        return bookingService.retrieveSumByCurrency(currency, ifNoneMatch);
+    }
+    @GetMapping("/sum/start-date")
+    public ResponseEntity getTotalsByStartDate(@RequestParam long from, @RequestParam long to){
+        return bookingService.retrieveTotalsByStartDate(from, to);
+    }
+    @GetMapping("/sum/{currency}/summary")
+    public ResponseEntity getSummaryByCurrency(@PathVariable String currency){
+        return bookingService.retrieveSummaryByCurrency(currency);
+    }
+
+    @GetMapping("/analytics")
+    public ResponseEntity getPriceStatistics(){
+        return bookingService.retrievePriceStatistics();
+    }
+    @GetMapping("/analytics/{department}")
+    public ResponseEntity getPriceStatisticsByDepartment(@PathVariable String department){
+        return bookingService.retrievePriceStatistics(department);
     }
 
     @GetMapping("/bookings/dobusiness/{department}")
@@ -0,0 +1,209 @@
+package com.statista.code.challenge.admission;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client rate limits and per-class concurrency limits for the {@link EndpointClass}es, deciding without
+ * queueing: a request is admitted right away or rejected with the seconds after which a retry can succeed.
+ * <p>
+ * Each client has a token bucket per class, refilled at {@code rate} requests per second up to {@code burst}. The
+ * bucket is kept as the time at which it will be full again (the generic cell rate algorithm), one {@code long}
+ * updated by compare-and-set, so admitting a request takes a map lookup and one CAS. The requests in flight per
+ * class are counted the same way. Clients are told apart by {@code bookings.admission.client-header}, or by remote
+ * address without it; the header must be set by a trusted proxy, as a client choosing it can spread over as many
+ * buckets as it likes. Buckets of clients that have been idle long enough to be full again equal new ones; once
+ * {@code bookings.admission.max-clients} clients are known, they are dropped at most once a second.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final EndpointClass[] CLASSES = EndpointClass.values();
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final String clientHeader;
+    private final int maxClients;
+    // per class: nanoseconds per token, burst in nanoseconds, concurrency limit
+    private final long[] interval = new long[CLASSES.length];
+    private final long[] tolerance = new long[CLASSES.length];
+    private final int[] concurrency = new int[CLASSES.length];
+    private final Map<String, AtomicLongArray> clients = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL);
+    private final AtomicIntegerArray inFlight = new AtomicIntegerArray(CLASSES.length);
+    private final LongAdder[] admitted = adders();
+    private final LongAdder[] rateLimited = adders();
+    private final LongAdder[] concurrencyLimited = adders();
+
+    /**
+     * @param read  {@code rate,burst,concurrency} of {@link EndpointClass#READ}, likewise for the other classes
+     */
+    public AdmissionControl(@Value("${bookings.admission.enabled:true}") boolean enabled,
+                            @Value("${bookings.admission.client-header:X-Client-Id}") String clientHeader,
+                            @Value("${bookings.admission.max-clients:100000}") int maxClients,
+                            @Value("${bookings.admission.read:1000,2000,64}") String read,
+                            @Value("${bookings.admission.write:500,1000,32}") String write,
+                            @Value("${bookings.admission.scan:20,40,4}") String scan) {
+        this.enabled = enabled;
+        this.clientHeader = clientHeader;
+        this.maxClients = maxClients;
+        limit(EndpointClass.READ, read);
+        limit(EndpointClass.WRITE, write);
+        limit(EndpointClass.SCAN, scan);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public String clientHeader() {
+        return clientHeader;
+    }
+
+    /**
+     * Takes a token from the client's bucket of the class and a slot of the class. Every admitted request must be
+     * followed by {@link #release(EndpointClass)}.
+     *
+     * @param now {@link System#nanoTime()}
+     * @return 0 if admitted, otherwise the whole seconds to wait before retrying
+     */
+    public long tryAcquire(String client, EndpointClass endpointClass, long now) {
+        int i = endpointClass.ordinal();
+        long wait = takeToken(bucket(client, now), i, now);
+        if (wait > 0){
+            rateLimited[i].increment();
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+        }
+        for (;;) {
+            int current = inFlight.get(i);
+            if (current >= concurrency[i]){
+                // the token is spent: a client retrying at once cannot get around its rate by hitting the limit
+                concurrencyLimited[i].increment();
+                return 1;
+            }
+            if (inFlight.compareAndSet(i, current, current + 1)){
+                admitted[i].increment();
+                return 0;
+            }
+        }
+    }
+
+    public void release(EndpointClass endpointClass) {
+        inFlight.decrementAndGet(endpointClass.ordinal());
+    }
+
+    public int clients() {
+        return clients.size();
+    }
+
+    public int inFlight(EndpointClass endpointClass) {
+        return inFlight.get(endpointClass.ordinal());
+    }
+
+    public long admitted(EndpointClass endpointClass) {
+        return admitted[endpointClass.ordinal()].sum();
+    }
+
+    public long rateLimited(EndpointClass endpointClass) {
+        return rateLimited[endpointClass.ordinal()].sum();
+    }
+
+    public long concurrencyLimited(EndpointClass endpointClass) {
+        return concurrencyLimited[endpointClass.ordinal()].sum();
+    }
+
+    /**
+     * @return nanoseconds until the bucket has a token, 0 if one was taken
+     */
+    private long takeToken(AtomicLongArray bucket, int i, long now) {
+        for (;;) {
+            long full = bucket.get(i);
+            long next = Math.max(full, now) + interval[i];
+            long overdraft = next - now - tolerance[i];
+            if (overdraft > 0){
+                return overdraft;
+            }
+            if (bucket.compareAndSet(i, full, next)){
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLongArray bucket(String client, long now) {
+        AtomicLongArray bucket = clients.get(client);
+        if (bucket != null){
+            return bucket;
+        }
+        long swept = lastSweep.get();
+        if (clients.size() >= maxClients && now - swept >= SWEEP_INTERVAL && lastSweep.compareAndSet(swept, now)){
+            sweep(now);
+        }
+        // full at creation: a new client may burst
+        return clients.computeIfAbsent(client, c -> full(now));
+    }
+
+    /**
+     * Drops the buckets that are full by now; a request of their client starts a new full bucket, which is the same.
+     */
+    private void sweep(long now) {
+        Iterator<AtomicLongArray> buckets = clients.values().iterator();
+        while (buckets.hasNext()) {
+            AtomicLongArray bucket = buckets.next();
+            boolean full = true;
+            for (int i = 0; i < CLASSES.length && full; i++) {
+                full = bucket.get(i) - now <= 0;
+            }
+            if (full){
+                buckets.remove();
+            }
+        }
+    }
+
+    private static AtomicLongArray full(long now) {
+        AtomicLongArray bucket = new AtomicLongArray(CLASSES.length);
+        for (int i = 0; i < CLASSES.length; i++) {
+            bucket.set(i, now);
+        }
+        return bucket;
+    }
+
+    private void limit(EndpointClass endpointClass, String limit) {
+        String[] parts = limit.split(",");
+        double rate;
+        int burst;
+        int slots;
+        try {
+            rate = Double.parseDouble(parts[0].trim());
+            burst = Integer.parseInt(parts[1].trim());
+            slots = Integer.parseInt(parts[2].trim());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Limit of " + endpointClass + " must be rate,burst,concurrency: "
+                    + limit, e);
+        }
+        if (parts.length != 3 || !(rate > 0) || burst < 1 || slots < 1){
+            throw new IllegalArgumentException("Limit of " + endpointClass + " needs a positive rate, burst and "
+                    + "concurrency: " + limit);
+        }
+        int i = endpointClass.ordinal();
+        interval[i] = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        tolerance[i] = interval[i] * burst;
+        concurrency[i] = slots;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[CLASSES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
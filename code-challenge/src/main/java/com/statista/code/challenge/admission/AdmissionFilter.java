@@ -0,0 +1,94 @@
+package com.statista.code.challenge.admission;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Applies the {@link AdmissionControl} to every request of the booking API before it reaches a controller. A
+ * rejected request gets {@code 429 Too Many Requests} with {@code Retry-After} and no body, and is never queued.
+ * Streamed responses hold their slot until the async request completes.
+ * <p>
+ * Requests are classified on the lookup path the handler mappings match, decoded, without {@code ;} parameters and
+ * with doubled slashes collapsed, so no spelling of a path that reaches a controller escapes its class.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private final AdmissionControl admission;
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public AdmissionFilter(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = urlPathHelper.getLookupPathForRequest(request);
+        EndpointClass endpointClass = admission.enabled() ? EndpointClass.of(request.getMethod(), path) : null;
+        if (endpointClass == null){
+            chain.doFilter(request, response);
+            return;
+        }
+        long retryAfter = admission.tryAcquire(client(request), endpointClass, System.nanoTime());
+        if (retryAfter > 0){
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+            return;
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()){
+                request.getAsyncContext().addListener(new Release(endpointClass));
+                async = true;
+            }
+        } finally {
+            if (!async){
+                admission.release(endpointClass);
+            }
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        String client = request.getHeader(admission.clientHeader());
+        return client == null || client.isEmpty() ? request.getRemoteAddr() : client;
+    }
+
+    private final class Release implements AsyncListener {
+
+        private final EndpointClass endpointClass;
+
+        Release(EndpointClass endpointClass) {
+            this.endpointClass = endpointClass;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            admission.release(endpointClass);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
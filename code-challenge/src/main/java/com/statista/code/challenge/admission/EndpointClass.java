@@ -0,0 +1,60 @@
+package com.statista.code.challenge.admission;
+
+/**
+ * The cost classes of the booking API, each with its own rate and concurrency limits.
+ */
+public enum EndpointClass {
+
+    /**
+     * Reads answered from one booking or a maintained aggregate: a booking by id, currencies, sums and
+     * {@code dobusiness}.
+     */
+    READ,
+
+    /**
+     * Writes of one booking: create, update and delete.
+     */
+    WRITE,
+
+    /**
+     * Requests whose cost grows with the number of bookings they touch: department listings, start date windows,
+     * search, analytics and bulk imports.
+     */
+    SCAN;
+
+    private static final String BASE = "/bookingservice/";
+
+    /**
+     * @param path the lookup path of the request, decoded and without {@code ;} parameters; trailing slashes are
+     *             ignored, as the handler mappings ignore them
+     * @return the class of the request, or {@code null} if it is not admission controlled: paths outside the
+     * booking API, the metrics and the change feed, which limits its subscribers itself
+     */
+    public static EndpointClass of(String method, String path) {
+        if (path == null || !path.startsWith(BASE)){
+            return null;
+        }
+        int end = path.length();
+        while (end > BASE.length() && path.charAt(end - 1) == '/'){
+            end--;
+        }
+        String endpoint = path.substring(BASE.length(), end);
+        if (endpoint.equals("metrics") || endpoint.equals("bookings/changes")){
+            return null;
+        }
+        if (endpoint.startsWith("bookings/department/") || endpoint.equals("bookings/start-date")
+                || endpoint.equals("bookings/search") || endpoint.equals("sum/start-date")
+                || endpoint.equals("analytics") || endpoint.startsWith("analytics/")
+                || endpoint.equals("bookings/bulk")){
+            return SCAN;
+        }
+        switch (method) {
+            case "POST":
+            case "PUT":
+            case "DELETE":
+                return WRITE;
+            default:
+                return READ;
+        }
+    }
+}
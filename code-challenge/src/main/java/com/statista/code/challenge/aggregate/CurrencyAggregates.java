@@ -0,0 +1,209 @@
+package com.statista.code.challenge.aggregate;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChange;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running per-currency totals, maintained from repository writes so that sum queries never scan bookings.
+ * <p>
+ * Amounts are kept as exact minor units (cents for USD, yen for JPY) in {@link LongAdder}s, so concurrent
+ * writers do not contend on a single counter and the running sum always equals a full recompute.
+ * Min and max are served from a counted price multiset, which keeps them correct across replaces and deletes.
+ * Batch writes are folded per currency first, so a bulk insert costs one update per currency and distinct price.
+ * A per-currency modification counter, bumped after the totals, tags the current state for conditional GETs.
+ */
+@Component
+public class CurrencyAggregates implements BookingChangeListener {
+
+    private final Map<Currency, Totals> totals = new ConcurrentHashMap<>();
+
+    /**
+     * Fails with {@link ArithmeticException} if the price does not fit in a {@code long} of minor units, before the
+     * repository stores the booking; the listeners using {@link #toMinorUnits(Booking)} rely on it.
+     */
+    @Override
+    public void check(Booking booking) {
+        if (booking.getCurrency() != null){
+            toMinorUnits(booking);
+        }
+    }
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        if (previous != null && previous.getCurrency() != null){
+            totals(previous.getCurrency()).remove(toMinorUnits(previous));
+        }
+        if (current != null && current.getCurrency() != null){
+            totals(current.getCurrency()).add(toMinorUnits(current));
+        }
+    }
+
+    @Override
+    public void onChanges(List<BookingChange> changes) {
+        Map<Currency, Delta> deltas = new HashMap<>();
+        for (BookingChange change : changes) {
+            Booking previous = change.getPrevious();
+            Booking current = change.getCurrent();
+            if (previous != null && previous.getCurrency() != null){
+                deltas.computeIfAbsent(previous.getCurrency(), c -> new Delta()).add(toMinorUnits(previous), -1);
+            }
+            if (current != null && current.getCurrency() != null){
+                deltas.computeIfAbsent(current.getCurrency(), c -> new Delta()).add(toMinorUnits(current), 1);
+            }
+        }
+        for (Map.Entry<Currency, Delta> entry : deltas.entrySet()) {
+            totals(entry.getKey()).apply(entry.getValue());
+        }
+    }
+
+    /**
+     * @return the summary for the given ISO 4217 code, or {@code null} if no booking ever used it
+     */
+    public CurrencySummary summary(String currencyCode) {
+        Currency currency = parse(currencyCode);
+        Totals currencyTotals = currency == null ? null : totals.get(currency);
+        if (currencyTotals == null){
+            return null;
+        }
+        return currencyTotals.summary(currency);
+    }
+
+    /**
+     * @return the exact sum of all booking prices in the given currency, zero if there are none
+     */
+    public BigDecimal sum(String currencyCode) {
+        CurrencySummary summary = summary(currencyCode);
+        return summary == null ? BigDecimal.ZERO : summary.getSum();
+    }
+
+    /**
+     * @return a counter that grows with every write in the currency, 0 if there was none. Read it before the totals
+     * it tags: it is bumped after them, so a tag never claims a newer state than the totals read after it.
+     */
+    public long version(String currencyCode) {
+        Currency currency = parse(currencyCode);
+        Totals currencyTotals = currency == null ? null : totals.get(currency);
+        return currencyTotals == null ? 0 : currencyTotals.modifications.sum();
+    }
+
+    /**
+     * @return the price in minor units of the booking's currency, rounded half up
+     * @throws ArithmeticException if the price is not finite or does not fit in a {@code long}
+     */
+    public static long toMinorUnits(Booking booking) {
+        if (!Double.isFinite(booking.getPrice())){
+            throw new ArithmeticException("Price " + booking.getPrice() + " is not finite");
+        }
+        return BigDecimal.valueOf(booking.getPrice())
+                .setScale(fractionDigits(booking.getCurrency()), RoundingMode.HALF_UP)
+                .unscaledValue()
+                .longValueExact();
+    }
+
+    static int fractionDigits(Currency currency) {
+        return Math.max(0, currency.getDefaultFractionDigits());
+    }
+
+    private static Currency parse(String currencyCode) {
+        if (currencyCode == null){
+            return null;
+        }
+        try {
+            return Currency.getInstance(currencyCode);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Totals totals(Currency currency) {
+        return totals.computeIfAbsent(currency, c -> new Totals());
+    }
+
+    private static final class Totals {
+
+        private final LongAdder sum = new LongAdder();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder modifications = new LongAdder();
+        private final ConcurrentNavigableMap<Long, Long> prices = new ConcurrentSkipListMap<>();
+
+        void add(long minorUnits) {
+            count(minorUnits, 1);
+            sum.add(minorUnits);
+            count.increment();
+            modifications.increment();
+        }
+
+        void remove(long minorUnits) {
+            count(minorUnits, -1);
+            sum.add(-minorUnits);
+            count.decrement();
+            modifications.increment();
+        }
+
+        void apply(Delta delta) {
+            for (Map.Entry<Long, Long> price : delta.prices.entrySet()) {
+                count(price.getKey(), price.getValue());
+            }
+            sum.add(delta.sum);
+            count.add(delta.count);
+            modifications.increment();
+        }
+
+        /**
+         * Adjusts the multiplicity of a price. A removal may be seen before the matching add when a batch and a
+         * single write touch the same booking, so counts may briefly go negative and entries are dropped at zero.
+         */
+        private void count(long minorUnits, long delta) {
+            if (delta != 0){
+                prices.merge(minorUnits, delta, (n, d) -> n + d == 0 ? null : n + d);
+            }
+        }
+
+        CurrencySummary summary(Currency currency) {
+            int digits = fractionDigits(currency);
+            Long min = firstPositive(prices);
+            Long max = firstPositive(prices.descendingMap());
+            return new CurrencySummary(currency, count.sum(), BigDecimal.valueOf(sum.sum(), digits),
+                    min == null ? null : BigDecimal.valueOf(min, digits),
+                    max == null ? null : BigDecimal.valueOf(max, digits));
+        }
+
+        private static Long firstPositive(Map<Long, Long> prices) {
+            for (Map.Entry<Long, Long> price : prices.entrySet()) {
+                if (price.getValue() > 0){
+                    return price.getKey();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Net effect of a batch on one currency.
+     */
+    private static final class Delta {
+
+        private final Map<Long, Long> prices = new HashMap<>();
+        private long sum;
+        private long count;
+
+        void add(long minorUnits, int sign) {
+            prices.merge(minorUnits, (long) sign, Long::sum);
+            sum += sign * minorUnits;
+            count += sign;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.statista.code.challenge.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CurrencyTotal {
+
+    private Currency currency;
+    private long count;
+    private BigDecimal sum;
+}
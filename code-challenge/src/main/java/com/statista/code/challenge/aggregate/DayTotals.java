@@ -0,0 +1,109 @@
+package com.statista.code.challenge.aggregate;
+
+/**
+ * Price sums and booking counts of one currency per UTC day, held in Fenwick trees so that the totals of any run
+ * of days are two prefix queries of {@code O(log days)}.
+ * <p>
+ * The trees only cover the span of days that has been written to, starting small and doubling when a write falls
+ * outside it. Growing keeps the plain per-day totals and rebuilds the trees from them in linear time.
+ */
+final class DayTotals {
+
+    private static final int INITIAL_DAYS = 256;
+
+    // all guarded by this
+    private long firstDay;
+    private long[] daySums;
+    private long[] dayCounts;
+    private long[] sumTree;
+    private long[] countTree;
+
+    synchronized void add(long day, long minorUnits, long count) {
+        int slot = slot(day);
+        daySums[slot] += minorUnits;
+        dayCounts[slot] += count;
+        for (int i = slot + 1; i < sumTree.length; i += i & -i) {
+            sumTree[i] += minorUnits;
+            countTree[i] += count;
+        }
+    }
+
+    /**
+     * @return {@code {sum in minor units, count}} of the days in {@code [fromDay, toDay)}
+     */
+    synchronized long[] range(long fromDay, long toDay) {
+        long[] totals = new long[2];
+        if (daySums == null || fromDay >= toDay){
+            return totals;
+        }
+        int to = clamp(toDay);
+        int from = clamp(fromDay);
+        for (int i = to; i > 0; i -= i & -i) {
+            totals[0] += sumTree[i];
+            totals[1] += countTree[i];
+        }
+        for (int i = from; i > 0; i -= i & -i) {
+            totals[0] -= sumTree[i];
+            totals[1] -= countTree[i];
+        }
+        return totals;
+    }
+
+    synchronized int days() {
+        return daySums == null ? 0 : daySums.length;
+    }
+
+    /**
+     * @return the number of covered days before {@code day}, between 0 and the covered span
+     */
+    private int clamp(long day) {
+        return (int) Math.max(0, Math.min(daySums.length, day - firstDay));
+    }
+
+    private int slot(long day) {
+        if (daySums == null){
+            firstDay = day - INITIAL_DAYS / 2;
+            daySums = new long[INITIAL_DAYS];
+            dayCounts = new long[INITIAL_DAYS];
+            sumTree = new long[INITIAL_DAYS + 1];
+            countTree = new long[INITIAL_DAYS + 1];
+        } else if (day < firstDay || day >= firstDay + daySums.length){
+            grow(day);
+        }
+        return (int) (day - firstDay);
+    }
+
+    private void grow(long day) {
+        long first = Math.min(firstDay, day);
+        long end = Math.max(firstDay + daySums.length, day + 1);
+        int length = daySums.length;
+        while (length < end - first) {
+            length *= 2;
+        }
+        long newFirst = day < firstDay ? end - length : first;
+        int offset = (int) (firstDay - newFirst);
+        daySums = copy(daySums, length, offset);
+        dayCounts = copy(dayCounts, length, offset);
+        firstDay = newFirst;
+        sumTree = build(daySums);
+        countTree = build(dayCounts);
+    }
+
+    private static long[] copy(long[] values, int length, int offset) {
+        long[] copy = new long[length];
+        System.arraycopy(values, 0, copy, offset, values.length);
+        return copy;
+    }
+
+    private static long[] build(long[] values) {
+        long[] tree = new long[values.length + 1];
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent < tree.length){
+                tree[parent] += tree[i];
+            }
+        }
+        return tree;
+    }
+}
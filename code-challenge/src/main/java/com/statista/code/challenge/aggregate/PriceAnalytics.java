@@ -0,0 +1,306 @@
+package com.statista.code.challenge.aggregate;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Price quantiles and most expensive bookings per department and currency, maintained from repository writes so
+ * that analytics never sort a department.
+ * <p>
+ * Every (department, currency) pair keeps a {@link PriceSketch}, whose median, p90 and p99 are within
+ * {@code bookings.analytics.relative-accuracy} of the exact price of their rank, and the exact
+ * {@value #KEPT_PER_TOP} &times; {@code bookings.analytics.top} most expensive bookings. Memory per pair is fixed,
+ * about 6 KB at the defaults. A removed or cheaper booking leaves the kept list, which is exact only down to its
+ * last entry; once removals leave fewer than {@code top} entries while the pair has more bookings, the list is
+ * refilled from one scan of the store when it is next read. The scan only counts if no write hit the pair during
+ * it; otherwise the pair reports its shorter list until the next read.
+ * <p>
+ * Sketches merge by adding counts and kept lists by keeping the most expensive entries, so statistics over all
+ * departments are exact up to the same bounds. Each pair is updated under its own monitor.
+ */
+@Component
+public class PriceAnalytics implements BookingChangeListener {
+
+    static final int KEPT_PER_TOP = 4;
+    private static final Comparator<Currency> BY_CODE = Comparator.comparing(Currency::getCurrencyCode);
+
+    private final double relativeAccuracy;
+    private final int top;
+    private final Map<String, Map<Currency, Pair>> departments = new ConcurrentHashMap<>();
+    private final LongAdder refills = new LongAdder();
+
+    public PriceAnalytics(@Value("${bookings.analytics.relative-accuracy:0.01}") double relativeAccuracy,
+                          @Value("${bookings.analytics.top:10}") int top) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1) || top <= 0){
+            throw new IllegalArgumentException("Analytics need an accuracy between 0 and 1 and a positive top, not "
+                    + relativeAccuracy + " and " + top);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.top = top;
+    }
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        if (counted(previous)){
+            pair(previous).remove(CurrencyAggregates.toMinorUnits(previous), previous.getId());
+        }
+        if (counted(current)){
+            pair(current).add(CurrencyAggregates.toMinorUnits(current), current.getId());
+        }
+    }
+
+    /**
+     * @param store visits every stored booking, such as {@code BookingRepository::forEach}; only called to refill
+     *              the kept lists that removals emptied
+     * @return the statistics of the department per currency, ordered by currency code and leaving out currencies
+     * without bookings; empty for an unknown department
+     */
+    public List<PriceStatistics> statistics(String department, Consumer<Consumer<Booking>> store) {
+        Map<Currency, Pair> pairs = department == null ? null : departments.get(department);
+        if (pairs == null){
+            return Collections.emptyList();
+        }
+        Map<Currency, List<Pair>> byCurrency = new TreeMap<>(BY_CODE);
+        pairs.forEach((currency, pair) -> byCurrency.put(currency, Collections.singletonList(pair)));
+        return statistics(byCurrency, store);
+    }
+
+    /**
+     * @return the statistics of all departments together, per currency, as {@link #statistics(String, Consumer)}
+     */
+    public List<PriceStatistics> statistics(Consumer<Consumer<Booking>> store) {
+        Map<Currency, List<Pair>> byCurrency = new TreeMap<>(BY_CODE);
+        for (Map<Currency, Pair> pairs : departments.values()) {
+            pairs.forEach((currency, pair) -> byCurrency.computeIfAbsent(currency, c -> new ArrayList<>()).add(pair));
+        }
+        return statistics(byCurrency, store);
+    }
+
+    /**
+     * @return the number of (department, currency) pairs
+     */
+    public int pairs() {
+        int pairs = 0;
+        for (Map<Currency, Pair> department : departments.values()) {
+            pairs += department.size();
+        }
+        return pairs;
+    }
+
+    /**
+     * @return the number of kept lists refilled from a scan of the store
+     */
+    public long refills() {
+        return refills.sum();
+    }
+
+    public long estimatedHeapBytes() {
+        long bytes = 0;
+        for (Map<Currency, Pair> department : departments.values()) {
+            for (Pair pair : department.values()) {
+                bytes += pair.estimatedHeapBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private List<PriceStatistics> statistics(Map<Currency, List<Pair>> byCurrency, Consumer<Consumer<Booking>> store) {
+        refill(byCurrency, store);
+        List<PriceStatistics> statistics = new ArrayList<>(byCurrency.size());
+        for (Map.Entry<Currency, List<Pair>> currency : byCurrency.entrySet()) {
+            PriceSketch sketch = new PriceSketch(relativeAccuracy);
+            Kept kept = new Kept(top);
+            for (Pair pair : currency.getValue()) {
+                pair.copyTo(sketch, kept, top);
+            }
+            if (sketch.count() > 0){
+                statistics.add(statistics(currency.getKey(), sketch, kept));
+            }
+        }
+        return statistics;
+    }
+
+    private PriceStatistics statistics(Currency currency, PriceSketch sketch, Kept kept) {
+        int digits = CurrencyAggregates.fractionDigits(currency);
+        List<TopPrice> topPrices = new ArrayList<>(kept.size);
+        for (int i = 0; i < kept.size; i++) {
+            topPrices.add(new TopPrice(kept.ids[i], BigDecimal.valueOf(kept.prices[i], digits)));
+        }
+        return new PriceStatistics(currency, sketch.count(), price(sketch.quantile(0.5), digits),
+                price(sketch.quantile(0.9), digits), price(sketch.quantile(0.99), digits), relativeAccuracy,
+                topPrices);
+    }
+
+    /**
+     * Refills the kept lists of the pairs that removals left short, from one scan for all of them.
+     */
+    private void refill(Map<Currency, List<Pair>> byCurrency, Consumer<Consumer<Booking>> store) {
+        Map<Pair, Long> stale = new HashMap<>();
+        for (List<Pair> pairs : byCurrency.values()) {
+            for (Pair pair : pairs) {
+                long modifications = pair.staleSince(top);
+                if (modifications >= 0){
+                    stale.put(pair, modifications);
+                }
+            }
+        }
+        if (stale.isEmpty()){
+            return;
+        }
+        Map<Pair, Kept> rebuilt = new HashMap<>();
+        for (Pair pair : stale.keySet()) {
+            rebuilt.put(pair, new Kept(KEPT_PER_TOP * top));
+        }
+        store.accept(booking -> {
+            if (counted(booking)){
+                Map<Currency, Pair> pairs = departments.get(booking.getDepartment());
+                Kept kept = pairs == null ? null : rebuilt.get(pairs.get(booking.getCurrency()));
+                if (kept != null){
+                    kept.offer(CurrencyAggregates.toMinorUnits(booking), booking.getId());
+                }
+            }
+        });
+        for (Map.Entry<Pair, Kept> entry : rebuilt.entrySet()) {
+            if (entry.getKey().install(entry.getValue(), stale.get(entry.getKey()))){
+                refills.increment();
+            }
+        }
+    }
+
+    private static BigDecimal price(double minorUnits, int digits) {
+        return Double.isNaN(minorUnits) ? null : BigDecimal.valueOf(Math.round(minorUnits), digits);
+    }
+
+    private static boolean counted(Booking booking) {
+        return booking != null && booking.getId() != null && booking.getDepartment() != null
+                && booking.getCurrency() != null;
+    }
+
+    private Pair pair(Booking booking) {
+        return departments.computeIfAbsent(booking.getDepartment(), d -> new ConcurrentHashMap<>())
+                .computeIfAbsent(booking.getCurrency(), c -> new Pair());
+    }
+
+    private final class Pair {
+
+        // all guarded by this
+        private final PriceSketch sketch = new PriceSketch(relativeAccuracy);
+        private Kept kept = new Kept(KEPT_PER_TOP * top);
+        private long modifications;
+
+        synchronized void add(long minorUnits, String id) {
+            // the kept list holds every booking of the pair or their most expensive ones
+            if (kept.size == sketch.count() || kept.isBefore(minorUnits, id, kept.size - 1)){
+                kept.offer(minorUnits, id);
+            }
+            sketch.add(minorUnits, 1);
+            modifications++;
+        }
+
+        synchronized void remove(long minorUnits, String id) {
+            kept.remove(minorUnits, id);
+            sketch.add(minorUnits, -1);
+            modifications++;
+        }
+
+        /**
+         * @return the modification count if the kept list is too short to answer, -1 otherwise
+         */
+        synchronized long staleSince(int top) {
+            return kept.size < top && kept.size < sketch.count() ? modifications : -1;
+        }
+
+        synchronized boolean install(Kept rebuilt, long modificationsAtScan) {
+            if (modifications != modificationsAtScan){
+                return false;
+            }
+            kept = rebuilt;
+            return true;
+        }
+
+        synchronized void copyTo(PriceSketch merged, Kept mergedKept, int top) {
+            merged.merge(sketch);
+            for (int i = 0; i < Math.min(top, kept.size); i++) {
+                mergedKept.offer(kept.prices[i], kept.ids[i]);
+            }
+        }
+
+        synchronized long estimatedHeapBytes() {
+            return 32 + sketch.estimatedHeapBytes() + kept.estimatedHeapBytes();
+        }
+    }
+
+    /**
+     * Up to {@code capacity} bookings, most expensive first and by id among equal prices.
+     */
+    private static final class Kept {
+
+        private final long[] prices;
+        private final String[] ids;
+        private int size;
+
+        Kept(int capacity) {
+            prices = new long[capacity];
+            ids = new String[capacity];
+        }
+
+        /**
+         * Inserts the booking in order, dropping the last one if full and the booking goes before it.
+         */
+        void offer(long minorUnits, String id) {
+            int at = size;
+            while (at > 0 && isBefore(minorUnits, id, at - 1)) {
+                at--;
+            }
+            if (at == prices.length){
+                return;
+            }
+            int moved = Math.min(size, prices.length - 1) - at;
+            System.arraycopy(prices, at, prices, at + 1, moved);
+            System.arraycopy(ids, at, ids, at + 1, moved);
+            prices[at] = minorUnits;
+            ids[at] = id;
+            size = Math.min(size + 1, prices.length);
+        }
+
+        void remove(long minorUnits, String id) {
+            for (int i = 0; i < size; i++) {
+                if (prices[i] == minorUnits && ids[i].equals(id)){
+                    System.arraycopy(prices, i + 1, prices, i, size - i - 1);
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    ids[--size] = null;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return whether the booking goes before entry {@code i}, {@code false} if there is no such entry
+         */
+        boolean isBefore(long minorUnits, String id, int i) {
+            if (i < 0 || i >= size){
+                return false;
+            }
+            return minorUnits > prices[i] || minorUnits == prices[i] && id.compareTo(ids[i]) < 0;
+        }
+
+        long estimatedHeapBytes() {
+            return 16 + 2 * 16 + (8L + 4L) * prices.length;
+        }
+    }
+}
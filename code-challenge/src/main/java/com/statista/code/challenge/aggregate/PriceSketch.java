@@ -0,0 +1,138 @@
+package com.statista.code.challenge.aggregate;
+
+/**
+ * Quantile sketch of prices in minor units with a relative error bound, after DDSketch.
+ * <p>
+ * A price of magnitude {@code x} is counted in bucket {@code ceil(log(x) / log(gamma))} with
+ * {@code gamma = (1 + a) / (1 - a)}, and a bucket answers with {@code 2 gamma^i / (gamma + 1)}, which is within a
+ * relative error {@code a} of every price in it. Counts are exact, so the estimate of any quantile is within
+ * {@code a} of the price of that rank, however skewed the prices are, and removing a price is as exact as adding
+ * it. Two sketches with the same accuracy merge by adding their counts.
+ * <p>
+ * Memory is fixed: one {@code int} per bucket from one minor unit up to {@value #MAX_MINOR_UNITS}, about 1,400
+ * buckets for an accuracy of 1%, allocated on the first positive price, and as many for negative prices. Prices of
+ * larger magnitude share the last bucket and are only known to be beyond it. Not thread-safe.
+ */
+final class PriceSketch {
+
+    static final long MAX_MINOR_UNITS = 1_000_000_000_000L;
+
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private final double gamma;
+    private final int buckets;
+    private int[] positive;
+    private int[] negative;
+    private long zero;
+    private long count;
+
+    PriceSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)){
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.buckets = (int) Math.ceil(Math.log(MAX_MINOR_UNITS) / logGamma) + 1;
+    }
+
+    /**
+     * @param times how often to count the price, negative to remove it
+     */
+    void add(long minorUnits, int times) {
+        if (minorUnits == 0){
+            zero += times;
+        } else if (minorUnits > 0){
+            if (positive == null){
+                positive = new int[buckets];
+            }
+            positive[bucket(minorUnits)] += times;
+        } else {
+            if (negative == null){
+                negative = new int[buckets];
+            }
+            negative[bucket(-minorUnits)] += times;
+        }
+        count += times;
+    }
+
+    /**
+     * Adds the counts of another sketch of the same accuracy.
+     */
+    void merge(PriceSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy){
+            throw new IllegalArgumentException("Cannot merge sketches of accuracy " + relativeAccuracy + " and "
+                    + other.relativeAccuracy);
+        }
+        if (other.positive != null){
+            positive = positive == null ? new int[buckets] : positive;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                positive[bucket] += other.positive[bucket];
+            }
+        }
+        if (other.negative != null){
+            negative = negative == null ? new int[buckets] : negative;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                negative[bucket] += other.negative[bucket];
+            }
+        }
+        zero += other.zero;
+        count += other.count;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the estimated price in minor units of rank {@code quantile * (count - 1)}, or {@code NaN} if the
+     * sketch is empty
+     */
+    double quantile(double quantile) {
+        if (count <= 0){
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        long seen = 0;
+        if (negative != null){
+            for (int bucket = buckets - 1; bucket >= 0; bucket--) {
+                seen += negative[bucket];
+                if (seen > rank){
+                    return -value(bucket);
+                }
+            }
+        }
+        seen += zero;
+        if (seen > rank){
+            return 0;
+        }
+        if (positive != null){
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                seen += positive[bucket];
+                if (seen > rank){
+                    return value(bucket);
+                }
+            }
+        }
+        // counts only fall short of count while a removal overtook its add
+        return positive != null ? value(buckets - 1) : 0;
+    }
+
+    double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    long estimatedHeapBytes() {
+        long array = 16 + 4L * buckets;
+        return 56 + (positive == null ? 0 : array) + (negative == null ? 0 : array);
+    }
+
+    private int bucket(long magnitude) {
+        return Math.min(buckets - 1, Math.max(0, (int) Math.ceil(Math.log(magnitude) / logGamma)));
+    }
+
+    private double value(int bucket) {
+        return 2 * Math.pow(gamma, bucket) / (gamma + 1);
+    }
+}
@@ -0,0 +1,27 @@
+package com.statista.code.challenge.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.List;
+
+/**
+ * Price distribution of the bookings of one currency: quantiles estimated by a {@link PriceSketch}, within
+ * {@code relativeAccuracy} of the exact price of their rank, and the exact most expensive bookings.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PriceStatistics {
+
+    private Currency currency;
+    private long count;
+    private BigDecimal median;
+    private BigDecimal p90;
+    private BigDecimal p99;
+    private double relativeAccuracy;
+    private List<TopPrice> top;
+}
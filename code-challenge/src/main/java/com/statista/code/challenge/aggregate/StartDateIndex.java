@@ -0,0 +1,188 @@
+package com.statista.code.challenge.aggregate;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordered index of bookings by subscription start date, maintained from repository writes so that time-window
+ * queries never scan the store.
+ * <p>
+ * Every booking is an {@link Entry} in a concurrent skip list ordered by start date and id, which lists a window in
+ * {@code O(log n + page)}. Per currency, prices and counts are also summed per UTC day in {@link DayTotals}, so the
+ * totals of a window are {@code O(log days)} per currency plus a scan of the skip list over the partial days at
+ * either end of the window. Start dates before 1900 or from 2200 on are only in the skip list and are always
+ * answered by that scan.
+ * <p>
+ * The skip list and the day totals are updated one after the other, so a read racing a write to the same booking may
+ * see it in one and not yet in the other.
+ */
+@Component
+public class StartDateIndex implements BookingChangeListener {
+
+    static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    static final long FIRST_DAY = LocalDate.of(1900, 1, 1).toEpochDay();
+    static final long END_DAY = LocalDate.of(2200, 1, 1).toEpochDay();
+
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingLong(entry -> entry.startDate)
+            .thenComparing(entry -> entry.id);
+
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Currency, DayTotals> days = new ConcurrentHashMap<>();
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        if (indexed(previous)){
+            Entry entry = new Entry(previous);
+            entries.remove(entry);
+            addToDay(entry, -1);
+        }
+        if (indexed(current)){
+            Entry entry = new Entry(current);
+            entries.add(entry);
+            addToDay(entry, 1);
+        }
+    }
+
+    /**
+     * @param from  first start date of the window in epoch millis, inclusive
+     * @param to    end of the window in epoch millis, exclusive
+     * @param after the last entry of the previous page, or {@code null} for the first page
+     * @return up to {@code limit} entries of the window in ascending start date and id order
+     */
+    public List<Entry> page(long from, long to, Entry after, int limit) {
+        List<Entry> page = new ArrayList<>(Math.min(limit, 1024));
+        if (from >= to){
+            return page;
+        }
+        NavigableSet<Entry> window = entries.subSet(probe(from, ""), true, probe(to, ""), false);
+        if (after != null){
+            window = window.tailSet(after, false);
+        }
+        for (Entry entry : window) {
+            if (page.size() == limit){
+                break;
+            }
+            page.add(entry);
+        }
+        return page;
+    }
+
+    /**
+     * @param from first start date of the window in epoch millis, inclusive
+     * @param to   end of the window in epoch millis, exclusive
+     * @return the booking count and exact price sum per currency of the bookings starting in the window, ordered by
+     * currency code and leaving out currencies without bookings in it
+     */
+    public List<CurrencyTotal> totals(long from, long to) {
+        Map<Currency, long[]> totals = new TreeMap<>(Comparator.comparing(Currency::getCurrencyCode));
+        if (from < to){
+            long fromDay = Math.floorDiv(from, DAY_MILLIS) + (Math.floorMod(from, DAY_MILLIS) == 0 ? 0 : 1);
+            fromDay = Math.max(FIRST_DAY, fromDay);
+            long toDay = Math.min(END_DAY, Math.floorDiv(to, DAY_MILLIS));
+            if (fromDay < toDay){
+                for (Map.Entry<Currency, DayTotals> currency : days.entrySet()) {
+                    long[] range = currency.getValue().range(fromDay, toDay);
+                    if (range[1] != 0){
+                        totals.put(currency.getKey(), range);
+                    }
+                }
+                scan(totals, from, fromDay * DAY_MILLIS);
+                scan(totals, toDay * DAY_MILLIS, to);
+            } else {
+                scan(totals, from, to);
+            }
+        }
+        List<CurrencyTotal> result = new ArrayList<>(totals.size());
+        for (Map.Entry<Currency, long[]> total : totals.entrySet()) {
+            if (total.getValue()[1] > 0){
+                result.add(new CurrencyTotal(total.getKey(), total.getValue()[1],
+                        BigDecimal.valueOf(total.getValue()[0], CurrencyAggregates.fractionDigits(total.getKey()))));
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the index position of a booking, to continue a {@link #page} after it
+     */
+    public static Entry position(long startDate, String id) {
+        return probe(startDate, id);
+    }
+
+    private void scan(Map<Currency, long[]> totals, long from, long to) {
+        if (from >= to){
+            return;
+        }
+        for (Entry entry : entries.subSet(probe(from, ""), true, probe(to, ""), false)) {
+            long[] total = totals.computeIfAbsent(entry.currency, c -> new long[2]);
+            total[0] += entry.minorUnits;
+            total[1]++;
+        }
+    }
+
+    private void addToDay(Entry entry, int sign) {
+        long day = Math.floorDiv(entry.startDate, DAY_MILLIS);
+        if (day >= FIRST_DAY && day < END_DAY){
+            days.computeIfAbsent(entry.currency, c -> new DayTotals()).add(day, sign * entry.minorUnits, sign);
+        }
+    }
+
+    private static boolean indexed(Booking booking) {
+        return booking != null && booking.getSubscriptionStartDate() != null && booking.getId() != null
+                && booking.getCurrency() != null;
+    }
+
+    private static Entry probe(long startDate, String id) {
+        return new Entry(startDate, id, null, 0);
+    }
+
+    /**
+     * A booking's position in the index, with the price it contributes to window totals.
+     */
+    public static final class Entry {
+
+        private final long startDate;
+        private final String id;
+        private final Currency currency;
+        private final long minorUnits;
+
+        Entry(Booking booking) {
+            this(booking.getSubscriptionStartDate(), booking.getId(), booking.getCurrency(),
+                    CurrencyAggregates.toMinorUnits(booking));
+        }
+
+        private Entry(long startDate, String id, Currency currency, long minorUnits) {
+            this.startDate = startDate;
+            this.id = id;
+            this.currency = currency;
+            this.minorUnits = minorUnits;
+        }
+
+        public long getStartDate() {
+            return startDate;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+}
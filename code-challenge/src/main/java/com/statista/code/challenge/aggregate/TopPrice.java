@@ -0,0 +1,16 @@
+package com.statista.code.challenge.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopPrice {
+
+    private String id;
+    private BigDecimal price;
+}
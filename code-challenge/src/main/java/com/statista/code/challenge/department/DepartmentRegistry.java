@@ -0,0 +1,397 @@
+package com.statista.code.challenge.department;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import com.statista.code.challenge.repository.BookingRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link DepartmentStrategy} beans by department, each with its {@link DepartmentView} kept up to date from
+ * repository writes. A PUT that moves a booking is applied as a removal from the old department's view and an
+ * addition to the new one; bookings of departments without a strategy are ignored.
+ * <p>
+ * Departments match exactly, as the listings of the store do: the strategy is found ignoring case, but
+ * {@code Internal} and {@code internal} have a view each, created on the first write to a booking of the department.
+ * <p>
+ * Writes apply to a view under its monitor and bump its version. A result is cached with the version it was taken
+ * at, so reads of an unchanged department return it without locking; the first read after a change asks the view
+ * for a new one.
+ * <p>
+ * Views retaining bookings count against {@code bookings.cache.human-readable.max-bookings} over all departments.
+ * Above it, the least recently read of them are evicted with their cached results; an evicted view ignores writes
+ * and is loaded again from the department's listing on its next read, outside the view's monitor, since writers hold
+ * repository locks when they reach it. The most recently read view is never evicted, so a department retaining
+ * more bookings than the whole budget is loaded once and then served from its view like any other, rather than
+ * loaded and evicted again on every read. Writes and reads only notice that the budget is exceeded; the eviction
+ * runs on a background thread, so no repository write waits for it.
+ */
+@Component
+public class DepartmentRegistry implements BookingChangeListener, DisposableBean {
+
+    private static final Snapshot NONE = new Snapshot(-1, null);
+
+    private final Map<String, DepartmentStrategy> strategies;
+    private final Map<String, Materialized> views = new ConcurrentHashMap<>();
+    private final ObjectProvider<BookingRepository> repository;
+    private final long maxBookings;
+    private final AtomicLong retainedTotal = new AtomicLong();
+    private final Executor evictor;
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+    private final Object evictionLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    // the view last served, kept when evicting
+    private volatile Materialized lastServed;
+
+    /**
+     * A registry that never evicts, for use without a repository.
+     */
+    public DepartmentRegistry(List<DepartmentStrategy> strategies) {
+        this(strategies, null, Long.MAX_VALUE, Runnable::run);
+    }
+
+    @Autowired
+    public DepartmentRegistry(List<DepartmentStrategy> strategies, ObjectProvider<BookingRepository> repository,
+                              @Value("${bookings.cache.human-readable.max-bookings:100000}") long maxBookings) {
+        this(strategies, repository, maxBookings, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "department-view-eviction");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param evictor runs the evictions, one at a time
+     */
+    DepartmentRegistry(List<DepartmentStrategy> strategies, ObjectProvider<BookingRepository> repository,
+                       long maxBookings, Executor evictor) {
+        Map<String, DepartmentStrategy> byDepartment = new LinkedHashMap<>();
+        for (DepartmentStrategy strategy : strategies) {
+            String department = strategy.department();
+            if (department == null || !department.equals(department.toLowerCase(Locale.ROOT))){
+                throw new IllegalArgumentException("Department names must be lower case: " + department);
+            }
+            if (byDepartment.put(department, strategy) != null){
+                throw new IllegalArgumentException("More than one strategy for department " + department);
+            }
+            views.put(department, new Materialized(department, strategy));
+        }
+        this.strategies = Collections.unmodifiableMap(byDepartment);
+        this.repository = repository;
+        this.maxBookings = repository == null ? Long.MAX_VALUE : maxBookings;
+        this.evictor = evictor;
+    }
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        Materialized from = previous == null ? null : view(previous.getDepartment());
+        Materialized to = current == null ? null : view(current.getDepartment());
+        if (from == to){
+            if (from != null){
+                from.apply(previous, current);
+                scheduleEviction();
+            }
+            return;
+        }
+        if (from != null){
+            from.apply(previous, null);
+        }
+        if (to != null){
+            to.apply(null, current);
+        }
+        scheduleEviction();
+    }
+
+    @Override
+    public void onArchive(List<Booking> archived) {
+        for (Booking booking : archived) {
+            Materialized view = booking.getDepartment() == null ? null : views.get(booking.getDepartment());
+            if (view != null){
+                view.archive(booking);
+            }
+        }
+    }
+
+    /**
+     * @return the result of the department's view, or {@code null} if no strategy handles the department
+     */
+    public Object result(String department) {
+        if (department == null){
+            return null;
+        }
+        Materialized view = views.get(department);
+        if (view == null){
+            DepartmentStrategy strategy = strategies.get(department.toLowerCase(Locale.ROOT));
+            // no booking was ever stored in the department
+            return strategy == null ? null : strategy.newView().result();
+        }
+        if (lastServed != view){
+            // the view served before may be evicted now
+            lastServed = view;
+            scheduleEviction();
+        }
+        return view.result();
+    }
+
+    /**
+     * @return the departments with a view: those of the strategies and the spellings seen in writes
+     */
+    public Set<String> departments() {
+        Set<String> departments = new LinkedHashSet<>(strategies.keySet());
+        departments.addAll(views.keySet());
+        return departments;
+    }
+
+    /**
+     * @return the number of writes applied to the department's view, 0 for a department without a view
+     */
+    public long applied(String department) {
+        Materialized view = views.get(department);
+        return view == null ? 0 : view.applied.sum();
+    }
+
+    /**
+     * @return the number of results taken from the department's view, 0 for a department without a view
+     */
+    public long rebuilds(String department) {
+        Materialized view = views.get(department);
+        return view == null ? 0 : view.rebuilds.sum();
+    }
+
+    /**
+     * @return the number of bookings retained by the department's view, 0 while it is evicted
+     */
+    public int retained(String department) {
+        Materialized view = views.get(department);
+        return view == null ? 0 : view.retained;
+    }
+
+    /**
+     * @return the number of bookings retained by all views
+     */
+    public long retained() {
+        return retainedTotal.get();
+    }
+
+    public long maxBookings() {
+        return maxBookings;
+    }
+
+    /**
+     * @return reads answered with a cached result
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return reads that took a new result from a view, loaded or not
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return evicted views loaded again from the store
+     */
+    public long loads() {
+        return loads.sum();
+    }
+
+    private Materialized view(String department) {
+        if (department == null){
+            return null;
+        }
+        Materialized view = views.get(department);
+        if (view != null){
+            return view;
+        }
+        DepartmentStrategy strategy = strategies.get(department.toLowerCase(Locale.ROOT));
+        return strategy == null ? null : views.computeIfAbsent(department, d -> new Materialized(d, strategy));
+    }
+
+    @Override
+    public void destroy() {
+        if (evictor instanceof ExecutorService){
+            ((ExecutorService) evictor).shutdownNow();
+        }
+    }
+
+    /**
+     * Hands an eviction to the evictor if the views are over the budget and none is waiting to run yet.
+     */
+    private void scheduleEviction() {
+        if (retainedTotal.get() <= maxBookings || !evictionScheduled.compareAndSet(false, true)){
+            return;
+        }
+        try {
+            evictor.execute(() -> {
+                evictionScheduled.set(false);
+                evictIfOverBudget();
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            evictionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Evicts the least recently read views retaining bookings, except the last one read, until the rest fit the
+     * budget.
+     */
+    private void evictIfOverBudget() {
+        if (retainedTotal.get() <= maxBookings){
+            return;
+        }
+        synchronized (evictionLock) {
+            Materialized kept = lastServed;
+            List<Materialized> candidates = new ArrayList<>();
+            for (Materialized view : views.values()) {
+                if (view.retained > 0 && view != kept){
+                    candidates.add(view);
+                }
+            }
+            candidates.sort(Comparator.comparingLong(view -> view.lastRead));
+            for (Materialized view : candidates) {
+                if (retainedTotal.get() <= maxBookings){
+                    return;
+                }
+                view.evict();
+            }
+        }
+    }
+
+    private final class Materialized {
+
+        private final String department;
+        private final DepartmentStrategy strategy;
+        // guarded by this, null while evicted
+        private DepartmentView view;
+        private volatile int retained;
+        private volatile long version;
+        private volatile long lastRead;
+        private volatile Snapshot snapshot = NONE;
+        private final LongAdder applied = new LongAdder();
+        private final LongAdder rebuilds = new LongAdder();
+
+        Materialized(String department, DepartmentStrategy strategy) {
+            this.department = department;
+            this.strategy = strategy;
+            this.view = strategy.newView();
+        }
+
+        synchronized void apply(Booking previous, Booking current) {
+            if (view != null){
+                view.apply(previous, current);
+                resized();
+            }
+            version++;
+            applied.increment();
+        }
+
+        synchronized void archive(Booking booking) {
+            if (view != null){
+                view.archive(booking);
+                resized();
+            }
+            version++;
+        }
+
+        synchronized void evict() {
+            if (view == null){
+                return;
+            }
+            view = null;
+            snapshot = NONE;
+            retainedTotal.addAndGet(-retained);
+            retained = 0;
+            evictions.increment();
+        }
+
+        Object result() {
+            lastRead = System.nanoTime();
+            Snapshot cached = snapshot;
+            if (cached.version == version){
+                hits.increment();
+                return cached.result;
+            }
+            long seen;
+            synchronized (this) {
+                if (snapshot.version == version){
+                    hits.increment();
+                    return snapshot.result;
+                }
+                misses.increment();
+                rebuilds.increment();
+                if (view != null){
+                    Snapshot rebuilt = new Snapshot(version, view.result());
+                    snapshot = rebuilt;
+                    return rebuilt.result;
+                }
+                seen = version;
+            }
+            DepartmentView loaded = strategy.newView();
+            for (Booking booking : repository.getObject().findByDepartment(department)) {
+                loaded.apply(null, booking);
+            }
+            Object result = loaded.result();
+            synchronized (this) {
+                // a write in between may or may not be in the listing: answer with it, but do not keep it
+                if (view == null && version == seen){
+                    view = loaded;
+                    resized();
+                    snapshot = new Snapshot(seen, result);
+                    loads.increment();
+                }
+            }
+            scheduleEviction();
+            return result;
+        }
+
+        private void resized() {
+            int size = view.size();
+            retainedTotal.addAndGet(size - retained);
+            retained = size;
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long version;
+        private final Object result;
+
+        Snapshot(long version, Object result) {
+            this.version = version;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.statista.code.challenge.department;
+
+/**
+ * The business logic of one department, answering {@code GET /bookings/dobusiness/{department}}.
+ * <p>
+ * A strategy only declares its view; every strategy bean is picked up by the {@link DepartmentRegistry}, which
+ * creates its views, feeds it the writes to the department's bookings and serves its result. Adding a
+ * department is adding a {@code @Component} implementing this interface.
+ */
+public interface DepartmentStrategy {
+
+    /**
+     * @return the lower case name of the department; bookings and requests belong to it when their department is
+     * equal to it ignoring case, each spelling of the department having its own view
+     */
+    String department();
+
+    /**
+     * @return an empty view, called by the registry for each spelling of the department and to load evicted views
+     */
+    DepartmentView newView();
+}
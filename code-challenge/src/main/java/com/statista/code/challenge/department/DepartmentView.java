@@ -0,0 +1,42 @@
+package com.statista.code.challenge.department;
+
+import com.statista.code.challenge.entity.Booking;
+
+/**
+ * Materialized result of a {@link DepartmentStrategy}, maintained by the {@link DepartmentRegistry} from every write
+ * to a booking of the department. The registry calls all methods under the view's monitor, so implementations need
+ * no locking of their own, but they run inside repository writes and must be cheap.
+ */
+public interface DepartmentView {
+
+    /**
+     * @param previous the booking before the write if it belonged to the department, {@code null} otherwise
+     * @param current  the booking after the write if it belongs to the department, {@code null} otherwise
+     */
+    void apply(Booking previous, Booking current);
+
+    /**
+     * Called for a booking of the department moved to the cold tier. It no longer shows up when listing the
+     * department; by default it stays in the view.
+     */
+    default void archive(Booking booking) {
+    }
+
+    /**
+     * The registry may drop a view retaining bookings to stay within its budget and load a new one later by applying
+     * the department's hot bookings to it, so the result of such a view must depend on nothing else.
+     *
+     * @return the number of bookings the view retains, 0 if it keeps only totals of them
+     */
+    default int size() {
+        return 0;
+    }
+
+    /**
+     * Called only on the first read after the view changed; the result is served as is until the next change, so
+     * it must not be modified afterwards.
+     *
+     * @return the answer of the department
+     */
+    Object result();
+}
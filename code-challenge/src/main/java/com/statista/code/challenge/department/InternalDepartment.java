@@ -0,0 +1,95 @@
+package com.statista.code.challenge.department;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.entity.DatedBooking;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code internal} lists its bookings by id with the subscription start date formatted for German readers.
+ * <p>
+ * The view keeps every listed booking with its formatted date and formats a date only when a write changes it, so a
+ * changed department costs one copy of the listing on the next read instead of a scan of the store. The bookings
+ * are the stored ones, not copies: they are not changed once stored. The view counts its bookings against the
+ * budget of the {@link DepartmentRegistry}, which evicts it and loads it from the store again when needed. Dates
+ * formatted by the views, on writes and on loads, are counted in {@link #formatted()}.
+ */
+@Component
+public class InternalDepartment implements DepartmentStrategy {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)
+            .withLocale(Locale.GERMANY)
+            .withZone(ZoneId.systemDefault());
+
+    private final LongAdder formatted = new LongAdder();
+
+    @Override
+    public String department() {
+        return "internal";
+    }
+
+    @Override
+    public DepartmentView newView() {
+        return new Listing();
+    }
+
+    /**
+     * @return the subscription start dates formatted by the views of the department
+     */
+    public long formatted() {
+        return formatted.sum();
+    }
+
+    static String format(Long epochMillis) {
+        return FORMATTER.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    private String countedFormat(Long epochMillis) {
+        formatted.increment();
+        return format(epochMillis);
+    }
+
+    private final class Listing implements DepartmentView {
+
+        private final Map<String, DatedBooking> bookings = new TreeMap<>();
+
+        @Override
+        public void apply(Booking previous, Booking current) {
+            DatedBooking replaced = previous == null ? null : bookings.remove(previous.getId());
+            if (current == null){
+                return;
+            }
+            bookings.put(current.getId(), new DatedBooking(current, replaced != null
+                    && Objects.equals(replaced.getBooking().getSubscriptionStartDate(),
+                    current.getSubscriptionStartDate())
+                    ? replaced.getHumanReadableSubscriptionStartDate()
+                    : countedFormat(current.getSubscriptionStartDate())));
+        }
+
+        @Override
+        public void archive(Booking booking) {
+            bookings.remove(booking.getId());
+        }
+
+        @Override
+        public int size() {
+            return bookings.size();
+        }
+
+        @Override
+        public Object result() {
+            return Collections.unmodifiableList(new ArrayList<>(bookings.values()));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.statista.code.challenge.department;
+
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.entity.Booking;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code sales} reports the average booking price per currency.
+ * <p>
+ * The view keeps exact sums in minor units and counts per currency, so a write costs two map lookups and a read
+ * after a change divides once per currency. Archived bookings still count.
+ */
+@Component
+public class SalesDepartment implements DepartmentStrategy {
+
+    @Override
+    public String department() {
+        return "sales";
+    }
+
+    @Override
+    public DepartmentView newView() {
+        return new Averages();
+    }
+
+    private static final class Averages implements DepartmentView {
+
+        // currency -> {sum in minor units, count}
+        private final Map<Currency, long[]> totals = new HashMap<>();
+
+        @Override
+        public void apply(Booking previous, Booking current) {
+            add(previous, -1);
+            add(current, 1);
+        }
+
+        @Override
+        public Object result() {
+            Map<Currency, Double> averages = new HashMap<>();
+            for (Map.Entry<Currency, long[]> entry : totals.entrySet()) {
+                long[] currencyTotals = entry.getValue();
+                double scale = Math.pow(10, Math.max(0, entry.getKey().getDefaultFractionDigits()));
+                averages.put(entry.getKey(), currencyTotals[0] / (currencyTotals[1] * scale));
+            }
+            return Collections.unmodifiableMap(averages);
+        }
+
+        private void add(Booking booking, int count) {
+            if (booking == null || booking.getCurrency() == null){
+                return;
+            }
+            long[] currencyTotals = totals.computeIfAbsent(booking.getCurrency(), c -> new long[2]);
+            currencyTotals[0] += count * CurrencyAggregates.toMinorUnits(booking);
+            currencyTotals[1] += count;
+            if (currencyTotals[1] == 0){
+                totals.remove(booking.getCurrency());
+            }
+        }
+    }
+}
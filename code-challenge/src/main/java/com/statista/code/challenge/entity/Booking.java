@@ -1,15 +1,15 @@
 package com.statista.code.challenge.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotNull;
 import java.util.Currency;
 
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 public class Booking {
 
@@ -17,6 +17,7 @@ public class Booking {
     @NotNull
     private String description;
     @NotNull
+    @PriceRange
     private double price;
     @NotNull
     private Currency currency;
@@ -27,6 +28,18 @@ public class Booking {
     private String email;
     @NotNull
     private String department;
+    /**
+     * Assigned by the repository on every write and sent as the {@code ETag}; not part of the JSON body.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
+
+    public Booking(String id, String description, double price, Currency currency, Long subscriptionStartDate,
+                   String email, String department) {
+        this(description, price, currency, subscriptionStartDate, email, department);
+        this.id = id;
+    }
 
     public Booking(String description, double price, Currency currency, Long subscriptionStartDate, String email,
                    String department) {
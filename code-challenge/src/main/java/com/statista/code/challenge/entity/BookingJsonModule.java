@@ -0,0 +1,108 @@
+package com.statista.code.challenge.entity;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes {@link Booking}, {@link BookingHumanReadableDate} and {@link DatedBooking} field by field instead of
+ * through Jackson's reflective bean serializer. The output is the same as the bean serializer's with Spring Boot's
+ * defaults, field order and nulls included, in JSON, CBOR and Smile alike.
+ * <p>
+ * Field names and currency codes are {@link SerializedString}s, which keep their encoded and quoted bytes, so the
+ * generator copies them instead of escaping and encoding the same strings for every booking. Being a bean, the
+ * module is registered with every object mapper Spring Boot builds; a mapper built elsewhere needs
+ * {@code registerModule}.
+ */
+@Component
+public class BookingJsonModule extends SimpleModule {
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString DESCRIPTION = new SerializedString("description");
+    private static final SerializedString PRICE = new SerializedString("price");
+    private static final SerializedString CURRENCY = new SerializedString("currency");
+    private static final SerializedString EMAIL = new SerializedString("email");
+    private static final SerializedString DEPARTMENT = new SerializedString("department");
+    private static final SerializedString HUMAN_READABLE_DATE = new SerializedString(
+            "humanReadableSubscriptionStartDate");
+    private static final SerializedString SUBSCRIPTION_START_DATE = new SerializedString("subscription_start_date");
+
+    // a few hundred currencies at most
+    private static final Map<Currency, SerializedString> CURRENCY_CODES = new ConcurrentHashMap<>();
+
+    public BookingJsonModule() {
+        super(BookingJsonModule.class.getSimpleName());
+        // registered of its own: the module would otherwise find the serializer of Booking for the subclass
+        addSerializer(BookingHumanReadableDate.class, new StdSerializer<BookingHumanReadableDate>(
+                BookingHumanReadableDate.class) {
+            @Override
+            public void serialize(BookingHumanReadableDate value, JsonGenerator generator,
+                                  SerializerProvider provider) throws IOException {
+                write(value, true, value.getHumanReadableSubscriptionStartDate(), generator);
+            }
+        });
+        addSerializer(Booking.class, new StdSerializer<Booking>(Booking.class) {
+            @Override
+            public void serialize(Booking value, JsonGenerator generator, SerializerProvider provider)
+                    throws IOException {
+                write(value, false, null, generator);
+            }
+        });
+        addSerializer(DatedBooking.class, new StdSerializer<DatedBooking>(DatedBooking.class) {
+            @Override
+            public void serialize(DatedBooking value, JsonGenerator generator, SerializerProvider provider)
+                    throws IOException {
+                write(value.getBooking(), true, value.getHumanReadableSubscriptionStartDate(), generator);
+            }
+        });
+    }
+
+    private static void write(Booking booking, boolean dated, String humanReadableDate, JsonGenerator generator)
+            throws IOException {
+        generator.writeStartObject(booking);
+        writeString(generator, ID, booking.getId());
+        writeString(generator, DESCRIPTION, booking.getDescription());
+        generator.writeFieldName(PRICE);
+        generator.writeNumber(booking.getPrice());
+        generator.writeFieldName(CURRENCY);
+        Currency currency = booking.getCurrency();
+        if (currency == null){
+            generator.writeNull();
+        } else {
+            generator.writeString(CURRENCY_CODES.computeIfAbsent(currency,
+                    c -> new SerializedString(c.getCurrencyCode())));
+        }
+        writeString(generator, EMAIL, booking.getEmail());
+        writeString(generator, DEPARTMENT, booking.getDepartment());
+        if (dated){
+            writeString(generator, HUMAN_READABLE_DATE, humanReadableDate);
+        }
+        generator.writeFieldName(SUBSCRIPTION_START_DATE);
+        Long subscriptionStartDate = booking.getSubscriptionStartDate();
+        if (subscriptionStartDate == null){
+            generator.writeNull();
+        } else {
+            generator.writeNumber(subscriptionStartDate.longValue());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, SerializableString name, String value)
+            throws IOException {
+        generator.writeFieldName(name);
+        if (value == null){
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.statista.code.challenge.entity;
+
+import lombok.Data;
+
+/**
+ * A stored booking with its subscription start date formatted for reading, as listed by {@code doBusiness} for
+ * {@code internal}. It refers to the booking instead of copying it and is written by {@link BookingJsonModule} in
+ * the shape of {@link BookingHumanReadableDate}.
+ */
+@Data
+public class DatedBooking {
+
+    private final Booking booking;
+    private final String humanReadableSubscriptionStartDate;
+}
@@ -0,0 +1,29 @@
+package com.statista.code.challenge.entity;
+
+import javax.validation.Constraint;
+import javax.validation.Payload;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A price that is finite and at most {@link #MAX} in absolute value, so that it fits in a {@code long} of minor units
+ * for every currency (at most three fraction digits) and the sums kept per currency are not anywhere near overflow
+ * for a single booking.
+ */
+@Documented
+@Constraint(validatedBy = PriceRangeValidator.class)
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PriceRange {
+
+    double MAX = 1e15;
+
+    String message() default "must be a finite amount between -1e15 and 1e15";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+}
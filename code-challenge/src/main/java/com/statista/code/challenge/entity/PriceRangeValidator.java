@@ -0,0 +1,12 @@
+package com.statista.code.challenge.entity;
+
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+public class PriceRangeValidator implements ConstraintValidator<PriceRange, Double> {
+
+    @Override
+    public boolean isValid(Double value, ConstraintValidatorContext context) {
+        return value == null || Double.isFinite(value) && Math.abs(value) <= PriceRange.MAX;
+    }
+}
@@ -0,0 +1,31 @@
+package com.statista.code.challenge.feed;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.statista.code.challenge.entity.Booking;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One write to the booking store as sent by the {@link ChangeFeed}. {@code booking} is the stored booking, or the
+ * deleted one for a {@link Type#DELETE}; {@code version} is its version, the one its {@code ETag} carries.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChangeEvent {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+
+    private long sequence;
+    private Type type;
+    private long version;
+    private Booking booking;
+    /**
+     * The booking before an update, kept to match the filters of subscribers replayed from the history.
+     */
+    @JsonIgnore
+    private Booking previous;
+}
@@ -0,0 +1,531 @@
+package com.statista.code.challenge.feed;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChange;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes every booking write to subscribers, optionally filtered by department and currency, so that downstream
+ * systems do not have to poll.
+ * <p>
+ * Each write takes the next sequence number with an atomic increment and publishes its event into the slot of that
+ * number in a ring of the last {@code bookings.feed.history} events, with room for another
+ * {@code bookings.feed.subscriber-buffer} events the dispatcher has not reached yet. Writers take no lock and never
+ * look at the subscribers: a dispatcher thread follows the ring in sequence order, waiting for a slot whose writer
+ * has not published yet, and offers each event to the bounded queue of every matching subscriber
+ * ({@code bookings.feed.subscriber-buffer} events), drained by a small pool of delivery threads; when a queue is
+ * full the {@link OverflowPolicy} decides. If writers lap the dispatcher, the overwritten events are missed by every
+ * subscriber and handled by the policy like a full queue.
+ * <p>
+ * A subscriber that passes the sequence number of the last event it received is first replayed the newer
+ * dispatched events from the ring, or told to {@code reset} if they are no longer all there. Every
+ * {@code bookings.feed.heartbeat-ms} each subscriber gets a comment, which keeps proxies from closing quiet streams
+ * and finds clients that went away.
+ * <p>
+ * Sequence numbers start at the wall clock in microseconds, so numbers from an earlier run are too old to resume
+ * from and get a {@code reset}.
+ */
+@Component
+public class ChangeFeed implements BookingChangeListener, DisposableBean {
+
+    private static final int DRAIN_BATCH = 256;
+    private static final int DISPATCH_BATCH = 256;
+
+    private final int subscriberBuffer;
+    private final int maxSubscribers;
+    private final OverflowPolicy overflowPolicy;
+    private final long timeoutMs;
+    private final ExecutorService delivery;
+    private final ScheduledExecutorService heartbeats;
+    private final Thread dispatcher;
+    private final long firstSequence;
+    private final int history;
+    // the history plus room for as many events not dispatched yet as a subscriber may have queued
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    // the last sequence number taken by a writer
+    private final AtomicLong sequence;
+    // guarded by this
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    // the last sequence number offered to the subscribers, written by the dispatcher under the lock
+    private volatile long dispatched;
+    private volatile boolean dispatcherWaiting;
+    // written under the lock
+    private volatile boolean idle = true;
+    private volatile boolean stopped;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    public ChangeFeed(@Value("${bookings.feed.history:10000}") int history,
+                      @Value("${bookings.feed.subscriber-buffer:1000}") int subscriberBuffer,
+                      @Value("${bookings.feed.max-subscribers:100}") int maxSubscribers,
+                      @Value("${bookings.feed.overflow:resume}") String overflowPolicy,
+                      @Value("${bookings.feed.delivery-threads:2}") int deliveryThreads,
+                      @Value("${bookings.feed.timeout-ms:1800000}") long timeoutMs,
+                      @Value("${bookings.feed.heartbeat-ms:15000}") long heartbeatMs) {
+        this.history = history;
+        this.ring = new AtomicReferenceArray<>(history + subscriberBuffer);
+        this.subscriberBuffer = subscriberBuffer;
+        this.maxSubscribers = maxSubscribers;
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.toUpperCase(Locale.ROOT));
+        this.timeoutMs = timeoutMs;
+        AtomicInteger threads = new AtomicInteger();
+        this.delivery = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "booking-feed-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "booking-feed-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatMs > 0){
+            heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+        this.firstSequence = System.currentTimeMillis() * 1000;
+        this.sequence = new AtomicLong(firstSequence);
+        this.dispatched = firstSequence;
+        this.dispatcher = new Thread(this::dispatch, "booking-feed-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        append(previous, current);
+        wakeDispatcher();
+    }
+
+    @Override
+    public void onChanges(List<BookingChange> changes) {
+        for (BookingChange change : changes) {
+            append(change.getPrevious(), change.getCurrent());
+        }
+        wakeDispatcher();
+    }
+
+    /**
+     * Subscribes an SSE client.
+     *
+     * @param lastEventId the sequence number of the last event received, to resume after it
+     * @return 400 for an unknown currency or a malformed {@code lastEventId}, 503 if there are
+     * {@code bookings.feed.max-subscribers} subscribers already
+     */
+    public ResponseEntity<SseEmitter> subscribe(String department, String currency, String lastEventId) {
+        Currency currencyFilter;
+        Long after;
+        try {
+            currencyFilter = currency == null ? null : Currency.getInstance(currency);
+            after = lastEventId == null ? null : Long.valueOf(lastEventId.trim());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscription subscription = subscribe(department, currencyFilter, after, new ChangeSink() {
+            @Override
+            public void send(String name, Long id, Object data) throws IOException {
+                SseEmitter.SseEventBuilder event = SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON);
+                emitter.send(id == null ? event : event.id(Long.toString(id)));
+            }
+
+            @Override
+            public void keepAlive() throws IOException {
+                emitter.send(SseEmitter.event().comment(""));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        if (subscription == null){
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        emitter.onCompletion(() -> remove(subscription));
+        emitter.onTimeout(() -> remove(subscription));
+        emitter.onError(e -> remove(subscription));
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(emitter);
+    }
+
+    /**
+     * Subscribes a sink. It first gets the events after {@code after} that are still in the history, then a
+     * {@code ready} event; or, if {@code after} is too old, too new or from an earlier run, a {@code reset} event
+     * only. Both carry the current sequence number as their id. Live events follow.
+     *
+     * @param department only events of bookings in or moving out of this department, or all if {@code null}
+     * @param currency   only events of bookings in or moving out of this currency, or all if {@code null}
+     * @param after      the sequence number to resume after, or {@code null} to start with the next write
+     * @return the subscription, or {@code null} if there are {@code bookings.feed.max-subscribers} already
+     */
+    public Subscription subscribe(String department, Currency currency, Long after, ChangeSink sink) {
+        Subscription subscription = new Subscription(department, currency, sink, subscriberBuffer);
+        synchronized (this) {
+            if (subscriptions.size() >= maxSubscribers){
+                return null;
+            }
+            if (subscriptions.isEmpty()){
+                skipUndispatched();
+            }
+            long last = dispatched;
+            List<ChangeEvent> backlog = after == null ? Collections.emptyList() : backlog(subscription, after, last);
+            subscription.backlog = backlog == null ? Collections.emptyList() : backlog;
+            subscription.greeting = backlog == null ? "reset" : "ready";
+            subscription.greetingSequence = last;
+            subscriptions.add(subscription);
+            idle = false;
+        }
+        LockSupport.unpark(dispatcher);
+        schedule(subscription);
+        return subscription;
+    }
+
+    public synchronized int subscribers() {
+        return subscriptions.size();
+    }
+
+    public long published() {
+        return sequence.get() - firstSequence;
+    }
+
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return events dropped for full subscriber buffers under {@link OverflowPolicy#DROP}
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return subscribers disconnected for a full buffer under {@link OverflowPolicy#RESUME}
+     */
+    public long overflows() {
+        return overflows.sum();
+    }
+
+    @Override
+    public void destroy() {
+        stopped = true;
+        LockSupport.unpark(dispatcher);
+        heartbeats.shutdownNow();
+        delivery.shutdownNow();
+        List<Subscription> open;
+        synchronized (this) {
+            open = new ArrayList<>(subscriptions);
+        }
+        for (Subscription subscription : open) {
+            close(subscription);
+        }
+    }
+
+    private void append(Booking previous, Booking current) {
+        Booking booking = current != null ? current : previous;
+        if (booking == null){
+            return;
+        }
+        ChangeEvent.Type type = current == null ? ChangeEvent.Type.DELETE
+                : previous == null ? ChangeEvent.Type.CREATE : ChangeEvent.Type.UPDATE;
+        long next = sequence.incrementAndGet();
+        ring.set(slot(next), new ChangeEvent(next, type, booking.getVersion(), booking,
+                type == ChangeEvent.Type.UPDATE ? previous : null));
+    }
+
+    private void wakeDispatcher() {
+        if (dispatcherWaiting){
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * @return the events after {@code after} up to {@code last} that the subscription accepts, or {@code null} if
+     * {@code after} is not in that range or some of them are no longer in the ring
+     */
+    // guarded by this
+    private List<ChangeEvent> backlog(Subscription subscription, long after, long last) {
+        if (after < firstSequence || after > last || last - after > history){
+            return null;
+        }
+        List<ChangeEvent> backlog = new ArrayList<>();
+        for (long next = after + 1; next <= last; next++) {
+            ChangeEvent event = ring.get(slot(next));
+            if (event == null || event.getSequence() != next){
+                return null;
+            }
+            if (subscription.accepts(event)){
+                backlog.add(event);
+            }
+        }
+        return backlog;
+    }
+
+    /**
+     * Runs on the dispatcher thread: takes the published events after the last dispatched one in sequence order, up
+     * to the first slot whose writer has not published yet, and offers them to the subscribers under the lock.
+     */
+    private void dispatch() {
+        List<ChangeEvent> batch = new ArrayList<>(DISPATCH_BATCH);
+        while (!stopped) {
+            long first = dispatched + 1;
+            long next = first;
+            long lapped = 0;
+            while (batch.size() < DISPATCH_BATCH) {
+                ChangeEvent event = ring.get(slot(next));
+                if (event != null && event.getSequence() == next){
+                    batch.add(event);
+                    next++;
+                } else if (event != null && event.getSequence() > next || sequence.get() - next >= ring.length()){
+                    // overwritten before it was dispatched: resume at the oldest event the ring can still hold
+                    lapped = Math.max(1, sequence.get() - ring.length() + 1 - next);
+                    break;
+                } else {
+                    break;
+                }
+            }
+            if (batch.isEmpty() && lapped == 0){
+                awaitPublished(next);
+                continue;
+            }
+            synchronized (this) {
+                if (dispatched != first - 1){
+                    // skipped by a subscriber arriving at an idle feed
+                    batch.clear();
+                    continue;
+                }
+                for (ChangeEvent event : batch) {
+                    for (int i = 0; i < subscriptions.size(); i++) {
+                        Subscription subscription = subscriptions.get(i);
+                        if (subscription.accepts(event)){
+                            offer(subscription, event);
+                        }
+                    }
+                }
+                if (lapped > 0){
+                    for (int i = 0; i < subscriptions.size(); i++) {
+                        missed(subscriptions.get(i), lapped);
+                    }
+                }
+                dispatched = next - 1 + lapped;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Marks the published events as dispatched without offering them, for the first subscriber after a time without
+     * any, during which writers did not wake the dispatcher.
+     */
+    // guarded by this
+    private void skipUndispatched() {
+        long next = Math.max(dispatched + 1, sequence.get() - ring.length() + 1);
+        for (ChangeEvent event = ring.get(slot(next)); event != null && event.getSequence() == next;
+             event = ring.get(slot(next))) {
+            next++;
+        }
+        dispatched = next - 1;
+    }
+
+    /**
+     * Parks until a writer wakes the dispatcher, or without subscribers until one subscribes: writers do not wake it
+     * then, so an idle feed costs a write nothing but the ring slot.
+     */
+    private void awaitPublished(long next) {
+        if (idle){
+            LockSupport.park(this);
+            return;
+        }
+        dispatcherWaiting = true;
+        ChangeEvent event = ring.get(slot(next));
+        if (!stopped && (event == null || event.getSequence() < next) && sequence.get() - next < ring.length()){
+            LockSupport.park(this);
+        }
+        dispatcherWaiting = false;
+    }
+
+    private void offer(Subscription subscription, ChangeEvent event) {
+        if (subscription.overflowed){
+            return;
+        }
+        if (!subscription.queue.offer(event)){
+            missed(subscription, 1);
+            return;
+        }
+        schedule(subscription);
+    }
+
+    /**
+     * Applies the {@link OverflowPolicy} to events the subscriber will not get: a full queue, or events the writers
+     * overwrote before they were dispatched, counted whether they matched the filters or not.
+     */
+    private void missed(Subscription subscription, long events) {
+        if (subscription.overflowed){
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP){
+            subscription.dropped.addAndGet(events);
+            dropped.add(events);
+        } else {
+            subscription.overflowed = true;
+            overflows.increment();
+        }
+        schedule(subscription);
+    }
+
+    private void schedule(Subscription subscription) {
+        if (subscription.scheduled.compareAndSet(false, true)){
+            try {
+                delivery.execute(() -> drain(subscription));
+            } catch (RejectedExecutionException e) {
+                // shutting down
+            }
+        }
+    }
+
+    /**
+     * Sends up to {@link #DRAIN_BATCH} queued events and reschedules itself if there are more, so that one busy
+     * subscriber does not keep a delivery thread from the others.
+     */
+    private void drain(Subscription subscription) {
+        try {
+            ChangeSink sink = subscription.sink;
+            if (subscription.backlog != null){
+                for (ChangeEvent event : subscription.backlog) {
+                    send(sink, event);
+                }
+                subscription.backlog = null;
+                sink.send(subscription.greeting, subscription.greetingSequence,
+                        Collections.singletonMap("sequence", subscription.greetingSequence));
+            }
+            long missed = subscription.dropped.getAndSet(0);
+            if (missed > 0){
+                sink.send("dropped", null, Collections.singletonMap("dropped", missed));
+            }
+            ChangeEvent event;
+            for (int sent = 0; sent < DRAIN_BATCH && (event = subscription.queue.poll()) != null; sent++) {
+                send(sink, event);
+            }
+            if (subscription.overflowed && subscription.queue.isEmpty()){
+                close(subscription);
+                return;
+            }
+            if (subscription.keepAlive.getAndSet(false)){
+                sink.keepAlive();
+            }
+        } catch (IOException | RuntimeException e) {
+            close(subscription);
+            return;
+        }
+        subscription.scheduled.set(false);
+        if (!subscription.queue.isEmpty() || subscription.dropped.get() > 0 || subscription.overflowed){
+            schedule(subscription);
+        }
+    }
+
+    private void heartbeat() {
+        List<Subscription> open;
+        synchronized (this) {
+            open = new ArrayList<>(subscriptions);
+        }
+        for (Subscription subscription : open) {
+            subscription.keepAlive.set(true);
+            schedule(subscription);
+        }
+    }
+
+    private void send(ChangeSink sink, ChangeEvent event) throws IOException {
+        sink.send(event.getType().name().toLowerCase(Locale.ROOT), event.getSequence(), event);
+        delivered.increment();
+    }
+
+    private void close(Subscription subscription) {
+        remove(subscription);
+        try {
+            subscription.sink.close();
+        } catch (RuntimeException e) {
+            // already completed by the client or a timeout
+        }
+    }
+
+    private synchronized void remove(Subscription subscription) {
+        subscriptions.remove(subscription);
+        idle = subscriptions.isEmpty();
+    }
+
+    private int slot(long sequence) {
+        return (int) Math.floorMod(sequence, (long) ring.length());
+    }
+
+    /**
+     * One subscriber, with its filters and its buffer of events still to send.
+     */
+    public final class Subscription {
+
+        private final String department;
+        private final Currency currency;
+        private final ChangeSink sink;
+        private final BlockingQueue<ChangeEvent> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicBoolean keepAlive = new AtomicBoolean();
+        private volatile boolean overflowed;
+        // set under the feed lock before the first drain, then only used by the draining thread
+        private List<ChangeEvent> backlog;
+        private String greeting;
+        private long greetingSequence;
+
+        private Subscription(String department, Currency currency, ChangeSink sink, int buffer) {
+            this.department = department;
+            this.currency = currency;
+            this.sink = sink;
+            this.queue = new ArrayBlockingQueue<>(buffer);
+        }
+
+        /**
+         * Ends the subscription and closes its sink.
+         */
+        public void cancel() {
+            close(this);
+        }
+
+        private boolean accepts(ChangeEvent event) {
+            return accepts(event.getBooking()) || accepts(event.getPrevious());
+        }
+
+        private boolean accepts(Booking booking) {
+            return booking != null
+                    && (department == null || department.equals(booking.getDepartment()))
+                    && (currency == null || Objects.equals(currency, booking.getCurrency()));
+        }
+    }
+}
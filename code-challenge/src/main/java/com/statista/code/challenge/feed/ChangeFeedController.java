@@ -0,0 +1,33 @@
+package com.statista.code.challenge.feed;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@Controller
+@RequestMapping("/bookingservice")
+public class ChangeFeedController {
+
+    private final ChangeFeed changeFeed;
+
+    public ChangeFeedController(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * Server-sent events of booking writes. Browsers' {@code EventSource} resend the id of the last event in
+     * {@code Last-Event-ID} when they reconnect; other clients can pass it as {@code after}.
+     */
+    @GetMapping(value = "/bookings/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> getChanges(@RequestParam(required = false) String department,
+                                                 @RequestParam(required = false) String currency,
+                                                 @RequestParam(required = false) String after,
+                                                 @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeFeed.subscribe(department, currency, lastEventId != null ? lastEventId : after);
+    }
+}
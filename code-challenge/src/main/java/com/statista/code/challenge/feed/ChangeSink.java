@@ -0,0 +1,26 @@
+package com.statista.code.challenge.feed;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link ChangeFeed} subscription delivers its events; the web endpoint uses an SSE emitter. Called by one
+ * delivery thread at a time, which may block on a slow client without holding up writers or other subscribers.
+ */
+public interface ChangeSink {
+
+    /**
+     * @param name event name, the change type for changes
+     * @param id   sequence number to resume after, or {@code null} for events that have none
+     */
+    void send(String name, Long id, Object data) throws IOException;
+
+    /**
+     * Sends something the client ignores, to keep an idle connection open and find out whether it still is.
+     */
+    void keepAlive() throws IOException;
+
+    /**
+     * Ends the subscription; no more events are sent.
+     */
+    void close();
+}
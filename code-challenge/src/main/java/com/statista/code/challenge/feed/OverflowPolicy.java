@@ -0,0 +1,19 @@
+package com.statista.code.challenge.feed;
+
+/**
+ * What the {@link ChangeFeed} does when a subscriber's buffer is full, set with {@code bookings.feed.overflow}.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Events that do not fit are dropped; the subscriber is told how many with a {@code dropped} event before the
+     * next change it receives.
+     */
+    DROP,
+
+    /**
+     * The subscriber gets what is buffered and is then disconnected. An SSE client reconnects with the id of the
+     * last event it received in {@code Last-Event-ID} and is replayed the rest from the feed's history.
+     */
+    RESUME
+}
@@ -0,0 +1,41 @@
+package com.statista.code.challenge.metrics;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts repository writes by kind. Bulk imports and recovery from the write-ahead log are counted as well.
+ */
+@Component
+public class BookingMetrics implements BookingChangeListener {
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder replaced = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        if (previous == null){
+            created.increment();
+        } else if (current != null){
+            replaced.increment();
+        } else {
+            deleted.increment();
+        }
+    }
+
+    public long created() {
+        return created.sum();
+    }
+
+    public long replaced() {
+        return replaced.sum();
+    }
+
+    public long deleted() {
+        return deleted.sum();
+    }
+}
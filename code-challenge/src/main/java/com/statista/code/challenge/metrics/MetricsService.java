@@ -0,0 +1,232 @@
+package com.statista.code.challenge.metrics;
+
+import com.statista.code.challenge.admission.AdmissionControl;
+import com.statista.code.challenge.admission.EndpointClass;
+import com.statista.code.challenge.aggregate.PriceAnalytics;
+import com.statista.code.challenge.department.DepartmentRegistry;
+import com.statista.code.challenge.department.InternalDepartment;
+import com.statista.code.challenge.feed.ChangeFeed;
+import com.statista.code.challenge.notification.DeadLetterStore;
+import com.statista.code.challenge.notification.NotificationDispatcher;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.ColdTier;
+import com.statista.code.challenge.repository.ColdTierArchiver;
+import com.statista.code.challenge.repository.QueryStatistics;
+import com.statista.code.challenge.search.BookingSearchIndex;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembles the metrics report served by {@link MetricsController}. Reading the metrics allocates; recording them
+ * does not.
+ */
+@Service
+public class MetricsService {
+
+    private final RequestMetricsFilter requestMetrics;
+    private final BookingMetrics bookingMetrics;
+    private final BookingRepository repository;
+    private final NotificationDispatcher notifications;
+    private final DeadLetterStore deadLetters;
+    private final DepartmentRegistry departments;
+    private final InternalDepartment internal;
+    private final ChangeFeed changeFeed;
+    private final ColdTierArchiver archiver;
+    private final BookingSearchIndex searchIndex;
+    private final PriceAnalytics priceAnalytics;
+    private final AdmissionControl admission;
+
+    public MetricsService(RequestMetricsFilter requestMetrics, BookingMetrics bookingMetrics,
+                          BookingRepository repository, NotificationDispatcher notifications,
+                          DeadLetterStore deadLetters, DepartmentRegistry departments, InternalDepartment internal,
+                          ChangeFeed changeFeed, ColdTierArchiver archiver, BookingSearchIndex searchIndex,
+                          PriceAnalytics priceAnalytics, AdmissionControl admission) {
+        this.requestMetrics = requestMetrics;
+        this.bookingMetrics = bookingMetrics;
+        this.repository = repository;
+        this.notifications = notifications;
+        this.deadLetters = deadLetters;
+        this.departments = departments;
+        this.internal = internal;
+        this.changeFeed = changeFeed;
+        this.archiver = archiver;
+        this.searchIndex = searchIndex;
+        this.priceAnalytics = priceAnalytics;
+        this.admission = admission;
+    }
+
+    public ResponseEntity report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("endpoints", endpoints());
+        report.put("responses", requestMetrics.statusClasses());
+        report.put("admission", admission());
+        report.put("bookings", bookings());
+        report.put("tiers", tiers());
+        report.put("queries", queries());
+        report.put("search", search());
+        report.put("analytics", analytics());
+        report.put("mail", mail());
+        report.put("departments", departments());
+        report.put("caches", caches());
+        report.put("feed", feed());
+        report.put("heap", heap());
+        return ResponseEntity.ok(report);
+    }
+
+    private Map<String, Object> endpoints() {
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        requestMetrics.endpoints().forEach((endpoint, histogram) -> {
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("count", histogram.count());
+            latency.put("meanMicros", micros((long) histogram.mean()));
+            latency.put("p50Micros", micros(histogram.valueAt(0.5)));
+            latency.put("p99Micros", micros(histogram.valueAt(0.99)));
+            latency.put("p999Micros", micros(histogram.valueAt(0.999)));
+            latency.put("maxMicros", micros(histogram.max()));
+            endpoints.put(endpoint, latency);
+        });
+        return endpoints;
+    }
+
+    private Map<String, Object> bookings() {
+        Map<String, Object> bookings = new LinkedHashMap<>();
+        bookings.put("created", bookingMetrics.created());
+        bookings.put("replaced", bookingMetrics.replaced());
+        bookings.put("deleted", bookingMetrics.deleted());
+        bookings.put("size", repository.size());
+        bookings.put("estimatedHeapBytes", repository.estimatedHeapBytes());
+        return bookings;
+    }
+
+    private Map<String, Object> tiers() {
+        ColdTier cold = repository.coldTier();
+        int coldBookings = cold.size();
+        Map<String, Object> tiers = new LinkedHashMap<>();
+        tiers.put("hotBookings", repository.size() - coldBookings);
+        tiers.put("coldBookings", coldBookings);
+        tiers.put("coldEstimatedHeapBytes", cold.estimatedHeapBytes());
+        tiers.put("coldBlocks", cold.blocks());
+        tiers.put("archived", cold.archived());
+        tiers.put("compactions", cold.compactions());
+        tiers.put("archiverPasses", archiver.passes());
+        return tiers;
+    }
+
+    private Map<String, Object> queries() {
+        QueryStatistics statistics = repository.statistics();
+        Map<String, Object> queries = new LinkedHashMap<>();
+        for (QueryStatistics.Query query : QueryStatistics.Query.values()) {
+            Map<String, Object> counters = new LinkedHashMap<>();
+            counters.put("calls", statistics.calls(query));
+            counters.put("examined", statistics.examined(query));
+            counters.put("returned", statistics.returned(query));
+            queries.put(camelCase(query.name()), counters);
+        }
+        return queries;
+    }
+
+    private Map<String, Object> search() {
+        Map<String, Object> search = new LinkedHashMap<>();
+        search.put("indexedBookings", searchIndex.size());
+        search.put("words", searchIndex.words());
+        search.put("compactions", searchIndex.compactions());
+        search.put("estimatedHeapBytes", searchIndex.estimatedHeapBytes());
+        return search;
+    }
+
+    private Map<String, Object> analytics() {
+        Map<String, Object> analytics = new LinkedHashMap<>();
+        analytics.put("pairs", priceAnalytics.pairs());
+        analytics.put("refills", priceAnalytics.refills());
+        analytics.put("estimatedHeapBytes", priceAnalytics.estimatedHeapBytes());
+        return analytics;
+    }
+
+    private Map<String, Object> admission() {
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("clients", admission.clients());
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("inFlight", admission.inFlight(endpointClass));
+            counts.put("admitted", admission.admitted(endpointClass));
+            counts.put("rateLimited", admission.rateLimited(endpointClass));
+            counts.put("concurrencyLimited", admission.concurrencyLimited(endpointClass));
+            limits.put(endpointClass.name().toLowerCase(Locale.ROOT), counts);
+        }
+        return limits;
+    }
+
+    private Map<String, Object> mail() {
+        Map<String, Object> mail = new LinkedHashMap<>();
+        mail.put("pending", notifications.pending());
+        mail.put("sent", notifications.sent());
+        mail.put("retried", notifications.retried());
+        mail.put("rejected", notifications.rejected());
+        mail.put("deadLetters", deadLetters.size());
+        return mail;
+    }
+
+    private Map<String, Object> departments() {
+        Map<String, Object> views = new LinkedHashMap<>();
+        for (String department : departments.departments()) {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("applied", departments.applied(department));
+            view.put("rebuilds", departments.rebuilds(department));
+            view.put("retained", departments.retained(department));
+            views.put(department, view);
+        }
+        return views;
+    }
+
+    private Map<String, Object> caches() {
+        Map<String, Object> departmentViews = new LinkedHashMap<>();
+        departmentViews.put("hits", departments.hits());
+        departmentViews.put("misses", departments.misses());
+        departmentViews.put("evictions", departments.evictions());
+        departmentViews.put("loads", departments.loads());
+        departmentViews.put("retainedBookings", departments.retained());
+        departmentViews.put("maxBookings", departments.maxBookings());
+        departmentViews.put("formattedBookings", internal.formatted());
+        Map<String, Object> caches = new LinkedHashMap<>();
+        caches.put("departmentViews", departmentViews);
+        return caches;
+    }
+
+    private Map<String, Object> feed() {
+        Map<String, Object> feed = new LinkedHashMap<>();
+        feed.put("subscribers", changeFeed.subscribers());
+        feed.put("published", changeFeed.published());
+        feed.put("delivered", changeFeed.delivered());
+        feed.put("dropped", changeFeed.dropped());
+        feed.put("overflows", changeFeed.overflows());
+        return feed;
+    }
+
+    private static Map<String, Object> heap() {
+        MemoryUsage usage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        Map<String, Object> heap = new LinkedHashMap<>();
+        heap.put("usedBytes", usage.getUsed());
+        heap.put("committedBytes", usage.getCommitted());
+        heap.put("maxBytes", usage.getMax());
+        return heap;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static String camelCase(String constant) {
+        StringBuilder result = new StringBuilder();
+        for (String word : constant.toLowerCase(Locale.ROOT).split("_")) {
+            result.append(result.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package com.statista.code.challenge.metrics;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the latency of every request in a {@link LatencyHistogram} per endpoint, where an endpoint is the HTTP
+ * method and the matched request mapping pattern, e.g. {@code GET /bookingservice/bookings/{bookingId}}.
+ * <p>
+ * Patterns are the strings Spring MVC registered at startup, so a lookup neither parses the path nor builds a key;
+ * after the first request of an endpoint, recording a synchronous request does not allocate. Streamed responses
+ * are recorded when the async request completes.
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    static final String UNMATCHED = "unmatched";
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    private final Map<String, AtomicReferenceArray<LatencyHistogram>> endpoints = new ConcurrentHashMap<>();
+    private final AtomicLongArray statusClasses = new AtomicLongArray(6);
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()){
+                request.getAsyncContext().addListener(new CompletionListener(request, response, start));
+            } else {
+                record(request, response, start);
+            }
+        }
+    }
+
+    /**
+     * @return the latency histograms by {@code "METHOD pattern"}, sorted by key
+     */
+    public Map<String, LatencyHistogram> endpoints() {
+        Map<String, LatencyHistogram> result = new TreeMap<>();
+        endpoints.forEach((pattern, histograms) -> {
+            for (int i = 0; i < METHODS.length; i++) {
+                LatencyHistogram histogram = histograms.get(i);
+                if (histogram != null){
+                    result.put(METHODS[i] + " " + pattern, histogram);
+                }
+            }
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return the number of responses per status class, e.g. {@code "2xx" -> 10}
+     */
+    public Map<String, Long> statusClasses() {
+        Map<String, Long> result = new TreeMap<>();
+        for (int i = 1; i < statusClasses.length(); i++) {
+            long count = statusClasses.get(i);
+            if (count != 0){
+                result.put(i + "xx", count);
+            }
+        }
+        return result;
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, long start) {
+        long elapsed = System.nanoTime() - start;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        if (method != null){
+            histogram(pattern instanceof String ? (String) pattern : UNMATCHED, method).record(elapsed);
+        }
+        int statusClass = response.getStatus() / 100;
+        if (statusClass > 0 && statusClass < statusClasses.length()){
+            statusClasses.incrementAndGet(statusClass);
+        }
+    }
+
+    private LatencyHistogram histogram(String pattern, HttpMethod method) {
+        AtomicReferenceArray<LatencyHistogram> histograms = endpoints.get(pattern);
+        if (histograms == null){
+            histograms = endpoints.computeIfAbsent(pattern, p -> new AtomicReferenceArray<>(METHODS.length));
+        }
+        LatencyHistogram histogram = histograms.get(method.ordinal());
+        if (histogram == null){
+            histograms.compareAndSet(method.ordinal(), null, new LatencyHistogram());
+            histogram = histograms.get(method.ordinal());
+        }
+        return histogram;
+    }
+
+    private final class CompletionListener implements AsyncListener {
+
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long start;
+
+        CompletionListener(HttpServletRequest request, HttpServletResponse response, long start) {
+            this.request = request;
+            this.response = response;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response, start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
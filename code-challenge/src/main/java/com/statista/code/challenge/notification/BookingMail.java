@@ -0,0 +1,23 @@
+package com.statista.code.challenge.notification;
+
+import com.statista.code.challenge.entity.Booking;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BookingMail {
+
+    private String to;
+    private String subject;
+    private String body;
+
+    public static BookingMail confirmation(Booking booking) {
+        String body = "Your booking " + booking.getId() + " has been created.\n"
+                + "Description: " + booking.getDescription() + "\n"
+                + "Price: " + booking.getPrice() + " " + booking.getCurrency() + "\n"
+                + "Subscription start: " + booking.getSubscriptionStartDate() + "\n"
+                + "Department: " + booking.getDepartment() + "\n";
+        return new BookingMail(booking.getEmail(), "Booking " + booking.getId() + " confirmed", body);
+    }
+}
@@ -0,0 +1,57 @@
+package com.statista.code.challenge.notification;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Mails that could not be delivered after all retries. Keeps at most {@code bookings.mail.dead-letter-capacity}
+ * entries; when full the oldest entry is evicted and counted in {@link #evicted()}.
+ */
+@Component
+public class DeadLetterStore {
+
+    private final int capacity;
+    private final Deque<DeadLetter> letters = new ArrayDeque<>();
+    private long evicted;
+
+    public DeadLetterStore(@Value("${bookings.mail.dead-letter-capacity:1000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(BookingMail mail, int attempts, String reason) {
+        if (letters.size() == capacity){
+            letters.removeFirst();
+            evicted++;
+        }
+        letters.addLast(new DeadLetter(mail, attempts, reason, System.currentTimeMillis()));
+    }
+
+    public synchronized List<DeadLetter> list() {
+        return new ArrayList<>(letters);
+    }
+
+    public synchronized int size() {
+        return letters.size();
+    }
+
+    public synchronized long evicted() {
+        return evicted;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class DeadLetter {
+
+        private BookingMail mail;
+        private int attempts;
+        private String reason;
+        private long failedAt;
+    }
+}
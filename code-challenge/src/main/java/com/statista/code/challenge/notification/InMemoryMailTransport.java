@@ -0,0 +1,80 @@
+package com.statista.code.challenge.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulated transport that keeps mails in memory, used when {@code bookings.mail.transport=in-memory} (the
+ * default). It does not speak SMTP; {@link SmtpMailTransport} does.
+ * <p>
+ * Each batch costs {@code bookings.mail.in-memory.latency-ms}, standing in for one SMTP session, and fails with
+ * probability {@code bookings.mail.in-memory.failure-rate}, so throughput, retries and backpressure can be exercised
+ * offline. Only the most recent deliveries are kept.
+ */
+@Component
+@ConditionalOnProperty(name = "bookings.mail.transport", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryMailTransport implements MailTransport {
+
+    private static final int RETAINED = 1000;
+
+    private final long latencyMs;
+    private final double failureRate;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final Deque<BookingMail> recent = new ArrayDeque<>();
+
+    public InMemoryMailTransport(@Value("${bookings.mail.in-memory.latency-ms:0}") long latencyMs,
+                                 @Value("${bookings.mail.in-memory.failure-rate:0}") double failureRate) {
+        this.latencyMs = latencyMs;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public void send(List<BookingMail> batch) throws IOException {
+        if (latencyMs > 0){
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending", e);
+            }
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate){
+            throw new IOException("Simulated SMTP failure");
+        }
+        synchronized (recent) {
+            for (BookingMail mail : batch) {
+                if (recent.size() == RETAINED){
+                    recent.removeFirst();
+                }
+                recent.addLast(mail);
+            }
+        }
+        delivered.add(batch.size());
+        batches.increment();
+    }
+
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public List<BookingMail> recent() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.statista.code.challenge.notification;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Delivers mails. Implementations receive whole batches so they can reuse one connection per flush.
+ */
+public interface MailTransport {
+
+    /**
+     * Delivers all mails of the batch or throws; a failed batch is retried as a whole.
+     */
+    void send(List<BookingMail> batch) throws IOException;
+}
@@ -0,0 +1,246 @@
+package com.statista.code.challenge.notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends booking mails off the request thread.
+ * <p>
+ * Capacity is reserved with {@link #tryReserve()} before the booking is written, so a full pipeline is reported
+ * to the client instead of silently dropping the mail or growing memory: a reservation covers the mail until it is
+ * delivered or dead-lettered, retries included, which bounds the number of mails held to
+ * {@code bookings.mail.queue-capacity}. A single dispatcher thread drains up to {@code bookings.mail.batch-size}
+ * queued mails per flush and hands them to the {@link MailTransport} as one batch. A failed batch is retried with
+ * exponential backoff; after {@code bookings.mail.max-attempts} its mails go to the {@link DeadLetterStore}.
+ * <p>
+ * {@link #stop()} sends what is queued once more and dead-letters the mails still waiting for a retry, so no
+ * reserved mail is lost without a trace.
+ */
+@Component
+public class NotificationDispatcher implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final MailTransport transport;
+    private final DeadLetterStore deadLetters;
+    private final int capacity;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final Semaphore slots;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // mails whose retry is scheduled; taken out by the retry or by stop(), whichever comes first
+    private final Set<Pending> waitingForRetry = ConcurrentHashMap.newKeySet();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile boolean running;
+    private Thread dispatcher;
+    private ScheduledExecutorService retries;
+
+    public NotificationDispatcher(MailTransport transport, DeadLetterStore deadLetters,
+                                  @Value("${bookings.mail.queue-capacity:10000}") int capacity,
+                                  @Value("${bookings.mail.batch-size:100}") int batchSize,
+                                  @Value("${bookings.mail.max-attempts:5}") int maxAttempts,
+                                  @Value("${bookings.mail.initial-backoff-ms:100}") long initialBackoffMs,
+                                  @Value("${bookings.mail.max-backoff-ms:30000}") long maxBackoffMs) {
+        this.transport = transport;
+        this.deadLetters = deadLetters;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.slots = new Semaphore(capacity);
+    }
+
+    /**
+     * Reserves room for one mail. Every successful reservation must be followed by {@link #submit(BookingMail)}
+     * or {@link #cancel()}.
+     *
+     * @return false if the pipeline is full
+     */
+    public boolean tryReserve() {
+        if (slots.tryAcquire()){
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Queues a mail for a reservation made with {@link #tryReserve()}; never blocks.
+     */
+    public void submit(BookingMail mail) {
+        queue.add(new Pending(mail));
+    }
+
+    /**
+     * Gives back a reservation that is not going to be used.
+     */
+    public void cancel() {
+        slots.release();
+    }
+
+    /**
+     * A hint for the {@code Retry-After} header of a rejected request: roughly the time a retry of the first
+     * failed batch waits, since a full queue mostly means the transport is failing or slow.
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(initialBackoffMs));
+    }
+
+    public int pending() {
+        return capacity - slots.availablePermits();
+    }
+
+    public long sent() {
+        return sent.sum();
+    }
+
+    public long retried() {
+        return retried.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "booking-mail-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = new Thread(this::dispatchLoop, "booking-mail-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (retries != null){
+            retries.shutdownNow();
+            try {
+                retries.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Pending pending : waitingForRetry) {
+                deadLetter(pending, "Shut down before retry");
+            }
+        }
+        if (dispatcher != null){
+            dispatcher.interrupt();
+            try {
+                dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void dispatchLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            deliver(batch);
+            batch.clear();
+        }
+        // drain what is already queued on shutdown, retries put back before stop() shut them down included; mails
+        // failing now are dead-lettered at once
+        queue.drainTo(batch);
+        for (int from = 0; from < batch.size(); from += batchSize) {
+            deliver(new ArrayList<>(batch.subList(from, Math.min(batch.size(), from + batchSize))));
+        }
+    }
+
+    private void deliver(List<Pending> batch) {
+        List<BookingMail> mails = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            mails.add(pending.mail);
+        }
+        try {
+            transport.send(mails);
+            sent.add(mails.size());
+            slots.release(mails.size());
+        } catch (IOException | RuntimeException e) {
+            for (Pending pending : batch) {
+                retry(pending, e);
+            }
+        }
+    }
+
+    private void retry(Pending pending, Exception cause) {
+        pending.attempts++;
+        if (pending.attempts >= maxAttempts || !running){
+            LOG.warn("Giving up on mail to {} after {} attempts", pending.mail.getTo(), pending.attempts, cause);
+            deadLetters.add(pending.mail, pending.attempts, String.valueOf(cause.getMessage()));
+            slots.release();
+            return;
+        }
+        retried.increment();
+        long backoff = Math.min(maxBackoffMs, initialBackoffMs << Math.min(pending.attempts - 1, 30));
+        waitingForRetry.add(pending);
+        try {
+            retries.schedule(() -> {
+                if (waitingForRetry.remove(pending)){
+                    queue.add(pending);
+                }
+            }, backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stop() shut the retries down after the check above
+            deadLetter(pending, String.valueOf(cause.getMessage()));
+        }
+    }
+
+    private void deadLetter(Pending pending, String reason) {
+        if (waitingForRetry.remove(pending)){
+            LOG.warn("Giving up on mail to {} after {} attempts: {}", pending.mail.getTo(), pending.attempts, reason);
+            deadLetters.add(pending.mail, pending.attempts, reason);
+            slots.release();
+        }
+    }
+
+    private static final class Pending {
+
+        private final BookingMail mail;
+        private int attempts;
+
+        Pending(BookingMail mail) {
+            this.mail = mail;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.statista.code.challenge.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Sends mails to an SMTP server, used when {@code bookings.mail.transport=smtp}. A batch is one session on one
+ * connection: {@code EHLO}, then {@code MAIL FROM}, {@code RCPT TO} and {@code DATA} per mail, then {@code QUIT}.
+ * Any reply other than the expected one fails the whole batch, mails the server accepted before included, so a
+ * retried batch may deliver some of them twice.
+ * <p>
+ * Bodies are sent as UTF-8 text with an 8bit transfer encoding; line breaks in header values are replaced with
+ * spaces so that a booking's e-mail address or description cannot add headers.
+ */
+@Component
+@ConditionalOnProperty(name = "bookings.mail.transport", havingValue = "smtp")
+public class SmtpMailTransport implements MailTransport {
+
+    private final String host;
+    private final int port;
+    private final String from;
+    private final int timeoutMs;
+
+    public SmtpMailTransport(@Value("${bookings.mail.smtp.host:localhost}") String host,
+                             @Value("${bookings.mail.smtp.port:25}") int port,
+                             @Value("${bookings.mail.smtp.from:bookings@localhost}") String from,
+                             @Value("${bookings.mail.smtp.timeout-ms:10000}") int timeoutMs) {
+        this.host = host;
+        this.port = port;
+        this.from = from;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public void send(List<BookingMail> batch) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            Session session = new Session(socket);
+            session.expect(220);
+            session.command("EHLO [" + socket.getLocalAddress().getHostAddress() + "]", 250);
+            for (BookingMail mail : batch) {
+                session.command("MAIL FROM:<" + headerValue(from) + ">", 250);
+                session.command("RCPT TO:<" + headerValue(mail.getTo()) + ">", 250, 251);
+                session.command("DATA", 354);
+                session.data(message(mail));
+                session.expect(250);
+            }
+            session.command("QUIT", 221);
+        }
+    }
+
+    private String message(BookingMail mail) {
+        return "From: <" + headerValue(from) + ">\r\n"
+                + "To: <" + headerValue(mail.getTo()) + ">\r\n"
+                + "Subject: " + headerValue(mail.getSubject()) + "\r\n"
+                + "MIME-Version: 1.0\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n"
+                + "Content-Transfer-Encoding: 8bit\r\n"
+                + "\r\n"
+                + mail.getBody();
+    }
+
+    private static String headerValue(String value) {
+        return value == null ? "" : value.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * The reading and writing side of one SMTP connection.
+     */
+    private static final class Session {
+
+        private final BufferedReader in;
+        private final OutputStream out;
+
+        Session(Socket socket) throws IOException {
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = socket.getOutputStream();
+        }
+
+        void command(String command, int... expected) throws IOException {
+            write(command + "\r\n");
+            expect(expected);
+        }
+
+        /**
+         * Sends a message with normalized line breaks and dot-stuffing, followed by the terminating dot.
+         */
+        void data(String message) throws IOException {
+            StringBuilder data = new StringBuilder(message.length() + 16);
+            String[] lines = message.split("\r?\n", -1);
+            // a message ending with a line break has no line after it
+            int count = lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+            for (int i = 0; i < count; i++) {
+                if (lines[i].startsWith(".")){
+                    data.append('.');
+                }
+                data.append(lines[i]).append("\r\n");
+            }
+            write(data.append(".\r\n").toString());
+        }
+
+        /**
+         * Reads a reply, all its continuation lines included, and fails unless its code is one of the expected.
+         */
+        void expect(int... expected) throws IOException {
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null){
+                    throw new IOException("SMTP server closed the connection");
+                }
+            } while (line.length() > 3 && line.charAt(3) == '-');
+            int code;
+            try {
+                code = Integer.parseInt(line.substring(0, Math.min(3, line.length())));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed SMTP reply: " + line);
+            }
+            for (int accepted : expected) {
+                if (code == accepted){
+                    return;
+                }
+            }
+            throw new IOException("SMTP server replied " + line);
+        }
+
+        private void write(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+}
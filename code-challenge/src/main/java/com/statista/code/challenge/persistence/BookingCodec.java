@@ -0,0 +1,92 @@
+package com.statista.code.challenge.persistence;
+
+import com.statista.code.challenge.entity.Booking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+
+/**
+ * Binary layout of a booking, shared by the write-ahead log and the snapshots:
+ * <pre>
+ * string id, string description, double price, string currency code, byte hasDate, [long date],
+ * string email, string department
+ * </pre>
+ * where a string is an int byte length ({@code -1} for null) followed by UTF-8 bytes.
+ */
+final class BookingCodec {
+
+    private BookingCodec() {
+    }
+
+    static byte[] encode(Booking booking) {
+        byte[] id = utf8(booking.getId());
+        byte[] description = utf8(booking.getDescription());
+        byte[] currency = utf8(booking.getCurrency() == null ? null : booking.getCurrency().getCurrencyCode());
+        byte[] email = utf8(booking.getEmail());
+        byte[] department = utf8(booking.getDepartment());
+        Long startDate = booking.getSubscriptionStartDate();
+        int size = size(id) + size(description) + Double.BYTES + size(currency) + 1
+                + (startDate == null ? 0 : Long.BYTES) + size(email) + size(department);
+        ByteBuffer out = ByteBuffer.allocate(size);
+        put(out, id);
+        put(out, description);
+        out.putDouble(booking.getPrice());
+        put(out, currency);
+        if (startDate == null){
+            out.put((byte) 0);
+        } else {
+            out.put((byte) 1);
+            out.putLong(startDate);
+        }
+        put(out, email);
+        put(out, department);
+        return out.array();
+    }
+
+    static Booking decode(ByteBuffer in) {
+        String id = getString(in);
+        String description = getString(in);
+        double price = in.getDouble();
+        String currencyCode = getString(in);
+        Long startDate = in.get() == 0 ? null : in.getLong();
+        String email = getString(in);
+        String department = getString(in);
+        return new Booking(id, description, price, currencyCode == null ? null : Currency.getInstance(currencyCode),
+                startDate, email, department);
+    }
+
+    static byte[] encodeString(String value) {
+        byte[] bytes = utf8(value);
+        ByteBuffer out = ByteBuffer.allocate(size(bytes));
+        put(out, bytes);
+        return out.array();
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int size(byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void put(ByteBuffer out, byte[] bytes) {
+        if (bytes == null){
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+}
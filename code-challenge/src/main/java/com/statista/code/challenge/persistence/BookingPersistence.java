@@ -0,0 +1,278 @@
+package com.statista.code.challenge.persistence;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import com.statista.code.challenge.repository.BookingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Optional durability for the booking store, enabled with {@code bookings.persistence.enabled=true}.
+ * <p>
+ * Every repository write is appended to a {@link WriteAheadLog}. A background job periodically rotates the log,
+ * writes a {@link SnapshotFile} of the whole store and then drops the log segments and snapshots it supersedes.
+ * On startup, before the web server accepts requests, the latest snapshot is loaded and the log segments written
+ * after it are replayed through the repository, so aggregates and indexes are rebuilt as a side effect.
+ * <p>
+ * Writers call {@link #awaitDurable()} after a repository write; it returns once every write logged before the call
+ * is as durable as the configured {@link SyncMode} promises, including the parts of a batch that a partitioned store
+ * wrote on other threads. Once the log cannot be written any more, new writes are rejected before they
+ * change the store and waiting writers get the error.
+ * <p>
+ * Repository writes hold a read lock of a gate from {@link #beginWrite()} to {@link #endWrite()}, and the log is
+ * rotated under its write lock: a write is logged before the store publishes it, so without the gate a snapshot
+ * taken right after the rotation could miss a write whose record is in a segment the snapshot deletes.
+ */
+@Component
+public class BookingPersistence implements BookingChangeListener, SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BookingPersistence.class);
+    private static final int RECOVERY_BATCH = 10_000;
+
+    private final ObjectProvider<BookingRepository> repository;
+    private final boolean enabled;
+    private final Path directory;
+    private final SyncMode syncMode;
+    private final long syncIntervalMs;
+    private final long snapshotIntervalMs;
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();
+
+    private volatile WriteAheadLog log;
+    private volatile boolean running;
+    private ScheduledExecutorService snapshots;
+
+    public BookingPersistence(ObjectProvider<BookingRepository> repository,
+                              @Value("${bookings.persistence.enabled:false}") boolean enabled,
+                              @Value("${bookings.persistence.directory:data}") String directory,
+                              @Value("${bookings.persistence.sync:interval}") String syncMode,
+                              @Value("${bookings.persistence.sync-interval-ms:10}") long syncIntervalMs,
+                              @Value("${bookings.persistence.snapshot-interval-ms:600000}") long snapshotIntervalMs) {
+        this.repository = repository;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.syncMode = SyncMode.valueOf(syncMode.toUpperCase(Locale.ROOT));
+        this.syncIntervalMs = syncIntervalMs;
+        this.snapshotIntervalMs = snapshotIntervalMs;
+    }
+
+    @Override
+    public void beginWrite() {
+        if (!enabled){
+            return;
+        }
+        gate.readLock().lock();
+        WriteAheadLog currentLog = log;
+        IOException failure = currentLog == null ? null : currentLog.failure();
+        if (failure != null){
+            gate.readLock().unlock();
+            throw new UncheckedIOException("Booking log is not writable", failure);
+        }
+    }
+
+    @Override
+    public void endWrite() {
+        if (enabled){
+            gate.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        WriteAheadLog currentLog = log;
+        if (currentLog == null){
+            return;
+        }
+        if (current != null){
+            currentLog.append(WriteAheadLog.PUT, BookingCodec.encode(current));
+        } else {
+            currentLog.append(WriteAheadLog.DELETE, BookingCodec.encodeString(previous.getId()));
+        }
+    }
+
+    /**
+     * Waits until every write logged before the call is durable, whichever thread logged it: a batch returns once
+     * all of its parts are logged, so this covers the parts other threads wrote for the caller. A group sync writes
+     * out everything appended, so this waits at most one sync round longer than waiting for the caller's own
+     * records would. A no-op unless persistence is enabled with {@link SyncMode#GROUP}.
+     */
+    public void awaitDurable() {
+        WriteAheadLog currentLog = log;
+        if (currentLog != null){
+            currentLog.awaitDurable(currentLog.appended());
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current store and removes the log segments and snapshots it makes obsolete. The log
+     * is rotated while no write is in flight, so every write logged in an older segment is visible to the snapshot.
+     */
+    public synchronized void snapshot() throws IOException {
+        WriteAheadLog currentLog = log;
+        if (currentLog == null){
+            return;
+        }
+        long start = System.nanoTime();
+        long segment;
+        gate.writeLock().lock();
+        try {
+            segment = currentLog.rotate();
+        } finally {
+            gate.writeLock().unlock();
+        }
+        Path target = directory.resolve(SnapshotFile.fileName(segment));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        long count;
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(temporary, segment)) {
+            repository.getObject().forEach(booking -> {
+                try {
+                    writer.write(booking);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            count = writer.count();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        for (Path file : list()) {
+            if ((SnapshotFile.isSnapshot(file) && SnapshotFile.segmentNumber(file) < segment)
+                    || (WriteAheadLog.isSegment(file) && WriteAheadLog.segmentNumber(file) < segment)){
+                Files.delete(file);
+            }
+        }
+        LOG.info("Wrote booking snapshot {} with {} bookings in {} ms", target, count,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!enabled){
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            log = new WriteAheadLog(directory, recover(), syncMode, syncIntervalMs);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover bookings from " + directory.toAbsolutePath(), e);
+        }
+        snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "booking-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Booking snapshot failed", e);
+            }
+        }, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (snapshots != null){
+            snapshots.shutdownNow();
+        }
+        WriteAheadLog currentLog = log;
+        log = null;
+        if (currentLog != null){
+            try {
+                currentLog.close();
+            } catch (IOException e) {
+                LOG.error("Could not close booking log", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before the embedded web server, which runs in the last lifecycle phases.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Loads the latest snapshot and replays the newer log segments. Runs before {@link #log} is set, so replayed
+     * writes are not logged again.
+     *
+     * @return the number of the log segment new writes go to
+     */
+    private long recover() throws IOException {
+        long start = System.nanoTime();
+        BookingRepository bookings = repository.getObject();
+        List<Path> files = list();
+        Path snapshot = files.stream().filter(SnapshotFile::isSnapshot)
+                .max((a, b) -> Long.compare(SnapshotFile.segmentNumber(a), SnapshotFile.segmentNumber(b)))
+                .orElse(null);
+        long firstSegment = 0;
+        if (snapshot != null){
+            List<Booking> batch = new ArrayList<>(RECOVERY_BATCH);
+            firstSegment = SnapshotFile.read(snapshot, booking -> {
+                batch.add(booking);
+                if (batch.size() == RECOVERY_BATCH){
+                    bookings.saveAll(batch);
+                    batch.clear();
+                }
+            });
+            bookings.saveAll(batch);
+        }
+        long nextSegment = firstSegment;
+        for (Path segment : files) {
+            if (!WriteAheadLog.isSegment(segment) || WriteAheadLog.segmentNumber(segment) < firstSegment){
+                continue;
+            }
+            WriteAheadLog.replay(segment, (type, payload) -> {
+                if (type == WriteAheadLog.PUT){
+                    bookings.saveOrUpdate(BookingCodec.decode(payload));
+                } else if (type == WriteAheadLog.DELETE){
+                    bookings.delete(BookingCodec.getString(payload));
+                }
+            });
+            nextSegment = WriteAheadLog.segmentNumber(segment) + 1;
+        }
+        LOG.info("Recovered {} bookings from {} in {} ms", bookings.size(), directory.toAbsolutePath(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return nextSegment;
+    }
+
+    /**
+     * @return the files of the persistence directory, sorted by name and therefore by segment number
+     */
+    private List<Path> list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.statista.code.challenge.persistence;
+
+import com.statista.code.challenge.entity.Booking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of all bookings, written and read through memory-mapped windows of the file.
+ * <pre>
+ * int magic, int format version, long first log segment to replay,
+ * { int length, booking }*, int -1, long booking count, long crc32 of all booking bytes
+ * </pre>
+ * Snapshots are written to a temporary name and renamed once complete, so a snapshot file that exists is either
+ * whole or detectably corrupt.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x424B534E;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int TRAILER = Integer.BYTES + Long.BYTES + Long.BYTES;
+    private static final long WINDOW = 64L << 20;
+
+    private SnapshotFile() {
+    }
+
+    static String fileName(long segment) {
+        return String.format("snapshot-%020d.bin", segment);
+    }
+
+    static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("snapshot-".length(), name.length() - ".bin".length()));
+    }
+
+    static boolean isSnapshot(Path file) {
+        return file.getFileName().toString().matches("snapshot-\\d{20}\\.bin");
+    }
+
+    /**
+     * Reads all bookings of a snapshot.
+     *
+     * @return the first log segment to replay on top of the snapshot
+     */
+    static long read(Path file, Consumer<Booking> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Window window = new Window(channel, FileChannel.MapMode.READ_ONLY);
+            window.require(HEADER);
+            if (window.buffer.getInt() != MAGIC || window.buffer.getInt() != FORMAT_VERSION){
+                throw new IOException("Not a booking snapshot: " + file);
+            }
+            long segment = window.buffer.getLong();
+            CRC32 crc = new CRC32();
+            long count = 0;
+            while (true) {
+                window.require(Integer.BYTES);
+                int length = window.buffer.getInt();
+                if (length < 0){
+                    break;
+                }
+                window.require(length);
+                byte[] payload = new byte[length];
+                window.buffer.get(payload);
+                crc.update(payload, 0, length);
+                consumer.accept(BookingCodec.decode(ByteBuffer.wrap(payload)));
+                count++;
+            }
+            window.require(Long.BYTES + Long.BYTES);
+            if (window.buffer.getLong() != count || window.buffer.getLong() != crc.getValue()){
+                throw new IOException("Corrupt booking snapshot: " + file);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Streams bookings into a new snapshot file.
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final Window window;
+        private final CRC32 crc = new CRC32();
+        private long count;
+
+        Writer(Path file, long segment) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            window = new Window(channel, FileChannel.MapMode.READ_WRITE);
+            window.require(HEADER);
+            window.buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(segment);
+        }
+
+        void write(Booking booking) throws IOException {
+            byte[] payload = BookingCodec.encode(booking);
+            window.require(Integer.BYTES + payload.length);
+            window.buffer.putInt(payload.length).put(payload);
+            crc.update(payload, 0, payload.length);
+            count++;
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            window.require(TRAILER);
+            window.buffer.putInt(-1).putLong(count).putLong(crc.getValue());
+            window.buffer.force();
+            channel.truncate(window.position());
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    /**
+     * A mapped region of the file that is moved forward whenever the next read or write does not fit in it.
+     */
+    private static final class Window {
+
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private MappedByteBuffer buffer;
+        private long start;
+
+        Window(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+            this.channel = channel;
+            this.mode = mode;
+            map(0, 0);
+        }
+
+        long position() {
+            return start + buffer.position();
+        }
+
+        void require(int bytes) throws IOException {
+            if (buffer.remaining() < bytes){
+                if (mode == FileChannel.MapMode.READ_WRITE){
+                    buffer.force();
+                }
+                map(position(), bytes);
+                if (buffer.remaining() < bytes){
+                    throw new IOException("Truncated booking snapshot");
+                }
+            }
+        }
+
+        private void map(long position, int minimum) throws IOException {
+            long length = Math.max(WINDOW, minimum);
+            if (mode == FileChannel.MapMode.READ_ONLY){
+                length = Math.min(length, channel.size() - position);
+            }
+            start = position;
+            buffer = channel.map(mode, position, length);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.statista.code.challenge.persistence;
+
+/**
+ * When the write-ahead log is forced to disk, set with {@code bookings.persistence.sync}.
+ */
+public enum SyncMode {
+
+    /**
+     * Group commit: a write is acknowledged only after an fsync covering it. One fsync covers every record
+     * appended while the previous one was running, so concurrent writers share the cost.
+     */
+    GROUP,
+
+    /**
+     * The log is flushed and forced every {@code bookings.persistence.sync-interval-ms}; writes do not wait.
+     * A crash can lose up to one interval of acknowledged writes.
+     */
+    INTERVAL,
+
+    /**
+     * The log is flushed to the OS every interval but never forced; survives a process crash, not a power loss.
+     */
+    NONE
+}
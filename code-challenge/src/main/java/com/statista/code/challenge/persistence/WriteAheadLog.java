@@ -0,0 +1,294 @@
+package com.statista.code.challenge.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of booking writes, split into numbered segment files {@code wal-<segment>.log}.
+ * <p>
+ * A record is {@code int payloadLength, byte type, payload, int crc32(type, payload)}. Appends only copy the
+ * record into an in-memory buffer; a background flusher writes the buffer to the current segment and forces it
+ * according to the {@link SyncMode}. Replay stops at the first incomplete or corrupt record, which is where a
+ * crash in the middle of a write leaves the tail of the last segment.
+ * <p>
+ * The first failed write or fsync is kept: the flusher stops, waiting writers and later ones get it as
+ * {@link UncheckedIOException}, and {@link #failure()} reports it so that new writes can be turned away.
+ */
+class WriteAheadLog implements Closeable {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    private static final int INITIAL_BUFFER = 1 << 20;
+    private static final int FRAMING = Integer.BYTES + 1 + Integer.BYTES;
+
+    private final Path directory;
+    private final SyncMode mode;
+    private final long syncIntervalMs;
+    private final CRC32 crc = new CRC32();
+    private final Object flushLock = new Object();
+    private final Object durableMonitor = new Object();
+    private final Thread flusher;
+
+    // guarded by this
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    private long appended;
+    // guarded by flushLock
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+    private FileChannel channel;
+    private long segment;
+
+    private volatile long durable;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    WriteAheadLog(Path directory, long segment, SyncMode mode, long syncIntervalMs) throws IOException {
+        this.directory = directory;
+        this.mode = mode;
+        this.syncIntervalMs = syncIntervalMs;
+        this.segment = segment;
+        this.channel = open(segment);
+        this.flusher = new Thread(this::flushLoop, "booking-wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    static String segmentName(long segment) {
+        return String.format("wal-%020d.log", segment);
+    }
+
+    static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length()));
+    }
+
+    static boolean isSegment(Path file) {
+        return file.getFileName().toString().matches("wal-\\d{20}\\.log");
+    }
+
+    /**
+     * @return the log position after this record, to be passed to {@link #awaitDurable(long)}
+     */
+    synchronized long append(byte type, byte[] payload) {
+        int size = FRAMING + payload.length;
+        if (pending.remaining() < size){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        crc.reset();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        pending.putInt(payload.length).put(type).put(payload).putInt((int) crc.getValue());
+        appended += size;
+        if (mode == SyncMode.GROUP){
+            notifyAll();
+        }
+        return appended;
+    }
+
+    /**
+     * @return the log position after the last record appended
+     */
+    synchronized long appended() {
+        return appended;
+    }
+
+    /**
+     * Blocks until the log is durable up to {@code position}. Only {@link SyncMode#GROUP} waits; the other modes
+     * acknowledge writes as soon as they are appended.
+     */
+    void awaitDurable(long position) {
+        if (mode != SyncMode.GROUP){
+            return;
+        }
+        synchronized (durableMonitor) {
+            while (durable < position && !closed) {
+                if (failure != null){
+                    throw new UncheckedIOException("Could not write booking log segment " + segment, failure);
+                }
+                try {
+                    durableMonitor.wait(syncIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the error that stopped the log from being written, or {@code null}
+     */
+    IOException failure() {
+        return failure;
+    }
+
+    /**
+     * Flushes and forces the current segment and starts the next one.
+     *
+     * @return the number of the new segment; every record appended before this call is in an older segment
+     */
+    long rotate() throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                flush(true);
+                channel.close();
+                segment++;
+                channel = open(segment);
+                return segment;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            synchronized (flushLock) {
+                try {
+                    flush(true);
+                } finally {
+                    channel.close();
+                }
+            }
+        } finally {
+            synchronized (durableMonitor) {
+                durableMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads every complete record of a segment in order. A length longer than the rest of the file ends the log like
+     * a torn record, instead of allocating for it.
+     */
+    static void replay(Path file, RecordHandler handler) throws IOException {
+        CRC32 checksum = new CRC32();
+        long remaining = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int length;
+                byte type;
+                byte[] payload;
+                int storedChecksum;
+                try {
+                    length = in.readInt();
+                    remaining -= FRAMING;
+                    if (length < 0 || length > remaining){
+                        return;
+                    }
+                    remaining -= length;
+                    type = in.readByte();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    storedChecksum = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                checksum.reset();
+                checksum.update(type);
+                checksum.update(payload, 0, length);
+                if (storedChecksum != (int) checksum.getValue()){
+                    return;
+                }
+                handler.onRecord(type, ByteBuffer.wrap(payload));
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                synchronized (this) {
+                    if (pending.position() == 0 || mode != SyncMode.GROUP){
+                        wait(syncIntervalMs);
+                    }
+                }
+                synchronized (flushLock) {
+                    flush(mode != SyncMode.NONE);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                // kept by flush, which woke up the waiting writers
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes everything appended so far to the current segment. Caller holds {@code flushLock}; appends may
+     * continue into the other buffer while the write and the fsync run.
+     */
+    private void flush(boolean force) throws IOException {
+        if (failure != null){
+            throw failure;
+        }
+        try {
+            write(force);
+        } catch (IOException e) {
+            failure = e;
+            synchronized (durableMonitor) {
+                durableMonitor.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private void write(boolean force) throws IOException {
+        ByteBuffer full;
+        long position;
+        synchronized (this) {
+            if (pending.position() == 0 && durable == appended){
+                return;
+            }
+            full = pending;
+            pending = spare;
+            position = appended;
+        }
+        full.flip();
+        while (full.hasRemaining()) {
+            channel.write(full);
+        }
+        full.clear();
+        spare = full;
+        if (force){
+            channel.force(false);
+        }
+        synchronized (durableMonitor) {
+            durable = position;
+            durableMonitor.notifyAll();
+        }
+    }
+
+    private FileChannel open(long segment) throws IOException {
+        return FileChannel.open(directory.resolve(segmentName(segment)), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    interface RecordHandler {
+
+        void onRecord(byte type, ByteBuffer payload);
+    }
+}
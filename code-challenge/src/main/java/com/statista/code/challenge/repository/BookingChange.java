@@ -0,0 +1,16 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * One applied write: {@code previous} is {@code null} for a create, {@code current} is {@code null} for a delete.
+ */
+@Data
+@AllArgsConstructor
+public class BookingChange {
+
+    private Booking previous;
+    private Booking current;
+}
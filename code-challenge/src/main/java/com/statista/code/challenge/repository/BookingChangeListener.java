@@ -0,0 +1,61 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+
+import java.util.List;
+
+/**
+ * Callback for state derived from the booking store. {@link BookingRepository} invokes it once per write while
+ * holding the write lock for the booking id, so changes to the same booking are delivered in order.
+ * Batches stored with {@link BookingRepository#saveAll(List)} are delivered through {@link #onChanges(List)} once
+ * the whole batch has been applied. Implementations must be thread-safe, cheap and must not call back into the repository.
+ * <p>
+ * A listener that can fail on a booking it derives state from must fail in {@link #check(Booking)}, which runs
+ * before the repository changes anything, and not in {@link #onChange(Booking, Booking)}, which runs in the middle of
+ * the write.
+ */
+public interface BookingChangeListener {
+
+    /**
+     * Called for every booking about to be stored, before the repository changes anything; for a batch, for all of
+     * its bookings before the first one is stored. Throwing rejects the write or the whole batch.
+     */
+    default void check(Booking booking) {
+    }
+
+    /**
+     * Called before every write, batch or delete starts, including writes that turn out not to change anything, and
+     * followed by {@link #endWrite()} once the write is complete and visible to readers. Throwing rejects the write
+     * before the repository changes anything.
+     */
+    default void beginWrite() {
+    }
+
+    /**
+     * Called once the write announced by {@link #beginWrite()} is complete, also when it failed.
+     */
+    default void endWrite() {
+    }
+
+    /**
+     * @param previous the booking stored before the write, or {@code null} for a create
+     * @param current  the booking stored after the write, or {@code null} for a delete
+     */
+    void onChange(Booking previous, Booking current);
+
+    /**
+     * Called once per batch write. Listeners that can fold a batch into fewer updates should override this.
+     */
+    default void onChanges(List<BookingChange> changes) {
+        for (BookingChange change : changes) {
+            onChange(change.getPrevious(), change.getCurrent());
+        }
+    }
+
+    /**
+     * Called after bookings moved to the cold tier. They are unchanged and still stored, but no longer listed by
+     * department or currency; state derived from those listings should be invalidated.
+     */
+    default void onArchive(List<Booking> archived) {
+    }
+}
@@ -1,72 +1,125 @@
 package com.statista.code.challenge.repository;
 
 import com.statista.code.challenge.entity.Booking;
-import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Currency;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-
-@Repository
-public class BookingRepository {
-
-    private Map<String, Booking> bookings = new ConcurrentHashMap<>();
-
-    public Booking saveOrUpdate(Booking booking){
-        if (booking.getId() == null){
-            booking.setId(UUID.randomUUID().toString());
-        }
-        bookings.put(booking.getId(), booking);
-
-        return booking;
-    }
-
-    public Booking find(String id){
-        if (id == null){
-            return null;
-        }
-        return bookings.get(id);
-    }
-
-    public Collection<Booking> findAll(){
-        return bookings.values();
-    }
-
-    public List findByDepartment(String department) {
-        List<Booking> result = new ArrayList<>();
-        var bookings = findAll();
-        for (Booking booking: bookings) {
-            if (Objects.equals(booking.getDepartment(), department)){
-                result.add(booking);
-            }
-        }
-        return result;
-    }
-
-    public Set findCurrenciesUsed() {
-        Set<Currency> result = new HashSet<>();
-        var bookings = findAll();
-        for (Booking booking : bookings) {
-            result.add(booking.getCurrency());
-        }
-        return result;
-    }
-
-    public List findByCurrency(String currency) {
-        List<Booking> result = new ArrayList<>();
-        var bookings = findAll();
-        for (Booking booking : bookings){
-            if (Objects.equals(booking.getCurrency().getCurrencyCode(), currency)){
-                result.add(booking);
-            }
-        }
-        return result;
-    }
+import java.util.function.Consumer;
+
+/**
+ * Booking store. The implementation is chosen with the {@code bookings.store} property:
+ * {@code map} (default, {@link InMemoryBookingRepository}), {@code columnar} ({@link ColumnarBookingRepository})
+ * or {@code partitioned} ({@link PartitionedBookingRepository}).
+ * Implementations report every write to the registered {@link BookingChangeListener}s.
+ * <p>
+ * Bookings are kept in a hot tier, indexed for listings, and a compressed {@link ColdTier} that bookings move to
+ * when they are {@link #archive archived}. Reads by id, {@link #forEach}, {@link #size()} and the aggregates kept by
+ * listeners cover both tiers; listings, {@link #findAll()} and {@link #estimatedHeapBytes()} cover the hot tier
+ * only. A write to an archived booking brings it back to the hot tier, with the archived booking as the previous
+ * one reported to the listeners.
+ */
+public interface BookingRepository {
+
+    /**
+     * Stores the booking, assigning a random UUID if it has no id yet, and replaces any booking with the same id.
+     * Every write gives the stored booking a new, larger {@link Booking#getVersion() version}.
+     */
+    Booking saveOrUpdate(Booking booking);
+
+    /**
+     * Stores the booking only if no booking with its id is stored, as one atomic step. Assigns a random UUID if it
+     * has no id yet.
+     *
+     * @return the booking already stored under the id, or {@code null} if the booking was stored
+     */
+    Booking create(Booking booking);
+
+    /**
+     * Replaces the booking stored under the id of the given one, as one atomic step, but only if there is one and,
+     * when {@code expectedVersion} is not {@code null}, its version equals it.
+     *
+     * @return the booking stored before the call, or {@code null} if there was none; the booking was replaced if
+     * the result is not {@code null} and has the expected version
+     */
+    Booking replace(Booking booking, Long expectedVersion);
+
+    /**
+     * Stores a batch of bookings with the same semantics as {@link #saveOrUpdate(Booking)}, but reports all of
+     * the resulting changes to the listeners in one {@link BookingChangeListener#onChanges(List)} call, or in one
+     * call per shard for the {@link PartitionedBookingRepository}.
+     */
+    List<Booking> saveAll(List<Booking> batch);
+
+    /**
+     * Stores a batch of bookings with the same semantics as {@link #create(Booking)}: each booking is stored only if
+     * no booking with its id is stored, checked and written as one atomic step. The stored ones are reported to the
+     * listeners like a {@link #saveAll(List)} batch.
+     *
+     * @return the bookings of the batch that were not stored because their id was taken
+     */
+    List<Booking> createAll(List<Booking> batch);
+
+    /**
+     * @return the removed booking, or {@code null} if there was none
+     */
+    Booking delete(String id);
+
+    Booking find(String id);
+
+    /**
+     * @return the bookings of the hot tier
+     */
+    Collection<Booking> findAll();
+
+    /**
+     * Visits every stored booking without building a collection first. Bookings written concurrently may or may
+     * not be visited, but every booking that stays unchanged for the whole call is visited exactly once.
+     */
+    void forEach(Consumer<Booking> action);
+
+    int size();
+
+    List<Booking> findByDepartment(String department);
+
+    /**
+     * One page of a department listing in ascending id order.
+     *
+     * @param after id of the last booking of the previous page, {@code null} for the first page
+     * @param limit maximum number of bookings to return
+     */
+    List<Booking> findByDepartment(String department, String after, int limit);
+
+    Set<Currency> findCurrenciesUsed();
+
+    /**
+     * @return a counter that changes whenever {@link #findCurrenciesUsed()} starts returning a different set; read
+     * it before the set it tags
+     */
+    long currenciesVersion();
+
+    List<Booking> findByCurrency(String currency);
+
+    /**
+     * @return counters of the entries each query examined and returned
+     */
+    QueryStatistics statistics();
+
+    /**
+     * @return an estimate of the heap retained by the bookings of the hot tier and their indexes, in bytes
+     */
+    long estimatedHeapBytes();
+
+    /**
+     * Moves bookings from the hot tier to the cold tier, each one only if it is still stored with the version it
+     * has in the given collection, and reports the moved ones through {@link BookingChangeListener#onArchive(List)}.
+     * Archiving is not a write: versions and aggregates do not change, and currencies of archived bookings still
+     * count as used.
+     *
+     * @return the bookings that were moved
+     */
+    List<Booking> archive(Collection<Booking> bookings);
+
+    ColdTier coldTier();
 }
@@ -0,0 +1,371 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed store for bookings a {@link BookingRepository} has {@link BookingRepository#archive archived}: kept
+ * for reads by id, for snapshots and for the aggregates, but out of the hot tier's maps and listings.
+ * <p>
+ * Bookings are numbered in the order they arrive and grouped into blocks of {@value #BLOCK_ENTRIES}. The open
+ * block holds {@link Booking} objects; a full block is encoded, deflated and kept as one byte array, with an offset
+ * table in front so that one entry can be decoded without the others. Ids map to entry numbers through a primitive
+ * table for UUID ids and a small side map for other ids, so an archived booking costs its share of a compressed
+ * block plus about 40 bytes of index. The last inflated block is cached for reads of neighbouring bookings.
+ * <p>
+ * A booking leaves the tier when it is written or deleted; its entry stays in the block as garbage until fewer
+ * than half of the block's entries are live, when the live ones are moved to the open block and the block is
+ * dropped.
+ * <p>
+ * All methods but {@link #size()} lock the tier. Reads of archived bookings are expected to be rare; a read that misses the cache
+ * inflates one block, about 9 KB.
+ */
+public final class ColdTier {
+
+    static final int BLOCK_ENTRIES = 64;
+    private static final int NOT_FOUND = -1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int HEADER = BLOCK_ENTRIES * Integer.BYTES;
+
+    // all guarded by this
+    private final UuidRowIndex uuidEntries = new UuidRowIndex(16);
+    private final Map<String, Integer> customIdEntries = new HashMap<>();
+    private final List<Booking> open = new ArrayList<>(BLOCK_ENTRIES);
+    private byte[][] blocks = new byte[16][];
+    private int[] rawLengths = new int[16];
+    private int[] liveEntries = new int[16];
+    private int nextEntry;
+    private long compressedBytes;
+    private long archived;
+    private long compactions;
+    private int cachedBlock = NOT_FOUND;
+    private byte[] cachedRaw;
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    // written under this, read without locking so that stores can skip the tier while it is empty
+    private volatile int size;
+
+    /**
+     * Adds a booking that is no longer stored in the hot tier.
+     */
+    synchronized void add(Booking booking) {
+        remove(booking.getId());
+        append(booking);
+        archived++;
+    }
+
+    synchronized Booking find(String id) {
+        int entry = entryOf(id);
+        return entry == NOT_FOUND ? null : read(entry);
+    }
+
+    /**
+     * @return the removed booking, or {@code null} if the tier does not hold one with this id
+     */
+    synchronized Booking remove(String id) {
+        int entry = entryOf(id);
+        if (entry == NOT_FOUND){
+            return null;
+        }
+        Booking booking = read(entry);
+        unplace(id);
+        int block = entry / BLOCK_ENTRIES;
+        liveEntries[block]--;
+        if (blocks[block] != null && liveEntries[block] < BLOCK_ENTRIES / 2){
+            compact(block);
+        }
+        return booking;
+    }
+
+    /**
+     * Visits every booking of the tier, locking it only while one block is decoded, so that a long walk such as a
+     * snapshot does not hold up writers. A booking moved by a compaction during the walk may be visited twice.
+     */
+    void forEach(Consumer<Booking> action) {
+        List<Booking> live = new ArrayList<>(BLOCK_ENTRIES);
+        boolean more = true;
+        for (int block = 0; more; block++) {
+            live.clear();
+            more = collectLive(block, live);
+            live.forEach(action);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the compressed blocks, the open block and the id index, in bytes
+     */
+    public synchronized long estimatedHeapBytes() {
+        return compressedBytes + (long) blocks.length * (8 + 4 + 4)
+                + open.size() * InMemoryBookingRepository.ESTIMATED_BYTES_PER_BOOKING
+                + uuidEntries.capacityBytes() + customIdEntries.size() * 64L;
+    }
+
+    /**
+     * @return the number of sealed blocks still held
+     */
+    public synchronized int blocks() {
+        int count = 0;
+        for (int block = 0; block < openBlock(); block++) {
+            if (blocks[block] != null){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of bookings ever moved into the tier
+     */
+    public synchronized long archived() {
+        return archived;
+    }
+
+    /**
+     * @return the number of blocks dropped after moving their remaining live entries
+     */
+    public synchronized long compactions() {
+        return compactions;
+    }
+
+    private void append(Booking booking) {
+        int entry = nextEntry++;
+        int block = entry / BLOCK_ENTRIES;
+        if (block == liveEntries.length){
+            blocks = Arrays.copyOf(blocks, block * 2);
+            rawLengths = Arrays.copyOf(rawLengths, block * 2);
+            liveEntries = Arrays.copyOf(liveEntries, block * 2);
+        }
+        place(booking.getId(), entry);
+        open.add(booking);
+        liveEntries[block]++;
+        if (open.size() == BLOCK_ENTRIES){
+            seal(block);
+        }
+    }
+
+    private Booking read(int entry) {
+        int block = entry / BLOCK_ENTRIES;
+        int slot = entry % BLOCK_ENTRIES;
+        if (block == openBlock()){
+            return open.get(slot);
+        }
+        return decode(inflate(block), slot);
+    }
+
+    private int openBlock() {
+        return nextEntry / BLOCK_ENTRIES;
+    }
+
+    /**
+     * Encodes the full open block behind a table of entry offsets and deflates it. Entries removed while the block
+     * was open are encoded too, to keep the slots of the live ones.
+     */
+    private void seal(int block) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_ENTRIES * 128);
+        int[] offsets = new int[BLOCK_ENTRIES];
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(new byte[HEADER]);
+            for (int slot = 0; slot < BLOCK_ENTRIES; slot++) {
+                offsets[slot] = out.size();
+                encode(out, open.get(slot));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] raw = bytes.toByteArray();
+        ByteBuffer.wrap(raw).asIntBuffer().put(offsets);
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[raw.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length){
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        blocks[block] = Arrays.copyOf(compressed, length);
+        rawLengths[block] = raw.length;
+        compressedBytes += blocks[block].length + 16;
+        open.clear();
+    }
+
+    private byte[] inflate(int block) {
+        if (cachedBlock == block){
+            return cachedRaw;
+        }
+        byte[] raw = new byte[rawLengths[block]];
+        inflater.reset();
+        inflater.setInput(blocks[block]);
+        try {
+            int length = 0;
+            while (length < raw.length) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt cold tier block " + block, e);
+        }
+        cachedBlock = block;
+        cachedRaw = raw;
+        return raw;
+    }
+
+    /**
+     * Adds the bookings of the block that are still live, those whose id maps to their entry.
+     *
+     * @return {@code false} if the block is the open one, which is the last
+     */
+    private synchronized boolean collectLive(int block, List<Booking> live) {
+        boolean sealed = block != openBlock();
+        if (sealed && blocks[block] == null){
+            return true;
+        }
+        byte[] raw = sealed ? inflate(block) : null;
+        int slots = sealed ? BLOCK_ENTRIES : open.size();
+        for (int slot = 0; slot < slots; slot++) {
+            Booking booking = sealed ? decode(raw, slot) : open.get(slot);
+            if (entryOf(booking.getId()) == block * BLOCK_ENTRIES + slot){
+                live.add(booking);
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Moves the live entries of a sealed block to the open block and drops it.
+     */
+    private void compact(int block) {
+        List<Booking> live = new ArrayList<>(liveEntries[block]);
+        collectLive(block, live);
+        compressedBytes -= blocks[block].length + 16;
+        blocks[block] = null;
+        liveEntries[block] = 0;
+        cachedBlock = NOT_FOUND;
+        cachedRaw = null;
+        compactions++;
+        for (Booking booking : live) {
+            append(booking);
+        }
+    }
+
+    private int entryOf(String id) {
+        if (id == null){
+            return NOT_FOUND;
+        }
+        UUID uuid = parseUuid(id);
+        if (uuid != null){
+            return uuidEntries.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+        Integer entry = customIdEntries.get(id);
+        return entry == null ? NOT_FOUND : entry;
+    }
+
+    private void place(String id, int entry) {
+        UUID uuid = parseUuid(id);
+        if (uuid != null){
+            uuidEntries.put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), entry);
+        } else {
+            customIdEntries.put(id, entry);
+        }
+        size = uuidEntries.size() + customIdEntries.size();
+    }
+
+    private void unplace(String id) {
+        UUID uuid = parseUuid(id);
+        if (uuid != null){
+            uuidEntries.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        } else {
+            customIdEntries.remove(id);
+        }
+        size = uuidEntries.size() + customIdEntries.size();
+    }
+
+    private static void encode(DataOutputStream out, Booking booking) throws IOException {
+        writeString(out, booking.getId());
+        writeString(out, booking.getDescription());
+        out.writeDouble(booking.getPrice());
+        writeString(out, booking.getCurrency() == null ? null : booking.getCurrency().getCurrencyCode());
+        out.writeLong(booking.getSubscriptionStartDate() == null ? NO_DATE : booking.getSubscriptionStartDate());
+        writeString(out, booking.getEmail());
+        writeString(out, booking.getDepartment());
+        out.writeLong(booking.getVersion());
+    }
+
+    private static Booking decode(byte[] raw, int slot) {
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        in.position(in.getInt(slot * Integer.BYTES));
+        String id = readString(in);
+        String description = readString(in);
+        double price = in.getDouble();
+        String currencyCode = readString(in);
+        long startDate = in.getLong();
+        String email = readString(in);
+        String department = readString(in);
+        Booking booking = new Booking(id, description, price,
+                currencyCode == null ? null : Currency.getInstance(currencyCode),
+                startDate == NO_DATE ? null : startDate, email, department);
+        booking.setVersion(in.getLong());
+        return booking;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0){
+            return null;
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * @return the UUID if {@code id} is a canonical (lower case, hyphenated) UUID string, {@code null} otherwise
+     */
+    private static UUID parseUuid(String id) {
+        if (id.length() != 36){
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the hot tier of the {@link BookingRepository} bounded by moving bookings to its {@link ColdTier}.
+ * <p>
+ * Every {@code bookings.tiering.interval-ms} a pass archives the bookings whose subscription started more than
+ * {@code bookings.tiering.max-age-days} ago, and, while the hot tier's {@link BookingRepository#estimatedHeapBytes()
+ * estimate} is above {@code bookings.tiering.hot-budget-bytes}, as many of the earliest starting bookings as bring
+ * it down to 90% of the budget. Both rules read a booking's age from its {@code subscriptionStartDate}, not from
+ * when it was last written, so an edit does not keep an old subscription hot and a restart does not make every
+ * booking young again; a booking without a start date is never old. Bookings are archived in batches of
+ * {@code bookings.tiering.batch-size}, each a separate {@link BookingRepository#archive(Collection)} call, so that
+ * writers are never held up for a whole pass. Both rules are off when set to {@code 0}, which is the default.
+ */
+@Component
+public class ColdTierArchiver implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColdTierArchiver.class);
+    private static final Comparator<Booking> NEWEST_FIRST =
+            Comparator.comparingLong(ColdTierArchiver::startDate).reversed();
+
+    private final BookingRepository repository;
+    private final long maxAgeMs;
+    private final long hotBudgetBytes;
+    private final long intervalMs;
+    private final int batchSize;
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong archived = new AtomicLong();
+
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public ColdTierArchiver(BookingRepository repository,
+                            @Value("${bookings.tiering.max-age-days:0}") long maxAgeDays,
+                            @Value("${bookings.tiering.hot-budget-bytes:0}") long hotBudgetBytes,
+                            @Value("${bookings.tiering.interval-ms:60000}") long intervalMs,
+                            @Value("${bookings.tiering.batch-size:1000}") int batchSize) {
+        this.repository = repository;
+        this.maxAgeMs = TimeUnit.DAYS.toMillis(maxAgeDays);
+        this.hotBudgetBytes = hotBudgetBytes;
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs one pass.
+     *
+     * @return the number of bookings moved to the cold tier
+     */
+    public synchronized int archive() {
+        long start = System.nanoTime();
+        passes.incrementAndGet();
+        long cutoff = maxAgeMs > 0 ? System.currentTimeMillis() - maxAgeMs : Long.MIN_VALUE;
+        long excess = excess();
+        if (cutoff == Long.MIN_VALUE && excess == 0){
+            return 0;
+        }
+        List<Booking> expired = new ArrayList<>();
+        // the earliest starting of the others, the latest on top so it is the one to give way
+        PriorityQueue<Booking> oldest = new PriorityQueue<>(NEWEST_FIRST);
+        for (Booking booking : repository.findAll()) {
+            long startDate = startDate(booking);
+            if (startDate < cutoff){
+                expired.add(booking);
+            } else if (expired.size() + oldest.size() < excess){
+                oldest.add(booking);
+            } else if (!oldest.isEmpty() && startDate < startDate(oldest.peek())){
+                oldest.poll();
+                oldest.add(booking);
+            }
+        }
+        // every expired booking is older than the others, so they count towards the excess first
+        while (!oldest.isEmpty() && expired.size() + oldest.size() > excess) {
+            oldest.poll();
+        }
+        expired.addAll(oldest);
+        int moved = 0;
+        for (int from = 0; from < expired.size(); from += batchSize) {
+            moved += repository.archive(expired.subList(from, Math.min(expired.size(), from + batchSize))).size();
+        }
+        archived.addAndGet(moved);
+        if (moved > 0){
+            LOG.info("Archived {} bookings to the cold tier in {} ms, {} hot and {} cold", moved,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    repository.size() - repository.coldTier().size(), repository.coldTier().size());
+        }
+        return moved;
+    }
+
+    public long passes() {
+        return passes.get();
+    }
+
+    /**
+     * @return the number of bookings this archiver moved to the cold tier
+     */
+    public long archived() {
+        return archived.get();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (maxAgeMs <= 0 && hotBudgetBytes <= 0){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "booking-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (RuntimeException e) {
+                LOG.error("Booking archiving failed", e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null){
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static long startDate(Booking booking) {
+        Long startDate = booking.getSubscriptionStartDate();
+        return startDate == null ? Long.MAX_VALUE : startDate;
+    }
+
+    /**
+     * @return how many hot bookings to archive to get the hot tier to 90% of its budget, estimated from the
+     * current heap per hot booking
+     */
+    private long excess() {
+        if (hotBudgetBytes <= 0){
+            return 0;
+        }
+        long bytes = repository.estimatedHeapBytes();
+        long hot = repository.size() - repository.coldTier().size();
+        if (bytes <= hotBudgetBytes || hot <= 0){
+            return 0;
+        }
+        double bytesPerBooking = (double) bytes / hot;
+        return Math.min(hot, (long) Math.ceil((bytes - hotBudgetBytes * 0.9) / bytesPerBooking));
+    }
+}
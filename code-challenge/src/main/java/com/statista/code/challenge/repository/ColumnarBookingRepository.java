@@ -0,0 +1,828 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * {@link BookingRepository} that stores bookings column by column in primitive arrays instead of one object per
+ * booking. Enabled with {@code bookings.store=columnar}.
+ * <p>
+ * UUID ids are kept as two longs and located through a primitive open-addressing table, currencies and
+ * departments are dictionary encoded as ints, prices and start dates are plain {@code double}/{@code long}
+ * columns, and descriptions and e-mails are kept as UTF-8 byte arrays rather than {@link String} objects.
+ * Ids that are not canonical UUIDs are supported through a small side map. Rows are kept dense by moving the
+ * last row into the slot of a deleted one. {@link Booking} objects are only created when a booking
+ * leaves the repository.
+ * <p>
+ * Department and currency queries read the rows of the dictionary id from a posting list per id, kept up to date on
+ * every write, so they touch only the matching rows instead of scanning the column; the rows are visited in row
+ * order. Department pages read the department's rows in id order, sorted on the first page after the department's
+ * rows changed and kept for the following ones, so a page seeks to its cursor instead of walking the department.
+ * <p>
+ * Archived rows are moved to the {@link ColdTier} under the write lock, and the columns and the id table are
+ * shrunk once they are mostly empty, so that archiving gives the memory back.
+ */
+@Repository
+@ConditionalOnProperty(name = "bookings.store", havingValue = "columnar")
+public class ColumnarBookingRepository implements BookingRepository {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NOT_FOUND = -1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    /** Bytes per row of all column arrays: two longs of id, a reference, a double, two longs and four ints/references. */
+    private static final long ROW_BYTES = 8 + 8 + 4 + 8 + 8 + 8 + 4 + 4 + 4 + 4;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ColdTier cold = new ColdTier();
+    private UuidRowIndex uuidRows = new UuidRowIndex(INITIAL_CAPACITY);
+    private final Map<String, Integer> customIdRows = new HashMap<>();
+    private final Dictionary<Currency> currencies = new Dictionary<>();
+    private final Dictionary<String> departments = new Dictionary<>();
+    private final RowPostings currencyRows = new RowPostings(INITIAL_CAPACITY);
+    private final RowPostings departmentRows = new RowPostings(INITIAL_CAPACITY);
+    // by department id, its rows in id order; built by readers, so shared between them
+    private final Map<Integer, RowOrder> departmentOrders = new ConcurrentHashMap<>();
+    private final CurrencyRegistry currencyRegistry = new CurrencyRegistry();
+    private final QueryStatistics statistics = new QueryStatistics();
+    private final VersionClock versions = new VersionClock();
+    private final List<BookingChangeListener> listeners;
+
+    private long[] idHigh = new long[INITIAL_CAPACITY];
+    private long[] idLow = new long[INITIAL_CAPACITY];
+    private String[] customIds = new String[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private long[] startDates = new long[INITIAL_CAPACITY];
+    private long[] bookingVersions = new long[INITIAL_CAPACITY];
+    private int[] currencyIds = new int[INITIAL_CAPACITY];
+    private int[] departmentIds = new int[INITIAL_CAPACITY];
+    private byte[][] descriptions = new byte[INITIAL_CAPACITY][];
+    private byte[][] emails = new byte[INITIAL_CAPACITY][];
+    private int size;
+    // heap of the description and e-mail arrays, guarded by the write lock
+    private long textBytes;
+
+    public ColumnarBookingRepository() {
+        this(Collections.emptyList());
+    }
+
+    @Autowired
+    public ColumnarBookingRepository(List<BookingChangeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public Booking saveOrUpdate(Booking booking) {
+        check(booking);
+        Listeners.beginWrite(listeners);
+        lock.writeLock().lock();
+        try {
+            Booking previous = store(booking);
+            notifyListeners(previous, booking);
+            return booking;
+        } finally {
+            lock.writeLock().unlock();
+            Listeners.endWrite(listeners);
+        }
+    }
+
+    @Override
+    public Booking create(Booking booking) {
+        return storeIf(booking, WriteMode.CREATE, null);
+    }
+
+    @Override
+    public Booking replace(Booking booking, Long expectedVersion) {
+        return storeIf(booking, WriteMode.REPLACE, expectedVersion);
+    }
+
+    /**
+     * Checks the stored booking and writes under the same write lock, so the check and the write are one atomic step.
+     *
+     * @return the booking stored before the call, or {@code null} if there was none
+     */
+    private Booking storeIf(Booking booking, WriteMode mode, Long expectedVersion) {
+        if (booking.getId() == null){
+            booking.setId(UUID.randomUUID().toString());
+        }
+        check(booking);
+        Listeners.beginWrite(listeners);
+        lock.writeLock().lock();
+        try {
+            int row = rowOf(booking.getId());
+            Booking current = row != NOT_FOUND ? materialize(row) : cold.isEmpty() ? null : cold.find(booking.getId());
+            if (mode.accepts(current, expectedVersion)){
+                store(booking);
+                notifyListeners(current, booking);
+            }
+            return current;
+        } finally {
+            lock.writeLock().unlock();
+            Listeners.endWrite(listeners);
+        }
+    }
+
+    @Override
+    public List<Booking> saveAll(List<Booking> batch) {
+        for (Booking booking : batch) {
+            check(booking);
+        }
+        Listeners.beginWrite(listeners);
+        lock.writeLock().lock();
+        try {
+            List<BookingChange> changes = new ArrayList<>(batch.size());
+            for (Booking booking : batch) {
+                changes.add(new BookingChange(store(booking), booking));
+            }
+            if (!changes.isEmpty()){
+                for (BookingChangeListener listener : listeners) {
+                    listener.onChanges(changes);
+                }
+            }
+            return batch;
+        } finally {
+            lock.writeLock().unlock();
+            Listeners.endWrite(listeners);
+        }
+    }
+
+    @Override
+    public List<Booking> createAll(List<Booking> batch) {
+        for (Booking booking : batch) {
+            if (booking.getId() == null){
+                booking.setId(UUID.randomUUID().toString());
+            }
+            check(booking);
+        }
+        List<Booking> rejected = new ArrayList<>();
+        Listeners.beginWrite(listeners);
+        lock.writeLock().lock();
+        try {
+            List<BookingChange> changes = new ArrayList<>(batch.size());
+            for (Booking booking : batch) {
+                if (rowOf(booking.getId()) != NOT_FOUND || (!cold.isEmpty() && cold.find(booking.getId()) != null)){
+                    rejected.add(booking);
+                } else {
+                    changes.add(new BookingChange(store(booking), booking));
+                }
+            }
+            if (!changes.isEmpty()){
+                for (BookingChangeListener listener : listeners) {
+                    listener.onChanges(changes);
+                }
+            }
+            return rejected;
+        } finally {
+            lock.writeLock().unlock();
+            Listeners.endWrite(listeners);
+        }
+    }
+
+    /**
+     * Writes the booking into its row, appending one if needed and taking it out of the cold tier if it is archived.
+     * Must be called with the write lock held.
+     *
+     * @return the previous booking if listeners need it, otherwise {@code null}
+     */
+    private Booking store(Booking booking) {
+        if (booking.getId() == null){
+            booking.setId(UUID.randomUUID().toString());
+        }
+        int row = rowOf(booking.getId());
+        Booking previous = null;
+        if (row == NOT_FOUND){
+            previous = cold.isEmpty() ? null : cold.remove(booking.getId());
+            if (previous != null){
+                currencyRegistry.release(previous.getCurrency());
+            }
+            row = appendRow(booking.getId());
+        } else {
+            previous = listeners.isEmpty() ? null : materialize(row);
+            currencyRegistry.release(currencies.value(currencyIds[row]));
+        }
+        booking.setVersion(versions.next());
+        write(row, booking);
+        currencyRegistry.acquire(booking.getCurrency());
+        return previous;
+    }
+
+    @Override
+    public Booking delete(String id) {
+        if (id == null){
+            return null;
+        }
+        Listeners.beginWrite(listeners);
+        lock.writeLock().lock();
+        try {
+            int row = rowOf(id);
+            Booking previous = row != NOT_FOUND ? materialize(row) : cold.isEmpty() ? null : cold.remove(id);
+            if (previous == null){
+                return null;
+            }
+            currencyRegistry.release(previous.getCurrency());
+            if (row != NOT_FOUND){
+                removeRow(row);
+            }
+            notifyListeners(previous, null);
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+            Listeners.endWrite(listeners);
+        }
+    }
+
+    @Override
+    public Booking find(String id) {
+        if (id == null){
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int row = rowOf(id);
+            Booking booking = row != NOT_FOUND ? materialize(row) : cold.isEmpty() ? null : cold.find(id);
+            statistics.record(QueryStatistics.Query.FIND, 1, booking == null ? 0 : 1);
+            return booking;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<Booking> findAll() {
+        lock.readLock().lock();
+        try {
+            List<Booking> result = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                result.add(materialize(row));
+            }
+            statistics.record(QueryStatistics.Query.FIND_ALL, size, size);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Holds the read lock for the whole walk, since rows move when bookings are deleted.
+     */
+    @Override
+    public void forEach(Consumer<Booking> action) {
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < size; row++) {
+                action.accept(materialize(row));
+            }
+            cold.forEach(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size + cold.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Booking> findByDepartment(String department) {
+        lock.readLock().lock();
+        try {
+            return matching(QueryStatistics.Query.FIND_BY_DEPARTMENT, departmentRows, departments.id(department));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Binary searches the department's rows in id order for the first id after the cursor and materializes the page
+     * from there. The order is sorted again only when rows of the department were added, removed or moved since it
+     * was taken, so streaming an unchanged department in pages costs one sort and then {@code O(log n + limit)} per
+     * page. Ids are compared in their columns, UUIDs as two unsigned longs, which orders them like their canonical
+     * strings.
+     */
+    @Override
+    public List<Booking> findByDepartment(String department, String after, int limit) {
+        lock.readLock().lock();
+        try {
+            int departmentId = departments.id(department);
+            if (departmentId == NOT_FOUND || limit <= 0){
+                statistics.record(QueryStatistics.Query.FIND_BY_DEPARTMENT_PAGE, 0, 0);
+                return Collections.emptyList();
+            }
+            UUID afterUuid = after == null ? null : parseUuid(after);
+            long afterHigh = afterUuid == null ? 0 : afterUuid.getMostSignificantBits();
+            long afterLow = afterUuid == null ? 0 : afterUuid.getLeastSignificantBits();
+            String afterCustom = afterUuid == null ? after : null;
+            long changes = departmentRows.changes(departmentId);
+            RowOrder order = departmentOrders.get(departmentId);
+            int sorted = 0;
+            if (order == null || order.changes != changes){
+                order = sortDepartment(departmentId, changes);
+                sorted = order.rows.length;
+            }
+            int from = after == null ? 0 : firstAfter(order.rows, afterHigh, afterLow, afterCustom);
+            int to = (int) Math.min(order.rows.length, (long) from + limit);
+            List<Booking> result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                result.add(materialize(order.rows[i]));
+            }
+            statistics.record(QueryStatistics.Query.FIND_BY_DEPARTMENT_PAGE, sorted + result.size(), result.size());
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<Currency> findCurrenciesUsed() {
+        return currencyRegistry.currencies();
+    }
+
+    @Override
+    public long currenciesVersion() {
+        return currencyRegistry.version();
+    }
+
+    @Override
+    public List<Booking> findByCurrency(String currency) {
+        lock.readLock().lock();
+        try {
+            return matching(QueryStatistics.Query.FIND_BY_CURRENCY, currencyRows, currencies.id(parseCurrency(currency)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public QueryStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Counts the allocated column arrays, the id table, the posting lists, the department orders kept for paging and
+     * the text arrays; the dictionaries are ignored.
+     */
+    @Override
+    public long estimatedHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long orderBytes = 0;
+            for (RowOrder order : departmentOrders.values()) {
+                orderBytes += 16 + 4L * order.rows.length;
+            }
+            return prices.length * ROW_BYTES + uuidRows.capacityBytes() + currencyRows.capacityBytes()
+                    + departmentRows.capacityBytes() + orderBytes + textBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the rows under the write lock, then shrinks the columns to a quarter more than the remaining rows once
+     * they are less than three quarters full, and rebuilds the id table once less than a quarter of it is used, so
+     * that the {@link #estimatedHeapBytes() estimate} a budget is checked against drops with the rows.
+     */
+    @Override
+    public List<Booking> archive(Collection<Booking> bookings) {
+        lock.writeLock().lock();
+        try {
+            List<Booking> archived = new ArrayList<>();
+            for (Booking booking : bookings) {
+                int row = rowOf(booking.getId());
+                if (row != NOT_FOUND && bookingVersions[row] == booking.getVersion()){
+                    Booking moved = materialize(row);
+                    cold.add(moved);
+                    removeRow(row);
+                    archived.add(moved);
+                }
+            }
+            if (prices.length > INITIAL_CAPACITY && size < prices.length / 4 * 3){
+                resize(Math.max(INITIAL_CAPACITY, size + size / 4));
+            }
+            if (uuidRows.capacity() > INITIAL_CAPACITY * 2 && uuidRows.size() < uuidRows.capacity() / 4){
+                UuidRowIndex rebuilt = new UuidRowIndex(uuidRows.size());
+                for (int row = 0; row < size; row++) {
+                    if (customIds[row] == null){
+                        rebuilt.put(idHigh[row], idLow[row], row);
+                    }
+                }
+                uuidRows = rebuilt;
+            }
+            if (!archived.isEmpty()){
+                for (BookingChangeListener listener : listeners) {
+                    listener.onArchive(archived);
+                }
+            }
+            return archived;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ColdTier coldTier() {
+        return cold;
+    }
+
+    private List<Booking> matching(QueryStatistics.Query query, RowPostings postings, int dictionaryId) {
+        int[] rows = postings.rows(dictionaryId);
+        List<Booking> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(materialize(row));
+        }
+        statistics.record(query, rows.length, result.size());
+        return result;
+    }
+
+    /**
+     * Sorts the rows of the department by id and keeps them for the following pages; called under the read lock.
+     */
+    private RowOrder sortDepartment(int departmentId, long changes) {
+        int matching = departmentRows.size(departmentId);
+        RowHeap heap = new RowHeap(Math.max(1, matching));
+        for (int i = 0; i < matching; i++) {
+            heap.offer(departmentRows.row(departmentId, i));
+        }
+        RowOrder order = new RowOrder(changes, heap.sorted());
+        departmentOrders.put(departmentId, order);
+        return order;
+    }
+
+    /**
+     * @return the index of the first of the rows, in id order, whose id is after the given one
+     */
+    private int firstAfter(int[] rows, long high, long low, String custom) {
+        int from = 0;
+        int to = rows.length;
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (compareId(rows[middle], high, low, custom) > 0){
+                to = middle;
+            } else {
+                from = middle + 1;
+            }
+        }
+        return from;
+    }
+
+    private int rowOf(String id) {
+        UUID uuid = parseUuid(id);
+        if (uuid != null){
+            return uuidRows.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+        Integer row = customIdRows.get(id);
+        return row == null ? NOT_FOUND : row;
+    }
+
+    private int appendRow(String id) {
+        if (size == prices.length){
+            grow();
+        }
+        int row = size++;
+        placeId(row, id);
+        currencyIds[row] = NOT_FOUND;
+        departmentIds[row] = NOT_FOUND;
+        return row;
+    }
+
+    private void placeId(int row, String id) {
+        UUID uuid = parseUuid(id);
+        if (uuid != null){
+            idHigh[row] = uuid.getMostSignificantBits();
+            idLow[row] = uuid.getLeastSignificantBits();
+            customIds[row] = null;
+            uuidRows.put(idHigh[row], idLow[row], row);
+        } else {
+            customIds[row] = id;
+            customIdRows.put(id, row);
+        }
+    }
+
+    private void write(int row, Booking booking) {
+        prices[row] = booking.getPrice();
+        startDates[row] = booking.getSubscriptionStartDate() == null ? NO_DATE : booking.getSubscriptionStartDate();
+        bookingVersions[row] = booking.getVersion();
+        post(currencyRows, currencyIds, row, currencies.intern(booking.getCurrency()));
+        post(departmentRows, departmentIds, row, departments.intern(booking.getDepartment()));
+        textBytes -= arrayBytes(descriptions[row]) + arrayBytes(emails[row]);
+        descriptions[row] = encode(booking.getDescription());
+        emails[row] = encode(booking.getEmail());
+        textBytes += arrayBytes(descriptions[row]) + arrayBytes(emails[row]);
+    }
+
+    /**
+     * Sets the dictionary id of the row in the column and moves the row to the id's posting list.
+     */
+    private static void post(RowPostings postings, int[] column, int row, int dictionaryId) {
+        if (column[row] == dictionaryId){
+            return;
+        }
+        if (column[row] != NOT_FOUND){
+            postings.remove(column[row], row);
+        }
+        postings.add(dictionaryId, row);
+        column[row] = dictionaryId;
+    }
+
+    private void removeRow(int row) {
+        textBytes -= arrayBytes(descriptions[row]) + arrayBytes(emails[row]);
+        unplaceId(row);
+        currencyRows.remove(currencyIds[row], row);
+        departmentRows.remove(departmentIds[row], row);
+        int last = --size;
+        if (row != last){
+            String lastId = idOf(last);
+            unplaceId(last);
+            currencyRows.move(currencyIds[last], last, row);
+            departmentRows.move(departmentIds[last], last, row);
+            idHigh[row] = idHigh[last];
+            idLow[row] = idLow[last];
+            prices[row] = prices[last];
+            startDates[row] = startDates[last];
+            bookingVersions[row] = bookingVersions[last];
+            currencyIds[row] = currencyIds[last];
+            departmentIds[row] = departmentIds[last];
+            descriptions[row] = descriptions[last];
+            emails[row] = emails[last];
+            placeId(row, lastId);
+        }
+        customIds[last] = null;
+        descriptions[last] = null;
+        emails[last] = null;
+    }
+
+    private void unplaceId(int row) {
+        if (customIds[row] == null){
+            uuidRows.remove(idHigh[row], idLow[row]);
+        } else {
+            customIdRows.remove(customIds[row]);
+        }
+    }
+
+    private String idOf(int row) {
+        return customIds[row] != null ? customIds[row] : new UUID(idHigh[row], idLow[row]).toString();
+    }
+
+    /**
+     * Compares the id of the row with another id, given as a UUID in two longs or as a custom id, in the order of
+     * their strings.
+     */
+    private int compareId(int row, long high, long low, String custom) {
+        if (customIds[row] != null){
+            return custom != null ? customIds[row].compareTo(custom) : -compareUuid(high, low, customIds[row]);
+        }
+        if (custom != null){
+            return compareUuid(idHigh[row], idLow[row], custom);
+        }
+        int order = Long.compareUnsigned(idHigh[row], high);
+        return order != 0 ? order : Long.compareUnsigned(idLow[row], low);
+    }
+
+    private int compareRows(int row, int other) {
+        return compareId(row, idHigh[other], idLow[other], customIds[other]);
+    }
+
+    private Booking materialize(int row) {
+        Booking booking = new Booking(idOf(row), decode(descriptions[row]), prices[row],
+                currencies.value(currencyIds[row]), startDates[row] == NO_DATE ? null : startDates[row],
+                decode(emails[row]), departments.value(departmentIds[row]));
+        booking.setVersion(bookingVersions[row]);
+        return booking;
+    }
+
+    private void grow() {
+        resize(prices.length << 1);
+    }
+
+    private void resize(int capacity) {
+        idHigh = Arrays.copyOf(idHigh, capacity);
+        idLow = Arrays.copyOf(idLow, capacity);
+        customIds = Arrays.copyOf(customIds, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        startDates = Arrays.copyOf(startDates, capacity);
+        bookingVersions = Arrays.copyOf(bookingVersions, capacity);
+        currencyIds = Arrays.copyOf(currencyIds, capacity);
+        departmentIds = Arrays.copyOf(departmentIds, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        emails = Arrays.copyOf(emails, capacity);
+        currencyRows.resize(capacity);
+        departmentRows.resize(capacity);
+    }
+
+    private void check(Booking booking) {
+        for (BookingChangeListener listener : listeners) {
+            listener.check(booking);
+        }
+    }
+
+    private void notifyListeners(Booking previous, Booking current) {
+        for (BookingChangeListener listener : listeners) {
+            listener.onChange(previous, current);
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the heap size of a byte array: a 16 byte header plus its length, rounded up to 8 bytes
+     */
+    private static long arrayBytes(byte[] value) {
+        return value == null ? 0 : (16 + value.length + 7) & ~7L;
+    }
+
+    private static String decode(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the UUID if {@code id} is a canonical (lower case, hyphenated) UUID string, {@code null} otherwise
+     */
+    private static UUID parseUuid(String id) {
+        if (id.length() != 36){
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compares the canonical string of a UUID with a string the way {@link String#compareTo} does, without building
+     * the UUID's string.
+     */
+    private static int compareUuid(long high, long low, String other) {
+        int length = Math.min(36, other.length());
+        for (int i = 0; i < length; i++) {
+            char c = uuidChar(high, low, i);
+            if (c != other.charAt(i)){
+                return c - other.charAt(i);
+            }
+        }
+        return 36 - other.length();
+    }
+
+    private static char uuidChar(long high, long low, int index) {
+        if (index == 8 || index == 13 || index == 18 || index == 23){
+            return '-';
+        }
+        int digit = index - (index > 23 ? 4 : index > 18 ? 3 : index > 13 ? 2 : index > 8 ? 1 : 0);
+        long bits = digit < 16 ? high : low;
+        return Character.forDigit((int) (bits >>> (60 - 4 * (digit & 15))) & 0xF, 16);
+    }
+
+    private static Currency parseCurrency(String currencyCode) {
+        if (currencyCode == null){
+            return null;
+        }
+        try {
+            return Currency.getInstance(currencyCode);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Max-heap of at most {@code limit} rows by id: a row is kept while fewer than {@code limit} smaller ids were
+     * offered. Grows up to the limit as rows are offered; with a department's size as the limit it sorts the
+     * department's rows by id without boxing them.
+     */
+    private final class RowHeap {
+
+        private final int limit;
+        private int[] rows = new int[16];
+        private int count;
+
+        RowHeap(int limit) {
+            this.limit = limit;
+        }
+
+        void offer(int row) {
+            if (count < limit){
+                if (count == rows.length){
+                    rows = Arrays.copyOf(rows, (int) Math.min(limit, rows.length * 2L));
+                }
+                rows[count] = row;
+                siftUp(count++);
+            } else if (compareRows(row, rows[0]) < 0){
+                rows[0] = row;
+                siftDown(0, count);
+            }
+        }
+
+        /**
+         * @return the rows in id order; the heap is used up
+         */
+        int[] sorted() {
+            for (int end = count - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (compareRows(rows[index], rows[parent]) <= 0){
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index, int end) {
+            while (true) {
+                int largest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < end && compareRows(rows[left], rows[largest]) > 0){
+                    largest = left;
+                }
+                if (right < end && compareRows(rows[right], rows[largest]) > 0){
+                    largest = right;
+                }
+                if (largest == index){
+                    return;
+                }
+                swap(index, largest);
+                index = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+        }
+    }
+
+    /**
+     * Rows in id order, valid while the posting list they were taken from has the same count of changes.
+     */
+    private static final class RowOrder {
+
+        private final long changes;
+        private final int[] rows;
+
+        RowOrder(long changes, int[] rows) {
+            this.changes = changes;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Append-only value dictionary. Ids are dense ints, so a column stores 4 bytes instead of a reference.
+     */
+    private static final class Dictionary<T> {
+
+        private final Map<T, Integer> ids = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+
+        int intern(T value) {
+            Integer id = ids.get(value);
+            if (id == null){
+                id = values.size();
+                values.add(value);
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+        int id(T value) {
+            Integer id = value == null ? null : ids.get(value);
+            return id == null ? NOT_FOUND : id;
+        }
+
+        T value(int id) {
+            return values.get(id);
+        }
+    }
+}
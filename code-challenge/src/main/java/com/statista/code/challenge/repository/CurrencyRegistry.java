@@ -0,0 +1,66 @@
+package com.statista.code.challenge.repository;
+
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reference-counted set of the currencies used by stored bookings.
+ * <p>
+ * Reads return a cached immutable snapshot. The snapshot is tagged with the registry version it was built
+ * from and the version only moves when a currency appears or disappears, so the common case of writes in
+ * already known currencies never invalidates it.
+ */
+public class CurrencyRegistry {
+
+    private final Map<Currency, Long> counts = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.emptySet());
+
+    public void acquire(Currency currency) {
+        if (currency != null && counts.merge(currency, 1L, Long::sum) == 1L){
+            version.incrementAndGet();
+        }
+    }
+
+    public void release(Currency currency) {
+        if (currency != null && counts.computeIfPresent(currency, (c, n) -> n == 1L ? null : n - 1) == null){
+            version.incrementAndGet();
+        }
+    }
+
+    public long count(Currency currency) {
+        Long count = counts.get(currency);
+        return count == null ? 0 : count;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public Set<Currency> currencies() {
+        long currentVersion = version.get();
+        Snapshot cached = snapshot;
+        if (cached.version == currentVersion){
+            return cached.currencies;
+        }
+        Snapshot rebuilt = new Snapshot(currentVersion, Collections.unmodifiableSet(new HashSet<>(counts.keySet())));
+        snapshot = rebuilt;
+        return rebuilt.currencies;
+    }
+
+    private static final class Snapshot {
+
+        private final long version;
+        private final Set<Currency> currencies;
+
+        Snapshot(long version, Set<Currency> currencies) {
+            this.version = version;
+            this.currencies = currencies;
+        }
+    }
+}
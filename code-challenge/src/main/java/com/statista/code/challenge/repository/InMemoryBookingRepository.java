@@ -0,0 +1,451 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Default {@link BookingRepository}: a map of {@link Booking} objects keyed by id, with secondary indexes on
+ * department and currency code.
+ * <p>
+ * Index buckets are sets of booking ids, sorted so that department listings can be paged with an id cursor. A
+ * listing resolves every id against the primary map and keeps the stored booking only if it still has the bucket's
+ * department or currency, so a booking is visible in exactly one bucket at any time, whichever instance a write in
+ * progress leaves in the map: an id is added to its new bucket before the primary map is switched over, and removed
+ * from its old bucket afterwards, under the id's lock and only if the stored booking has not come back to it. A
+ * bucket left empty is dropped; a write that added an id to a bucket dropped meanwhile adds it again.
+ * <p>
+ * Every write is also reported to the registered {@link BookingChangeListener}s, which keep aggregates up to date.
+ * <p>
+ * Archived bookings are moved to the {@link ColdTier} inside the map's {@code compute} for their id, and writes and
+ * reads that miss the map look them up there under the same lock, so a booking is always found in exactly one of
+ * the tiers.
+ */
+@Repository
+@ConditionalOnProperty(name = "bookings.store", havingValue = "map", matchIfMissing = true)
+public class InMemoryBookingRepository implements BookingRepository {
+
+    /**
+     * Heap per booking measured for bookings with a UUID id, a 20 character description and e-mail, including the
+     * map entry and both index entries; see README_COMPLETED.md.
+     */
+    static final long ESTIMATED_BYTES_PER_BOOKING = 413;
+
+    private final Map<String, Booking> bookings = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<String>> bookingsByDepartment = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<String>> bookingsByCurrency = new ConcurrentHashMap<>();
+    private final CurrencyRegistry currencyRegistry;
+    private final QueryStatistics statistics;
+    private final VersionClock versions;
+    private final ColdTier cold;
+    private final List<BookingChangeListener> listeners;
+
+    public InMemoryBookingRepository() {
+        this(Collections.emptyList());
+    }
+
+    @Autowired
+    public InMemoryBookingRepository(List<BookingChangeListener> listeners) {
+        this(listeners, new CurrencyRegistry(), new QueryStatistics(), new VersionClock(), new ColdTier());
+    }
+
+    /**
+     * For the shards of a {@link PartitionedBookingRepository}, which share the currency registry, statistics,
+     * versions and cold tier.
+     */
+    InMemoryBookingRepository(List<BookingChangeListener> listeners, CurrencyRegistry currencyRegistry,
+                              QueryStatistics statistics, VersionClock versions, ColdTier cold) {
+        this.listeners = listeners;
+        this.currencyRegistry = currencyRegistry;
+        this.statistics = statistics;
+        this.versions = versions;
+        this.cold = cold;
+    }
+
+    @Override
+    public Booking saveOrUpdate(Booking booking){
+        store(booking, null, WriteMode.UPSERT, null);
+        return booking;
+    }
+
+    @Override
+    public Booking create(Booking booking){
+        return store(booking, null, WriteMode.CREATE, null);
+    }
+
+    @Override
+    public Booking replace(Booking booking, Long expectedVersion){
+        return store(booking, null, WriteMode.REPLACE, expectedVersion);
+    }
+
+    @Override
+    public List<Booking> saveAll(List<Booking> batch){
+        storeAll(batch, WriteMode.UPSERT);
+        return batch;
+    }
+
+    @Override
+    public List<Booking> createAll(List<Booking> batch){
+        return storeAll(batch, WriteMode.CREATE);
+    }
+
+    /**
+     * @return the bookings the write mode did not accept
+     */
+    private List<Booking> storeAll(List<Booking> batch, WriteMode mode){
+        for (Booking booking : batch) {
+            check(booking);
+        }
+        List<Booking> rejected = new ArrayList<>();
+        Listeners.beginWrite(listeners);
+        try {
+            List<BookingChange> changes = new ArrayList<>(batch.size());
+            for (Booking booking : batch) {
+                if (store(booking, changes, mode, null) != null && mode == WriteMode.CREATE){
+                    rejected.add(booking);
+                }
+            }
+            notifyListeners(changes);
+        } finally {
+            Listeners.endWrite(listeners);
+        }
+        return rejected;
+    }
+
+    /**
+     * Stores the booking if the write mode accepts the booking currently stored, deciding inside the map's
+     * {@code compute} so that the check and the write are one atomic step. A booking stored in the cold tier counts
+     * as the current one and leaves the cold tier when it is replaced. Reports the change either to the
+     * listeners right away or, when {@code batch} is given, by adding it to the batch so the caller can report all
+     * changes at once. Listeners {@link BookingChangeListener#check(Booking) check} a single booking before anything
+     * changes and see the write {@link BookingChangeListener#beginWrite() begin} and end; the caller does both for a
+     * batch.
+     *
+     * @return the booking stored before the call, or {@code null} if there was none
+     */
+    private Booking store(Booking booking, List<BookingChange> batch, WriteMode mode, Long expectedVersion){
+        if (booking.getId() == null){
+            booking.setId(UUID.randomUUID().toString());
+        }
+        if (batch != null){
+            return write(booking, batch, mode, expectedVersion);
+        }
+        check(booking);
+        Listeners.beginWrite(listeners);
+        try {
+            return write(booking, null, mode, expectedVersion);
+        } finally {
+            Listeners.endWrite(listeners);
+        }
+    }
+
+    private Booking write(Booking booking, List<BookingChange> batch, WriteMode mode, Long expectedVersion){
+        Booking[] previous = new Booking[1];
+        boolean[] written = new boolean[1];
+        bookings.compute(booking.getId(), (id, current) -> {
+            Booking stored = current != null || cold.isEmpty() ? current : cold.find(id);
+            previous[0] = stored;
+            if (!mode.accepts(stored, expectedVersion)){
+                return current;
+            }
+            written[0] = true;
+            booking.setVersion(versions.next());
+            index(bookingsByDepartment, booking.getDepartment(), id);
+            index(bookingsByCurrency, currencyCode(booking), id);
+            currencyRegistry.acquire(booking.getCurrency());
+            if (stored != null){
+                currencyRegistry.release(stored.getCurrency());
+            }
+            if (stored != current){
+                cold.remove(id);
+            }
+            if (batch == null){
+                notifyListeners(stored, booking);
+            }
+            return booking;
+        });
+        if (!written[0]){
+            return previous[0];
+        }
+        if (batch != null){
+            batch.add(new BookingChange(previous[0], booking));
+        }
+        if (previous[0] != null && (!Objects.equals(previous[0].getDepartment(), booking.getDepartment())
+                || !Objects.equals(currencyCode(previous[0]), currencyCode(booking)))){
+            unindex(previous[0]);
+        }
+        return previous[0];
+    }
+
+    @Override
+    public Booking delete(String id){
+        if (id == null){
+            return null;
+        }
+        Booking[] previous = new Booking[1];
+        Listeners.beginWrite(listeners);
+        try {
+            bookings.compute(id, (key, current) -> {
+                Booking stored = current != null || cold.isEmpty() ? current : cold.remove(key);
+                if (stored != null){
+                    previous[0] = stored;
+                    currencyRegistry.release(stored.getCurrency());
+                    notifyListeners(stored, null);
+                }
+                return null;
+            });
+        } finally {
+            Listeners.endWrite(listeners);
+        }
+        if (previous[0] != null){
+            unindex(previous[0]);
+        }
+        return previous[0];
+    }
+
+    @Override
+    public Booking find(String id){
+        if (id == null){
+            return null;
+        }
+        Booking booking = bookings.get(id);
+        if (booking == null && !cold.isEmpty()){
+            // under the id's lock, so that a write moving the booking between the tiers cannot hide it from both
+            Booking[] found = new Booking[1];
+            bookings.compute(id, (key, current) -> {
+                found[0] = current != null ? current : cold.find(key);
+                return current;
+            });
+            booking = found[0];
+        }
+        statistics.record(QueryStatistics.Query.FIND, 1, booking == null ? 0 : 1);
+        return booking;
+    }
+
+    @Override
+    public Collection<Booking> findAll(){
+        int size = bookings.size();
+        statistics.record(QueryStatistics.Query.FIND_ALL, size, size);
+        return bookings.values();
+    }
+
+    /**
+     * Walks the map, then the cold tier; a booking archived during the walk may be visited twice.
+     */
+    @Override
+    public void forEach(Consumer<Booking> action){
+        forEachHot(action);
+        cold.forEach(action);
+    }
+
+    void forEachHot(Consumer<Booking> action){
+        bookings.values().forEach(action);
+    }
+
+    @Override
+    public List<Booking> findByDepartment(String department) {
+        return resolve(QueryStatistics.Query.FIND_BY_DEPARTMENT, bookingsByDepartment, department,
+                Booking::getDepartment);
+    }
+
+    @Override
+    public List<Booking> findByDepartment(String department, String after, int limit) {
+        NavigableSet<String> bucket = department == null ? null : bookingsByDepartment.get(department);
+        if (bucket == null){
+            statistics.record(QueryStatistics.Query.FIND_BY_DEPARTMENT_PAGE, 0, 0);
+            return Collections.emptyList();
+        }
+        List<Booking> result = new ArrayList<>(Math.min(limit, 256));
+        long examined = 0;
+        for (String id : after == null ? bucket : bucket.tailSet(after, false)) {
+            if (result.size() == limit){
+                break;
+            }
+            examined++;
+            Booking booking = bookings.get(id);
+            if (booking != null && department.equals(booking.getDepartment())){
+                result.add(booking);
+            }
+        }
+        statistics.record(QueryStatistics.Query.FIND_BY_DEPARTMENT_PAGE, examined, result.size());
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return hotSize() + cold.size();
+    }
+
+    int hotSize() {
+        return bookings.size();
+    }
+
+    @Override
+    public Set<Currency> findCurrenciesUsed() {
+        return currencyRegistry.currencies();
+    }
+
+    @Override
+    public long currenciesVersion() {
+        return currencyRegistry.version();
+    }
+
+    @Override
+    public List<Booking> findByCurrency(String currency) {
+        return resolve(QueryStatistics.Query.FIND_BY_CURRENCY, bookingsByCurrency, currency,
+                InMemoryBookingRepository::currencyCode);
+    }
+
+    @Override
+    public QueryStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public long estimatedHeapBytes() {
+        return bookings.size() * ESTIMATED_BYTES_PER_BOOKING;
+    }
+
+    @Override
+    public List<Booking> archive(Collection<Booking> candidates) {
+        List<Booking> archived = new ArrayList<>();
+        for (Booking candidate : candidates) {
+            Booking[] moved = new Booking[1];
+            bookings.computeIfPresent(candidate.getId(), (id, current) -> {
+                if (current.getVersion() != candidate.getVersion()){
+                    return current;
+                }
+                cold.add(current);
+                moved[0] = current;
+                return null;
+            });
+            if (moved[0] != null){
+                unindex(moved[0]);
+                archived.add(moved[0]);
+            }
+        }
+        if (!archived.isEmpty()){
+            for (BookingChangeListener listener : listeners) {
+                listener.onArchive(archived);
+            }
+        }
+        return archived;
+    }
+
+    @Override
+    public ColdTier coldTier() {
+        return cold;
+    }
+
+    /**
+     * @return the stored bookings of the bucket's ids that still have the bucket's key
+     */
+    private List<Booking> resolve(QueryStatistics.Query query, Map<String, NavigableSet<String>> index, String key,
+                                  Function<Booking, String> keyOf) {
+        Set<String> bucket = key == null ? null : index.get(key);
+        if (bucket == null){
+            statistics.record(query, 0, 0);
+            return Collections.emptyList();
+        }
+        List<Booking> result = new ArrayList<>();
+        long examined = 0;
+        for (String id : bucket) {
+            examined++;
+            Booking booking = bookings.get(id);
+            if (booking != null && key.equals(keyOf.apply(booking))){
+                result.add(booking);
+            }
+        }
+        statistics.record(query, examined, result.size());
+        return result;
+    }
+
+    private void check(Booking booking) {
+        for (BookingChangeListener listener : listeners) {
+            listener.check(booking);
+        }
+    }
+
+    private void notifyListeners(Booking previous, Booking current) {
+        for (BookingChangeListener listener : listeners) {
+            listener.onChange(previous, current);
+        }
+    }
+
+    private void notifyListeners(List<BookingChange> changes) {
+        if (changes.isEmpty()){
+            return;
+        }
+        for (BookingChangeListener listener : listeners) {
+            listener.onChanges(changes);
+        }
+    }
+
+    /**
+     * Adds the id to the key's bucket. Called under the id's lock, so the id cannot be removed from the bucket in
+     * between; if the bucket was dropped as empty before the id got in, the id is added to the bucket replacing it.
+     */
+    private static void index(Map<String, NavigableSet<String>> index, String key, String id) {
+        if (key == null){
+            return;
+        }
+        NavigableSet<String> bucket;
+        do {
+            bucket = index.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>());
+            bucket.add(id);
+        } while (index.get(key) != bucket);
+    }
+
+    /**
+     * Takes the id of a booking that was moved, deleted or archived out of the buckets it no longer belongs to.
+     * Decided under the id's lock against the booking stored now, so that an entry a later write of the id added
+     * to the same bucket again is kept.
+     */
+    private void unindex(Booking previous) {
+        bookings.compute(previous.getId(), (id, current) -> {
+            String department = previous.getDepartment();
+            if (current == null || !Objects.equals(department, current.getDepartment())){
+                unindex(bookingsByDepartment, department, id);
+            }
+            String currency = currencyCode(previous);
+            if (current == null || !Objects.equals(currency, currencyCode(current))){
+                unindex(bookingsByCurrency, currency, id);
+            }
+            return current;
+        });
+    }
+
+    private static void unindex(Map<String, NavigableSet<String>> index, String key, String id) {
+        NavigableSet<String> bucket = key == null ? null : index.get(key);
+        if (bucket != null && bucket.remove(id) && bucket.isEmpty()){
+            index.computeIfPresent(key, (k, current) -> current.isEmpty() ? null : current);
+        }
+    }
+
+    /**
+     * @return the number of department and currency buckets
+     */
+    int indexBuckets() {
+        return bookingsByDepartment.size() + bookingsByCurrency.size();
+    }
+
+    private static String currencyCode(Booking booking) {
+        return booking.getCurrency() == null ? null : booking.getCurrency().getCurrencyCode();
+    }
+}
@@ -0,0 +1,34 @@
+package com.statista.code.challenge.repository;
+
+import java.util.List;
+
+/**
+ * Calls {@link BookingChangeListener#beginWrite()} and {@link BookingChangeListener#endWrite()} on a list of
+ * listeners, so that a listener whose {@code beginWrite} fails does not leave the others begun.
+ */
+final class Listeners {
+
+    private Listeners() {
+    }
+
+    static void beginWrite(List<BookingChangeListener> listeners) {
+        for (int i = 0; i < listeners.size(); i++) {
+            try {
+                listeners.get(i).beginWrite();
+            } catch (RuntimeException e) {
+                endWrite(listeners, i);
+                throw e;
+            }
+        }
+    }
+
+    static void endWrite(List<BookingChangeListener> listeners) {
+        endWrite(listeners, listeners.size());
+    }
+
+    private static void endWrite(List<BookingChangeListener> listeners, int begun) {
+        for (int i = begun - 1; i >= 0; i--) {
+            listeners.get(i).endWrite();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * {@link BookingRepository} split into {@link InMemoryBookingRepository} shards by booking id hash, so that
+ * department and currency queries run on all cores instead of one. Enabled with {@code bookings.store=partitioned};
+ * the number of shards is {@code bookings.store.partitions} and the fan-out pool size
+ * {@code bookings.store.parallelism}, both defaulting to the number of processors.
+ * <p>
+ * Point reads and writes go to the shard owning the id. Listings are run on every shard in parallel on a
+ * {@link ForkJoinPool}, the calling thread taking the first shard itself, and the partial results are merged; a
+ * department page takes the first {@code limit} ids of the merged shard pages. Batches are split by shard and the
+ * parts stored in parallel.
+ * <p>
+ * The shards share the listeners, the {@link CurrencyRegistry}, the {@link VersionClock} and the {@link ColdTier}, and add the entries they examine and return to
+ * this repository's {@link QueryStatistics}, which counts one call per query. Sums and other aggregates are kept by the listeners and do not touch the shards.
+ */
+@Repository
+@ConditionalOnProperty(name = "bookings.store", havingValue = "partitioned")
+public class PartitionedBookingRepository implements BookingRepository, DisposableBean {
+
+    private static final Comparator<Booking> BY_ID = Comparator.comparing(Booking::getId);
+
+    private final List<BookingChangeListener> listeners;
+    private final InMemoryBookingRepository[] shards;
+    private final ForkJoinPool pool;
+    private final CurrencyRegistry currencyRegistry = new CurrencyRegistry();
+    private final QueryStatistics statistics = new QueryStatistics();
+    private final VersionClock versions = new VersionClock();
+    private final ColdTier cold = new ColdTier();
+
+    @Autowired
+    public PartitionedBookingRepository(List<BookingChangeListener> listeners,
+                                        @Value("${bookings.store.partitions:0}") int partitions,
+                                        @Value("${bookings.store.parallelism:0}") int parallelism) {
+        this.listeners = listeners;
+        int processors = Runtime.getRuntime().availableProcessors();
+        shards = new InMemoryBookingRepository[partitions > 0 ? partitions : processors];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new InMemoryBookingRepository(listeners, currencyRegistry, statistics.part(), versions, cold);
+        }
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : processors);
+    }
+
+    @Override
+    public Booking saveOrUpdate(Booking booking) {
+        if (booking.getId() == null){
+            booking.setId(UUID.randomUUID().toString());
+        }
+        return shard(booking.getId()).saveOrUpdate(booking);
+    }
+
+    @Override
+    public Booking create(Booking booking) {
+        if (booking.getId() == null){
+            booking.setId(UUID.randomUUID().toString());
+        }
+        return shard(booking.getId()).create(booking);
+    }
+
+    @Override
+    public Booking replace(Booking booking, Long expectedVersion) {
+        return booking.getId() == null ? null : shard(booking.getId()).replace(booking, expectedVersion);
+    }
+
+    @Override
+    public List<Booking> saveAll(List<Booking> batch) {
+        storeAll(batch, (shard, part) -> shard.saveAll(part));
+        return batch;
+    }
+
+    @Override
+    public List<Booking> createAll(List<Booking> batch) {
+        return concat(storeAll(batch, InMemoryBookingRepository::createAll));
+    }
+
+    /**
+     * Splits the batch by shard and writes the parts in parallel.
+     *
+     * @return the results of the shards in shard order
+     */
+    private List<List<Booking>> storeAll(List<Booking> batch,
+                                         BiFunction<InMemoryBookingRepository, List<Booking>, List<Booking>> write) {
+        // the shards check their parts as well, but one shard must not store its part when another one's fails
+        for (Booking booking : batch) {
+            for (BookingChangeListener listener : listeners) {
+                listener.check(booking);
+            }
+        }
+        List<List<Booking>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>(batch.size() / shards.length + 1));
+        }
+        for (Booking booking : batch) {
+            if (booking.getId() == null){
+                booking.setId(UUID.randomUUID().toString());
+            }
+            parts.get(shardIndex(booking.getId())).add(booking);
+        }
+        return fanOut(i -> parts.get(i).isEmpty() ? parts.get(i) : write.apply(shards[i], parts.get(i)));
+    }
+
+    @Override
+    public Booking delete(String id) {
+        return id == null ? null : shard(id).delete(id);
+    }
+
+    @Override
+    public Booking find(String id) {
+        if (id == null){
+            return null;
+        }
+        statistics.record(QueryStatistics.Query.FIND, 0, 0);
+        return shard(id).find(id);
+    }
+
+    @Override
+    public Collection<Booking> findAll() {
+        statistics.record(QueryStatistics.Query.FIND_ALL, 0, 0);
+        List<Collection<Booking>> parts = new ArrayList<>(shards.length);
+        for (InMemoryBookingRepository shard : shards) {
+            parts.add(shard.findAll());
+        }
+        return new Concatenation(parts);
+    }
+
+    @Override
+    public void forEach(Consumer<Booking> action) {
+        for (InMemoryBookingRepository shard : shards) {
+            shard.forEachHot(action);
+        }
+        cold.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        int size = cold.size();
+        for (InMemoryBookingRepository shard : shards) {
+            size += shard.hotSize();
+        }
+        return size;
+    }
+
+    @Override
+    public List<Booking> findByDepartment(String department) {
+        statistics.record(QueryStatistics.Query.FIND_BY_DEPARTMENT, 0, 0);
+        return concat(fanOut(i -> shards[i].findByDepartment(department)));
+    }
+
+    @Override
+    public List<Booking> findByDepartment(String department, String after, int limit) {
+        statistics.record(QueryStatistics.Query.FIND_BY_DEPARTMENT_PAGE, 0, 0);
+        List<Booking> merged = concat(fanOut(i -> shards[i].findByDepartment(department, after, limit)));
+        merged.sort(BY_ID);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    @Override
+    public Set<Currency> findCurrenciesUsed() {
+        return currencyRegistry.currencies();
+    }
+
+    @Override
+    public long currenciesVersion() {
+        return currencyRegistry.version();
+    }
+
+    @Override
+    public List<Booking> findByCurrency(String currency) {
+        statistics.record(QueryStatistics.Query.FIND_BY_CURRENCY, 0, 0);
+        return concat(fanOut(i -> shards[i].findByCurrency(currency)));
+    }
+
+    @Override
+    public QueryStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public long estimatedHeapBytes() {
+        long bytes = 0;
+        for (InMemoryBookingRepository shard : shards) {
+            bytes += shard.estimatedHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Splits the bookings by shard and archives the parts one shard after the other.
+     */
+    @Override
+    public List<Booking> archive(Collection<Booking> bookings) {
+        List<List<Booking>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Booking booking : bookings) {
+            parts.get(shardIndex(booking.getId())).add(booking);
+        }
+        List<Booking> archived = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (!parts.get(i).isEmpty()){
+                archived.addAll(shards[i].archive(parts.get(i)));
+            }
+        }
+        return archived;
+    }
+
+    @Override
+    public ColdTier coldTier() {
+        return cold;
+    }
+
+    public int partitions() {
+        return shards.length;
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdown();
+    }
+
+    /**
+     * Runs the query for every shard index, the first one on the calling thread and the others on the pool.
+     *
+     * @return the results in shard order
+     */
+    private <T> List<T> fanOut(IntFunction<T> query) {
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(shards.length - 1);
+        for (int i = 1; i < shards.length; i++) {
+            int shard = i;
+            tasks.add(pool.submit(() -> query.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        results.add(query.apply(0));
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    private static List<Booking> concat(List<List<Booking>> parts) {
+        int size = 0;
+        for (List<Booking> part : parts) {
+            size += part.size();
+        }
+        List<Booking> result = new ArrayList<>(size);
+        for (List<Booking> part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    private InMemoryBookingRepository shard(String id) {
+        return shards[shardIndex(id)];
+    }
+
+    private int shardIndex(String id) {
+        int hash = id.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Read-only view of the shards' collections, one after the other.
+     */
+    private static final class Concatenation extends AbstractCollection<Booking> {
+
+        private final List<Collection<Booking>> parts;
+
+        Concatenation(List<Collection<Booking>> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public Iterator<Booking> iterator() {
+            return new Iterator<Booking>() {
+
+                private final Iterator<Collection<Booking>> remaining = parts.iterator();
+                private Iterator<Booking> current = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext() && remaining.hasNext()) {
+                        current = remaining.next().iterator();
+                    }
+                    return current.hasNext();
+                }
+
+                @Override
+                public Booking next() {
+                    if (!hasNext()){
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Collection<Booking> part : parts) {
+                size += part.size();
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.statista.code.challenge.repository;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-query counters of a {@link BookingRepository}: how often a query ran, how many stored entries it examined
+ * and how many bookings it returned. A query that examines far more entries than it returns is a scan.
+ * Recording does not allocate.
+ */
+public final class QueryStatistics {
+
+    public enum Query {
+        FIND, FIND_ALL, FIND_BY_DEPARTMENT, FIND_BY_DEPARTMENT_PAGE, FIND_BY_CURRENCY
+    }
+
+    private final LongAdder[] calls;
+    private final LongAdder[] examined;
+    private final LongAdder[] returned;
+
+    public QueryStatistics() {
+        this(adders(), adders(), adders());
+    }
+
+    private QueryStatistics(LongAdder[] calls, LongAdder[] examined, LongAdder[] returned) {
+        this.calls = calls;
+        this.examined = examined;
+        this.returned = returned;
+    }
+
+    /**
+     * @return statistics for one part of a store, adding to the examined and returned counts of this instance but
+     * not to its calls, which the store records once per query over all parts
+     */
+    QueryStatistics part() {
+        return new QueryStatistics(adders(), examined, returned);
+    }
+
+    void record(Query query, long examinedEntries, long returnedBookings) {
+        int i = query.ordinal();
+        calls[i].increment();
+        examined[i].add(examinedEntries);
+        returned[i].add(returnedBookings);
+    }
+
+    public long calls(Query query) {
+        return calls[query.ordinal()].sum();
+    }
+
+    public long examined(Query query) {
+        return examined[query.ordinal()].sum();
+    }
+
+    public long returned(Query query) {
+        return returned[query.ordinal()].sum();
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Query.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,112 @@
+package com.statista.code.challenge.repository;
+
+import java.util.Arrays;
+
+/**
+ * The rows of each dictionary id of a column, as unordered int lists, with the position of every row in its list
+ * so that a row is removed or moved in constant time. Not thread-safe; {@link ColumnarBookingRepository} guards it
+ * with its lock.
+ */
+class RowPostings {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int MIN_LIST = 16;
+
+    private int[][] lists = new int[0][];
+    private int[] sizes = new int[0];
+    // by id, the number of rows added to, removed from or moved within its list
+    private long[] changes = new long[0];
+    // by row, the index of the row in the list of its id
+    private int[] positions;
+
+    RowPostings(int capacity) {
+        positions = new int[capacity];
+    }
+
+    void add(int id, int row) {
+        if (id >= lists.length){
+            int length = Math.max(id + 1, lists.length * 2);
+            int previous = lists.length;
+            lists = Arrays.copyOf(lists, length);
+            Arrays.fill(lists, previous, length, EMPTY);
+            sizes = Arrays.copyOf(sizes, length);
+            changes = Arrays.copyOf(changes, length);
+        }
+        int[] list = lists[id];
+        if (sizes[id] == list.length){
+            list = lists[id] = Arrays.copyOf(list, Math.max(MIN_LIST, list.length * 2));
+        }
+        positions[row] = sizes[id];
+        list[sizes[id]++] = row;
+        changes[id]++;
+    }
+
+    /**
+     * Removes the row by moving the last row of the list into its place; the list is halved once it is less than a
+     * quarter full.
+     */
+    void remove(int id, int row) {
+        int[] list = lists[id];
+        int position = positions[row];
+        int lastRow = list[--sizes[id]];
+        list[position] = lastRow;
+        positions[lastRow] = position;
+        changes[id]++;
+        if (list.length > MIN_LIST && sizes[id] < list.length / 4){
+            lists[id] = Arrays.copyOf(list, list.length / 2);
+        }
+    }
+
+    /**
+     * Records that the row {@code from} of the id is now stored at {@code to}.
+     */
+    void move(int id, int from, int to) {
+        int position = positions[from];
+        lists[id][position] = to;
+        positions[to] = position;
+        changes[id]++;
+    }
+
+    /**
+     * @return the rows of the id in row order
+     */
+    int[] rows(int id) {
+        if (id < 0 || id >= lists.length){
+            return EMPTY;
+        }
+        int[] rows = Arrays.copyOf(lists[id], sizes[id]);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * @return the row at the index of the id's list, which is in no particular order
+     */
+    int row(int id, int index) {
+        return lists[id][index];
+    }
+
+    /**
+     * @return a count that changes whenever a row of the id is added, removed or moved, so that anything derived from
+     * the id's rows stays valid while it is the same
+     */
+    long changes(int id) {
+        return id < 0 || id >= changes.length ? 0 : changes[id];
+    }
+
+    int size(int id) {
+        return id < 0 || id >= sizes.length ? 0 : sizes[id];
+    }
+
+    void resize(int capacity) {
+        positions = Arrays.copyOf(positions, capacity);
+    }
+
+    long capacityBytes() {
+        long bytes = positions.length * 4L;
+        for (int[] list : lists) {
+            bytes += list.length * 4L;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,114 @@
+package com.statista.code.challenge.repository;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from a 128-bit UUID (two longs) to an int row number, with linear probing and
+ * backward-shift deletion so no tombstones accumulate. Not thread-safe; {@link ColumnarBookingRepository} and
+ * {@link ColdTier} guard it with their locks.
+ */
+class UuidRowIndex {
+
+    private static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] high;
+    private long[] low;
+    private int[] rows;
+    private int mask;
+    private int size;
+
+    UuidRowIndex(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    int get(long idHigh, long idLow) {
+        for (int slot = slot(idHigh, idLow); ; slot = (slot + 1) & mask) {
+            if (rows[slot] == EMPTY){
+                return EMPTY;
+            }
+            if (high[slot] == idHigh && low[slot] == idLow){
+                return rows[slot];
+            }
+        }
+    }
+
+    void put(long idHigh, long idLow, int row) {
+        if (size + 1 > rows.length * LOAD_FACTOR){
+            resize();
+        }
+        int slot = slot(idHigh, idLow);
+        while (rows[slot] != EMPTY) {
+            if (high[slot] == idHigh && low[slot] == idLow){
+                rows[slot] = row;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        high[slot] = idHigh;
+        low[slot] = idLow;
+        rows[slot] = row;
+        size++;
+    }
+
+    void remove(long idHigh, long idLow) {
+        int slot = slot(idHigh, idLow);
+        while (rows[slot] != EMPTY && !(high[slot] == idHigh && low[slot] == idLow)) {
+            slot = (slot + 1) & mask;
+        }
+        if (rows[slot] == EMPTY){
+            return;
+        }
+        size--;
+        // shift following entries of the probe chain back so lookups never stop at a hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; rows[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(high[next], low[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)){
+                high[hole] = high[next];
+                low[hole] = low[next];
+                rows[hole] = rows[next];
+                hole = next;
+            }
+        }
+        rows[hole] = EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return rows.length;
+    }
+
+    long capacityBytes() {
+        return rows.length * (8L + 8L + 4L);
+    }
+
+    private int slot(long idHigh, long idLow) {
+        long hash = (idHigh ^ idLow) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void resize() {
+        long[] oldHigh = high;
+        long[] oldLow = low;
+        int[] oldRows = rows;
+        allocate(oldRows.length << 1);
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] != EMPTY){
+                put(oldHigh[i], oldLow[i], oldRows[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        high = new long[capacity];
+        low = new long[capacity];
+        rows = new int[capacity];
+        Arrays.fill(rows, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+}
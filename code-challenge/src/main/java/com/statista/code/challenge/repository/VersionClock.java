@@ -0,0 +1,19 @@
+package com.statista.code.challenge.repository;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of booking versions. Versions only grow, and they start at the wall clock time in microseconds, so a
+ * version issued after a restart is larger than every version of the previous run unless that run averaged more
+ * than one write per microsecond. Clients holding an {@code ETag} from before a restart therefore get a
+ * {@code 412} instead of overwriting a booking that was recovered with a different version.
+ */
+final class VersionClock {
+
+    private final AtomicLong last = new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+
+    long next() {
+        return last.incrementAndGet();
+    }
+}
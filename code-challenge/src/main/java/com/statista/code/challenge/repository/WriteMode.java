@@ -0,0 +1,28 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+
+/**
+ * When a repository write may go ahead, decided against the booking currently stored under the id while the
+ * write holds the id's lock.
+ */
+enum WriteMode {
+
+    /** {@link BookingRepository#saveOrUpdate(Booking)}: always. */
+    UPSERT,
+    /** {@link BookingRepository#create(Booking)}: only if no booking is stored. */
+    CREATE,
+    /** {@link BookingRepository#replace(Booking, Long)}: only if a booking with the expected version is stored. */
+    REPLACE;
+
+    boolean accepts(Booking current, Long expectedVersion) {
+        switch (this) {
+            case CREATE:
+                return current == null;
+            case REPLACE:
+                return current != null && (expectedVersion == null || current.getVersion() == expectedVersion);
+            default:
+                return true;
+        }
+    }
+}
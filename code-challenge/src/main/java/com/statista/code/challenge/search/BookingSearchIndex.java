@@ -0,0 +1,581 @@
+package com.statista.code.challenge.search;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChange;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index of booking descriptions and e-mails, maintained from repository writes so that searches never scan
+ * the store.
+ * <p>
+ * Every indexed booking has a document number. Each description word maps to the ascending numbers of the bookings
+ * containing it, kept in a primitive {@code int} array, through a hash map, and the words are also kept sorted so
+ * that a prefix is a range of them. Normalized e-mails and e-mail domains map to posting lists the same way. A search
+ * intersects the posting lists of its terms, walking the shortest one and binary searching the others, and stops
+ * at the limit, so it costs about the length of the rarest term rather than the size of the store. A prefix stands
+ * for the union of the lists of its words, merged as it is walked, or copied into one list when another term is
+ * rarer.
+ * <p>
+ * A write that changes neither the description nor the e-mail of an indexed booking leaves the index alone, without
+ * taking any lock. Any other write retires the booking's number and gives it the next one, so posting lists are only
+ * ever appended to and stay sorted. Retired numbers are dropped from a posting list when it is full, before it grows,
+ * and all at once, renumbering the live bookings in order, when they outnumber the live ones; that renumbering runs
+ * on a background thread, so no write waits for it. Searches and writes share a read-write lock; archiving leaves
+ * the index unchanged, so archived bookings are found too.
+ */
+@Component
+public class BookingSearchIndex implements BookingChangeListener, DisposableBean {
+
+    static final int MIN_RETIRED_TO_COMPACT = 1024;
+    private static final int INITIAL_POSTINGS = 2;
+    private static final Postings NONE = new Postings(new int[0], 0);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Executor compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    // changed under the write lock, read without it to skip writes leaving the text alone
+    private final Map<String, Integer> documents = new ConcurrentHashMap<>();
+    // all guarded by lock
+    private final Map<String, Postings> words = new HashMap<>();
+    private final NavigableSet<String> sortedWords = new TreeSet<>();
+    private final Map<String, Postings> emails = new HashMap<>();
+    private final Map<String, Postings> domains = new HashMap<>();
+    private String[] ids = new String[1024];
+    private int nextDocument;
+    private int retired;
+    private long compactions;
+
+    public BookingSearchIndex() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-index-compaction");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param compactor runs the compactions, one at a time
+     */
+    BookingSearchIndex(Executor compactor) {
+        this.compactor = compactor;
+    }
+
+    @Override
+    public void onChange(Booking previous, Booking current) {
+        if (unchanged(previous, current)){
+            return;
+        }
+        boolean wasteful;
+        lock.writeLock().lock();
+        try {
+            apply(previous, current);
+            wasteful = wasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (wasteful){
+            scheduleCompaction();
+        }
+    }
+
+    @Override
+    public void onChanges(List<BookingChange> changes) {
+        List<BookingChange> changed = new ArrayList<>(changes.size());
+        for (BookingChange change : changes) {
+            if (!unchanged(change.getPrevious(), change.getCurrent())){
+                changed.add(change);
+            }
+        }
+        if (changed.isEmpty()){
+            return;
+        }
+        boolean wasteful;
+        lock.writeLock().lock();
+        try {
+            for (BookingChange change : changed) {
+                apply(change.getPrevious(), change.getCurrent());
+            }
+            wasteful = wasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (wasteful){
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * @return the ids of up to {@code limit} bookings matching every term of the query, in the order they were last
+     * indexed; a booking written while the caller reads it may no longer match
+     */
+    public List<String> search(SearchQuery query, int limit) {
+        lock.readLock().lock();
+        try {
+            // each clause is the posting lists of the terms that satisfy it, one but for prefixes
+            List<List<Postings>> clauses = new ArrayList<>();
+            for (String word : query.getWords()) {
+                clauses.add(Collections.singletonList(words.getOrDefault(word, NONE)));
+            }
+            for (String prefix : query.getPrefixes()) {
+                List<Postings> clause = new ArrayList<>();
+                for (String word : sortedWords.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+                    clause.add(words.get(word));
+                }
+                clauses.add(clause);
+            }
+            if (query.getEmail() != null){
+                clauses.add(Collections.singletonList(emails.getOrDefault(query.getEmail(), NONE)));
+            }
+            if (query.getDomain() != null){
+                clauses.add(Collections.singletonList(domains.getOrDefault(query.getDomain(), NONE)));
+            }
+            clauses.sort(Comparator.comparingLong(BookingSearchIndex::size));
+            List<Postings> others = new ArrayList<>(clauses.size() - 1);
+            for (List<Postings> clause : clauses.subList(1, clauses.size())) {
+                others.add(clause.size() == 1 ? clause.get(0) : union(clause));
+            }
+            Merge rarest = new Merge(clauses.get(0));
+            List<String> result = new ArrayList<>(Math.min(limit, 1024));
+            int[] from = new int[others.size()];
+            for (int document = rarest.next(); document >= 0 && result.size() < limit; document = rarest.next()) {
+                if (ids[document] != null && inAll(document, others, from)){
+                    result.add(ids[document]);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed bookings
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct description words
+     */
+    public int words() {
+        lock.readLock().lock();
+        try {
+            return words.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of times retired document numbers were dropped from the whole index
+     */
+    public long compactions() {
+        lock.readLock().lock();
+        try {
+            return compactions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (compactor instanceof ExecutorService){
+            ((ExecutorService) compactor).shutdownNow();
+        }
+    }
+
+    /**
+     * @return an estimate of the heap held by the index, in bytes, leaving out the ids and e-mails it shares with the
+     * stored bookings; walks every posting list
+     */
+    public long estimatedHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 16L + 4L * ids.length + documents.size() * 56L + sortedWords.size() * 40L;
+            for (Map<String, Postings> terms : Arrays.asList(words, emails, domains)) {
+                for (Map.Entry<String, Postings> term : terms.entrySet()) {
+                    bytes += 48 + term.getValue().estimatedBytes();
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits.
+     *
+     * @return the distinct words in order of first appearance
+     */
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null){
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); ) {
+            int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(codePoint)){
+                if (start < 0){
+                    start = i;
+                }
+            } else if (start >= 0){
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!tokens.contains(token)){
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+            i += i < text.length() ? Character.charCount(codePoint) : 1;
+        }
+        return tokens;
+    }
+
+    /**
+     * @return the e-mail trimmed and in lower case, or {@code null} if it is blank
+     */
+    static String normalizeEmail(String email) {
+        if (email == null || email.trim().isEmpty()){
+            return null;
+        }
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return whether the write keeps an indexed booking with the same text. Writes to one booking do not overlap, so
+     * no other write can index or retire it while this one checks
+     */
+    private boolean unchanged(Booking previous, Booking current) {
+        return previous != null && current != null && previous.getId() != null
+                && previous.getId().equals(current.getId()) && sameText(previous, current)
+                && documents.containsKey(current.getId());
+    }
+
+    private void apply(Booking previous, Booking current) {
+        if (unchanged(previous, current)){
+            return;
+        }
+        if (previous != null){
+            retire(previous.getId());
+        }
+        if (current != null && current.getId() != null){
+            retire(current.getId());
+            add(current);
+        }
+    }
+
+    private void add(Booking booking) {
+        int document = nextDocument++;
+        if (document == ids.length){
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[document] = booking.getId();
+        documents.put(booking.getId(), document);
+        for (String word : tokens(booking.getDescription())) {
+            Postings postings = words.get(word);
+            if (postings == null){
+                postings = new Postings();
+                words.put(word, postings);
+                sortedWords.add(word);
+            }
+            postings.add(document, ids);
+        }
+        String email = normalizeEmail(booking.getEmail());
+        if (email != null){
+            emails.computeIfAbsent(email, e -> new Postings()).add(document, ids);
+            int at = email.lastIndexOf('@');
+            if (at >= 0 && at < email.length() - 1){
+                domains.computeIfAbsent(email.substring(at + 1), d -> new Postings()).add(document, ids);
+            }
+        }
+    }
+
+    private void retire(String id) {
+        Integer document = id == null ? null : documents.remove(id);
+        if (document != null){
+            ids[document] = null;
+            retired++;
+        }
+    }
+
+    /**
+     * @return whether retired numbers outnumber live ones; called under the lock
+     */
+    private boolean wasteful() {
+        return retired >= MIN_RETIRED_TO_COMPACT && retired > documents.size();
+    }
+
+    /**
+     * Hands a compaction to the compactor unless one is waiting to run yet.
+     */
+    private void scheduleCompaction() {
+        if (!compactionScheduled.compareAndSet(false, true)){
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                compactionScheduled.set(false);
+                lock.writeLock().lock();
+                try {
+                    compactIfWasteful();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Drops retired numbers from every posting list and renumbers the live bookings in their current order, once
+     * retired numbers outnumber live ones.
+     */
+    private void compactIfWasteful() {
+        if (!wasteful()){
+            return;
+        }
+        int[] renumbered = new int[nextDocument];
+        int live = 0;
+        for (int document = 0; document < nextDocument; document++) {
+            if (ids[document] == null){
+                renumbered[document] = -1;
+            } else {
+                renumbered[document] = live;
+                ids[live] = ids[document];
+                documents.put(ids[live], live);
+                live++;
+            }
+        }
+        for (Map<String, Postings> terms : Arrays.asList(words, emails, domains)) {
+            for (Iterator<Map.Entry<String, Postings>> postings = terms.entrySet().iterator(); postings.hasNext(); ) {
+                Map.Entry<String, Postings> term = postings.next();
+                if (term.getValue().renumber(renumbered) == 0){
+                    postings.remove();
+                    if (terms == words){
+                        sortedWords.remove(term.getKey());
+                    }
+                }
+            }
+        }
+        Arrays.fill(ids, live, nextDocument, null);
+        ids = Arrays.copyOf(ids, Math.max(1024, Integer.highestOneBit(Math.max(1, live)) * 2));
+        nextDocument = live;
+        retired = 0;
+        compactions++;
+    }
+
+    private static long size(List<Postings> clause) {
+        long size = 0;
+        for (Postings postings : clause) {
+            size += postings.size;
+        }
+        return size;
+    }
+
+    private static Postings union(List<Postings> clause) {
+        int[] documents = new int[(int) size(clause)];
+        int size = 0;
+        Merge merge = new Merge(clause);
+        for (int document = merge.next(); document >= 0; document = merge.next()) {
+            documents[size++] = document;
+        }
+        return new Postings(documents, size);
+    }
+
+    /**
+     * Binary searches the posting lists for the document, each from where the last search in it ended, since
+     * documents are looked up in ascending order.
+     */
+    private static boolean inAll(int document, List<Postings> clauses, int[] from) {
+        for (int clause = 0; clause < clauses.size(); clause++) {
+            Postings postings = clauses.get(clause);
+            int at = Arrays.binarySearch(postings.documents, from[clause], postings.size, document);
+            if (at < 0){
+                from[clause] = -at - 1;
+                return false;
+            }
+            from[clause] = at + 1;
+        }
+        return true;
+    }
+
+    private static boolean sameText(Booking previous, Booking current) {
+        return equal(previous.getDescription(), current.getDescription())
+                && equal(normalizeEmail(previous.getEmail()), normalizeEmail(current.getEmail()));
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Walks the union of posting lists in ascending order without copying them, keeping the lists in a binary heap
+     * ordered by their next document, so that a prefix matching many words costs {@code O(log words)} per document
+     * read and a search stops reading at its limit.
+     */
+    private static final class Merge {
+
+        private final Postings[] lists;
+        private final int[] positions;
+        private final int[] heap;
+        private int heapSize;
+        private int last = -1;
+
+        Merge(List<Postings> postings) {
+            lists = postings.toArray(new Postings[0]);
+            positions = new int[lists.length];
+            heap = new int[lists.length];
+            for (int list = 0; list < lists.length; list++) {
+                if (lists[list].size > 0){
+                    heap[heapSize] = list;
+                    siftUp(heapSize++);
+                }
+            }
+        }
+
+        /**
+         * @return the next document, each once even if it is in several lists, or {@code -1} after the last
+         */
+        int next() {
+            while (heapSize > 0) {
+                int list = heap[0];
+                int document = lists[list].documents[positions[list]++];
+                if (positions[list] == lists[list].size){
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(0);
+                if (document != last){
+                    last = document;
+                    return document;
+                }
+            }
+            return -1;
+        }
+
+        private int head(int slot) {
+            int list = heap[slot];
+            return lists[list].documents[positions[list]];
+        }
+
+        private void siftUp(int slot) {
+            while (slot > 0 && head((slot - 1) / 2) > head(slot)) {
+                swap(slot, (slot - 1) / 2);
+                slot = (slot - 1) / 2;
+            }
+        }
+
+        private void siftDown(int slot) {
+            while (true) {
+                int smallest = slot;
+                for (int child = 2 * slot + 1; child <= 2 * slot + 2 && child < heapSize; child++) {
+                    if (head(child) < head(smallest)){
+                        smallest = child;
+                    }
+                }
+                if (smallest == slot){
+                    return;
+                }
+                swap(slot, smallest);
+                slot = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int list = heap[a];
+            heap[a] = heap[b];
+            heap[b] = list;
+        }
+    }
+
+    /**
+     * Ascending document numbers, possibly including retired ones.
+     */
+    private static final class Postings {
+
+        private int[] documents;
+        private int size;
+
+        Postings() {
+            this(new int[INITIAL_POSTINGS], 0);
+        }
+
+        Postings(int[] documents, int size) {
+            this.documents = documents;
+            this.size = size;
+        }
+
+        /**
+         * Appends a document numbered above all others. A full list first drops its retired documents and only
+         * grows if that frees less than a quarter of it.
+         */
+        void add(int document, String[] ids) {
+            if (size == documents.length){
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (ids[documents[i]] != null){
+                        documents[kept++] = documents[i];
+                    }
+                }
+                size = kept;
+                if (size > documents.length * 3 / 4){
+                    documents = Arrays.copyOf(documents, documents.length * 2);
+                }
+            }
+            documents[size++] = document;
+        }
+
+        /**
+         * @return the number of documents left
+         */
+        int renumber(int[] renumbered) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int document = renumbered[documents[i]];
+                if (document >= 0){
+                    documents[kept++] = document;
+                }
+            }
+            size = kept;
+            if (size <= documents.length / 4){
+                documents = Arrays.copyOf(documents, Math.max(INITIAL_POSTINGS, size * 2));
+            }
+            return size;
+        }
+
+        long estimatedBytes() {
+            return 16 + 16 + 4L * documents.length;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.statista.code.challenge.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed search: description words, description word prefixes, an e-mail and an e-mail domain, all of which a
+ * booking must match. Words are matched the way {@link BookingSearchIndex} splits descriptions, case-insensitively.
+ */
+public final class SearchQuery {
+
+    static final int MIN_PREFIX_LENGTH = 2;
+
+    private final List<String> words;
+    private final List<String> prefixes;
+    private final String email;
+    private final String domain;
+
+    private SearchQuery(List<String> words, List<String> prefixes, String email, String domain) {
+        this.words = words;
+        this.prefixes = prefixes;
+        this.email = email;
+        this.domain = domain;
+    }
+
+    /**
+     * @param text   words separated by blanks or punctuation; a word ending in {@code *} matches every word starting
+     *               with it, and must have at least {@value #MIN_PREFIX_LENGTH} characters before the {@code *}
+     * @param email  the customer e-mail, matched ignoring case and surrounding blanks
+     * @param domain the part of the customer e-mail after the {@code @}, matched ignoring case
+     * @return the query, or {@code null} if it has no terms or a prefix is too short
+     */
+    public static SearchQuery parse(String text, String email, String domain) {
+        List<String> words = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        if (text != null){
+            for (String part : text.trim().split("\\s+")) {
+                boolean prefix = part.endsWith("*");
+                List<String> tokens = BookingSearchIndex.tokens(prefix ? part.substring(0, part.length() - 1) : part);
+                if (prefix){
+                    if (tokens.isEmpty()){
+                        return null;
+                    }
+                    String last = tokens.remove(tokens.size() - 1);
+                    if (last.length() < MIN_PREFIX_LENGTH){
+                        return null;
+                    }
+                    prefixes.add(last);
+                }
+                for (String token : tokens) {
+                    if (!words.contains(token)){
+                        words.add(token);
+                    }
+                }
+            }
+        }
+        String normalizedEmail = BookingSearchIndex.normalizeEmail(email);
+        String normalizedDomain = BookingSearchIndex.normalizeEmail(domain);
+        if (words.isEmpty() && prefixes.isEmpty() && normalizedEmail == null && normalizedDomain == null){
+            return null;
+        }
+        return new SearchQuery(Collections.unmodifiableList(words), Collections.unmodifiableList(prefixes),
+                normalizedEmail, normalizedDomain);
+    }
+
+    List<String> getWords() {
+        return words;
+    }
+
+    List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    String getEmail() {
+        return email;
+    }
+
+    String getDomain() {
+        return domain;
+    }
+}
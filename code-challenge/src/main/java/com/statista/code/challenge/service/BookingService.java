@@ -1,55 +1,151 @@
 package com.statista.code.challenge.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.aggregate.CurrencySummary;
+import com.statista.code.challenge.aggregate.PriceAnalytics;
+import com.statista.code.challenge.aggregate.PriceStatistics;
+import com.statista.code.challenge.aggregate.StartDateIndex;
+import com.statista.code.challenge.department.DepartmentRegistry;
 import com.statista.code.challenge.entity.Booking;
-import com.statista.code.challenge.entity.BookingHumanReadableDate;
+import com.statista.code.challenge.notification.BookingMail;
+import com.statista.code.challenge.notification.NotificationDispatcher;
+import com.statista.code.challenge.persistence.BookingPersistence;
 import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.search.BookingSearchIndex;
+import com.statista.code.challenge.search.SearchQuery;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
 import java.util.ArrayList;
-import java.util.Currency;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 
 @Service
 public class BookingService {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int STREAM_PAGE_SIZE = 500;
+    private static final String INSTANCE = Long.toString(System.currentTimeMillis(), 36);
+
     private final BookingRepository repository;
+    private final CurrencyAggregates currencyAggregates;
+    private final ObjectMapper objectMapper;
+    private final BookingPersistence persistence;
+    private final NotificationDispatcher notifications;
+    private final DepartmentRegistry departments;
+    private final StartDateIndex startDates;
+    private final BookingSearchIndex searchIndex;
+    private final PriceAnalytics priceAnalytics;
 
-    public BookingService(BookingRepository repository) {
+    public BookingService(BookingRepository repository, CurrencyAggregates currencyAggregates,
+                          ObjectMapper objectMapper, BookingPersistence persistence,
+                          NotificationDispatcher notifications, DepartmentRegistry departments,
+                          StartDateIndex startDates, BookingSearchIndex searchIndex, PriceAnalytics priceAnalytics) {
         this.repository = repository;
+        this.currencyAggregates = currencyAggregates;
+        this.departments = departments;
+        this.startDates = startDates;
+        this.searchIndex = searchIndex;
+        this.priceAnalytics = priceAnalytics;
+        this.objectMapper = objectMapper;
+        this.persistence = persistence;
+        this.notifications = notifications;
     }
 
+    /**
+     * Stores a new booking and queues its confirmation mail. The mail is reserved before the booking is written,
+     * so when the mail pipeline is full the request fails with 503 and {@code Retry-After} and nothing is stored.
+     * The booking is only stored if its id is free at the moment of the write, so of concurrent creates with the
+     * same id exactly one succeeds and the others get 409.
+     */
     public ResponseEntity createBooking(Booking booking){
         if (repository.find(booking.getId()) != null){
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
-        Booking bookingAfterSave = repository.saveOrUpdate(booking);
-        return ResponseEntity.status(HttpStatus.CREATED).body(bookingAfterSave.getId());
+        if (!notifications.tryReserve()){
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(notifications.retryAfterSeconds()))
+                    .build();
+        }
+        Booking existing;
+        try {
+            existing = repository.create(booking);
+        } catch (RuntimeException e) {
+            notifications.cancel();
+            throw e;
+        }
+        if (existing != null){
+            notifications.cancel();
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        notifications.submit(BookingMail.confirmation(booking));
+        persistence.awaitDurable();
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(etag(booking)).body(booking.getId());
     }
 
     public ResponseEntity updateBooking(String bookingId, Booking booking) {
-        if (repository.find(bookingId) == null){
+        return updateBooking(bookingId, booking, null);
+    }
+
+    /**
+     * Replaces the booking stored under {@code bookingId}, whatever id the body carries. With an {@code If-Match}
+     * header holding the booking's current {@code ETag} the replace only happens if nobody wrote the booking in
+     * between, and fails with 412 otherwise; {@code *} or no header only require the booking to exist. The check
+     * and the write are one atomic repository step, so a booking deleted concurrently is never recreated.
+     */
+    public ResponseEntity updateBooking(String bookingId, Booking booking, String ifMatch) {
+        Long expectedVersion = null;
+        if (ifMatch != null && !"*".equals(ifMatch.trim())){
+            expectedVersion = version(ifMatch);
+            if (expectedVersion == null){
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        }
+        booking.setId(bookingId);
+        Booking previous = repository.replace(booking, expectedVersion);
+        if (previous == null){
             return ResponseEntity.badRequest().build();
         }
-        repository.saveOrUpdate(booking);
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+        if (expectedVersion != null && previous.getVersion() != expectedVersion){
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).eTag(etag(previous)).build();
+        }
+        persistence.awaitDurable();
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(etag(booking)).build();
+    }
+
+    public ResponseEntity deleteBooking(String bookingId) {
+        if (repository.delete(bookingId) == null){
+            return ResponseEntity.notFound().build();
+        }
+        persistence.awaitDurable();
+        return ResponseEntity.noContent().build();
     }
 
     public ResponseEntity find(String bookingId) {
+        return find(bookingId, null);
+    }
+
+    /**
+     * The booking with its version as {@code ETag}; 304 without a body if {@code If-None-Match} names that version.
+     */
+    public ResponseEntity find(String bookingId, String ifNoneMatch) {
         Booking booking = repository.find(bookingId);
         if (booking == null){
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(booking);
+        String etag = etag(booking);
+        if (matches(ifNoneMatch, etag)){
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(booking);
     }
 
     public ResponseEntity findByDepartment(String department) {
@@ -60,66 +156,244 @@ public class BookingService {
         return ResponseEntity.ok().body(bookingsByDepartment);
     }
 
+    /**
+     * One page of a department in ascending id order. When the page is full, the id to pass as {@code after} for
+     * the next page is returned in the {@value #NEXT_CURSOR_HEADER} header. Page sizes are capped at
+     * {@value #MAX_PAGE_SIZE}.
+     */
+    public ResponseEntity findByDepartment(String department, String after, int limit) {
+        if (limit <= 0){
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        List<Booking> page = repository.findByDepartment(department, after, pageSize);
+        if (page.isEmpty() && after == null){
+            return ResponseEntity.notFound().build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize){
+            response.header(NEXT_CURSOR_HEADER, page.get(page.size() - 1).getId());
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Streams a whole department as NDJSON, reading it page by page so memory use does not grow with its size.
+     */
+    public ResponseEntity<StreamingResponseBody> streamByDepartment(String department) {
+        List<Booking> firstPage = repository.findByDepartment(department, null, STREAM_PAGE_SIZE);
+        if (firstPage.isEmpty()){
+            return ResponseEntity.notFound().build();
+        }
+        ObjectWriter writer = objectMapper.writerFor(Booking.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                List<Booking> page = firstPage;
+                while (!page.isEmpty()) {
+                    for (Booking booking : page) {
+                        writer.writeValue(generator, booking);
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                    if (page.size() < STREAM_PAGE_SIZE){
+                        break;
+                    }
+                    page = repository.findByDepartment(department, page.get(page.size() - 1).getId(), STREAM_PAGE_SIZE);
+                }
+            }
+        };
+        return ResponseEntity.ok().body(body);
+    }
+
+    /**
+     * One page of the bookings starting in {@code [from, to)}, in ascending start date and id order, read from the
+     * {@link StartDateIndex}. When the page is full, the {@code <start date>:<id>} of its last booking is returned in
+     * the {@value #NEXT_CURSOR_HEADER} header to pass as {@code after} for the next page.
+     */
+    public ResponseEntity findByStartDate(long from, long to, String after, int limit) {
+        if (limit <= 0 || from > to){
+            return ResponseEntity.badRequest().build();
+        }
+        StartDateIndex.Entry position = null;
+        if (after != null){
+            int separator = after.indexOf(':');
+            if (separator < 0){
+                return ResponseEntity.badRequest().build();
+            }
+            try {
+                position = StartDateIndex.position(Long.parseLong(after.substring(0, separator)),
+                        after.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        List<StartDateIndex.Entry> entries = startDates.page(from, to, position, pageSize);
+        List<Booking> page = new ArrayList<>(entries.size());
+        for (StartDateIndex.Entry entry : entries) {
+            Booking booking = repository.find(entry.getId());
+            if (booking != null && Long.valueOf(entry.getStartDate()).equals(booking.getSubscriptionStartDate())){
+                page.add(booking);
+            }
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (entries.size() == pageSize){
+            StartDateIndex.Entry last = entries.get(entries.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, last.getStartDate() + ":" + last.getId());
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Booking count and price sum per currency of the bookings starting in {@code [from, to)}.
+     */
+    public ResponseEntity retrieveTotalsByStartDate(long from, long to) {
+        if (from > to){
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(startDates.totals(from, to));
+    }
+
+    /**
+     * Bookings matching all of the description words and prefixes in {@code text}, the e-mail and the e-mail
+     * domain, read from the {@link BookingSearchIndex}. Results are capped at {@value #MAX_PAGE_SIZE}; a query
+     * without terms or with a prefix shorter than two characters is rejected with 400.
+     */
+    public ResponseEntity search(String text, String email, String domain, int limit) {
+        SearchQuery query = SearchQuery.parse(text, email, domain);
+        if (query == null || limit <= 0){
+            return ResponseEntity.badRequest().build();
+        }
+        List<String> ids = searchIndex.search(query, Math.min(limit, MAX_PAGE_SIZE));
+        List<Booking> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Booking booking = repository.find(id);
+            if (booking != null){
+                found.add(booking);
+            }
+        }
+        return ResponseEntity.ok(found);
+    }
+
     public ResponseEntity retrieveCurrencyUsed() {
+        return retrieveCurrencyUsed(null);
+    }
+
+    /**
+     * Tagged with the currency registry version, which only moves when a currency appears or disappears, so
+     * polls answered with 304 do not even build the set.
+     */
+    public ResponseEntity retrieveCurrencyUsed(String ifNoneMatch) {
+        String etag = etag(repository.currenciesVersion());
+        if (matches(ifNoneMatch, etag)){
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         Set currenciesUsed = repository.findCurrenciesUsed();
         if (currenciesUsed.isEmpty()){
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(currenciesUsed);
+        return ResponseEntity.ok().eTag(etag).body(currenciesUsed);
     }
 
     public ResponseEntity retrieveSumByCurrency(String currency) {
-        List<Booking> bookingsByCurrency = repository.findByCurrency(currency);
-        double result = 0.0;
-        for (Booking booking : bookingsByCurrency) {
-            result += booking.getPrice();
+        return retrieveSumByCurrency(currency, null);
+    }
+
+    /**
+     * Tagged with the modification counter of the currency's totals; 304 skips computing the sum.
+     */
+    public ResponseEntity retrieveSumByCurrency(String currency, String ifNoneMatch) {
+        String etag = etag(currencyAggregates.version(currency));
+        if (matches(ifNoneMatch, etag)){
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
         }
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok().eTag(etag).body(currencyAggregates.sum(currency));
     }
 
+    public ResponseEntity retrieveSummaryByCurrency(String currency) {
+        CurrencySummary summary = currencyAggregates.summary(currency);
+        if (summary == null){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(summary);
+    }
+
+    /**
+     * Median, p90, p99 and most expensive bookings per currency of the department, from the running
+     * {@link PriceAnalytics}; 404 if the department has no bookings.
+     */
+    public ResponseEntity retrievePriceStatistics(String department) {
+        List<PriceStatistics> statistics = priceAnalytics.statistics(department, repository::forEach);
+        if (statistics.isEmpty()){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(statistics);
+    }
+
+    /**
+     * The same over all departments, merged per currency.
+     */
+    public ResponseEntity retrievePriceStatistics() {
+        return ResponseEntity.ok(priceAnalytics.statistics(repository::forEach));
+    }
+
+    /**
+     * Answered from the department's view in the {@link DepartmentRegistry}, which is kept up to date on every write;
+     * 400 for a department without a strategy.
+     */
     public ResponseEntity doBusiness(String department) {
-        switch (department.toLowerCase()){
-            case "internal":
-                return convertSubscriptionStartDateToHumanReadable(department);
-            case "sales":
-                return averageAllSalesByCurrency(department);
-            default:
-                return ResponseEntity.badRequest().build();
+        Object result = departments.result(department);
+        if (result == null){
+            return ResponseEntity.badRequest().build();
         }
+        return ResponseEntity.ok(result);
     }
 
-     ResponseEntity averageAllSalesByCurrency(String department) {
-        List<Booking> bookingByDepartment = repository.findByDepartment(department);
-        Map<Currency, Double> currencyTotals = new HashMap<>();
-        Map<Currency, Integer> currencyCount = new HashMap<>();
-        for (Booking booking : bookingByDepartment) {
-            if (currencyTotals.containsKey(booking.getCurrency())) {
-                currencyTotals.put(booking.getCurrency(), currencyTotals.get(booking.getCurrency()) + booking.getPrice());
-                currencyCount.put(booking.getCurrency(), currencyCount.get(booking.getCurrency()) + 1);
-            } else {
-                currencyTotals.put(booking.getCurrency(), booking.getPrice());
-                currencyCount.put(booking.getCurrency(), 1);
-            }
+    static String etag(Booking booking) {
+        return "\"" + booking.getVersion() + "\"";
+    }
+
+    /**
+     * Tag for a state identified by an in-memory counter, which starts over on restart; the process start time
+     * keeps tags of an earlier run from matching.
+     */
+    static String etag(long counter) {
+        return "\"" + INSTANCE + "-" + counter + "\"";
+    }
+
+    /**
+     * Weak comparison as {@code If-None-Match} requires: {@code *} or any listed tag equal to {@code etag},
+     * ignoring {@code W/} prefixes.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null){
+            return false;
         }
-        Map<Currency, Double> averagePerCurrency = new HashMap<>();
-        for (Map.Entry<Currency, Double> entry : currencyTotals.entrySet()){
-            averagePerCurrency.put(entry.getKey(), entry.getValue()/currencyCount.get(entry.getKey()));
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")){
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)){
+                return true;
+            }
         }
-        return ResponseEntity.ok(averagePerCurrency);
+        return false;
     }
 
-     ResponseEntity convertSubscriptionStartDateToHumanReadable(String department) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)
-                .withLocale(Locale.GERMANY)
-                .withZone(ZoneId.systemDefault());
-        List<Booking> bookingByDepartment = repository.findByDepartment(department);
-        List<BookingHumanReadableDate> result = new ArrayList<>();
-        for (Booking booking : bookingByDepartment) {
-            BookingHumanReadableDate bookingHumanReadableDate = new BookingHumanReadableDate(booking);
-            String date = formatter.format(Instant.ofEpochMilli(booking.getSubscriptionStartDate()));
-            bookingHumanReadableDate.setHumanReadableSubscriptionStartDate(date);
-            result.add(bookingHumanReadableDate);
+    /**
+     * @return the version of a strong {@code ETag} sent by {@link #etag(Booking)}, or {@code null} for anything else,
+     * which then matches no booking
+     */
+    static Long version(String etag) {
+        String value = etag.trim();
+        if (value.length() < 3 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"'){
+            return null;
+        }
+        try {
+            return Long.parseLong(value.substring(1, value.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return ResponseEntity.ok(result);
     }
 }
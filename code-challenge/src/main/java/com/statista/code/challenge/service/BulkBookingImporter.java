@@ -0,0 +1,181 @@
+package com.statista.code.challenge.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.persistence.BookingPersistence;
+import com.statista.code.challenge.repository.BookingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams bookings from a JSON array or an NDJSON body into the repository.
+ * <p>
+ * Records are read one at a time with the Jackson streaming parser, validated, and stored with
+ * {@link BookingRepository#createAll(List)} in batches, so neither the request body nor the result list is ever
+ * held in memory as a whole. For every record one NDJSON line is written: {@code {"index":n,"id":"..."}} when it
+ * was stored, {@code {"index":n,"errors":[...]}} when it was rejected. Like a POST, a record never replaces a
+ * stored booking: an id that is taken when its batch is stored rejects the record, even if the booking under the
+ * id was created after the record was read. A body that is not valid JSON ends the
+ * import with a final line carrying {@code "fatal"}; records of earlier batches stay stored.
+ */
+@Service
+public class BulkBookingImporter {
+
+    private final BookingRepository repository;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final BookingPersistence persistence;
+    private final int batchSize;
+
+    public BulkBookingImporter(BookingRepository repository, ObjectMapper objectMapper, Validator validator,
+                               BookingPersistence persistence,
+                               @Value("${bookings.bulk.batch-size:1000}") int batchSize) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.persistence = persistence;
+        this.batchSize = batchSize;
+    }
+
+    public void importBookings(InputStream in, OutputStream out) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            Batch batch = new Batch();
+            long index = 0;
+            try {
+                JsonToken token = parser.nextToken();
+                boolean array = token == JsonToken.START_ARRAY;
+                if (array){
+                    token = parser.nextToken();
+                }
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    JsonNode record = objectMapper.readTree(parser);
+                    accept(index++, record, batch);
+                    if (batch.results.size() >= batchSize){
+                        flush(batch, generator);
+                    }
+                    token = parser.nextToken();
+                }
+            } catch (JsonProcessingException e) {
+                flush(batch, generator);
+                writeFatal(generator, index, e.getOriginalMessage());
+                return;
+            }
+            flush(batch, generator);
+        }
+    }
+
+    private void accept(long index, JsonNode record, Batch batch) {
+        Booking booking;
+        try {
+            booking = objectMapper.treeToValue(record, Booking.class);
+        } catch (JsonProcessingException e) {
+            batch.results.add(new Result(index, null, e.getOriginalMessage()));
+            return;
+        }
+        List<String> errors = new ArrayList<>();
+        for (ConstraintViolation<Booking> violation : validator.validate(booking)) {
+            errors.add(violation.getPropertyPath() + " " + violation.getMessage());
+        }
+        if (booking.getId() != null && batch.ids.contains(booking.getId())){
+            errors.add(alreadyExists(booking));
+        }
+        if (!errors.isEmpty()){
+            batch.results.add(new Result(index, null, errors.toArray(new String[0])));
+            return;
+        }
+        if (booking.getId() != null){
+            batch.ids.add(booking.getId());
+        }
+        batch.bookings.add(booking);
+        batch.results.add(new Result(index, booking));
+    }
+
+    private void flush(Batch batch, JsonGenerator generator) throws IOException {
+        Set<Booking> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (!batch.bookings.isEmpty()){
+            taken.addAll(repository.createAll(batch.bookings));
+            persistence.awaitDurable();
+        }
+        for (Result result : batch.results) {
+            generator.writeStartObject();
+            generator.writeNumberField("index", result.index);
+            if (result.booking != null && !taken.contains(result.booking)){
+                generator.writeStringField("id", result.booking.getId());
+            } else {
+                // a booking that passed validation but found its id taken when the batch was stored
+                String[] errors = result.booking == null ? result.errors : new String[]{alreadyExists(result.booking)};
+                generator.writeArrayFieldStart("errors");
+                for (String error : errors) {
+                    generator.writeString(error);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        batch.clear();
+        generator.flush();
+    }
+
+    private static String alreadyExists(Booking booking) {
+        return "id " + booking.getId() + " already exists";
+    }
+
+    private static void writeFatal(JsonGenerator generator, long index, String message) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        generator.writeStringField("fatal", message);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    /**
+     * Records read since the last flush: the valid bookings waiting to be stored and one result per record, in
+     * request order.
+     */
+    private static final class Batch {
+
+        private final List<Booking> bookings = new ArrayList<>();
+        private final List<Result> results = new ArrayList<>();
+        private final Set<String> ids = new HashSet<>();
+
+        void clear() {
+            bookings.clear();
+            results.clear();
+            ids.clear();
+        }
+    }
+
+    private static final class Result {
+
+        private final long index;
+        private final Booking booking;
+        private final String[] errors;
+
+        Result(long index, Booking booking, String... errors) {
+            this.index = index;
+            this.booking = booking;
+            this.errors = errors;
+        }
+    }
+}
@@ -1,32 +1,47 @@
 package com.statista.code.challenge;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.statista.code.challenge.aggregate.CurrencyTotal;
+import com.statista.code.challenge.aggregate.PriceStatistics;
 import com.statista.code.challenge.entity.Booking;
 import com.statista.code.challenge.entity.BookingHumanReadableDate;
-import org.junit.Before;
-import org.junit.Test;
-import org.junit.runner.RunWith;
+import com.statista.code.challenge.repository.BookingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
-import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Currency;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
-@RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class FooBarControllerIT {
@@ -34,10 +49,13 @@ public class FooBarControllerIT {
     @Autowired
     private TestRestTemplate testRestTemplate;
 
+    @Autowired
+    private BookingRepository repository;
+
     @LocalServerPort
     int randomServerPort;
 
-    @Before
+    @BeforeEach
     public void init() throws URISyntaxException {
         setupTestData();
     }
@@ -54,6 +72,26 @@ public class FooBarControllerIT {
         assertNotNull(response.getBody());
     }
 
+    @Test
+    public void testCreateBookingsInBulk() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings/bulk";
+        URI uri = new URI(baseUrl);
+        String record = "{\"description\":\"Cool description!\",\"price\":50.00,\"currency\":\"USD\","
+                + "\"subscription_start_date\":683124845000,\"email\":\"valid@email.ok\",\"department\":\"bulk\"}";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+        HttpEntity<String> request = new HttpEntity<>(record + "\n{\"price\":1}\n" + record + "\n", headers);
+        ResponseEntity<String> response = this.testRestTemplate.postForEntity(uri, request, String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String[] lines = response.getBody().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].contains("errors"));
+
+        URI departmentUri = new URI("http://localhost:"+randomServerPort+"/bookingservice/bookings/department/bulk");
+        ResponseEntity<Booking[]> bookings = this.testRestTemplate.getForEntity(departmentUri, Booking[].class);
+        assertEquals(2, bookings.getBody().length);
+    }
+
     @Test
     public void testUpdateBooking() throws URISyntaxException {
         String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings";
@@ -75,6 +113,32 @@ public class FooBarControllerIT {
         assertEquals(Currency.getInstance("EUR"), bookingResponse.getBody().getCurrency());
     }
 
+    @Test
+    public void testConditionalUpdateBooking() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings";
+        Booking booking = new Booking("Cool description!", 50.00, Currency.getInstance("USD"),
+                683124845000L, "valid@email.ok", "cool department");
+        ResponseEntity<String> response = this.testRestTemplate.postForEntity(new URI(baseUrl),
+                new HttpEntity<>(booking), String.class);
+        String created = response.getHeaders().getETag();
+        assertNotNull(created);
+        URI bookingUri = new URI(baseUrl + "/" + response.getBody());
+        assertEquals(created, this.testRestTemplate.getForEntity(bookingUri, Booking.class).getHeaders().getETag());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(created);
+        booking.setPrice(60.00);
+        ResponseEntity<Void> put = this.testRestTemplate.exchange(bookingUri, HttpMethod.PUT,
+                new HttpEntity<>(booking, headers), Void.class);
+        assertEquals(HttpStatus.CREATED, put.getStatusCode());
+        assertNotEquals(created, put.getHeaders().getETag());
+
+        booking.setPrice(70.00);
+        put = this.testRestTemplate.exchange(bookingUri, HttpMethod.PUT, new HttpEntity<>(booking, headers), Void.class);
+        assertEquals(HttpStatus.PRECONDITION_FAILED, put.getStatusCode());
+        assertEquals(60.00, this.testRestTemplate.getForEntity(bookingUri, Booking.class).getBody().getPrice(), 0.001);
+    }
+
     @Test
     public void testRetrieveBooking() throws URISyntaxException {
         String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings";
@@ -106,6 +170,112 @@ public class FooBarControllerIT {
         assertEquals("internal", booking.getDepartment());
     }
 
+    @Test
+    public void testRetrieveByDepartmentPaged() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings/department/internal?limit=1";
+        ResponseEntity<Booking[]> response = this.testRestTemplate.getForEntity(new URI(baseUrl), Booking[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().length);
+        String next = response.getHeaders().getFirst("X-Next-Cursor");
+        assertEquals(response.getBody()[0].getId(), next);
+
+        response = this.testRestTemplate.getForEntity(new URI(baseUrl + "&after=" + next), Booking[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(0, response.getBody().length);
+    }
+
+    @Test
+    public void testRetrieveByStartDate() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings/start-date"
+                + "?from=683124845000&to=683124845001&limit=1";
+        ResponseEntity<Booking[]> response = this.testRestTemplate.getForEntity(new URI(baseUrl), Booking[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().length);
+        String next = response.getHeaders().getFirst("X-Next-Cursor");
+        assertEquals("683124845000:" + response.getBody()[0].getId(), next);
+
+        response = this.testRestTemplate.getForEntity(new URI(baseUrl + "&after=" + next), Booking[].class);
+        assertEquals(1, response.getBody().length);
+
+        String sumUrl = "http://localhost:"+randomServerPort+"/bookingservice/sum/start-date"
+                + "?from=683078400000&to=683164800000";
+        ResponseEntity<CurrencyTotal[]> totals = this.testRestTemplate.getForEntity(new URI(sumUrl),
+                CurrencyTotal[].class);
+        assertEquals(HttpStatus.OK, totals.getStatusCode());
+        assertEquals(1, totals.getBody().length);
+        assertEquals(Currency.getInstance("USD"), totals.getBody()[0].getCurrency());
+        assertEquals(2, totals.getBody()[0].getCount());
+        assertEquals(100.00, totals.getBody()[0].getSum().doubleValue(), 0.001);
+    }
+
+    @Test
+    public void testSearchBookings() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings/search";
+        ResponseEntity<Booking[]> response = this.testRestTemplate.getForEntity(
+                new URI(baseUrl + "?q=cool+desc*&domain=EMAIL.ok&limit=1"), Booking[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().length);
+        assertEquals("Cool description!", response.getBody()[0].getDescription());
+
+        response = this.testRestTemplate.getForEntity(new URI(baseUrl + "?email=valid@email.ok"), Booking[].class);
+        assertEquals(2, response.getBody().length);
+        response = this.testRestTemplate.getForEntity(new URI(baseUrl + "?q=cool+warm"), Booking[].class);
+        assertEquals(0, response.getBody().length);
+        assertEquals(HttpStatus.BAD_REQUEST, this.testRestTemplate.getForEntity(new URI(baseUrl + "?q=c*"),
+                String.class).getStatusCode());
+    }
+
+    @Test
+    public void testRetrievePriceStatistics() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/analytics";
+        ResponseEntity<PriceStatistics[]> response = this.testRestTemplate.getForEntity(
+                new URI(baseUrl + "/internal"), PriceStatistics[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().length);
+        PriceStatistics statistics = response.getBody()[0];
+        assertEquals(Currency.getInstance("USD"), statistics.getCurrency());
+        assertEquals(0, new BigDecimal("50.00").compareTo(statistics.getTop().get(0).getPrice()));
+        assertEquals(50.00, statistics.getMedian().doubleValue(), 0.5);
+
+        response = this.testRestTemplate.getForEntity(new URI(baseUrl), PriceStatistics[].class);
+        assertEquals(2, response.getBody()[0].getCount());
+        assertEquals(2, response.getBody()[0].getTop().size());
+        assertEquals(HttpStatus.NOT_FOUND, this.testRestTemplate.getForEntity(new URI(baseUrl + "/unknown"),
+                String.class).getStatusCode());
+    }
+
+    @Test
+    public void testScansOverTheClientLimitAreRejected() throws URISyntaxException {
+        URI uri = new URI("http://localhost:"+randomServerPort+"/bookingservice/analytics");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client-Id", "greedy");
+        ResponseEntity<String> response;
+        // a burst of 40 and 20 more a second: sent back to back, some request after the first 40 is rejected
+        int sent = 0;
+        do {
+            response = this.testRestTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        } while (response.getStatusCode() == HttpStatus.OK && ++sent < 1000);
+        assertTrue(sent >= 40);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertNotNull(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(HttpStatus.OK, this.testRestTemplate.getForEntity(uri, String.class).getStatusCode());
+        assertEquals(HttpStatus.OK, this.testRestTemplate.getForEntity(new URI("http://localhost:"+randomServerPort
+                +"/bookingservice/sum/USD"), String.class).getStatusCode());
+    }
+
+    @Test
+    public void testStreamByDepartment() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings/department/internal";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/x-ndjson")));
+        ResponseEntity<String> response = this.testRestTemplate.exchange(new URI(baseUrl), HttpMethod.GET,
+                new HttpEntity<>(headers), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String[] lines = response.getBody().split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("\"department\":\"internal\""));
+    }
+
     @Test
     public void testRetrieveCurrenciesUsed() throws URISyntaxException {
         String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings/currencies";
@@ -117,6 +287,34 @@ public class FooBarControllerIT {
         assertEquals("USD", responseSet.stream().findFirst().get());
     }
 
+    @Test
+    public void testConditionalGetsAnswerNotModified() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice";
+        for (String path : new String[]{"/bookings/currencies", "/sum/USD"}) {
+            URI uri = new URI(baseUrl + path);
+            ResponseEntity<String> response = this.testRestTemplate.getForEntity(uri, String.class);
+            String etag = response.getHeaders().getETag();
+            assertNotNull(etag);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setIfNoneMatch(etag);
+            response = this.testRestTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+            assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+            assertEquals(null, response.getBody());
+        }
+        ResponseEntity<String> created = this.testRestTemplate.postForEntity(new URI(baseUrl + "/bookings"),
+                new HttpEntity<>(new Booking("Cool description!", 10.00, Currency.getInstance("EUR"),
+                        683124845000L, "valid@email.ok", "sales")), String.class);
+        URI bookingUri = new URI(baseUrl + "/bookings/" + created.getBody());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(created.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, this.testRestTemplate.exchange(bookingUri, HttpMethod.GET,
+                new HttpEntity<>(headers), String.class).getStatusCode());
+        headers.setIfNoneMatch(this.testRestTemplate.getForEntity(new URI(baseUrl + "/bookings/currencies"),
+                String.class).getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, this.testRestTemplate.exchange(new URI(baseUrl + "/bookings/currencies"),
+                HttpMethod.GET, new HttpEntity<>(headers), String.class).getStatusCode());
+    }
+
     @Test
     public void testSumCurrencies() throws URISyntaxException {
         String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/sum/USD";
@@ -150,6 +348,112 @@ public class FooBarControllerIT {
         assertEquals("25.08.1991, 14:54:05", bookingHumanReadableDate.getHumanReadableSubscriptionStartDate());
     }
 
+    @Test
+    public void testBinaryFormatsAreNegotiated() throws URISyntaxException, IOException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/cbor")));
+        ResponseEntity<byte[]> response = this.testRestTemplate.exchange(new URI(baseUrl + "/department/internal"),
+                HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("application/cbor"), response.getHeaders().getContentType());
+        assertTrue(response.getHeaders().getVary().stream().anyMatch(HttpHeaders.ACCEPT::equalsIgnoreCase));
+        Booking[] bookings = new CBORMapper().readValue(response.getBody(), Booking[].class);
+        assertEquals(1, bookings.length);
+        assertEquals("internal", bookings[0].getDepartment());
+        assertEquals(683124845000L, bookings[0].getSubscriptionStartDate().longValue());
+
+        headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/x-jackson-smile")));
+        response = this.testRestTemplate.exchange(new URI(baseUrl + "/dobusiness/internal"), HttpMethod.GET,
+                new HttpEntity<>(headers), byte[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("application/x-jackson-smile"), response.getHeaders().getContentType());
+        BookingHumanReadableDate[] humanReadable =
+                new SmileMapper().readValue(response.getBody(), BookingHumanReadableDate[].class);
+        assertEquals(1, humanReadable.length);
+        assertEquals("25.08.1991, 14:54:05", humanReadable[0].getHumanReadableSubscriptionStartDate());
+    }
+
+    @Test
+    public void testChangeFeedPushesWritesAndResumes() throws URISyntaxException, IOException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings";
+        HttpURLConnection connection = (HttpURLConnection) new URI(baseUrl + "/changes?department=feed")
+                .toURL().openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+        connection.setReadTimeout(5000);
+        String ready;
+        String created;
+        try (BufferedReader events = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            ready = nextEvent(events, "ready");
+            this.testRestTemplate.postForEntity(new URI(baseUrl), new HttpEntity<>(new Booking("Cool description!",
+                    50.00, Currency.getInstance("USD"), 683124845000L, "valid@email.ok", "feed")), String.class);
+            created = nextEvent(events, "create");
+        } finally {
+            connection.disconnect();
+        }
+        assertTrue(created.contains("\"department\":\"feed\""));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.TEXT_EVENT_STREAM));
+        headers.set("Last-Event-ID", "not a number");
+        assertEquals(HttpStatus.BAD_REQUEST, this.testRestTemplate.exchange(new URI(baseUrl + "/changes"),
+                HttpMethod.GET, new HttpEntity<>(headers), String.class).getStatusCode());
+
+        connection = (HttpURLConnection) new URI(baseUrl + "/changes?department=feed&after=" + ready)
+                .toURL().openConnection();
+        connection.setReadTimeout(5000);
+        try (BufferedReader events = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals(created, nextEvent(events, "create"));
+            nextEvent(events, "ready");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Reads server-sent events up to the first one named {@code name}.
+     *
+     * @return the data of a change event, the id of any other event
+     */
+    private static String nextEvent(BufferedReader events, String name) throws IOException {
+        String event = null;
+        String data = null;
+        String id = null;
+        for (String line = events.readLine(); line != null; line = events.readLine()) {
+            if (line.startsWith("event:")){
+                event = line.substring("event:".length());
+            } else if (line.startsWith("data:")){
+                data = line.substring("data:".length());
+            } else if (line.startsWith("id:")){
+                id = line.substring("id:".length());
+            } else if (line.isEmpty() && name.equals(event)){
+                return data.contains("\"booking\"") ? data : id;
+            }
+        }
+        throw new IOException("No " + name + " event");
+    }
+
+    @Test
+    public void testArchivedBookingsAreReadByIdAndCounted() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice";
+        List<Booking> hot = new ArrayList<>(repository.findAll());
+        assertEquals(2, repository.archive(hot).size());
+        ResponseEntity<Booking> archived = this.testRestTemplate.getForEntity(
+                new URI(baseUrl + "/bookings/" + hot.get(0).getId()), Booking.class);
+        assertEquals(HttpStatus.OK, archived.getStatusCode());
+        assertEquals(hot.get(0), archived.getBody());
+        assertEquals(100.00, this.testRestTemplate.getForEntity(new URI(baseUrl + "/sum/USD"), Double.class)
+                .getBody(), 0.001);
+        assertEquals(HttpStatus.NOT_FOUND, this.testRestTemplate.getForEntity(
+                new URI(baseUrl + "/bookings/department/sales"), String.class).getStatusCode());
+        Map tiers = (Map) this.testRestTemplate.getForEntity(new URI(baseUrl + "/metrics"), Map.class).getBody()
+                .get("tiers");
+        assertEquals(0, tiers.get("hotBookings"));
+        assertEquals(2, tiers.get("coldBookings"));
+    }
+
     @Test
     public void testDoBusinessDepartmentWithNoVersionOfMethod() throws URISyntaxException {
         String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings/dobusiness/test";
@@ -158,6 +462,23 @@ public class FooBarControllerIT {
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
+    @Test
+    public void testMetricsReportEndpointLatenciesAndQueries() throws URISyntaxException {
+        String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice";
+        this.testRestTemplate.getForEntity(new URI(baseUrl + "/bookings/department/sales"), List.class);
+        ResponseEntity<Map> response = this.testRestTemplate.getForEntity(new URI(baseUrl + "/metrics"), Map.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Map endpoints = (Map) response.getBody().get("endpoints");
+        Map created = (Map) endpoints.get("POST /bookingservice/bookings");
+        assertEquals(2, created.get("count"));
+        assertTrue(endpoints.containsKey("GET /bookingservice/bookings/department/{department}"));
+        Map bookings = (Map) response.getBody().get("bookings");
+        assertEquals(2, bookings.get("created"));
+        assertEquals(2, bookings.get("size"));
+        Map queries = (Map) response.getBody().get("queries");
+        assertEquals(1, ((Map) queries.get("findByDepartment")).get("returned"));
+    }
+
     private void setupTestData() throws URISyntaxException {
         String baseUrl = "http://localhost:"+randomServerPort+"/bookingservice/bookings";
         URI uri = new URI(baseUrl);
@@ -0,0 +1,180 @@
+package com.statista.code.challenge.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControlTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenRejectUntilRefilled(){
+        AdmissionControl admission = admission("10,5,100", 1000);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, acquire(admission, "a", EndpointClass.READ, now));
+        }
+        assertEquals(1, admission.tryAcquire("a", EndpointClass.READ, now));
+        assertEquals(1, admission.rateLimited(EndpointClass.READ));
+        // one token every 100 ms
+        assertEquals(1, admission.tryAcquire("a", EndpointClass.READ, now + SECOND / 20));
+        assertEquals(0, acquire(admission, "a", EndpointClass.READ, now + SECOND / 10));
+        assertEquals(1, admission.tryAcquire("a", EndpointClass.READ, now + SECOND / 10));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, acquire(admission, "a", EndpointClass.READ, now + 2 * SECOND));
+        }
+        assertEquals(5 + 1 + 5, admission.admitted(EndpointClass.READ));
+    }
+
+    @Test
+    public void testRetryAfterCoversTheWait(){
+        AdmissionControl admission = new AdmissionControl(true, "X-Client-Id", 1000, "1000,1,10", "1000,1,10",
+                "0.25,1,10");
+        long now = System.nanoTime();
+        assertEquals(0, acquire(admission, "a", EndpointClass.SCAN, now));
+        // one token every 4 s
+        assertEquals(4, admission.tryAcquire("a", EndpointClass.SCAN, now));
+        assertEquals(3, admission.tryAcquire("a", EndpointClass.SCAN, now + SECOND));
+        assertEquals(1, admission.tryAcquire("a", EndpointClass.SCAN, now + 4 * SECOND - 1));
+        assertEquals(0, acquire(admission, "a", EndpointClass.SCAN, now + 4 * SECOND));
+    }
+
+    @Test
+    public void testClientsAndClassesAreLimitedIndependently(){
+        AdmissionControl admission = admission("1,2,100", 1000);
+        long now = System.nanoTime();
+        assertEquals(0, acquire(admission, "a", EndpointClass.SCAN, now));
+        assertEquals(0, acquire(admission, "a", EndpointClass.SCAN, now));
+        assertEquals(1, admission.tryAcquire("a", EndpointClass.SCAN, now));
+        assertEquals(0, acquire(admission, "b", EndpointClass.SCAN, now));
+        assertEquals(0, acquire(admission, "a", EndpointClass.READ, now));
+        assertEquals(0, acquire(admission, "a", EndpointClass.WRITE, now));
+        assertEquals(2, admission.clients());
+    }
+
+    @Test
+    public void testConcurrencyLimitUntilReleased(){
+        AdmissionControl admission = admission("1000,1000,2", 1000);
+        long now = System.nanoTime();
+        assertEquals(0, admission.tryAcquire("a", EndpointClass.WRITE, now));
+        assertEquals(0, admission.tryAcquire("b", EndpointClass.WRITE, now));
+        assertEquals(1, admission.tryAcquire("c", EndpointClass.WRITE, now));
+        assertEquals(1, admission.concurrencyLimited(EndpointClass.WRITE));
+        assertEquals(2, admission.inFlight(EndpointClass.WRITE));
+        assertEquals(0, admission.tryAcquire("c", EndpointClass.READ, now));
+        admission.release(EndpointClass.WRITE);
+        assertEquals(0, admission.tryAcquire("c", EndpointClass.WRITE, now));
+        assertEquals(2, admission.inFlight(EndpointClass.WRITE));
+    }
+
+    @Test
+    public void testConcurrentRequestsNeverExceedTheLimits() throws InterruptedException {
+        AdmissionControl admission = admission("0.001,100,3", 1000);
+        long now = System.nanoTime();
+        AtomicInteger admitted = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (admission.tryAcquire("a", EndpointClass.READ, now) == 0){
+                        admitted.incrementAndGet();
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        running.decrementAndGet();
+                        admission.release(EndpointClass.READ);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // the burst is spent by admitted and concurrency limited requests alike
+        assertEquals(100, admitted.get() + admission.concurrencyLimited(EndpointClass.READ));
+        assertEquals(admitted.get(), admission.admitted(EndpointClass.READ));
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(0, admission.inFlight(EndpointClass.READ));
+    }
+
+    @Test
+    public void testFullBucketsAreSweptAtTheClientLimit(){
+        AdmissionControl admission = admission("10,1,100", 2);
+        long now = System.nanoTime();
+        assertEquals(0, acquire(admission, "a", EndpointClass.READ, now));
+        assertEquals(0, acquire(admission, "b", EndpointClass.READ, now + SECOND / 20));
+        assertEquals(0, acquire(admission, "c", EndpointClass.READ, now + SECOND / 10));
+        // a is full again and dropped, b is not
+        assertEquals(2, admission.clients());
+        assertEquals(1, admission.tryAcquire("b", EndpointClass.READ, now + SECOND / 10));
+        assertEquals(0, acquire(admission, "a", EndpointClass.READ, now + SECOND / 10));
+    }
+
+    @Test
+    public void testRejectsInvalidLimits(){
+        for (String limit : new String[]{"10,5", "10,5,1,1", "ten,5,1", "0,5,1", "10,0,1", "10,5,0", ""}) {
+            try {
+                admission(limit, 1000);
+                throw new AssertionError("accepted " + limit);
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage().contains("READ"));
+            }
+        }
+    }
+
+    @Test
+    public void testClassifiesEndpoints(){
+        assertEquals(EndpointClass.READ, EndpointClass.of("GET", "/bookingservice/bookings/1"));
+        assertEquals(EndpointClass.READ, EndpointClass.of("GET", "/bookingservice/sum/USD"));
+        assertEquals(EndpointClass.READ, EndpointClass.of("GET", "/bookingservice/bookings/dobusiness/sales"));
+        assertEquals(EndpointClass.WRITE, EndpointClass.of("POST", "/bookingservice/bookings"));
+        assertEquals(EndpointClass.WRITE, EndpointClass.of("PUT", "/bookingservice/bookings/1"));
+        assertEquals(EndpointClass.WRITE, EndpointClass.of("DELETE", "/bookingservice/bookings/1"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("GET", "/bookingservice/bookings/department/sales"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("GET", "/bookingservice/bookings/start-date"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("GET", "/bookingservice/bookings/search"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("GET", "/bookingservice/sum/start-date"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("GET", "/bookingservice/analytics"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("GET", "/bookingservice/analytics/sales"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("POST", "/bookingservice/bookings/bulk"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("POST", "/bookingservice/bookings/bulk//"));
+        assertEquals(EndpointClass.SCAN, EndpointClass.of("GET", "/bookingservice/bookings/search/"));
+        assertNull(EndpointClass.of("GET", "/bookingservice/metrics"));
+        assertNull(EndpointClass.of("GET", "/bookingservice/bookings/changes"));
+        assertNull(EndpointClass.of("GET", "/actuator/health"));
+    }
+
+    private static AdmissionControl admission(String limit, int maxClients){
+        return new AdmissionControl(true, "X-Client-Id", maxClients, limit, limit, limit);
+    }
+
+    /**
+     * Acquires and releases at once, for tests of the rate alone.
+     */
+    private static long acquire(AdmissionControl admission, String client, EndpointClass endpointClass, long now){
+        long retryAfter = admission.tryAcquire(client, endpointClass, now);
+        if (retryAfter == 0){
+            admission.release(endpointClass);
+        }
+        return retryAfter;
+    }
+}
@@ -0,0 +1,85 @@
+package com.statista.code.challenge.admission;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AdmissionFilterTest {
+
+    private final AdmissionControl admission = new AdmissionControl(true, "X-Client-Id", 1000, "1000,2,10",
+            "1000,2,10", "0.5,1,10");
+    private final AdmissionFilter filter = new AdmissionFilter(admission);
+
+    @Test
+    public void testRejectsOverTheLimitWithRetryAfter() throws ServletException, IOException {
+        MockHttpServletResponse first = filter(request("GET", "/bookingservice/analytics", "a"));
+        assertEquals(200, first.getStatus());
+        MockHttpServletResponse second = filter(request("GET", "/bookingservice/analytics", "a"));
+        assertEquals(429, second.getStatus());
+        assertEquals("2", second.getHeader("Retry-After"));
+        assertEquals(0, second.getContentLength());
+        assertEquals(200, filter(request("GET", "/bookingservice/analytics", "b")).getStatus());
+        assertEquals(0, admission.inFlight(EndpointClass.SCAN));
+    }
+
+    @Test
+    public void testFallsBackToRemoteAddress() throws ServletException, IOException {
+        assertEquals(200, filter(request("GET", "/bookingservice/analytics", null)).getStatus());
+        assertEquals(429, filter(request("GET", "/bookingservice/analytics", "")).getStatus());
+    }
+
+    @Test
+    public void testPassesUnclassifiedRequests() throws ServletException, IOException {
+        for (int i = 0; i < 5; i++) {
+            MockFilterChain chain = new MockFilterChain();
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request("GET", "/bookingservice/metrics", "a"), response, chain);
+            assertEquals(200, response.getStatus());
+            assertNotNull(chain.getRequest());
+        }
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request("GET", "/bookingservice/bookings/1", "a"), new MockHttpServletResponse(), chain);
+        filter.doFilter(request("GET", "/bookingservice/bookings/1", "a"), new MockHttpServletResponse(),
+                new MockFilterChain());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        chain = new MockFilterChain();
+        filter.doFilter(request("GET", "/bookingservice/bookings/1", "a"), response, chain);
+        assertEquals(429, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void testClassifiesEverySpellingOfAPath() throws ServletException, IOException {
+        String[] spellings = {"/bookingservice/analytics/", "/bookingservice/analytics;a=b",
+                "/bookingservice//analytics", "/bookingservice/%61nalytics", "//bookingservice/analytics//"};
+        assertEquals(200, filter(request("GET", "/bookingservice/analytics", "a")).getStatus());
+        for (String spelling : spellings) {
+            assertEquals(spelling, 429, filter(request("GET", spelling, "a")).getStatus());
+        }
+        assertEquals(200, filter(request("POST", "/bookingservice/bookings/bulk/", "b")).getStatus());
+        assertEquals(429, filter(request("POST", "/bookingservice/bookings/bulk;x=1", "b")).getStatus());
+        assertEquals(0, admission.inFlight(EndpointClass.SCAN));
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String path, String client){
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        if (client != null){
+            request.addHeader("X-Client-Id", client);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,75 @@
+package com.statista.code.challenge.aggregate;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CurrencyAggregatesTest {
+
+    private final CurrencyAggregates aggregates = new CurrencyAggregates();
+    private final BookingRepository repository = new InMemoryBookingRepository(Collections.singletonList(aggregates));
+
+    @Test
+    public void testSumIsExactAcrossManyBookings(){
+        for (int i = 0; i < 1000; i++) {
+            repository.saveOrUpdate(booking(String.valueOf(i), 0.1, "USD"));
+        }
+        assertEquals(new BigDecimal("100.00"), aggregates.sum("USD"));
+        assertEquals(1000, aggregates.summary("USD").getCount());
+    }
+
+    @Test
+    public void testReplaceAndDeleteKeepAggregatesInSync(){
+        repository.saveOrUpdate(booking("1", 10.00, "USD"));
+        repository.saveOrUpdate(booking("2", 20.00, "USD"));
+        repository.saveOrUpdate(booking("3", 30.00, "USD"));
+        repository.saveOrUpdate(booking("3", 5.00, "EUR"));
+        repository.delete("2");
+
+        CurrencySummary usd = aggregates.summary("USD");
+        assertEquals(1, usd.getCount());
+        assertEquals(new BigDecimal("10.00"), usd.getSum());
+        assertEquals(new BigDecimal("10.00"), usd.getMin());
+        assertEquals(new BigDecimal("10.00"), usd.getMax());
+        assertEquals(new BigDecimal("5.00"), aggregates.sum("EUR"));
+    }
+
+    @Test
+    public void testUnknownCurrency(){
+        assertNull(aggregates.summary("GBP"));
+        assertNull(aggregates.summary("not a currency"));
+        assertEquals(BigDecimal.ZERO, aggregates.sum("GBP"));
+    }
+
+    @Test
+    public void testVersionOnlyMovesWithWritesInTheCurrency(){
+        assertEquals(0, aggregates.version("USD"));
+        repository.saveOrUpdate(booking("1", 10.00, "USD"));
+        long version = aggregates.version("USD");
+        repository.saveOrUpdate(booking("2", 10.00, "EUR"));
+        assertEquals(version, aggregates.version("USD"));
+        repository.saveAll(Collections.singletonList(booking("3", 10.00, "USD")));
+        assertTrue(aggregates.version("USD") > version);
+        assertEquals(0, aggregates.version("not a currency"));
+    }
+
+    @Test
+    public void testMinorUnitsFollowCurrencyFractionDigits(){
+        repository.saveOrUpdate(booking("1", 1500, "JPY"));
+        assertEquals(new BigDecimal("1500"), aggregates.sum("JPY"));
+    }
+
+    private static Booking booking(String id, double price, String currency) {
+        return new Booking(id, "description", price, Currency.getInstance(currency), 1675008444000L,
+                "valid@email.ok", "sales");
+    }
+}
@@ -0,0 +1,159 @@
+package com.statista.code.challenge.aggregate;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriceAnalyticsTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    private final PriceAnalytics analytics = new PriceAnalytics(0.01, 3);
+    private final BookingRepository repository = new InMemoryBookingRepository(Collections.singletonList(analytics));
+
+    @Test
+    public void testQuantilesAndTopPerCurrency(){
+        for (int i = 1; i <= 100; i++) {
+            repository.saveOrUpdate(booking("u" + i, "sales", i, USD));
+        }
+        repository.saveOrUpdate(booking("e1", "sales", 5.00, EUR));
+        repository.saveOrUpdate(booking("y1", "sales", 1200, JPY));
+        repository.saveOrUpdate(booking("i1", "internal", 1000, USD));
+
+        List<PriceStatistics> statistics = statistics("sales");
+        assertEquals(Arrays.asList(EUR, JPY, USD), currencies(statistics));
+        PriceStatistics usd = statistics.get(2);
+        assertEquals(100, usd.getCount());
+        assertEquals(50, usd.getMedian().doubleValue(), 0.5);
+        assertEquals(90, usd.getP90().doubleValue(), 0.9);
+        assertEquals(99, usd.getP99().doubleValue(), 0.99);
+        assertEquals(2, usd.getMedian().scale());
+        assertEquals(Arrays.asList(new TopPrice("u100", new BigDecimal("100.00")),
+                new TopPrice("u99", new BigDecimal("99.00")), new TopPrice("u98", new BigDecimal("98.00"))),
+                usd.getTop());
+        assertEquals(Collections.singletonList(new TopPrice("y1", new BigDecimal("1200"))),
+                statistics.get(1).getTop());
+        assertEquals(5.00, statistics.get(0).getMedian().doubleValue(), 0.05);
+        assertTrue(statistics("unknown").isEmpty());
+        assertTrue(analytics.estimatedHeapBytes() > 0);
+        assertEquals(4, analytics.pairs());
+    }
+
+    @Test
+    public void testWritesMoveBookingsAndEqualPricesOrderById(){
+        repository.saveOrUpdate(booking("b", "sales", 10.00, USD));
+        repository.saveOrUpdate(booking("a", "sales", 10.00, USD));
+        repository.saveOrUpdate(booking("c", "sales", 20.00, USD));
+        repository.saveOrUpdate(booking("c", "internal", 30.00, EUR));
+
+        assertEquals(Arrays.asList("a", "b"), ids(statistics("sales").get(0)));
+        assertEquals(Collections.singletonList("c"), ids(statistics("internal").get(0)));
+
+        repository.delete("c");
+        assertTrue(statistics("internal").isEmpty());
+        repository.saveOrUpdate(booking("b", "sales", 5.00, USD));
+        PriceStatistics sales = statistics("sales").get(0);
+        assertEquals(2, sales.getCount());
+        assertEquals(Arrays.asList("a", "b"), ids(sales));
+        assertEquals(new BigDecimal("5.00"), sales.getTop().get(1).getPrice());
+    }
+
+    @Test
+    public void testRefillsTopAfterRemovingMostExpensive(){
+        for (int i = 0; i < 100; i++) {
+            repository.saveOrUpdate(booking(String.format("%03d", i), "sales", i, USD));
+        }
+        // the kept list holds the 12 most expensive, removing 10 of them leaves fewer than 3
+        for (int i = 99; i > 89; i--) {
+            repository.delete(String.format("%03d", i));
+        }
+        assertEquals(Arrays.asList("089", "088", "087"), ids(statistics("sales").get(0)));
+        assertEquals(1, analytics.refills());
+        assertEquals(Arrays.asList("089", "088", "087"), ids(statistics("sales").get(0)));
+        assertEquals(1, analytics.refills());
+    }
+
+    @Test
+    public void testMatchesExactStatisticsAfterRandomWrites(){
+        Random random = new Random(11);
+        List<String> departments = Arrays.asList("sales", "internal", "other");
+        for (int round = 0; round < 20; round++) {
+            List<Booking> batch = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                Booking booking = booking(String.valueOf(random.nextInt(1_000)), departments.get(random.nextInt(3)),
+                        Math.round(Math.exp(4 + 2 * random.nextGaussian())) / 100.0, USD);
+                if (random.nextBoolean()){
+                    batch.add(booking);
+                } else {
+                    repository.saveOrUpdate(booking);
+                }
+            }
+            repository.saveAll(batch);
+            for (int i = 0; i < 50; i++) {
+                repository.delete(String.valueOf(random.nextInt(1_000)));
+            }
+        }
+        for (String department : departments) {
+            assertExact(repository.findByDepartment(department), statistics(department).get(0));
+        }
+        assertExact(repository.findAll(), analytics.statistics(repository::forEach).get(0));
+    }
+
+    private static void assertExact(Collection<Booking> bookings, PriceStatistics statistics){
+        List<Booking> sorted = new ArrayList<>(bookings);
+        sorted.sort(Comparator.comparingDouble(Booking::getPrice).reversed().thenComparing(Booking::getId));
+        assertEquals(sorted.size(), statistics.getCount());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(sorted.get(i).getId(), statistics.getTop().get(i).getId());
+            assertEquals(sorted.get(i).getPrice(), statistics.getTop().get(i).getPrice().doubleValue(), 0);
+        }
+        assertQuantile(sorted, 0.5, statistics.getMedian());
+        assertQuantile(sorted, 0.9, statistics.getP90());
+        assertQuantile(sorted, 0.99, statistics.getP99());
+    }
+
+    /**
+     * Within the relative accuracy, and half a minor unit for the rounding.
+     */
+    private static void assertQuantile(List<Booking> descending, double quantile, BigDecimal estimate){
+        int rank = (int) Math.floor(quantile * (descending.size() - 1));
+        double exact = descending.get(descending.size() - 1 - rank).getPrice();
+        assertEquals("quantile " + quantile, exact, estimate.doubleValue(), exact * 0.01 + 0.005);
+    }
+
+    private List<PriceStatistics> statistics(String department){
+        return analytics.statistics(department, repository::forEach);
+    }
+
+    private static List<Currency> currencies(List<PriceStatistics> statistics){
+        List<Currency> currencies = new ArrayList<>();
+        statistics.forEach(currency -> currencies.add(currency.getCurrency()));
+        return currencies;
+    }
+
+    private static List<String> ids(PriceStatistics statistics){
+        List<String> ids = new ArrayList<>();
+        statistics.getTop().forEach(top -> ids.add(top.getId()));
+        return ids;
+    }
+
+    private static Booking booking(String id, String department, double price, Currency currency){
+        return new Booking(id, "description", price, currency, 1675008444000L, "valid@email.ok", department);
+    }
+}
@@ -0,0 +1,89 @@
+package com.statista.code.challenge.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriceSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.9, 0.99, 0.999, 1};
+
+    @Test
+    public void testQuantilesWithinRelativeAccuracyOfSkewedPrices(){
+        Random random = new Random(42);
+        PriceSketch sketch = new PriceSketch(0.01);
+        List<Long> prices = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            // log-normal around 50.00 with a long tail, a few refunds and free bookings
+            long price = Math.round(Math.exp(8.5 + 1.5 * random.nextGaussian()));
+            price = i % 100 == 0 ? -price : i % 97 == 0 ? 0 : price;
+            prices.add(price);
+            sketch.add(price, 1);
+        }
+        for (int i = 0; i < 30_000; i++) {
+            long removed = prices.remove(random.nextInt(prices.size()));
+            sketch.add(removed, -1);
+        }
+        assertEquals(prices.size(), sketch.count());
+        assertWithinAccuracy(prices, sketch);
+    }
+
+    @Test
+    public void testMergeEqualsOneSketchOfAllPrices(){
+        Random random = new Random(7);
+        PriceSketch first = new PriceSketch(0.02);
+        PriceSketch second = new PriceSketch(0.02);
+        PriceSketch all = new PriceSketch(0.02);
+        List<Long> prices = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long price = 100 + random.nextInt(i % 2 == 0 ? 1_000 : 1_000_000);
+            (i % 2 == 0 ? first : second).add(price, 1);
+            all.add(price, 1);
+            prices.add(price);
+        }
+        first.merge(second);
+        assertEquals(all.count(), first.count());
+        for (double quantile : QUANTILES) {
+            assertEquals(all.quantile(quantile), first.quantile(quantile), 0);
+        }
+        assertWithinAccuracy(prices, first);
+        try {
+            first.merge(new PriceSketch(0.01));
+            throw new AssertionError("merged sketches of different accuracy");
+        } catch (IllegalArgumentException expected) {
+            // the buckets would not line up
+        }
+    }
+
+    @Test
+    public void testEmptyAndLargePrices(){
+        PriceSketch sketch = new PriceSketch(0.01);
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        long heapWhenEmpty = sketch.estimatedHeapBytes();
+        sketch.add(1, 1);
+        sketch.add(PriceSketch.MAX_MINOR_UNITS * 10, 1);
+        assertEquals(1, sketch.quantile(0), 0.01);
+        assertEquals(PriceSketch.MAX_MINOR_UNITS, sketch.quantile(1), PriceSketch.MAX_MINOR_UNITS * 0.01);
+        assertTrue(sketch.estimatedHeapBytes() > heapWhenEmpty);
+        sketch.add(1, -1);
+        sketch.add(PriceSketch.MAX_MINOR_UNITS * 10, -1);
+        assertEquals(0, sketch.count());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    }
+
+    private static void assertWithinAccuracy(List<Long> prices, PriceSketch sketch){
+        List<Long> sorted = new ArrayList<>(prices);
+        Collections.sort(sorted);
+        for (double quantile : QUANTILES) {
+            long exact = sorted.get((int) Math.floor(quantile * (sorted.size() - 1)));
+            double bound = Math.abs(exact) * (sketch.relativeAccuracy() + 1e-9);
+            assertEquals("quantile " + quantile, exact, sketch.quantile(quantile), bound);
+        }
+    }
+}
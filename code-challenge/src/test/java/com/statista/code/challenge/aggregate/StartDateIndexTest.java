@@ -0,0 +1,126 @@
+package com.statista.code.challenge.aggregate;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StartDateIndexTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final long DAY = StartDateIndex.DAY_MILLIS;
+    private static final long START = 1675008444000L;
+
+    private final StartDateIndex index = new StartDateIndex();
+    private final BookingRepository repository = new InMemoryBookingRepository(Collections.singletonList(index));
+
+    @Test
+    public void testPagesInStartDateAndIdOrder(){
+        repository.saveOrUpdate(booking("b", START + 2, 1.00, USD));
+        repository.saveOrUpdate(booking("c", START, 1.00, USD));
+        repository.saveOrUpdate(booking("a", START + 2, 1.00, USD));
+        repository.saveOrUpdate(booking("d", START + 3, 1.00, USD));
+        repository.saveOrUpdate(booking("e", START - 1, 1.00, USD));
+        List<StartDateIndex.Entry> first = index.page(START, START + 3, null, 2);
+        assertEquals(Arrays.asList("c", "a"), ids(first));
+        List<StartDateIndex.Entry> second = index.page(START, START + 3, first.get(1), 2);
+        assertEquals(Collections.singletonList("b"), ids(second));
+        StartDateIndex.Entry cursor = StartDateIndex.position(START + 2, "a");
+        assertEquals(Collections.singletonList("b"), ids(index.page(START, START + 3, cursor, 10)));
+        assertTrue(index.page(START, START, null, 10).isEmpty());
+    }
+
+    @Test
+    public void testPutMovesBookingBetweenWindows(){
+        repository.saveOrUpdate(booking("1", START, 10.00, USD));
+        repository.saveOrUpdate(booking("1", START + 10 * DAY, 12.50, EUR));
+        assertTrue(index.totals(START - DAY, START + DAY).isEmpty());
+        assertEquals(Collections.singletonList(new CurrencyTotal(EUR, 1, new BigDecimal("12.50"))),
+                index.totals(START, START + 20 * DAY));
+        repository.delete("1");
+        assertTrue(index.totals(Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testTotalsMatchRecomputeForRandomWindows(){
+        Random random = new Random(13);
+        List<Currency> currencies = Arrays.asList(USD, EUR, Currency.getInstance("JPY"));
+        for (int round = 0; round < 20; round++) {
+            List<Booking> batch = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                Currency currency = currencies.get(random.nextInt(3));
+                Booking booking = booking(String.valueOf(random.nextInt(1000)), randomDate(random),
+                        random.nextInt(10_000) / (currency.getDefaultFractionDigits() == 0 ? 1.0 : 100.0), currency);
+                if (random.nextBoolean()){
+                    batch.add(booking);
+                } else {
+                    repository.saveOrUpdate(booking);
+                }
+            }
+            repository.saveAll(batch);
+            repository.delete(String.valueOf(random.nextInt(1000)));
+        }
+        List<Booking> all = new ArrayList<>();
+        repository.forEach(all::add);
+        for (int i = 0; i < 500; i++) {
+            long from = randomDate(random);
+            long to = random.nextInt(10) == 0 ? from + random.nextInt(1000) : randomDate(random);
+            assertEquals(recompute(all, Math.min(from, to), Math.max(from, to)),
+                    index.totals(Math.min(from, to), Math.max(from, to)));
+        }
+        assertEquals(recompute(all, Long.MIN_VALUE, Long.MAX_VALUE), index.totals(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * Mostly within a few years, with whole-day boundaries and dates outside the day totals' range mixed in.
+     */
+    private static long randomDate(Random random) {
+        switch (random.nextInt(10)) {
+            case 0:
+                return START + (random.nextInt(1000) - 500) * DAY;
+            case 1:
+                return START + (random.nextInt(2) == 0 ? -1 : 1) * (random.nextInt(100_000) + 100_000L) * DAY;
+            default:
+                return START + (long) ((random.nextDouble() - 0.5) * 1000 * DAY);
+        }
+    }
+
+    private static List<CurrencyTotal> recompute(List<Booking> bookings, long from, long to) {
+        Map<String, CurrencyTotal> totals = new TreeMap<>();
+        for (Booking booking : bookings) {
+            if (booking.getSubscriptionStartDate() >= from && booking.getSubscriptionStartDate() < to){
+                CurrencyTotal total = totals.computeIfAbsent(booking.getCurrency().getCurrencyCode(),
+                        code -> new CurrencyTotal(booking.getCurrency(), 0, BigDecimal.valueOf(0,
+                                booking.getCurrency().getDefaultFractionDigits())));
+                total.setCount(total.getCount() + 1);
+                total.setSum(total.getSum().add(BigDecimal.valueOf(CurrencyAggregates.toMinorUnits(booking),
+                        booking.getCurrency().getDefaultFractionDigits())));
+            }
+        }
+        return new ArrayList<>(totals.values());
+    }
+
+    private static List<String> ids(List<StartDateIndex.Entry> entries) {
+        return entries.stream().map(StartDateIndex.Entry::getId).collect(Collectors.toList());
+    }
+
+    private static Booking booking(String id, long startDate, double price, Currency currency) {
+        return new Booking(id, "description", price, currency, startDate, "valid@email.ok", "sales");
+    }
+}
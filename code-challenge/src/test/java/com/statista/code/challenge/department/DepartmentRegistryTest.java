@@ -0,0 +1,293 @@
+package com.statista.code.challenge.department;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.entity.DatedBooking;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DepartmentRegistryTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private final DepartmentRegistry departments = new DepartmentRegistry(
+            Arrays.asList(new InternalDepartment(), new SalesDepartment(), new CountingDepartment()));
+    private final BookingRepository repository = new InMemoryBookingRepository(Collections.singletonList(departments));
+
+    @Test
+    public void testSalesAveragesPerCurrency(){
+        repository.saveOrUpdate(booking("1", "sales", 10.00, USD));
+        repository.saveOrUpdate(booking("2", "sales", 20.01, USD));
+        repository.saveOrUpdate(booking("3", "sales", 5.00, EUR));
+        repository.saveOrUpdate(booking("4", "internal", 99.00, EUR));
+        Map<Currency, Double> averages = averages();
+        assertEquals(2, averages.size());
+        assertEquals(15.005, averages.get(USD), 1e-9);
+        assertEquals(5.00, averages.get(EUR), 1e-9);
+        assertTrue(((Map<?, ?>) departments.result("SALES")).isEmpty());
+        assertNull(departments.result("unknown"));
+        assertNull(departments.result(null));
+    }
+
+    @Test
+    public void testInternalListsBookingsByIdWithFormattedDates(){
+        repository.saveOrUpdate(booking("2", "internal", 10.00, USD));
+        repository.saveOrUpdate(booking("1", "internal", 10.00, USD));
+        repository.saveOrUpdate(booking("3", "sales", 10.00, USD));
+        List<DatedBooking> first = listing();
+        assertEquals(2, first.size());
+        assertEquals("1", first.get(0).getBooking().getId());
+        assertEquals(InternalDepartment.format(1675008444000L), first.get(0).getHumanReadableSubscriptionStartDate());
+        repository.saveOrUpdate(booking("3", "sales", 20.00, USD));
+        assertSame(first, listing());
+
+        Booking later = booking("2", "internal", 10.00, USD);
+        later.setSubscriptionStartDate(683124845000L);
+        repository.saveOrUpdate(later);
+        List<DatedBooking> second = listing();
+        assertNotSame(first, second);
+        assertEquals(InternalDepartment.format(683124845000L), second.get(1).getHumanReadableSubscriptionStartDate());
+
+        repository.archive(Collections.singletonList(repository.find("1")));
+        assertEquals(Collections.singletonList("2"), ids(listing()));
+        assertEquals(1, repository.findByDepartment("internal").size());
+    }
+
+    @Test
+    public void testPutMovesBookingBetweenDepartments(){
+        repository.saveOrUpdate(booking("1", "sales", 10.00, USD));
+        repository.saveOrUpdate(booking("2", "sales", 30.00, USD));
+        repository.saveOrUpdate(booking("2", "internal", 50.00, EUR));
+        assertEquals(Collections.singletonMap(USD, 10.00), averages());
+        assertEquals(Collections.singletonList("2"), ids(listing()));
+        repository.delete("1");
+        repository.delete("2");
+        assertTrue(averages().isEmpty());
+        assertTrue(listing().isEmpty());
+    }
+
+    @Test
+    public void testNewStrategyIsMaintainedFromWrites(){
+        repository.saveAll(Arrays.asList(booking("1", "counting", 10.00, USD), booking("2", "counting", 10.00, USD),
+                booking("3", "Counting", 10.00, USD)));
+        assertEquals(1, departments.result("Counting"));
+        repository.saveOrUpdate(booking("1", "sales", 10.00, USD));
+        assertEquals(1, departments.result("counting"));
+        assertEquals(0, departments.result("COUNTING"));
+        assertEquals(3, departments.applied("counting"));
+        assertEquals(1, departments.rebuilds("counting"));
+        assertEquals(Arrays.asList("internal", "sales", "counting", "Counting"),
+                new ArrayList<>(departments.departments()));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyReadViewsAndLoadsThemFromTheStore(){
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        DepartmentRegistry bounded = new DepartmentRegistry(Arrays.asList(new InternalDepartment(), new SalesDepartment()),
+                beanFactory.getBeanProvider(BookingRepository.class), 3, Runnable::run);
+        BookingRepository store = new InMemoryBookingRepository(Collections.singletonList(bounded));
+        beanFactory.registerSingleton("repository", store);
+        store.saveOrUpdate(booking("1", "internal", 10.00, USD));
+        store.saveOrUpdate(booking("2", "internal", 10.00, USD));
+        store.saveOrUpdate(booking("3", "Internal", 10.00, USD));
+        store.saveOrUpdate(booking("4", "sales", 10.00, USD));
+        assertEquals(Arrays.asList("1", "2"), ids(result(bounded, "internal")));
+        assertEquals(3, bounded.retained());
+
+        store.saveOrUpdate(booking("5", "Internal", 10.00, USD));
+        assertEquals(1, bounded.evictions());
+        assertEquals(2, bounded.retained());
+        assertEquals(0, bounded.retained("Internal"));
+        assertEquals(2, bounded.retained("internal"));
+
+        store.saveOrUpdate(booking("6", "Internal", 10.00, USD));
+        assertEquals(Arrays.asList("3", "5", "6"), ids(result(bounded, "Internal")));
+        assertEquals(1, bounded.loads());
+        assertEquals(2, bounded.evictions());
+        assertEquals(3, bounded.retained("Internal"));
+        assertEquals(0, bounded.retained("internal"));
+        assertEquals(Arrays.asList("1", "2"), ids(result(bounded, "internal")));
+        assertEquals(2, bounded.loads());
+        assertTrue(bounded.retained() <= bounded.maxBookings());
+        assertEquals(Collections.singletonMap(USD, 10.00), bounded.result("sales"));
+    }
+
+    @Test
+    public void testDepartmentOverTheBudgetIsLoadedOnce(){
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        InternalDepartment internal = new InternalDepartment();
+        DepartmentRegistry bounded = new DepartmentRegistry(Collections.singletonList(internal),
+                beanFactory.getBeanProvider(BookingRepository.class), 2, Runnable::run);
+        BookingRepository store = new InMemoryBookingRepository(Collections.singletonList(bounded));
+        beanFactory.registerSingleton("repository", store);
+        for (int i = 1; i <= 5; i++) {
+            store.saveOrUpdate(booking(String.valueOf(i), "internal", 10.00, USD));
+        }
+        assertEquals(1, bounded.evictions());
+        assertEquals(3, internal.formatted());
+
+        List<DatedBooking> first = result(bounded, "internal");
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), ids(first));
+        assertEquals(1, bounded.loads());
+        assertEquals(8, internal.formatted());
+        assertEquals(5, bounded.retained("internal"));
+        for (int i = 0; i < 3; i++) {
+            assertSame(first, result(bounded, "internal"));
+        }
+        assertEquals(1, bounded.loads());
+        assertEquals(1, bounded.evictions());
+        assertEquals(8, internal.formatted());
+
+        store.saveOrUpdate(booking("6", "internal", 10.00, USD));
+        assertEquals(9, internal.formatted());
+        assertEquals(6, result(bounded, "internal").size());
+        assertEquals(1, bounded.loads());
+    }
+
+    @Test
+    public void testWritesLeaveEvictionToTheEvictor(){
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        List<Runnable> pending = new ArrayList<>();
+        DepartmentRegistry bounded = new DepartmentRegistry(Collections.singletonList(new InternalDepartment()),
+                beanFactory.getBeanProvider(BookingRepository.class), 1, pending::add);
+        BookingRepository store = new InMemoryBookingRepository(Collections.singletonList(bounded));
+        beanFactory.registerSingleton("repository", store);
+        store.saveOrUpdate(booking("1", "internal", 10.00, USD));
+        store.saveOrUpdate(booking("2", "internal", 10.00, USD));
+        store.saveOrUpdate(booking("3", "internal", 10.00, USD));
+        assertEquals(0, bounded.evictions());
+        assertEquals(3, bounded.retained());
+        assertEquals(1, pending.size());
+
+        pending.remove(0).run();
+        assertEquals(1, bounded.evictions());
+        assertEquals(0, bounded.retained());
+        assertEquals(Arrays.asList("1", "2", "3"), ids(result(bounded, "internal")));
+        assertEquals(1, pending.size());
+        pending.remove(0).run();
+        assertEquals(1, bounded.evictions());
+        assertEquals(3, bounded.retained("internal"));
+    }
+
+    @Test
+    public void testRejectsDuplicateAndUpperCaseDepartments(){
+        try {
+            new DepartmentRegistry(Arrays.asList(new SalesDepartment(), new SalesDepartment()));
+            throw new AssertionError("accepted two strategies for sales");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("sales"));
+        }
+        try {
+            new DepartmentRegistry(Collections.singletonList(new CountingDepartment() {
+                @Override
+                public String department() {
+                    return "Counting";
+                }
+            }));
+            throw new AssertionError("accepted an upper case department");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("Counting"));
+        }
+    }
+
+    @Test
+    public void testSalesMatchesRecomputeAfterMixedSingleAndBatchWrites(){
+        Random random = new Random(3);
+        List<String> names = Arrays.asList("sales", "internal", "other");
+        List<Currency> currencies = Arrays.asList(USD, EUR, Currency.getInstance("GBP"));
+        for (int round = 0; round < 20; round++) {
+            List<Booking> batch = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Booking booking = booking(String.valueOf(random.nextInt(200)), names.get(random.nextInt(3)),
+                        random.nextInt(10_000) / 100.0, currencies.get(random.nextInt(3)));
+                if (random.nextBoolean()){
+                    batch.add(booking);
+                } else {
+                    repository.saveOrUpdate(booking);
+                }
+            }
+            repository.saveAll(batch);
+            repository.delete(String.valueOf(random.nextInt(200)));
+        }
+        Map<Currency, double[]> totals = new HashMap<>();
+        for (Booking booking : repository.findByDepartment("sales")) {
+            double[] currencyTotals = totals.computeIfAbsent(booking.getCurrency(), c -> new double[2]);
+            currencyTotals[0] += booking.getPrice();
+            currencyTotals[1]++;
+        }
+        Map<Currency, Double> averages = averages();
+        assertEquals(totals.keySet(), averages.keySet());
+        totals.forEach((currency, currencyTotals) ->
+                assertEquals(currencyTotals[0] / currencyTotals[1], averages.get(currency), 1e-6));
+        assertEquals(repository.findByDepartment("internal").size(), listing().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Currency, Double> averages(){
+        return (Map<Currency, Double>) departments.result("sales");
+    }
+
+    private List<DatedBooking> listing(){
+        return result(departments, "internal");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<DatedBooking> result(DepartmentRegistry departments, String department){
+        return (List<DatedBooking>) departments.result(department);
+    }
+
+    private static List<String> ids(List<DatedBooking> bookings){
+        List<String> ids = new ArrayList<>();
+        bookings.forEach(booking -> ids.add(booking.getBooking().getId()));
+        return ids;
+    }
+
+    private static Booking booking(String id, String department, double price, Currency currency){
+        return new Booking(id, "description", price, currency, 1675008444000L, "valid@email.ok", department);
+    }
+
+    /**
+     * A department added without any maintenance code of its own: it counts its bookings.
+     */
+    private static class CountingDepartment implements DepartmentStrategy {
+
+        @Override
+        public String department() {
+            return "counting";
+        }
+
+        @Override
+        public DepartmentView newView() {
+            return new DepartmentView() {
+                private int count;
+
+                @Override
+                public void apply(Booking previous, Booking current) {
+                    count += (current == null ? 0 : 1) - (previous == null ? 0 : 1);
+                }
+
+                @Override
+                public Object result() {
+                    return count;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.statista.code.challenge.entity;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BookingJsonModuleTest {
+
+    private static final List<Currency> CURRENCIES = Arrays.asList(Currency.getInstance("USD"),
+            Currency.getInstance("EUR"), Currency.getInstance("JPY"));
+
+    @Test
+    public void testWritesBookingsLikeTheBeanSerializer() throws JsonProcessingException {
+        List<Booking> bookings = bookings();
+        for (ObjectMapper[] mappers : mappers()) {
+            assertArrayEquals(mappers[0].writeValueAsBytes(bookings), mappers[1].writeValueAsBytes(bookings));
+            for (Booking booking : bookings) {
+                assertArrayEquals(mappers[0].writeValueAsBytes(booking), mappers[1].writeValueAsBytes(booking));
+            }
+        }
+    }
+
+    @Test
+    public void testWritesDatedBookingsLikeTheHumanReadableCopies() throws JsonProcessingException {
+        List<BookingHumanReadableDate> copies = new ArrayList<>();
+        List<DatedBooking> dated = new ArrayList<>();
+        for (Booking booking : bookings()) {
+            String date = booking.getSubscriptionStartDate() == null ? null : "29.01.2023, 17:07:24";
+            BookingHumanReadableDate copy = new BookingHumanReadableDate(booking);
+            copy.setHumanReadableSubscriptionStartDate(date);
+            copies.add(copy);
+            dated.add(new DatedBooking(booking, date));
+        }
+        for (ObjectMapper[] mappers : mappers()) {
+            byte[] expected = mappers[0].writeValueAsBytes(copies);
+            assertArrayEquals(expected, mappers[1].writeValueAsBytes(copies));
+            assertArrayEquals(expected, mappers[1].writeValueAsBytes(dated));
+        }
+    }
+
+    @Test
+    public void testWrittenDatedBookingsReadBack() throws JsonProcessingException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().modules(new BookingJsonModule()).build();
+        Booking booking = new Booking("1", "Cool description!", 50.00, Currency.getInstance("USD"), 683124845000L,
+                "valid@email.ok", "internal");
+        String json = mapper.writeValueAsString(Collections.singletonList(
+                new DatedBooking(booking, "26.08.1991, 14:54:05")));
+        BookingHumanReadableDate read = mapper.readValue(json, BookingHumanReadableDate[].class)[0];
+        assertEquals(booking, new Booking(read.getId(), read.getDescription(), read.getPrice(), read.getCurrency(),
+                read.getSubscriptionStartDate(), read.getEmail(), read.getDepartment()));
+        assertEquals("26.08.1991, 14:54:05", read.getHumanReadableSubscriptionStartDate());
+    }
+
+    /**
+     * Pairs of the bean serializing mapper and the same with the module, for JSON, CBOR and Smile with shared
+     * string values like the web layer.
+     */
+    private static List<ObjectMapper[]> mappers() {
+        SmileFactory smile = new SmileFactory();
+        smile.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        return Arrays.asList(
+                new ObjectMapper[]{Jackson2ObjectMapperBuilder.json().build(),
+                        Jackson2ObjectMapperBuilder.json().modules(new BookingJsonModule()).build()},
+                new ObjectMapper[]{new CBORMapper(), new CBORMapper().registerModule(new BookingJsonModule())},
+                new ObjectMapper[]{new SmileMapper(smile.copy()),
+                        new SmileMapper(smile.copy()).registerModule(new BookingJsonModule())});
+    }
+
+    private static List<Booking> bookings() {
+        Random random = new Random(5);
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            bookings.add(new Booking("id-" + i, "Booking \"" + i + "\" für Käufer\n\t€ " + random.nextInt(),
+                    random.nextInt(1_000_000) / 100.0, CURRENCIES.get(random.nextInt(CURRENCIES.size())),
+                    random.nextLong() >>> 24, i + "@example.com", "department-" + random.nextInt(3)));
+        }
+        bookings.add(new Booking());
+        bookings.add(new Booking("partial", "", -0.5, null, 0L, null, "internal"));
+        return bookings;
+    }
+}
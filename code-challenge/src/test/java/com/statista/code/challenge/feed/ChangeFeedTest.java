@@ -0,0 +1,260 @@
+package com.statista.code.challenge.feed;
+
+import com.statista.code.challenge.entity.Booking;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedTest {
+
+    private ChangeFeed feed;
+
+    @AfterEach
+    public void stop(){
+        if (feed != null){
+            feed.destroy();
+        }
+    }
+
+    @Test
+    public void testDeliversFilteredChangesInOrder() throws Exception {
+        feed = new ChangeFeed(100, 100, 10, "resume", 1, 0, 0);
+        Recorder internal = new Recorder();
+        feed.subscribe("internal", null, null, internal);
+        Booking created = booking("1", "internal", "USD");
+        Booking moved = booking("1", "sales", "USD");
+        feed.onChange(null, created);
+        feed.onChange(null, booking("2", "sales", "USD"));
+        feed.onChange(created, moved);
+        feed.onChange(moved, null);
+        waitFor(() -> internal.events.size() == 3);
+        assertEquals(Arrays.asList("ready", "create", "update"), internal.names());
+        long ready = internal.events.get(0).id;
+        assertEquals(ready + 1, internal.events.get(1).id.longValue());
+        assertEquals(ready + 3, internal.events.get(2).id.longValue());
+        ChangeEvent update = (ChangeEvent) internal.events.get(2).data;
+        assertEquals(ChangeEvent.Type.UPDATE, update.getType());
+        assertEquals("sales", update.getBooking().getDepartment());
+        assertEquals(4, feed.published());
+    }
+
+    @Test
+    public void testResumesFromHistoryOrResets() throws Exception {
+        feed = new ChangeFeed(4, 100, 10, "resume", 1, 0, 0);
+        Recorder all = new Recorder();
+        feed.subscribe(null, null, null, all);
+        for (int i = 0; i < 5; i++) {
+            feed.onChange(null, booking(Integer.toString(i), "internal", "EUR"));
+        }
+        waitFor(() -> all.events.size() == 6);
+        long start = all.events.get(0).id;
+
+        Recorder resumed = new Recorder();
+        feed.subscribe(null, Currency.getInstance("EUR"), start + 2, resumed);
+        waitFor(() -> resumed.events.size() == 4);
+        assertEquals(Arrays.asList("create", "create", "create", "ready"), resumed.names());
+        assertEquals(start + 3, resumed.events.get(0).id.longValue());
+        assertEquals(start + 5, resumed.events.get(3).id.longValue());
+
+        for (long after : new long[]{start, start + 6, 42}) {
+            Recorder reset = new Recorder();
+            feed.subscribe(null, null, after, reset);
+            waitFor(() -> reset.events.size() == 1);
+            assertEquals(Collections.singletonList("reset"), reset.names());
+            assertEquals(start + 5, reset.events.get(0).id.longValue());
+        }
+    }
+
+    @Test
+    public void testDropsForSlowSubscriberWithoutBlockingWriters() throws Exception {
+        feed = new ChangeFeed(100, 2, 10, "drop", 1, 0, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(release);
+        feed.subscribe(null, null, null, slow);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            feed.onChange(null, booking(Integer.toString(i), "internal", "EUR"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        waitFor(() -> feed.dropped() >= 7);
+        release.countDown();
+        waitFor(() -> feed.subscribers() == 1 && feed.delivered() + feed.dropped() == 10);
+        List<String> names = slow.names();
+        assertEquals("ready", names.get(0));
+        assertTrue(names.contains("dropped"));
+        assertEquals(10 - feed.dropped(), names.stream().filter("create"::equals).count());
+    }
+
+    @Test
+    public void testConcurrentWritersAreDeliveredInSequenceOrderOrCountedAsDropped() throws Exception {
+        feed = new ChangeFeed(2, 2, 10, "drop", 1, 0, 0);
+        Recorder all = new Recorder();
+        feed.subscribe(null, null, null, all);
+        waitFor(() -> all.names().contains("ready"));
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            String department = "department-" + w;
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    feed.onChange(null, booking(Integer.toString(i), department, "EUR"));
+                }
+            });
+            writers[w].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        waitFor(() -> feed.delivered() + feed.dropped() == 4000);
+        assertEquals(4000, feed.published());
+        long previous = all.events.get(0).id;
+        for (Received event : all.events.subList(1, all.events.size())) {
+            if (event.id != null){
+                assertTrue(event.id > previous);
+                previous = event.id;
+            }
+        }
+    }
+
+    @Test
+    public void testFirstSubscriberStartsAfterWritesOfAnIdleFeed() throws Exception {
+        feed = new ChangeFeed(100, 100, 10, "resume", 1, 0, 0);
+        for (int i = 0; i < 3; i++) {
+            feed.onChange(null, booking(Integer.toString(i), "internal", "EUR"));
+        }
+        Recorder late = new Recorder();
+        feed.subscribe(null, null, null, late);
+        feed.onChange(null, booking("3", "internal", "EUR"));
+        waitFor(() -> late.events.size() == 2);
+        assertEquals(Arrays.asList("ready", "create"), late.names());
+        assertEquals(late.events.get(0).id + 1, late.events.get(1).id.longValue());
+        assertEquals("3", ((ChangeEvent) late.events.get(1).data).getBooking().getId());
+    }
+
+    @Test
+    public void testResumePolicyDisconnectsSlowSubscriber() throws Exception {
+        feed = new ChangeFeed(100, 2, 10, "resume", 1, 0, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(release);
+        feed.subscribe(null, null, null, slow);
+        for (int i = 0; i < 6; i++) {
+            feed.onChange(null, booking(Integer.toString(i), "internal", "EUR"));
+        }
+        release.countDown();
+        waitFor(() -> slow.closed);
+        assertEquals(1, feed.overflows());
+        assertEquals(0, feed.subscribers());
+        long last = slow.events.get(slow.events.size() - 1).id;
+
+        Recorder resumed = new Recorder();
+        feed.subscribe(null, null, last, resumed);
+        waitFor(() -> resumed.names().contains("ready"));
+        assertEquals(slow.events.size() + resumed.events.size() - 2, 6);
+        assertEquals(last + 1, resumed.events.get(0).id.longValue());
+    }
+
+    @Test
+    public void testSendsHeartbeatsAndDropsClientsThatWentAway() throws Exception {
+        feed = new ChangeFeed(100, 2, 10, "resume", 1, 0, 10);
+        Recorder listening = new Recorder();
+        feed.subscribe(null, null, null, listening);
+        feed.subscribe(null, null, null, new Recorder() {
+            @Override
+            public void keepAlive() throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        });
+        waitFor(() -> listening.keepAlives.get() >= 2 && feed.subscribers() == 1);
+    }
+
+    @Test
+    public void testLimitsSubscribers(){
+        feed = new ChangeFeed(100, 2, 1, "resume", 1, 0, 0);
+        ChangeFeed.Subscription first = feed.subscribe(null, null, null, new Recorder());
+        assertNull(feed.subscribe(null, null, null, new Recorder()));
+        first.cancel();
+        assertEquals(0, feed.subscribers());
+        assertTrue(feed.subscribe(null, null, null, new Recorder()) != null);
+    }
+
+    private static Booking booking(String id, String department, String currency){
+        return new Booking(id, "description", 10, Currency.getInstance(currency), 683124845000L, "valid@email.ok",
+                department);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static class Recorder implements ChangeSink {
+
+        private final CountDownLatch release;
+        private final List<Received> events = new CopyOnWriteArrayList<>();
+        private final AtomicInteger keepAlives = new AtomicInteger();
+        private volatile boolean closed;
+
+        Recorder() {
+            this(new CountDownLatch(0));
+        }
+
+        Recorder(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(String name, Long id, Object data) throws IOException {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            events.add(new Received(name, id, data));
+        }
+
+        @Override
+        public void keepAlive() throws IOException {
+            keepAlives.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        List<String> names() {
+            return events.stream().map(event -> event.name).collect(Collectors.toList());
+        }
+    }
+
+    private static final class Received {
+
+        private final String name;
+        private final Long id;
+        private final Object data;
+
+        Received(String name, Long id, Object data) {
+            this.name = name;
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.statista.code.challenge.notification;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationDispatcherTest {
+
+    private NotificationDispatcher dispatcher;
+
+    @AfterEach
+    public void stop(){
+        if (dispatcher != null){
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void testGroupsQueuedMailsIntoBatches() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        dispatcher = start(batch -> {
+            awaitOrFail(release);
+            batchSizes.add(batch.size());
+        }, 100, 10, new DeadLetterStore(10));
+        for (int i = 0; i < 25; i++) {
+            assertTrue(dispatcher.tryReserve());
+            dispatcher.submit(mail(i));
+        }
+        release.countDown();
+        waitFor(() -> dispatcher.sent() == 25);
+        assertTrue(batchSizes.size() < 25);
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 10));
+        assertEquals(0, dispatcher.pending());
+    }
+
+    @Test
+    public void testRejectsWhenCapacityIsReserved(){
+        dispatcher = start(batch -> { }, 2, 10, new DeadLetterStore(10));
+        assertTrue(dispatcher.tryReserve());
+        assertTrue(dispatcher.tryReserve());
+        assertFalse(dispatcher.tryReserve());
+        assertEquals(1, dispatcher.rejected());
+        dispatcher.cancel();
+        assertTrue(dispatcher.tryReserve());
+    }
+
+    @Test
+    public void testHoldsCapacityUntilDeliveredAfterRetries() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        dispatcher = new NotificationDispatcher(batch -> {
+            if (failing.get()){
+                throw new IOException("unavailable");
+            }
+        }, new DeadLetterStore(10), 1, 10, 1000, 1, 10);
+        dispatcher.start();
+        assertTrue(dispatcher.tryReserve());
+        dispatcher.submit(mail(1));
+        waitFor(() -> dispatcher.retried() >= 2);
+        assertFalse(dispatcher.tryReserve());
+        failing.set(false);
+        waitFor(() -> dispatcher.sent() == 1);
+        assertTrue(dispatcher.tryReserve());
+    }
+
+    @Test
+    public void testDeadLettersAfterMaxAttempts() throws Exception {
+        DeadLetterStore deadLetters = new DeadLetterStore(1);
+        dispatcher = start(batch -> {
+            throw new IOException("mailbox unavailable");
+        }, 10, 10, deadLetters);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(dispatcher.tryReserve());
+            dispatcher.submit(mail(i));
+        }
+        waitFor(() -> dispatcher.pending() == 0);
+        assertEquals(1, deadLetters.size());
+        assertEquals(1, deadLetters.evicted());
+        DeadLetterStore.DeadLetter letter = deadLetters.list().get(0);
+        assertEquals(3, letter.getAttempts());
+        assertEquals("mailbox unavailable", letter.getReason());
+        assertEquals(0, dispatcher.sent());
+    }
+
+    @Test
+    public void testInMemoryTransportKeepsDeliveredMails() throws Exception {
+        InMemoryMailTransport transport = new InMemoryMailTransport(0, 0);
+        dispatcher = new NotificationDispatcher(transport, new DeadLetterStore(10), 10, 10, 3, 1, 10);
+        dispatcher.start();
+        assertTrue(dispatcher.tryReserve());
+        dispatcher.submit(mail(7));
+        waitFor(() -> transport.delivered() == 1);
+        assertEquals("7@email.ok", transport.recent().get(0).getTo());
+    }
+
+    @Test
+    public void testStopDeadLettersMailsWaitingForRetry() throws Exception {
+        DeadLetterStore deadLetters = new DeadLetterStore(10);
+        dispatcher = new NotificationDispatcher(batch -> {
+            throw new IOException("unavailable");
+        }, deadLetters, 10, 10, 5, 60_000, 60_000);
+        dispatcher.start();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dispatcher.tryReserve());
+            dispatcher.submit(mail(i));
+        }
+        waitFor(() -> dispatcher.retried() == 3);
+        dispatcher.stop();
+        assertEquals(3, deadLetters.size());
+        assertEquals(0, dispatcher.pending());
+        assertEquals("Shut down before retry", deadLetters.list().get(0).getReason());
+        assertEquals(1, deadLetters.list().get(0).getAttempts());
+    }
+
+    @Test
+    public void testSmtpTransportDeliversBatchesInOneSession() throws Exception {
+        try (SmtpServer server = new SmtpServer()) {
+            SmtpMailTransport transport = new SmtpMailTransport("127.0.0.1", server.port(), "bookings@test", 5000);
+            dispatcher = new NotificationDispatcher(transport, new DeadLetterStore(10), 10, 10, 3, 1, 10);
+            CountDownLatch release = new CountDownLatch(1);
+            server.onConnect = () -> await(release);
+            dispatcher.start();
+            for (int i = 0; i < 3; i++) {
+                assertTrue(dispatcher.tryReserve());
+                dispatcher.submit(i == 0 ? mail(i)
+                        : new BookingMail(i + "@email.ok", "Booking\r\nBcc: everyone@email.ok", "first\n.second\n"));
+            }
+            release.countDown();
+            waitFor(() -> dispatcher.sent() == 3);
+            assertEquals(Arrays.asList("<0@email.ok>", "<1@email.ok>", "<2@email.ok>"), server.recipients);
+            assertTrue(server.sessions.get() <= 2);
+            String message = server.messages.get(1);
+            assertTrue(message.contains("Subject: Booking  Bcc: everyone@email.ok\r\n"));
+            assertFalse(message.contains("\r\nBcc:"));
+            assertTrue(message.endsWith("\r\n\r\nfirst\r\n.second\r\n"));
+        }
+    }
+
+    @Test
+    public void testSmtpTransportFailsTheBatchOnARejectedRecipient() throws Exception {
+        try (SmtpServer server = new SmtpServer()) {
+            DeadLetterStore deadLetters = new DeadLetterStore(10);
+            dispatcher = start(new SmtpMailTransport("127.0.0.1", server.port(), "bookings@test", 5000), 10, 10,
+                    deadLetters);
+            assertTrue(dispatcher.tryReserve());
+            dispatcher.submit(new BookingMail("reject@email.ok", "Booking", "body"));
+            waitFor(() -> deadLetters.size() == 1);
+            assertEquals(3, deadLetters.list().get(0).getAttempts());
+            assertEquals("SMTP server replied 550 no such user", deadLetters.list().get(0).getReason());
+            assertEquals(3, server.sessions.get());
+        }
+    }
+
+    private static NotificationDispatcher start(MailTransport transport, int capacity, int batchSize,
+                                                DeadLetterStore deadLetters){
+        NotificationDispatcher dispatcher = new NotificationDispatcher(transport, deadLetters, capacity, batchSize,
+                3, 1, 10);
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    private static BookingMail mail(int i){
+        return new BookingMail(i + "@email.ok", "Booking " + i + " confirmed", "body");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitOrFail(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * A minimal SMTP server on a loopback port: accepts every recipient but those starting with {@code reject} and
+     * records recipients and messages, dot-stuffing removed.
+     */
+    private static final class SmtpServer implements Closeable {
+
+        private final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final List<String> recipients = new CopyOnWriteArrayList<>();
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final AtomicInteger sessions = new AtomicInteger();
+        private volatile Runnable onConnect = () -> { };
+
+        SmtpServer() throws IOException {
+            Thread thread = new Thread(this::serve, "smtp-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int port() {
+            return socket.getLocalPort();
+        }
+
+        private void serve() {
+            while (!socket.isClosed()) {
+                try (Socket connection = socket.accept()) {
+                    sessions.incrementAndGet();
+                    onConnect.run();
+                    session(connection);
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private void session(Socket connection) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                    StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8);
+            reply(out, "220 test ready");
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("EHLO")){
+                    reply(out, "250-test\r\n250 8BITMIME");
+                } else if (line.startsWith("RCPT TO:<reject")){
+                    reply(out, "550 no such user");
+                } else if (line.startsWith("RCPT TO:")){
+                    recipients.add(line.substring("RCPT TO:".length()));
+                    reply(out, "250 ok");
+                } else if (line.equals("DATA")){
+                    reply(out, "354 go ahead");
+                    StringBuilder message = new StringBuilder();
+                    while (!(line = in.readLine()).equals(".")) {
+                        message.append(line.startsWith(".") ? line.substring(1) : line).append("\r\n");
+                    }
+                    messages.add(message.toString());
+                    reply(out, "250 queued");
+                } else if (line.equals("QUIT")){
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    reply(out, "250 ok");
+                }
+            }
+        }
+
+        private static void reply(Writer out, String reply) throws IOException {
+            out.write(reply + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.statista.code.challenge.persistence;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingChangeListener;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import com.statista.code.challenge.repository.PartitionedBookingRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class BookingPersistenceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRestoresFromLogOnly(){
+        Store first = new Store(directory, "group");
+        first.repository.saveOrUpdate(booking("1", 10.00));
+        first.repository.saveOrUpdate(booking("2", 20.00));
+        first.repository.saveOrUpdate(booking("1", 15.00));
+        first.repository.delete("2");
+        first.persistence.awaitDurable();
+        first.persistence.stop();
+
+        Store second = new Store(directory, "group");
+        assertEquals(1, second.repository.size());
+        assertEquals(15.00, second.repository.find("1").getPrice(), 0.0);
+        assertNull(second.repository.find("2"));
+        second.persistence.stop();
+    }
+
+    @Test
+    public void testRestoresFromSnapshotAndLogTail() throws IOException {
+        Store first = new Store(directory, "interval");
+        for (int i = 0; i < 1000; i++) {
+            first.repository.saveOrUpdate(booking(String.valueOf(i), i));
+        }
+        first.persistence.snapshot();
+        first.repository.saveOrUpdate(booking("1000", 1000));
+        first.repository.delete("0");
+        first.persistence.stop();
+
+        assertEquals(1, files(directory, "snapshot-").size());
+        Store second = new Store(directory, "interval");
+        assertEquals(1000, second.repository.size());
+        assertNull(second.repository.find("0"));
+        assertEquals(1000.0, second.repository.find("1000").getPrice(), 0.0);
+        second.persistence.stop();
+    }
+
+    @Test
+    public void testSnapshotDropsObsoleteLogSegments() throws IOException {
+        Store store = new Store(directory, "none");
+        store.repository.saveOrUpdate(booking("1", 10.00));
+        store.persistence.snapshot();
+        store.repository.saveOrUpdate(booking("2", 10.00));
+        store.persistence.snapshot();
+        store.persistence.stop();
+        assertEquals(1, files(directory, "snapshot-").size());
+        assertEquals(1, files(directory, "wal-").size());
+    }
+
+    @Test
+    public void testIgnoresTornRecordAtEndOfLog() throws IOException {
+        Store first = new Store(directory, "group");
+        first.repository.saveOrUpdate(booking("1", 10.00));
+        first.persistence.awaitDurable();
+        first.persistence.stop();
+        Path segment = directory.resolve(files(directory, "wal-").iterator().next());
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 7}, StandardOpenOption.APPEND);
+
+        Store second = new Store(directory, "group");
+        assertEquals(1, second.repository.size());
+        second.repository.saveOrUpdate(booking("2", 10.00));
+        second.persistence.awaitDurable();
+        second.persistence.stop();
+
+        Store third = new Store(directory, "group");
+        assertEquals(2, third.repository.size());
+        third.persistence.stop();
+    }
+
+    @Test
+    public void testIgnoresOversizedLengthAtEndOfLog() throws IOException {
+        Store first = new Store(directory, "group");
+        first.repository.saveOrUpdate(booking("1", 10.00));
+        first.persistence.awaitDurable();
+        first.persistence.stop();
+        Path segment = directory.resolve(files(directory, "wal-").iterator().next());
+        Files.write(segment, new byte[]{0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xf0, 1, 7}, StandardOpenOption.APPEND);
+
+        Store second = new Store(directory, "group");
+        assertEquals(1, second.repository.size());
+        second.persistence.stop();
+    }
+
+    @Test
+    public void testFailedLogRejectsWritesInsteadOfHanging() throws IOException {
+        Path full = Paths.get("/dev/full");
+        assumeTrue(Files.isWritable(full));
+        Store store = new Store(directory, "group");
+        store.repository.saveOrUpdate(booking("1", 10.00));
+        store.persistence.awaitDurable();
+        // the segment the snapshot rotates to cannot be written
+        Files.createSymbolicLink(directory.resolve(WriteAheadLog.segmentName(1)), full);
+        store.persistence.snapshot();
+
+        store.repository.saveOrUpdate(booking("2", 10.00));
+        assertThrows(UncheckedIOException.class, store.persistence::awaitDurable);
+        assertThrows(UncheckedIOException.class, () -> store.repository.saveOrUpdate(booking("3", 10.00)));
+        assertThrows(UncheckedIOException.class, () -> store.repository.delete("1"));
+        assertNull(store.repository.find("3"));
+        assertEquals(2, store.repository.size());
+        store.persistence.stop();
+    }
+
+    @Test
+    public void testSnapshotUnderConcurrentWritesKeepsEveryWrite() throws IOException, InterruptedException {
+        Store first = new Store(directory, "none");
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; writing.get(); i++) {
+                    first.repository.saveOrUpdate(booking(offset + "-" + (i % 100), i));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (int i = 0; i < 20; i++) {
+            first.persistence.snapshot();
+        }
+        writing.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Map<String, Double> expected = new HashMap<>();
+        first.repository.forEach(booking -> expected.put(booking.getId(), booking.getPrice()));
+        first.persistence.stop();
+
+        Store second = new Store(directory, "none");
+        Map<String, Double> recovered = new HashMap<>();
+        second.repository.forEach(booking -> recovered.put(booking.getId(), booking.getPrice()));
+        assertEquals(expected, recovered);
+        second.persistence.stop();
+    }
+
+    @Test
+    public void testBatchWrittenOnSeveralShardsIsDurableForTheCaller() throws IOException {
+        Store store = new Store(directory, "group", 4);
+        int written = 0;
+        for (int round = 0; round < 200; round++) {
+            List<Booking> batch = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                batch.add(booking(round + "-" + i, i));
+            }
+            store.repository.saveAll(batch);
+            store.persistence.awaitDurable();
+            written += batch.size();
+            // the flusher writes a record out before it acknowledges it
+            int[] logged = new int[1];
+            WriteAheadLog.replay(directory.resolve(WriteAheadLog.segmentName(0)), (type, payload) -> logged[0]++);
+            assertEquals(written, logged[0]);
+        }
+        store.persistence.stop();
+    }
+
+    private static Set<String> files(Path directory, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).filter(name -> name.startsWith(prefix))
+                    .collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    private static Booking booking(String id, double price) {
+        return new Booking(id, "description", price, Currency.getInstance("USD"), 1675008444000L,
+                "valid@email.ok", "sales");
+    }
+
+    /**
+     * A repository wired to a started persistence layer, the way the application context does it.
+     */
+    private static final class Store {
+
+        private final BookingRepository repository;
+        private final BookingPersistence persistence;
+
+        Store(Path directory, String sync) {
+            this(directory, sync, 1);
+        }
+
+        Store(Path directory, String sync, int partitions) {
+            DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+            persistence = new BookingPersistence(beanFactory.getBeanProvider(BookingRepository.class), true,
+                    directory.toString(), sync, 5, Long.MAX_VALUE);
+            List<BookingChangeListener> listeners = Collections.singletonList(persistence);
+            repository = partitions == 1 ? new InMemoryBookingRepository(listeners)
+                    : new PartitionedBookingRepository(listeners, partitions, partitions);
+            beanFactory.registerSingleton("repository", repository);
+            persistence.start();
+            assertTrue(persistence.isRunning());
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.entity.Booking;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Behaviour shared by all {@link BookingRepository} implementations.
+ */
+public abstract class BookingRepositoryTest {
+
+    private final BookingRepository repository = createRepository(Collections.emptyList());
+
+    protected abstract BookingRepository createRepository(List<BookingChangeListener> listeners);
+
+    @Test
+    public void testFindByDepartmentAndCurrencyUseIndexes(){
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        repository.saveOrUpdate(booking("2", "sales", "EUR"));
+        repository.saveOrUpdate(booking("3", "internal", "USD"));
+        assertEquals(2, repository.findByDepartment("sales").size());
+        assertEquals(1, repository.findByDepartment("internal").size());
+        assertEquals(2, repository.findByCurrency("USD").size());
+        assertTrue(repository.findByDepartment("unknown").isEmpty());
+        assertTrue(repository.findByCurrency("GBP").isEmpty());
+    }
+
+    @Test
+    public void testStatisticsCountExaminedAndReturnedEntries(){
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        repository.saveOrUpdate(booking("2", "sales", "EUR"));
+        repository.saveOrUpdate(booking("3", "internal", "USD"));
+        repository.find("1");
+        repository.find("4");
+        repository.findByDepartment("internal");
+        QueryStatistics statistics = repository.statistics();
+        assertEquals(2, statistics.calls(QueryStatistics.Query.FIND));
+        assertEquals(1, statistics.returned(QueryStatistics.Query.FIND));
+        assertEquals(1, statistics.calls(QueryStatistics.Query.FIND_BY_DEPARTMENT));
+        assertEquals(1, statistics.returned(QueryStatistics.Query.FIND_BY_DEPARTMENT));
+        assertTrue(statistics.examined(QueryStatistics.Query.FIND_BY_DEPARTMENT) >= 1);
+        assertTrue(repository.estimatedHeapBytes() > 0);
+    }
+
+    @Test
+    public void testUpdateMovesBookingBetweenBuckets(){
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        repository.saveOrUpdate(booking("1", "internal", "EUR"));
+        assertTrue(repository.findByDepartment("sales").isEmpty());
+        assertTrue(repository.findByCurrency("USD").isEmpty());
+        assertEquals(1, repository.findByDepartment("internal").size());
+        assertEquals(1, repository.findByCurrency("EUR").size());
+    }
+
+    @Test
+    public void testStoringEqualBookingAgainKeepsItIndexed(){
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        repository.saveAll(Collections.singletonList(booking("1", "sales", "USD")));
+        assertEquals(1, repository.findByDepartment("sales").size());
+        assertEquals(1, repository.findByCurrency("USD").size());
+    }
+
+    @Test
+    public void testFindByDepartmentPagesInIdOrder(){
+        for (int i = 0; i < 25; i++) {
+            repository.saveOrUpdate(booking(String.format("id-%02d", i), i % 5 == 0 ? "internal" : "sales", "USD"));
+        }
+        List<String> ids = new ArrayList<>();
+        String after = null;
+        List<Booking> page;
+        do {
+            page = repository.findByDepartment("sales", after, 7);
+            page.forEach(booking -> ids.add(booking.getId()));
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+        } while (page.size() == 7);
+        assertEquals(20, ids.size());
+        List<String> sorted = new ArrayList<>(ids);
+        sorted.sort(null);
+        assertEquals(sorted, ids);
+        assertTrue(repository.findByDepartment("unknown", null, 7).isEmpty());
+    }
+
+    @Test
+    public void testFindByDepartmentPagesUuidAndCustomIdsInStringOrder(){
+        Random random = new Random(6);
+        List<String> expected = new ArrayList<>(Arrays.asList("1", "zzz", "A", "00000000-0000",
+                "ffffffff-ffff-ffff-ffff-ffffffffffff0", "80000000-0000-0000-0000-00000000000G", "-"));
+        for (int i = 0; i < 60; i++) {
+            String id = new UUID(random.nextLong(), random.nextLong()).toString();
+            expected.add(i % 10 == 0 ? id.toUpperCase(Locale.ROOT) : id);
+        }
+        expected.add(new UUID(Long.MIN_VALUE, -1).toString());
+        expected.add(new UUID(-1, Long.MIN_VALUE).toString());
+        for (String id : expected) {
+            repository.saveOrUpdate(booking(id, "sales", "USD"));
+        }
+        repository.saveOrUpdate(booking(new UUID(0, 0).toString(), "internal", "USD"));
+        expected.sort(null);
+        List<String> ids = new ArrayList<>();
+        String after = null;
+        List<Booking> page;
+        do {
+            page = repository.findByDepartment("sales", after, 5);
+            page.forEach(booking -> ids.add(booking.getId()));
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+        } while (page.size() == 5);
+        assertEquals(expected, ids);
+        assertEquals(expected.subList(3, 7), ids(repository.findByDepartment("sales", expected.get(2), 4)));
+        List<String> afterCustom = new ArrayList<>();
+        expected.stream().filter(id -> id.compareTo("7f") > 0).forEach(afterCustom::add);
+        assertEquals(afterCustom, ids(repository.findByDepartment("sales", "7f", Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void testDeleteRemovesBookingFromIndexes(){
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        assertEquals("1", repository.delete("1").getId());
+        assertEquals(null, repository.find("1"));
+        assertTrue(repository.findByDepartment("sales").isEmpty());
+        assertTrue(repository.findByCurrency("USD").isEmpty());
+        assertEquals(null, repository.delete("1"));
+    }
+
+    @Test
+    public void testConcurrentMoveIsVisibleInExactlyOneBucket() throws InterruptedException {
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger violations = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                repository.saveOrUpdate(i % 2 == 0 ? booking("1", "internal", "EUR") : booking("1", "sales", "USD"));
+            }
+            running.set(false);
+        });
+        writer.start();
+        while (running.get()) {
+            List<Booking> sales = repository.findByDepartment("sales");
+            List<Booking> internal = repository.findByDepartment("internal");
+            if (sales.size() > 1 || internal.size() > 1) {
+                violations.incrementAndGet();
+            }
+        }
+        writer.join();
+        assertEquals(0, violations.get());
+        assertEquals(1, repository.findByDepartment("sales").size() + repository.findByDepartment("internal").size());
+    }
+
+    @Test
+    public void testConcurrentUpdateInPlaceStaysListed() throws InterruptedException {
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger violations = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                repository.saveOrUpdate(booking("1", "sales", "USD", i));
+            }
+            running.set(false);
+        });
+        writer.start();
+        while (running.get()) {
+            if (repository.findByDepartment("sales").size() != 1 || repository.findByCurrency("USD").size() != 1
+                    || repository.findByDepartment("sales", null, 10).size() != 1){
+                violations.incrementAndGet();
+            }
+        }
+        writer.join();
+        assertEquals(0, violations.get());
+    }
+
+    @Test
+    public void testConditionalWritesCheckVersions(){
+        Booking stored = repository.saveOrUpdate(booking("1", "sales", "USD"));
+        long version = repository.find("1").getVersion();
+        assertEquals(stored.getVersion(), version);
+        assertEquals(version, repository.create(booking("1", "internal", "EUR")).getVersion());
+        assertEquals(null, repository.create(booking("2", "internal", "EUR")));
+
+        assertEquals(version, repository.replace(booking("1", "internal", "USD"), version).getVersion());
+        long replaced = repository.find("1").getVersion();
+        assertTrue(replaced > version);
+        assertEquals(replaced, repository.replace(booking("1", "sales", "GBP"), version).getVersion());
+        assertEquals("internal", repository.find("1").getDepartment());
+        assertEquals(1, repository.findByCurrency("USD").size());
+        assertTrue(repository.findByCurrency("GBP").isEmpty());
+
+        repository.delete("1");
+        assertEquals(null, repository.replace(booking("1", "sales", "USD"), null));
+        assertEquals(null, repository.find("1"));
+        assertTrue(repository.findByDepartment("sales").isEmpty());
+    }
+
+    @Test
+    public void testCreateAllKeepsStoredBookings(){
+        CurrencyAggregates aggregates = new CurrencyAggregates();
+        BookingRepository repository = createRepository(Collections.singletonList(aggregates));
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        repository.saveOrUpdate(booking("2", "sales", "USD"));
+        repository.archive(Collections.singletonList(repository.find("2")));
+        Booking taken = booking("1", "internal", "EUR");
+        Booking archived = booking("2", "internal", "EUR");
+        Booking created = booking("3", "internal", "EUR");
+        List<Booking> rejected = repository.createAll(Arrays.asList(taken, created, archived));
+        assertEquals(2, rejected.size());
+        assertTrue(rejected.contains(taken) && rejected.contains(archived));
+        assertEquals("sales", repository.find("1").getDepartment());
+        assertEquals("sales", repository.find("2").getDepartment());
+        assertEquals(created, repository.find("3"));
+        assertEquals(1, repository.findByDepartment("internal").size());
+        assertEquals(new BigDecimal("50.00"), aggregates.sum("EUR"));
+        assertTrue(repository.createAll(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testConditionalWritesUnderContention() throws InterruptedException {
+        int ids = 4;
+        for (int i = 0; i < ids; i++) {
+            repository.saveOrUpdate(booking("counter-" + i, "sales", "USD", 0));
+        }
+        AtomicInteger[] increments = new AtomicInteger[ids];
+        for (int i = 0; i < ids; i++) {
+            increments[i] = new AtomicInteger();
+        }
+        AtomicInteger creates = new AtomicInteger();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    int id = (i + offset) % ids;
+                    Booking current = repository.find("counter-" + id);
+                    Booking next = booking("counter-" + id, "sales", "USD", current.getPrice() + 1);
+                    Booking previous = repository.replace(next, current.getVersion());
+                    if (previous != null && previous.getVersion() == current.getVersion()){
+                        increments[id].incrementAndGet();
+                    }
+                    if (repository.create(booking("created-" + i, "internal", "EUR")) == null){
+                        creates.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        for (int i = 0; i < ids; i++) {
+            assertEquals(increments[i].get(), repository.find("counter-" + i).getPrice(), 0);
+            assertTrue(increments[i].get() > 0);
+        }
+        assertEquals(2_000, creates.get());
+        assertEquals(2_000, repository.findByDepartment("internal").size());
+    }
+
+    @Test
+    public void testWriteRejectedByAListenerChangesNothing(){
+        CurrencyAggregates aggregates = new CurrencyAggregates();
+        BookingRepository repository = createRepository(Collections.singletonList(aggregates));
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        assertThrows(ArithmeticException.class, () -> repository.saveOrUpdate(booking("2", "sales", "EUR", 1e300)));
+        assertThrows(ArithmeticException.class, () -> repository.create(booking("3", "sales", "EUR", Double.NaN)));
+        assertThrows(ArithmeticException.class,
+                () -> repository.replace(booking("1", "sales", "EUR", Double.POSITIVE_INFINITY), null));
+        assertThrows(ArithmeticException.class, () -> repository.saveAll(Arrays.asList(
+                booking("4", "sales", "EUR"), booking("5", "sales", "EUR", -1e300))));
+        assertEquals(1, repository.size());
+        assertNull(repository.find("2"));
+        assertNull(repository.find("4"));
+        assertEquals(booking("1", "sales", "USD"), repository.find("1"));
+        assertEquals(setOf("USD"), repository.findCurrenciesUsed());
+        assertEquals(1, repository.findByDepartment("sales").size());
+        assertTrue(repository.findByCurrency("EUR").isEmpty());
+        assertEquals(new BigDecimal("50.00"), aggregates.sum("USD"));
+        assertNull(aggregates.summary("EUR"));
+    }
+
+    @Test
+    public void testCurrenciesUsedFollowsUpdatesAndDeletes(){
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        repository.saveOrUpdate(booking("2", "sales", "USD"));
+        Set<Currency> first = repository.findCurrenciesUsed();
+        assertEquals(setOf("USD"), first);
+        repository.saveOrUpdate(booking("1", "sales", "EUR"));
+        assertEquals(setOf("USD", "EUR"), repository.findCurrenciesUsed());
+        repository.delete("2");
+        assertEquals(setOf("EUR"), repository.findCurrenciesUsed());
+    }
+
+    @Test
+    public void testCurrenciesUsedSnapshotIsReusedWhileNoCurrencyAppears(){
+        repository.saveOrUpdate(booking("1", "sales", "USD"));
+        Set<Currency> first = repository.findCurrenciesUsed();
+        repository.saveOrUpdate(booking("2", "sales", "USD"));
+        assertTrue(first == repository.findCurrenciesUsed());
+    }
+
+    @Test
+    public void testCurrenciesUsedUnderConcurrentWrites() throws InterruptedException {
+        String[] codes = {"USD", "EUR", "GBP", "JPY"};
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    String id = offset + "-" + (i % 50);
+                    repository.saveOrUpdate(booking(id, "sales", codes[(i + offset) % codes.length]));
+                    if (i % 7 == 0) {
+                        repository.delete(id);
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            assertTrue(setOf(codes).containsAll(repository.findCurrenciesUsed()));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Set<Currency> expected = new HashSet<>();
+        repository.findAll().forEach(booking -> expected.add(booking.getCurrency()));
+        assertEquals(expected, repository.findCurrenciesUsed());
+    }
+
+    @Test
+    public void testArchivedBookingsAreReadByIdAndStayWritable(){
+        for (int i = 0; i < 600; i++) {
+            repository.saveOrUpdate(booking(String.format("id-%03d", i), i % 2 == 0 ? "sales" : "internal", "USD"));
+        }
+        Collection<Booking> candidates = new ArrayList<>(repository.findAll());
+        repository.saveOrUpdate(booking("id-001", "internal", "EUR"));
+        assertEquals(599, repository.archive(candidates).size());
+        assertEquals(600, repository.size());
+        assertEquals(599, repository.coldTier().size());
+        assertEquals(1, repository.findAll().size());
+        assertTrue(repository.findByDepartment("sales").isEmpty());
+        assertEquals(setOf("USD", "EUR"), repository.findCurrenciesUsed());
+        AtomicInteger visited = new AtomicInteger();
+        repository.forEach(booking -> visited.incrementAndGet());
+        assertEquals(600, visited.get());
+
+        Booking archived = repository.find("id-002");
+        assertEquals(booking("id-002", "sales", "USD"), archived);
+        assertEquals(archived.getVersion(), repository.replace(booking("id-002", "sales", "USD", 60), archived.getVersion()).getVersion());
+        assertEquals(1, repository.findByDepartment("sales").size());
+        assertEquals(60, repository.find("id-002").getPrice(), 0);
+        assertEquals(598, repository.coldTier().size());
+        assertNotNull(repository.create(booking("id-003", "sales", "USD")));
+        assertEquals(600, repository.size());
+
+        for (int i = 4; i < 400; i++) {
+            assertEquals(String.format("id-%03d", i), repository.delete(String.format("id-%03d", i)).getId());
+        }
+        assertNull(repository.find("id-004"));
+        assertTrue(repository.coldTier().compactions() > 0);
+        for (int i = 400; i < 600; i++) {
+            assertEquals(String.format("id-%03d", i), repository.find(String.format("id-%03d", i)).getId());
+        }
+        assertEquals(204, repository.size());
+        assertEquals(setOf("USD", "EUR"), repository.findCurrenciesUsed());
+    }
+
+    private static Set<Currency> setOf(String... codes) {
+        Set<Currency> result = new HashSet<>();
+        Arrays.stream(codes).forEach(code -> result.add(Currency.getInstance(code)));
+        return result;
+    }
+
+    private static List<String> ids(List<Booking> bookings) {
+        List<String> ids = new ArrayList<>();
+        bookings.forEach(booking -> ids.add(booking.getId()));
+        return ids;
+    }
+
+    private static Booking booking(String id, String department, String currency) {
+        return booking(id, department, currency, 50.00);
+    }
+
+    private static Booking booking(String id, String department, String currency, double price) {
+        return new Booking(id, "description", price, Currency.getInstance(currency), 1675008444000L,
+                "valid@email.ok", department);
+    }
+}
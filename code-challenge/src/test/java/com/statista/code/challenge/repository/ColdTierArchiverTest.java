@@ -0,0 +1,72 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColdTierArchiverTest {
+
+    @Test
+    public void testArchivesEarliestStartingBookingsDownToBudget(){
+        InMemoryBookingRepository repository = new InMemoryBookingRepository();
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            bookings.add(new Booking("id-" + i, "description", i, Currency.getInstance("EUR"),
+                    1675008444000L + TimeUnit.DAYS.toMillis(i), "valid@email.ok", "sales"));
+        }
+        // written in reverse, so the earliest starting bookings are the most recently written
+        Collections.reverse(bookings);
+        for (Booking booking : bookings) {
+            repository.saveOrUpdate(booking);
+        }
+        ColdTierArchiver archiver = new ColdTierArchiver(repository, 0, 500 * InMemoryBookingRepository.ESTIMATED_BYTES_PER_BOOKING, 60_000, 100);
+        assertEquals(550, archiver.archive());
+        assertEquals(450, repository.findAll().size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i >= 550, repository.findAll().contains(repository.find("id-" + i)));
+        }
+        assertEquals(0, archiver.archive());
+        assertEquals(2, archiver.passes());
+        assertEquals(1000, repository.size());
+    }
+
+    @Test
+    public void testArchivesByStartDateEvenWhenRecentlyWritten(){
+        InMemoryBookingRepository repository = new InMemoryBookingRepository();
+        long now = System.currentTimeMillis();
+        repository.saveOrUpdate(new Booking("recent", "description", 1, Currency.getInstance("EUR"),
+                now - TimeUnit.DAYS.toMillis(30), "valid@email.ok", "sales"));
+        repository.saveOrUpdate(new Booking("old", "description", 1, Currency.getInstance("EUR"),
+                now - TimeUnit.DAYS.toMillis(5 * 365), "valid@email.ok", "sales"));
+        Booking edited = repository.find("old");
+        edited.setDescription("edited yesterday");
+        repository.saveOrUpdate(edited);
+        ColdTierArchiver archiver = new ColdTierArchiver(repository, 365, 0, 60_000, 100);
+        assertEquals(1, archiver.archive());
+        assertEquals("edited yesterday", repository.coldTier().find("old").getDescription());
+        assertNull(repository.coldTier().find("recent"));
+        assertEquals(1, repository.findAll().size());
+    }
+
+    @Test
+    public void testDoesNothingWhenRulesAreOff(){
+        InMemoryBookingRepository repository = new InMemoryBookingRepository();
+        repository.saveOrUpdate(new Booking("id", "description", 1, Currency.getInstance("EUR"), 1675008444000L,
+                "valid@email.ok", "sales"));
+        ColdTierArchiver archiver = new ColdTierArchiver(repository, 0, 0, 60_000, 100);
+        archiver.start();
+        assertEquals(0, archiver.archive());
+        archiver.stop();
+        assertNull(repository.coldTier().find("id"));
+        assertTrue(repository.coldTier().size() == 0);
+    }
+}
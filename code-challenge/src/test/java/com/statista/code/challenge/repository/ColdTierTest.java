@@ -0,0 +1,78 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColdTierTest {
+
+    @Test
+    public void testRoundTripsBookingsThroughSealedBlocks(){
+        ColdTier tier = new ColdTier();
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Booking booking = booking(i % 3 == 0 ? "custom-" + i : UUID.randomUUID().toString(), i);
+            booking.setVersion(1000 + i);
+            tier.add(booking);
+            bookings.add(booking);
+        }
+        assertEquals(1000, tier.size());
+        assertEquals(1000 / ColdTier.BLOCK_ENTRIES, tier.blocks());
+        for (Booking booking : bookings) {
+            Booking found = tier.find(booking.getId());
+            assertEquals(booking, found);
+            assertEquals(booking.getVersion(), found.getVersion());
+        }
+        Set<String> visited = new HashSet<>();
+        tier.forEach(booking -> visited.add(booking.getId()));
+        assertEquals(1000, visited.size());
+        assertTrue(tier.estimatedHeapBytes() < 1000 * InMemoryBookingRepository.ESTIMATED_BYTES_PER_BOOKING / 2);
+    }
+
+    @Test
+    public void testCompactsBlocksWithMostlyRemovedEntries(){
+        ColdTier tier = new ColdTier();
+        for (int i = 0; i < 3 * ColdTier.BLOCK_ENTRIES; i++) {
+            tier.add(booking("id-" + i, i));
+        }
+        for (int i = 0; i < ColdTier.BLOCK_ENTRIES; i++) {
+            if (i % 4 != 0) {
+                assertEquals("id-" + i, tier.remove("id-" + i).getId());
+            }
+        }
+        assertNull(tier.remove("id-1"));
+        assertEquals(1, tier.compactions());
+        assertEquals(2 * ColdTier.BLOCK_ENTRIES + ColdTier.BLOCK_ENTRIES / 4, tier.size());
+        for (int i = 0; i < 3 * ColdTier.BLOCK_ENTRIES; i++) {
+            assertEquals(i % 4 != 0 && i < ColdTier.BLOCK_ENTRIES, tier.find("id-" + i) == null);
+        }
+        List<String> visited = new ArrayList<>();
+        tier.forEach(booking -> visited.add(booking.getId()));
+        assertEquals(tier.size(), visited.size());
+    }
+
+    @Test
+    public void testReplacesBookingAddedAgain(){
+        ColdTier tier = new ColdTier();
+        tier.add(booking("id", 1));
+        tier.add(booking("id", 2));
+        assertEquals(1, tier.size());
+        assertEquals(2, tier.find("id").getPrice(), 0);
+        assertEquals(2, tier.archived());
+    }
+
+    private static Booking booking(String id, int i) {
+        return new Booking(id, i % 5 == 0 ? null : "description " + i, i, Currency.getInstance(i % 2 == 0 ? "EUR" : "USD"),
+                i % 7 == 0 ? null : 1675008444000L + i, "valid" + i + "@email.ok", "dept-" + (i % 10));
+    }
+}
@@ -0,0 +1,148 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarBookingRepositoryTest extends BookingRepositoryTest {
+
+    @Override
+    protected BookingRepository createRepository(List<BookingChangeListener> listeners) {
+        return new ColumnarBookingRepository(listeners);
+    }
+
+    @Test
+    public void testRoundTripsAllFields(){
+        ColumnarBookingRepository repository = new ColumnarBookingRepository();
+        Booking booking = new Booking(null, "description", 12.34, Currency.getInstance("EUR"), null,
+                "valid@email.ok", "sales");
+        String id = repository.saveOrUpdate(booking).getId();
+        Booking stored = repository.find(id);
+        assertEquals(booking, stored);
+        assertNull(stored.getSubscriptionStartDate());
+    }
+
+    @Test
+    public void testDeleteKeepsRemainingRowsReachable(){
+        ColumnarBookingRepository repository = new ColumnarBookingRepository();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            String id = i % 3 == 0 ? "custom-" + i : UUID.randomUUID().toString();
+            repository.saveOrUpdate(new Booking(id, "description " + i, i, Currency.getInstance("USD"),
+                    1675008444000L + i, "valid@email.ok", "dept-" + (i % 10)));
+            ids.add(id);
+        }
+        int removed = 0;
+        for (String id : new HashSet<>(ids)) {
+            if (removed++ % 2 == 0) {
+                assertEquals(id, repository.delete(id).getId());
+                ids.remove(id);
+            }
+        }
+        assertEquals(ids.size(), repository.size());
+        for (String id : ids) {
+            assertEquals(id, repository.find(id).getId());
+        }
+    }
+
+    @Test
+    public void testDepartmentQueryExaminesOnlyMatchingRows(){
+        ColumnarBookingRepository repository = new ColumnarBookingRepository();
+        for (int i = 0; i < 100; i++) {
+            repository.saveOrUpdate(new Booking(null, "description", i, Currency.getInstance("USD"), null,
+                    "valid@email.ok", i < 10 ? "sales" : "internal"));
+        }
+        assertEquals(10, repository.findByDepartment("sales").size());
+        assertEquals(10, repository.statistics().examined(QueryStatistics.Query.FIND_BY_DEPARTMENT));
+        assertEquals(10, repository.statistics().returned(QueryStatistics.Query.FIND_BY_DEPARTMENT));
+    }
+
+    @Test
+    public void testDepartmentPagesSeekTheirCursor(){
+        ColumnarBookingRepository repository = new ColumnarBookingRepository();
+        for (int i = 0; i < 1000; i++) {
+            repository.saveOrUpdate(new Booking(null, "description", i, Currency.getInstance("USD"), null,
+                    "valid@email.ok", i % 2 == 0 ? "sales" : "internal"));
+        }
+        List<Booking> first = repository.findByDepartment("sales", null, 50);
+        assertEquals(550, repository.statistics().examined(QueryStatistics.Query.FIND_BY_DEPARTMENT_PAGE));
+        List<Booking> second = repository.findByDepartment("sales", first.get(49).getId(), 50);
+        assertEquals(600, repository.statistics().examined(QueryStatistics.Query.FIND_BY_DEPARTMENT_PAGE));
+        assertTrue(first.get(49).getId().compareTo(second.get(0).getId()) < 0);
+
+        // a delete moves the last row, then a booking sorting first is added and one is changed in place
+        repository.delete(first.get(0).getId());
+        repository.saveOrUpdate(new Booking("0", "description", 1, Currency.getInstance("USD"), null,
+                "valid@email.ok", "sales"));
+        repository.saveOrUpdate(new Booking(second.get(0).getId(), "changed", 2, Currency.getInstance("USD"), null,
+                "valid@email.ok", "sales"));
+        Set<String> ids = new TreeSet<>();
+        String after = null;
+        List<Booking> page;
+        do {
+            page = repository.findByDepartment("sales", after, 50);
+            page.forEach(booking -> ids.add(booking.getId()));
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+        } while (page.size() == 50);
+        assertEquals(ids(repository.findByDepartment("sales"), booking -> true), ids);
+        assertEquals("0", ids.iterator().next());
+        assertEquals("changed", repository.findByDepartment("sales", first.get(49).getId(), 1).get(0).getDescription());
+    }
+
+    @Test
+    public void testPostingListsFollowMovesDeletesAndArchiving(){
+        ColumnarBookingRepository repository = new ColumnarBookingRepository();
+        Map<String, Booking> expected = new HashMap<>();
+        List<String> currencies = Arrays.asList("USD", "EUR", "GBP");
+        Random random = new Random(4);
+        for (int i = 0; i < 20_000; i++) {
+            String id = "id-" + random.nextInt(3000);
+            int action = random.nextInt(10);
+            if (action == 0){
+                repository.delete(id);
+                expected.remove(id);
+            } else if (action == 1 && expected.containsKey(id)){
+                repository.archive(Collections.singletonList(repository.find(id)));
+                expected.remove(id);
+            } else {
+                Currency currency = Currency.getInstance(currencies.get(random.nextInt(3)));
+                Booking booking = new Booking(id, "description", i, currency, null, "valid@email.ok",
+                        "dept-" + random.nextInt(5));
+                repository.saveOrUpdate(booking);
+                expected.put(id, booking);
+            }
+        }
+        for (int d = 0; d < 5; d++) {
+            String department = "dept-" + d;
+            assertEquals(ids(expected.values(), booking -> department.equals(booking.getDepartment())),
+                    ids(repository.findByDepartment(department), booking -> true));
+        }
+        for (String currency : currencies) {
+            assertEquals(ids(expected.values(), booking -> currency.equals(booking.getCurrency().getCurrencyCode())),
+                    ids(repository.findByCurrency(currency), booking -> true));
+        }
+    }
+
+    private static Set<String> ids(Collection<Booking> bookings, Predicate<Booking> filter){
+        Set<String> ids = new HashSet<>();
+        bookings.stream().filter(filter).forEach(booking -> ids.add(booking.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,42 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.entity.Booking;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryBookingRepositoryTest extends BookingRepositoryTest {
+
+    @Override
+    protected BookingRepository createRepository(List<BookingChangeListener> listeners) {
+        return new InMemoryBookingRepository(listeners);
+    }
+
+    @Test
+    public void testEmptyBucketsAreDropped(){
+        InMemoryBookingRepository repository = new InMemoryBookingRepository();
+        for (int i = 0; i < 100; i++) {
+            repository.saveOrUpdate(booking("id", "department-" + i, i % 2 == 0 ? "USD" : "EUR"));
+        }
+        assertEquals(2, repository.indexBuckets());
+        repository.saveOrUpdate(booking("other", "department-99", "GBP"));
+        repository.archive(Collections.singletonList(repository.find("other")));
+        assertEquals(2, repository.indexBuckets());
+        repository.delete("id");
+        assertEquals(0, repository.indexBuckets());
+        assertTrue(repository.findByDepartment("department-99").isEmpty());
+        repository.saveOrUpdate(booking("id", "department-99", "EUR"));
+        assertEquals(1, repository.findByDepartment("department-99").size());
+        assertEquals(1, repository.findByCurrency("EUR").size());
+    }
+
+    private static Booking booking(String id, String department, String currency) {
+        return new Booking(id, "description", 50.00, Currency.getInstance(currency), 1675008444000L,
+                "valid@email.ok", department);
+    }
+}
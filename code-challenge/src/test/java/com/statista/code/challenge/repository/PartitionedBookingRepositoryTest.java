@@ -0,0 +1,46 @@
+package com.statista.code.challenge.repository;
+
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.entity.Booking;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class PartitionedBookingRepositoryTest extends BookingRepositoryTest {
+
+    @Override
+    protected BookingRepository createRepository(List<BookingChangeListener> listeners) {
+        return new PartitionedBookingRepository(listeners, 4, 2);
+    }
+
+    @Test
+    public void testBatchIsSpreadOverShardsAndReportedToListeners(){
+        CurrencyAggregates aggregates = new CurrencyAggregates();
+        PartitionedBookingRepository repository =
+                new PartitionedBookingRepository(Collections.singletonList(aggregates), 4, 2);
+        List<Booking> batch = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            batch.add(new Booking("id-" + i, "description", 1.00, Currency.getInstance(i % 2 == 0 ? "USD" : "EUR"),
+                    1675008444000L, "valid@email.ok", i % 3 == 0 ? "internal" : "sales"));
+        }
+        repository.saveAll(batch);
+        assertEquals(1000, repository.size());
+        assertEquals(1000, repository.findAll().size());
+        assertEquals(334, repository.findByDepartment("internal").size());
+        assertEquals(500, repository.findByCurrency("USD").size());
+        assertEquals(new BigDecimal("500.00"), aggregates.sum("EUR"));
+        Set<String> ids = new HashSet<>();
+        repository.forEach(booking -> ids.add(booking.getId()));
+        assertEquals(1000, ids.size());
+        assertEquals(1, repository.statistics().calls(QueryStatistics.Query.FIND_BY_CURRENCY));
+        assertEquals(500, repository.statistics().returned(QueryStatistics.Query.FIND_BY_CURRENCY));
+    }
+}
@@ -0,0 +1,134 @@
+package com.statista.code.challenge.search;
+
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BookingSearchIndexTest {
+
+    private final BookingSearchIndex index = new BookingSearchIndex(Runnable::run);
+    private final BookingRepository repository = new InMemoryBookingRepository(Collections.singletonList(index));
+
+    @Test
+    public void testMatchesAllWordsPrefixesEmailAndDomain(){
+        repository.saveOrUpdate(booking("1", "Annual renewal, premium plan", "Anna@Example.com"));
+        repository.saveOrUpdate(booking("2", "Monthly renewal: basic plan", "bob@example.com"));
+        repository.saveOrUpdate(booking("3", "Premium add-on", "carl@other.org"));
+
+        assertEquals(Arrays.asList("1", "2"), search("renewal plan", null, null));
+        assertEquals(Collections.singletonList("1"), search("PREMIUM renewal", null, null));
+        assertEquals(Arrays.asList("1", "3"), search("prem*", null, null));
+        assertEquals(Arrays.asList("1", "2"), search("re* pl*", null, null));
+        assertEquals(Collections.singletonList("3"), search("add-on", null, null));
+        assertEquals(Collections.singletonList("1"), search(null, " anna@example.COM ", null));
+        assertEquals(Arrays.asList("1", "2"), search(null, null, "EXAMPLE.com"));
+        assertEquals(Arrays.asList("1", "2"), search("plan", null, "example.com"));
+        assertTrue(search("premium", null, "example.net").isEmpty());
+        assertTrue(search("weekly", null, null).isEmpty());
+        assertEquals(Collections.singletonList("1"), index.search(SearchQuery.parse("plan", null, null), 1));
+
+        repository.saveOrUpdate(booking("4", "Premier and premium", "dan@example.com"));
+        assertEquals(Arrays.asList("1", "3", "4"), search("prem*", null, null));
+        assertEquals(Arrays.asList("1", "4"), search("prem* premium", null, "example.com"));
+    }
+
+    @Test
+    public void testWritesMoveBookingsBetweenTerms(){
+        repository.saveOrUpdate(booking("1", "Annual renewal", "anna@example.com"));
+        repository.saveOrUpdate(booking("2", "Annual renewal", "bob@example.com"));
+        repository.saveOrUpdate(booking("1", "Monthly renewal", "anna@example.org"));
+
+        assertEquals(Collections.singletonList("2"), search("annual", null, null));
+        assertEquals(Arrays.asList("2", "1"), search("renewal", null, null));
+        assertTrue(search(null, null, "example.com").contains("2"));
+        assertEquals(Collections.singletonList("1"), search(null, null, "example.org"));
+
+        Booking samePrice = booking("2", "Annual renewal", "BOB@example.com");
+        samePrice.setPrice(99);
+        repository.saveOrUpdate(samePrice);
+        assertEquals(Arrays.asList("2", "1"), search("renewal", null, null));
+
+        repository.delete("2");
+        assertEquals(Collections.singletonList("1"), search("renewal", null, null));
+        assertTrue(search("annual", null, null).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testCompactsRetiredNumbersKeepingOrder(){
+        for (int i = 0; i < 100; i++) {
+            repository.saveOrUpdate(booking(Integer.toString(i), "booking " + i, "c" + i + "@example.com"));
+        }
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < 100; i += 2) {
+                repository.saveOrUpdate(booking(Integer.toString(i), "booking " + i + " round " + round,
+                        "c" + i + "@example.com"));
+            }
+        }
+        assertTrue(index.compactions() > 0);
+        assertEquals(100, index.size());
+        List<String> all = search("booking", null, "example.com");
+        assertEquals(100, all.size());
+        assertEquals("1", all.get(0));
+        assertEquals("98", all.get(99));
+        assertEquals(Collections.singletonList("42"), search("round 29 42", null, null));
+        assertTrue(search("round 28 42", null, null).isEmpty());
+        assertTrue(index.estimatedHeapBytes() > 0);
+    }
+
+    @Test
+    public void testWritesLeaveCompactionToTheCompactor(){
+        List<Runnable> pending = new ArrayList<>();
+        BookingSearchIndex deferred = new BookingSearchIndex(pending::add);
+        BookingRepository store = new InMemoryBookingRepository(Collections.singletonList(deferred));
+        for (int round = 0; round < 30; round++) {
+            store.saveAll(Arrays.asList(booking("1", "round " + round, "a@example.com"),
+                    booking("2", "round " + round, "b@example.com")));
+            for (int i = 0; i < 50; i++) {
+                store.saveOrUpdate(booking("3", "booking 3 write " + (round * 50 + i), "c@example.com"));
+            }
+        }
+        assertEquals(0, deferred.compactions());
+        assertEquals(1, pending.size());
+        store.saveOrUpdate(booking("1", "round 29", "A@Example.com "));
+        assertEquals(1, pending.size());
+
+        pending.remove(0).run();
+        assertEquals(1, deferred.compactions());
+        assertEquals(3, deferred.size());
+        assertEquals(Arrays.asList("1", "2"), deferred.search(SearchQuery.parse("round 29", null, null), 10));
+        assertEquals(Collections.singletonList("3"),
+                deferred.search(SearchQuery.parse("write 1499", null, null), 10));
+    }
+
+    @Test
+    public void testParsesQueries(){
+        assertEquals(Arrays.asList("über", "straße", "2024"), BookingSearchIndex.tokens("Über-Straße 2024, über"));
+        SearchQuery query = SearchQuery.parse("Annual  renew*", " A@B.com", null);
+        assertEquals(Collections.singletonList("annual"), query.getWords());
+        assertEquals(Collections.singletonList("renew"), query.getPrefixes());
+        assertEquals("a@b.com", query.getEmail());
+        assertNull(SearchQuery.parse("  ", "", null));
+        assertNull(SearchQuery.parse("r*", null, null));
+        assertNull(SearchQuery.parse("*", null, null));
+    }
+
+    private List<String> search(String text, String email, String domain){
+        return index.search(SearchQuery.parse(text, email, domain), 1000);
+    }
+
+    private static Booking booking(String id, String description, String email){
+        return new Booking(id, description, 10, Currency.getInstance("EUR"), 683124845000L, email, "sales");
+    }
+}
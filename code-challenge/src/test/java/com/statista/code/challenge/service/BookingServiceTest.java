@@ -1,28 +1,48 @@
 package com.statista.code.challenge.service;
 
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.aggregate.PriceAnalytics;
+import com.statista.code.challenge.aggregate.PriceStatistics;
+import com.statista.code.challenge.aggregate.StartDateIndex;
+import com.statista.code.challenge.department.DepartmentRegistry;
+import com.statista.code.challenge.department.InternalDepartment;
+import com.statista.code.challenge.department.SalesDepartment;
 import com.statista.code.challenge.entity.Booking;
-import com.statista.code.challenge.entity.BookingHumanReadableDate;
+import com.statista.code.challenge.entity.DatedBooking;
+import com.statista.code.challenge.notification.BookingMail;
+import com.statista.code.challenge.notification.NotificationDispatcher;
+import com.statista.code.challenge.persistence.BookingPersistence;
 import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.search.BookingSearchIndex;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Currency;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +51,28 @@ public class BookingServiceTest {
     @Mock
     private BookingRepository bookingRepository;
 
+    @Mock
+    private CurrencyAggregates currencyAggregates;
+
+    @Mock
+    private BookingPersistence persistence;
+
+    @Mock
+    private NotificationDispatcher notifications;
+
+    @Spy
+    private DepartmentRegistry departments = new DepartmentRegistry(
+            Arrays.asList(new InternalDepartment(), new SalesDepartment()));
+
+    @Spy
+    private StartDateIndex startDates = new StartDateIndex();
+
+    @Spy
+    private BookingSearchIndex searchIndex = new BookingSearchIndex();
+
+    @Spy
+    private PriceAnalytics priceAnalytics = new PriceAnalytics(0.01, 10);
+
     @InjectMocks
     BookingService bookingService;
 
@@ -39,13 +81,38 @@ public class BookingServiceTest {
 
     @Test
     public void testCreateValidBooking(){
-        Booking bookingAfterSaving = new Booking("123abc","description", 50.00,
-                Currency.getInstance("USD"), 1675008444000L, "valid@email.ok",
-                "test");
         when(bookingRepository.find(anyString())).thenReturn(null);
-        when(bookingRepository.saveOrUpdate(booking)).thenReturn(bookingAfterSaving);
+        when(bookingRepository.create(booking)).thenAnswer(invocation -> {
+            booking.setVersion(7);
+            return null;
+        });
+        when(notifications.tryReserve()).thenReturn(true);
         ResponseEntity response = bookingService.createBooking(booking);
         assertEquals("123abc", response.getBody());
+        assertEquals("\"7\"", response.getHeaders().getETag());
+        verify(notifications).submit(BookingMail.confirmation(booking));
+    }
+
+    @Test
+    public void testCreateBookingLosingRaceReleasesMailReservation(){
+        when(bookingRepository.find(anyString())).thenReturn(null);
+        when(notifications.tryReserve()).thenReturn(true);
+        when(bookingRepository.create(booking)).thenReturn(booking);
+        ResponseEntity response = bookingService.createBooking(booking);
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        verify(notifications).cancel();
+        verify(notifications, never()).submit(any());
+    }
+
+    @Test
+    public void testCreateBookingRejectedWhenMailQueueIsFull(){
+        when(bookingRepository.find(anyString())).thenReturn(null);
+        when(notifications.tryReserve()).thenReturn(false);
+        when(notifications.retryAfterSeconds()).thenReturn(2L);
+        ResponseEntity response = bookingService.createBooking(booking);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verify(bookingRepository, never()).create(any());
     }
 
     @Test
@@ -57,18 +124,54 @@ public class BookingServiceTest {
 
     @Test
     public void testUpdateBooking(){
-        when(bookingRepository.find(anyString())).thenReturn(booking);
+        when(bookingRepository.replace(booking, null)).thenReturn(booking);
         ResponseEntity response = bookingService.updateBooking("123abc", booking);
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
     }
 
+    @Test
+    public void testUpdateBookingAppliesPathId(){
+        Booking body = new Booking("other", "description", 50.00, Currency.getInstance("USD"), 1675008444000L,
+                "valid@email.ok", "test");
+        when(bookingRepository.replace(body, null)).thenReturn(booking);
+        bookingService.updateBooking("123abc", body);
+        assertEquals("123abc", body.getId());
+    }
+
     @Test
     public void testUpdateBookingNoBookingPreviouslyCreated(){
-        when(bookingRepository.find(anyString())).thenReturn(null);
+        when(bookingRepository.replace(booking, null)).thenReturn(null);
         ResponseEntity response = bookingService.updateBooking("123abc", booking);
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
+    @Test
+    public void testUpdateBookingWithStaleETag(){
+        Booking current = new Booking("123abc", "description", 50.00, Currency.getInstance("USD"), 1675008444000L,
+                "valid@email.ok", "test");
+        current.setVersion(6);
+        when(bookingRepository.replace(booking, 5L)).thenReturn(current);
+        ResponseEntity response = bookingService.updateBooking("123abc", booking, "\"5\"");
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        assertEquals("\"6\"", response.getHeaders().getETag());
+        response = bookingService.updateBooking("123abc", booking, "W/\"6\"");
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+    }
+
+    @Test
+    public void testDeleteBooking(){
+        when(bookingRepository.delete("123abc")).thenReturn(booking);
+        ResponseEntity response = bookingService.deleteBooking("123abc");
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    }
+
+    @Test
+    public void testDeleteBookingNotFound(){
+        when(bookingRepository.delete("123abd")).thenReturn(null);
+        ResponseEntity response = bookingService.deleteBooking("123abd");
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
     @Test
     public void testFindBooking(){
         when(bookingRepository.find(anyString())).thenReturn(booking);
@@ -76,6 +179,18 @@ public class BookingServiceTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
+    @Test
+    public void testFindBookingNotModified(){
+        booking.setVersion(9);
+        when(bookingRepository.find("123abc")).thenReturn(booking);
+        ResponseEntity response = bookingService.find("123abc", "\"8\", W/\"9\"");
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"9\"", response.getHeaders().getETag());
+        assertEquals(null, response.getBody());
+        response = bookingService.find("123abc", "\"8\"");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
     @Test
     public void testFindBookingNullBookingId(){
         ResponseEntity response  = bookingService.find(null);
@@ -107,6 +222,89 @@ public class BookingServiceTest {
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    public void testFindBookingsByDepartmentPage(){
+        List<Booking> page = new ArrayList<>();
+        page.add(booking);
+        page.add(new Booking("123abd", "description", 50.00, Currency.getInstance("USD"), 1675008444000L,
+                "valid@email.ok", "test"));
+        when(bookingRepository.findByDepartment("test", null, 2)).thenReturn(page);
+        ResponseEntity response = bookingService.findByDepartment("test", null, 2);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("123abd", response.getHeaders().getFirst(BookingService.NEXT_CURSOR_HEADER));
+        assertEquals(2, ((List<Booking>) response.getBody()).size());
+    }
+
+    @Test
+    public void testFindBookingsByDepartmentLastPage(){
+        List<Booking> page = new ArrayList<>();
+        page.add(booking);
+        when(bookingRepository.findByDepartment("test", "123", 2)).thenReturn(page);
+        ResponseEntity response = bookingService.findByDepartment("test", "123", 2);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(null, response.getHeaders().getFirst(BookingService.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testFindBookingsByDepartmentPageInvalidLimit(){
+        ResponseEntity response = bookingService.findByDepartment("test", null, 0);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testFindBookingsByStartDatePage(){
+        Booking later = new Booking("123abd", "description", 50.00, Currency.getInstance("USD"), 1675008445000L,
+                "valid@email.ok", "test");
+        startDates.onChange(null, booking);
+        startDates.onChange(null, later);
+        when(bookingRepository.find("123abc")).thenReturn(booking);
+        ResponseEntity response = bookingService.findByStartDate(1675008444000L, 1675008446000L, null, 1);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(Collections.singletonList(booking), response.getBody());
+        assertEquals("1675008444000:123abc", response.getHeaders().getFirst(BookingService.NEXT_CURSOR_HEADER));
+        when(bookingRepository.find("123abd")).thenReturn(later);
+        response = bookingService.findByStartDate(1675008444000L, 1675008446000L, "1675008444000:123abc", 1);
+        assertEquals(Collections.singletonList(later), response.getBody());
+    }
+
+    @Test
+    public void testFindBookingsByStartDateInvalidCursor(){
+        ResponseEntity response = bookingService.findByStartDate(0, 1, "123abc", 10);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        response = bookingService.findByStartDate(1, 0, null, 10);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testSearchBookings(){
+        searchIndex.onChange(null, booking);
+        when(bookingRepository.find("123abc")).thenReturn(booking);
+        ResponseEntity response = bookingService.search("DESCR*", "Valid@Email.ok", null, 10);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(Collections.singletonList(booking), response.getBody());
+        response = bookingService.search(null, null, "other.ok", 10);
+        assertEquals(Collections.emptyList(), response.getBody());
+    }
+
+    @Test
+    public void testSearchBookingsWithoutTermsOrShortPrefix(){
+        assertEquals(HttpStatus.BAD_REQUEST, bookingService.search(" ", null, null, 10).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, bookingService.search("d*", null, null, 10).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, bookingService.search("description", null, null, 0).getStatusCode());
+    }
+
+    @Test
+    public void testRetrievePriceStatistics(){
+        priceAnalytics.onChange(null, booking);
+        ResponseEntity response = bookingService.retrievePriceStatistics("test");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<PriceStatistics> statistics = (List<PriceStatistics>) response.getBody();
+        assertEquals(1, statistics.size());
+        assertEquals(new BigDecimal("50.00"), statistics.get(0).getTop().get(0).getPrice());
+        assertEquals(HttpStatus.NOT_FOUND, bookingService.retrievePriceStatistics("unknown").getStatusCode());
+        assertEquals(statistics, bookingService.retrievePriceStatistics().getBody());
+    }
+
     @Test
     public void testRetrieveCurrenciesUsed(){
         Set<Currency> currencies = new HashSet<>();
@@ -120,6 +318,19 @@ public class BookingServiceTest {
         assertEquals(currencies, result);
     }
 
+    @Test
+    public void testRetrieveCurrenciesUsedNotModifiedUntilRegistryChanges(){
+        when(bookingRepository.currenciesVersion()).thenReturn(3L);
+        when(bookingRepository.findCurrenciesUsed()).thenReturn(Collections.singleton(Currency.getInstance("USD")));
+        ResponseEntity first = bookingService.retrieveCurrencyUsed(null);
+        String etag = first.getHeaders().getETag();
+        ResponseEntity second = bookingService.retrieveCurrencyUsed(etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        verify(bookingRepository, times(1)).findCurrenciesUsed();
+        when(bookingRepository.currenciesVersion()).thenReturn(4L);
+        assertEquals(HttpStatus.OK, bookingService.retrieveCurrencyUsed(etag).getStatusCode());
+    }
+
     @Test
     public void testRetrieveCurrenciesUsedNonePresent(){
         when(bookingRepository.findCurrenciesUsed()).thenReturn(new HashSet());
@@ -127,29 +338,51 @@ public class BookingServiceTest {
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    public void testRetrieveSumByCurrency(){
+        when(currencyAggregates.sum("USD")).thenReturn(new BigDecimal("100.00"));
+        ResponseEntity response = bookingService.retrieveSumByCurrency("USD");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(new BigDecimal("100.00"), response.getBody());
+    }
+
+    @Test
+    public void testRetrieveSumByCurrencyNotModified(){
+        when(currencyAggregates.version("USD")).thenReturn(12L);
+        String etag = bookingService.retrieveSumByCurrency("USD", null).getHeaders().getETag();
+        ResponseEntity response = bookingService.retrieveSumByCurrency("USD", etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        verify(currencyAggregates, times(1)).sum("USD");
+    }
+
+    @Test
+    public void testRetrieveSummaryByCurrencyNonePresent(){
+        when(currencyAggregates.summary("GBP")).thenReturn(null);
+        ResponseEntity response = bookingService.retrieveSummaryByCurrency("GBP");
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
     @Test
     public void testAverageAllSalesByCurrency(){
-        List<Booking> bookings = new ArrayList<>();
-        bookings.add(booking);
-        bookings.add(booking);
-        when(bookingRepository.findByDepartment(anyString())).thenReturn(bookings);
-        ResponseEntity response = bookingService.averageAllSalesByCurrency("test");
+        booking.setDepartment("sales");
+        departments.onChange(null, booking);
+        ResponseEntity response = bookingService.doBusiness("sales");
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        HashMap<Currency, Double> result = (HashMap<Currency, Double>) response.getBody();
+        Map<Currency, Double> result = (Map<Currency, Double>) response.getBody();
         assertTrue(result.containsKey(Currency.getInstance("USD")));
         assertEquals(Double.valueOf(50.00), result.get(Currency.getInstance("USD")));
     }
 
     @Test
     public void testConvertSubscriptionDateToHumanReadable(){
-        List<Booking> bookings = new ArrayList<>();
-        bookings.add(booking);
-        when(bookingRepository.findByDepartment(anyString())).thenReturn(bookings);
-        ResponseEntity response = bookingService.convertSubscriptionStartDateToHumanReadable("internal");
+        booking.setDepartment("internal");
+        departments.onChange(null, booking);
+        ResponseEntity response = bookingService.doBusiness("internal");
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        List<BookingHumanReadableDate> bookingHumanReadableDates = (List<BookingHumanReadableDate>) response.getBody();
-        assertEquals(1, bookingHumanReadableDates.size());
-        BookingHumanReadableDate bookingHumanReadableDate = bookingHumanReadableDates.get(0);
-        assertEquals("29.01.2023, 17:07:24", bookingHumanReadableDate.getHumanReadableSubscriptionStartDate());
+        List<DatedBooking> datedBookings = (List<DatedBooking>) response.getBody();
+        assertEquals(1, datedBookings.size());
+        DatedBooking datedBooking = datedBookings.get(0);
+        assertSame(booking, datedBooking.getBooking());
+        assertEquals("29.01.2023, 17:07:24", datedBooking.getHumanReadableSubscriptionStartDate());
     }
 }
@@ -0,0 +1,128 @@
+package com.statista.code.challenge.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.statista.code.challenge.aggregate.CurrencyAggregates;
+import com.statista.code.challenge.entity.Booking;
+import com.statista.code.challenge.persistence.BookingPersistence;
+import com.statista.code.challenge.repository.BookingRepository;
+import com.statista.code.challenge.repository.InMemoryBookingRepository;
+import org.junit.jupiter.api.Test;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class BulkBookingImporterTest {
+
+    private static final String VALID = "{\"description\":\"Cool description!\",\"price\":50.00,\"currency\":\"USD\","
+            + "\"subscription_start_date\":683124845000,\"email\":\"valid@email.ok\",\"department\":\"sales\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CurrencyAggregates aggregates = new CurrencyAggregates();
+    private final BookingRepository repository = new InMemoryBookingRepository(Collections.singletonList(aggregates));
+    private final BulkBookingImporter importer = new BulkBookingImporter(repository, objectMapper,
+            Validation.buildDefaultValidatorFactory().getValidator(), mock(BookingPersistence.class), 2);
+
+    @Test
+    public void testImportJsonArrayInBatches() throws IOException {
+        List<JsonNode> results = importBookings("[" + VALID + "," + VALID + "," + VALID + "]");
+        assertEquals(3, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+            assertNotNull(repository.find(results.get(i).get("id").asText()));
+        }
+        assertEquals(new BigDecimal("150.00"), aggregates.sum("USD"));
+    }
+
+    @Test
+    public void testImportNdjsonReportsInvalidRecords() throws IOException {
+        String missingEmail = VALID.replace("\"email\":\"valid@email.ok\",", "");
+        String badCurrency = VALID.replace("USD", "NOPE");
+        List<JsonNode> results = importBookings(VALID + "\n" + missingEmail + "\n" + badCurrency + "\n" + VALID + "\n");
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).has("id"));
+        assertEquals("email must not be null", results.get(1).get("errors").get(0).asText());
+        assertTrue(results.get(2).has("errors"));
+        assertTrue(results.get(3).has("id"));
+        assertEquals(2, repository.size());
+    }
+
+    @Test
+    public void testImportRejectsPricesOutOfRange() throws IOException {
+        String huge = VALID.replace("50.00", "1e300");
+        String infinite = VALID.replace("50.00", "1e400");
+        List<JsonNode> results = importBookings("[" + huge + "," + infinite + "," + VALID + "]");
+        assertEquals("price must be a finite amount between -1e15 and 1e15",
+                results.get(0).get("errors").get(0).asText());
+        assertEquals("price must be a finite amount between -1e15 and 1e15",
+                results.get(1).get("errors").get(0).asText());
+        assertTrue(results.get(2).has("id"));
+        assertEquals(1, repository.size());
+        assertEquals(new BigDecimal("50.00"), aggregates.sum("USD"));
+    }
+
+    @Test
+    public void testImportRejectsExistingIds() throws IOException {
+        String withId = VALID.replace("{", "{\"id\":\"abc\",");
+        List<JsonNode> results = importBookings("[" + withId + "," + withId + "]");
+        assertEquals("abc", results.get(0).get("id").asText());
+        assertEquals("id abc already exists", results.get(1).get("errors").get(0).asText());
+    }
+
+    @Test
+    public void testImportDoesNotReplaceBookingsCreatedWhileReading() throws IOException {
+        String withId = VALID.replace("{", "{\"id\":\"abc\",");
+        byte[] body = (withId + "\n").getBytes(StandardCharsets.UTF_8);
+        // another client creates the booking once the record has been read, before its batch is stored
+        InputStream in = new ByteArrayInputStream(body) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                int read = super.read(buffer, offset, length);
+                if (read == -1 && repository.find("abc") == null){
+                    repository.create(new Booking("abc", "other", 10.00, Currency.getInstance("USD"), 683124845000L,
+                            "other@email.ok", "internal"));
+                }
+                return read;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        importer.importBookings(in, out);
+        JsonNode result = objectMapper.readTree(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("id abc already exists", result.get("errors").get(0).asText());
+        assertEquals("other", repository.find("abc").getDescription());
+        assertEquals(new BigDecimal("10.00"), aggregates.sum("USD"));
+    }
+
+    @Test
+    public void testImportStopsAtMalformedJson() throws IOException {
+        List<JsonNode> results = importBookings("[" + VALID + ", {\"description\": ");
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).has("id"));
+        assertTrue(results.get(1).has("fatal"));
+        assertEquals(1, repository.size());
+    }
+
+    private List<JsonNode> importBookings(String body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        importer.importBookings(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), out);
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        return results;
+    }
+}